@@ -1,12 +1,26 @@
 package es.darkhogg.johnson.data;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * Representation of a JSON Array.
+ * <p>
+ * Arrays of numbers can be backed by a <tt>long[]</tt> or a <tt>double[]</tt> instead of a list of JSON values. Their
+ * elements are created only when accessed through {@link #get} or {@link #getValue}, and can be read without creating
+ * them at all through {@link #getLong}, {@link #getDouble}, {@link #toLongArray} and {@link #toDoubleArray}.
+ * <p>
+ * Modified copies of an array are created with {@link #append} and {@link #set}. The first modification of an array
+ * copies its elements into a persistent vector once, and from then on every modification takes <tt>O(log n)</tt> time
+ * and shares all unchanged elements with the original array.
+ * <p>
+ * Two JSON arrays are equal if they have equal elements in the same order, no matter how they are stored. The hash code
+ * follows the contract of {@link List#hashCode} and is computed only once.
  * 
  * @author Daniel Escoz
  * @version 1.0
@@ -16,6 +30,18 @@ public final class JsonArray extends JsonValue<List<JsonValue<?>>> {
     /** An empty JSON array */
     public static final JsonArray EMPTY = new JsonArray(Collections.<JsonValue<?>> emptyList());
 
+    /** Elements of this array, if it is backed by a <tt>long[]</tt> */
+    private final long[] longs;
+
+    /** Elements of this array, if it is backed by a <tt>double[]</tt> */
+    private final double[] doubles;
+
+    /** Persistent version of the elements of this array, created on the first modification */
+    private volatile JsonVector<JsonValue<?>> persistent;
+
+    /** Cached hash code, or <tt>0</tt> if not computed yet */
+    private int hash;
+
     /**
      * Creates a JSON array using the given list.
      * <p>
@@ -24,8 +50,84 @@ public final class JsonArray extends JsonValue<List<JsonValue<?>>> {
      * 
      * @param value The list to be wrapped in this JSON array
      */
-    private JsonArray (List<JsonValue<?>> value) {
+    JsonArray (List<JsonValue<?>> value) {
         super(value);
+        this.longs = null;
+        this.doubles = null;
+    }
+
+    /**
+     * Creates a JSON array backed by the given array, without copying it.
+     * 
+     * @param longs Elements of the JSON array
+     */
+    JsonArray (long[] longs) {
+        super(new LongList(longs));
+        this.longs = longs;
+        this.doubles = null;
+    }
+
+    /**
+     * Creates a JSON array backed by the given array, without copying it.
+     * 
+     * @param doubles Elements of the JSON array
+     */
+    JsonArray (double[] doubles) {
+        super(new DoubleList(doubles));
+        this.longs = null;
+        this.doubles = doubles;
+    }
+
+    /**
+     * Creates a JSON array backed by the given persistent vector.
+     * 
+     * @param vector Elements of the JSON array
+     */
+    private JsonArray (JsonVector<JsonValue<?>> vector) {
+        super(new VectorList(vector));
+        this.longs = null;
+        this.doubles = null;
+        this.persistent = vector;
+    }
+
+    /**
+     * Returns a JSON array of numbers backed by a copy of the given array.
+     * 
+     * @param values Elements of the JSON array
+     * @return A JSON array with the given elements
+     */
+    public static JsonArray valueOf (long[] values) {
+        if (values == null) {
+            throw new NullPointerException("values");
+        }
+        return values.length == 0 ? EMPTY : new JsonArray(values.clone());
+    }
+
+    /**
+     * Returns a JSON array of numbers backed by a copy of the given array.
+     * 
+     * @param values Elements of the JSON array
+     * @return A JSON array with the given elements
+     */
+    public static JsonArray valueOf (double[] values) {
+        if (values == null) {
+            throw new NullPointerException("values");
+        }
+        return values.length == 0 ? EMPTY : new JsonArray(values.clone());
+    }
+
+    /**
+     * @return Whether this array is backed by a <tt>long[]</tt>
+     */
+    public boolean isLongArray () {
+        return longs != null;
+    }
+
+    /**
+     * @return Whether this array is backed by a <tt>double[]</tt>
+     */
+    public boolean isDoubleArray () {
+        return doubles != null;
     }
 
     /**
@@ -47,6 +149,248 @@ public final class JsonArray extends JsonValue<List<JsonValue<?>>> {
         return getValue().get(index);
     }
 
+    /** @return The elements of this array as a persistent vector */
+    private JsonVector<JsonValue<?>> persistent () {
+        JsonVector<JsonValue<?>> vector = persistent;
+        if (vector == null) {
+            vector = JsonVector.copyOf(value);
+            persistent = vector;
+        }
+        return vector;
+    }
+
+    /**
+     * Returns a JSON array with the same elements as this one, plus <tt>elem</tt> at its end.
+     * 
+     * @param elem Element to add
+     * @return The modified JSON array
+     */
+    public JsonArray append (JsonValue<?> elem) {
+        if (elem == null) {
+            throw new NullPointerException("elem");
+        }
+        return new JsonArray(persistent().append(elem));
+    }
+
+    /**
+     * Returns a JSON array with the same elements as this one, except for the one at <tt>index</tt>, which is replaced
+     * by <tt>elem</tt>.
+     * 
+     * @param index Array position to replace
+     * @param elem New element
+     * @return The modified JSON array
+     * @throws IndexOutOfBoundsException If the index is out of bounds
+     */
+    public JsonArray set (int index, JsonValue<?> elem) {
+        if (elem == null) {
+            throw new NullPointerException("elem");
+        }
+        return new JsonArray(persistent().set(index, elem));
+    }
+
+    /**
+     * Returns the number at the position indicated by <tt>index</tt> as a <tt>long</tt>, without creating a JSON value
+     * for it if this array is backed by a primitive array.
+     * 
+     * @param index Array position to return
+     * @return The element at the <tt>index</tt> position, as a <tt>long</tt>
+     * @throws ClassCastException If the element is not a JSON number
+     */
+    public long getLong (int index) {
+        if (longs != null) {
+            return longs[index];
+        }
+        if (doubles != null) {
+            return (long) doubles[index];
+        }
+        return ((JsonNumber) get(index)).longValue();
+    }
+
+    /**
+     * Returns the number at the position indicated by <tt>index</tt> as a <tt>double</tt>, without creating a JSON
+     * value for it if this array is backed by a primitive array.
+     * 
+     * @param index Array position to return
+     * @return The element at the <tt>index</tt> position, as a <tt>double</tt>
+     * @throws ClassCastException If the element is not a JSON number
+     */
+    public double getDouble (int index) {
+        if (doubles != null) {
+            return doubles[index];
+        }
+        if (longs != null) {
+            return longs[index];
+        }
+        return ((JsonNumber) get(index)).doubleValue();
+    }
+
+    /**
+     * Returns a new array with all the elements of this array as <tt>long</tt>s.
+     * 
+     * @return The elements of this array
+     * @throws ClassCastException If some element is not a JSON number
+     */
+    public long[] toLongArray () {
+        if (longs != null) {
+            return longs.clone();
+        }
+
+        long[] array = new long[getLength()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = getLong(i);
+        }
+        return array;
+    }
+
+    /**
+     * Returns a new array with all the elements of this array as <tt>double</tt>s.
+     * 
+     * @return The elements of this array
+     * @throws ClassCastException If some element is not a JSON number
+     */
+    public double[] toDoubleArray () {
+        if (doubles != null) {
+            return doubles.clone();
+        }
+
+        double[] array = new double[getLength()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = getDouble(i);
+        }
+        return array;
+    }
+
+    /**
+     * An unmodifiable list view of a persistent vector.
+     * 
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class VectorList extends AbstractList<JsonValue<?>> implements RandomAccess {
+
+        /** Elements of the list */
+        private final JsonVector<JsonValue<?>> vector;
+
+        VectorList (JsonVector<JsonValue<?>> vector) {
+            this.vector = vector;
+        }
+
+        @Override
+        public JsonValue<?> get (int index) {
+            return vector.get(index);
+        }
+
+        @Override
+        public int size () {
+            return vector.size();
+        }
+    }
+
+    /**
+     * An unmodifiable list view of a <tt>long[]</tt> that creates its JSON numbers on demand.
+     * 
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class LongList extends AbstractList<JsonValue<?>> implements RandomAccess {
+
+        /** Elements of the list */
+        private final long[] array;
+
+        LongList (long[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public JsonValue<?> get (int index) {
+            return JsonNumber.valueOf(array[index]);
+        }
+
+        @Override
+        public int size () {
+            return array.length;
+        }
+    }
+
+    /**
+     * An unmodifiable list view of a <tt>double[]</tt> that creates its JSON numbers on demand.
+     * 
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class DoubleList extends AbstractList<JsonValue<?>> implements RandomAccess {
+
+        /** Elements of the list */
+        private final double[] array;
+
+        DoubleList (double[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public JsonValue<?> get (int index) {
+            return JsonNumber.valueOf(array[index]);
+        }
+
+        @Override
+        public int size () {
+            return array.length;
+        }
+    }
+
+    @Override
+    public int hashCode () {
+        // Racy single-check, as the elements never change
+        int h = hash;
+        if (h == 0) {
+            h = 1;
+            if (longs != null) {
+                for (long num : longs) {
+                    h = 31 * h + (int) (num ^ (num >>> 32));
+                }
+            } else if (doubles != null) {
+                for (double num : doubles) {
+                    long bits = Double.doubleToLongBits(num);
+                    h = 31 * h + (int) (bits ^ (bits >>> 32));
+                }
+            } else {
+                for (JsonValue<?> elem : value) {
+                    h = 31 * h + elem.hashCode();
+                }
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public boolean equals (Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof JsonArray)) {
+            return false;
+        }
+
+        JsonArray jarr = (JsonArray) obj;
+        int length = getLength();
+        if (length != jarr.getLength() || (hash != 0 && jarr.hash != 0 && hash != jarr.hash)) {
+            return false;
+        }
+        if (longs != null && jarr.longs != null) {
+            return Arrays.equals(longs, jarr.longs);
+        }
+        if (doubles != null && jarr.doubles != null) {
+            return Arrays.equals(doubles, jarr.doubles);
+        }
+        for (int i = 0; i < length; i++) {
+            if (!get(i).equals(jarr.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * A class used to create JSON arrays element by element.
      * 
@@ -0,0 +1,252 @@
+package es.darkhogg.johnson.data;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import es.darkhogg.johnson.io.JsonReader;
+
+/**
+ * A class used to extract the values identified by a fixed set of {@link JsonPointer}s from documents read by a
+ * {@link JsonReader}, without building the rest of the document.
+ * <p>
+ * The pointers are merged into a tree of segments when the extractor is created. Each document is then read in a
+ * single pass: only the arrays and objects that lead to some pointer are walked, all other values are skipped with
+ * {@link JsonReader#skipValue} without decoding them, and only the values identified by a pointer are built.
+ * <p>
+ * When a key appears more than once in an object, the values found under its last mapping replace those found under
+ * the previous ones, as if the document had been parsed with {@link JsonParser} and the pointers evaluated on it.
+ * <p>
+ * Instances of this class are not thread-safe, but are meant to be reused for any number of documents.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonExtractor {
+
+    /** Root of the tree of segments */
+    private final Node root = new Node(JsonPointer.ROOT, -1);
+
+    /** Parser used to build the extracted values */
+    private final JsonParser parser = new JsonParser();
+
+    /**
+     * Creates an extractor for the given pointers.
+     *
+     * @param pointers Pointers to extract
+     * @throws NullPointerException If <tt>pointers</tt> or any of its elements is <tt>null</tt>
+     */
+    public JsonExtractor (JsonPointer... pointers) {
+        this(Arrays.asList(pointers));
+    }
+
+    /**
+     * Creates an extractor for the given pointers.
+     *
+     * @param pointers Pointers to extract
+     * @throws NullPointerException If <tt>pointers</tt> or any of its elements is <tt>null</tt>
+     */
+    public JsonExtractor (Collection<JsonPointer> pointers) {
+        if (pointers == null) {
+            throw new NullPointerException("pointers");
+        }
+
+        for (JsonPointer pointer : pointers) {
+            if (pointer == null) {
+                throw new NullPointerException("pointer");
+            }
+
+            Node node = root;
+            for (int i = 0; i < pointer.getDepth(); i++) {
+                node = node.child(pointer, i);
+            }
+            node.pointer = pointer;
+        }
+    }
+
+    /**
+     * Reads a complete JSON document from the given reader, checking that nothing but whitespace follows it, and
+     * returns the values identified by the pointers of this extractor.
+     *
+     * @param reader Reader to read the document from
+     * @return The values found for each pointer in document order, without the pointers that identify no value
+     * @throws IOException If an I/O error happens or the document is not valid JSON
+     */
+    public Map<JsonPointer, JsonValue<?>> extract (JsonReader reader) throws IOException {
+        if (reader == null) {
+            throw new NullPointerException("reader");
+        }
+
+        Map<JsonPointer, JsonValue<?>> found = new LinkedHashMap<JsonPointer, JsonValue<?>>();
+        walk(reader, reader.next(), root, found);
+        if (reader.next() != JsonReader.TOKEN_EOF) {
+            throw new IOException("JSON: Expecting EOF");
+        }
+        return found;
+    }
+
+    /**
+     * Reads a value, walking into the children that lead to some pointer and skipping all others.
+     *
+     * @param reader Reader to read the value from
+     * @param token The first token of the value
+     * @param node The node of the tree that corresponds to the value
+     * @param found Values found so far
+     * @throws IOException If an I/O error happens or the value is not valid JSON
+     */
+    private void walk (JsonReader reader, int token, Node node, Map<JsonPointer, JsonValue<?>> found)
+        throws IOException {
+        if (node.pointer != null) {
+            JsonValue<?> value = parser.parseValue(reader, token);
+            found.put(node.pointer, value);
+            addDescendants(node, value, found);
+            return;
+        }
+
+        if (token == JsonReader.TOKEN_OBJECT_BEGIN) {
+            while (reader.next() == JsonReader.TOKEN_KEY) {
+                Node child = node.names == null ? null : node.names.get(reader.getString());
+                if (child == null) {
+                    reader.skipValue();
+                } else {
+                    if (!found.isEmpty()) {
+                        // The key may be repeated, and only its last mapping counts
+                        child.removeFrom(found);
+                    }
+                    walk(reader, reader.next(), child, found);
+                }
+            }
+
+        } else if (token == JsonReader.TOKEN_ARRAY_BEGIN) {
+            for (int i = 0;; i++) {
+                Node child = node.element(i);
+                if (child == null) {
+                    if (reader.skipValue() == JsonReader.TOKEN_ARRAY_END) {
+                        break;
+                    }
+                } else {
+                    int tok = reader.next();
+                    if (tok == JsonReader.TOKEN_ARRAY_END) {
+                        break;
+                    }
+                    walk(reader, tok, child, found);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the values of the pointers below a node whose value has been built entirely.
+     *
+     * @param node A node
+     * @param value The value of the node
+     * @param found Values found so far
+     */
+    private static void addDescendants (Node node, JsonValue<?> value, Map<JsonPointer, JsonValue<?>> found) {
+        if (node.names == null) {
+            return;
+        }
+        for (Node child : node.names.values()) {
+            JsonValue<?> childValue = child.path.step(value, child.segment);
+            if (childValue != null) {
+                if (child.pointer != null) {
+                    found.put(child.pointer, childValue);
+                }
+                addDescendants(child, childValue, found);
+            }
+        }
+    }
+
+    /**
+     * A node of the tree of segments.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class Node {
+
+        /** Pointer that ends at this node, or <tt>null</tt> if none does */
+        JsonPointer pointer;
+
+        /** A pointer that goes through this node */
+        final JsonPointer path;
+
+        /** Position of the segment of this node in {@link #path} */
+        final int segment;
+
+        /** Children of this node by segment, or <tt>null</tt> if it has none */
+        Map<String, Node> names;
+
+        /** Array indices of the children that are valid indices */
+        int[] indices = new int[0];
+
+        /** Children of this node by index, parallel to {@link #indices} */
+        Node[] elements = new Node[0];
+
+        /**
+         * @param path A pointer that goes through this node
+         * @param segment Position of the segment of this node in the pointer
+         */
+        Node (JsonPointer path, int segment) {
+            this.path = path;
+            this.segment = segment;
+        }
+
+        /**
+         * @param ptr A pointer that goes through this node
+         * @param seg Position of the segment of the child in the pointer
+         * @return The child for the given segment, created if it did not exist
+         */
+        Node child (JsonPointer ptr, int seg) {
+            if (names == null) {
+                names = new HashMap<String, Node>();
+            }
+            String name = ptr.getSegment(seg);
+            Node node = names.get(name);
+            if (node == null) {
+                node = new Node(ptr, seg);
+                names.put(name, node);
+                int index = ptr.getIndex(seg);
+                if (index >= 0) {
+                    indices = Arrays.copyOf(indices, indices.length + 1);
+                    indices[indices.length - 1] = index;
+                    elements = Arrays.copyOf(elements, elements.length + 1);
+                    elements[elements.length - 1] = node;
+                }
+            }
+            return node;
+        }
+
+        /**
+         * Removes the values of the pointers that end at this node or below it.
+         *
+         * @param found Values found so far
+         */
+        void removeFrom (Map<JsonPointer, JsonValue<?>> found) {
+            if (pointer != null) {
+                found.remove(pointer);
+            }
+            if (names != null) {
+                for (Node child : names.values()) {
+                    child.removeFrom(found);
+                }
+            }
+        }
+
+        /**
+         * @param index An array index
+         * @return The child for the given index, or <tt>null</tt> if there is none
+         */
+        Node element (int index) {
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] == index) {
+                    return elements[i];
+                }
+            }
+            return null;
+        }
+    }
+}
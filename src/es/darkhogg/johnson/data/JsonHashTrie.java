@@ -0,0 +1,464 @@
+package es.darkhogg.johnson.data;
+
+/**
+ * An immutable map from strings to values whose updates return a new map sharing all unchanged structure with the
+ * original one.
+ * <p>
+ * This is a hash array mapped trie: each level of the trie consumes 5 bits of the hash of the keys, and its nodes only
+ * store the children that exist, located through a 32-bit bitmap. Keys with identical hashes are kept together in a
+ * collision node, ordered by key so that even many colliding keys take logarithmic time. Lookups and updates touch one
+ * node per level, so they take <tt>O(log<sub>32</sub> n)</tt> time.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ * @param <V> Type of the values
+ */
+final class JsonHashTrie<V> {
+
+    /** Number of hash bits consumed by each level of the trie */
+    private static final int BITS = 5;
+
+    /** Mask of the hash bits of a single level */
+    private static final int MASK = (1 << BITS) - 1;
+
+    /** An empty node */
+    private static final BitmapNode EMPTY_NODE = new BitmapNode(0, new Object[0]);
+
+    /** An empty map */
+    private static final JsonHashTrie<Object> EMPTY = new JsonHashTrie<Object>(EMPTY_NODE, 0);
+
+    /** Root of the trie */
+    private final Node root;
+
+    /** Number of mappings */
+    private final int size;
+
+    /**
+     * @param root Root of the trie
+     * @param size Number of mappings
+     */
+    private JsonHashTrie (Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @param <V> Type of the values
+     * @return An empty map
+     */
+    @SuppressWarnings("unchecked")
+    static <V> JsonHashTrie<V> empty () {
+        return (JsonHashTrie<V>) EMPTY;
+    }
+
+    /** @return The number of mappings */
+    int size () {
+        return size;
+    }
+
+    /**
+     * @param key Key of the mapping
+     * @return The value mapped to the key, or <tt>null</tt> if there is none
+     */
+    @SuppressWarnings("unchecked")
+    V get (String key) {
+        return (V) root.find(0, key.hashCode(), key);
+    }
+
+    /**
+     * Returns a map with a mapping added or replaced.
+     *
+     * @param key Key of the mapping
+     * @param value Value of the mapping, not <tt>null</tt>
+     * @return The new map
+     */
+    JsonHashTrie<V> with (String key, V value) {
+        boolean[] added = new boolean[1];
+        Node newRoot = root.with(0, key.hashCode(), key, value, added);
+        return newRoot == root ? this : new JsonHashTrie<V>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Returns a map with a mapping removed.
+     *
+     * @param key Key of the mapping
+     * @return The new map
+     */
+    JsonHashTrie<V> without (String key) {
+        Node newRoot = root.without(0, key.hashCode(), key);
+        if (newRoot == root) {
+            return this;
+        }
+        return newRoot == null ? JsonHashTrie.<V> empty() : new JsonHashTrie<V>(newRoot, size - 1);
+    }
+
+    /**
+     * @param shift Shift of the hash for a level
+     * @param hash A hash
+     * @return The bit of the bitmap of the level for the hash
+     */
+    private static int bit (int shift, int hash) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * A node of the trie.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private abstract static class Node {
+
+        /**
+         * @param shift Shift of the hash for the level of this node
+         * @param hash Hash of the key
+         * @param key Key to find
+         * @return The value mapped to the key, or <tt>null</tt> if there is none
+         */
+        abstract Object find (int shift, int hash, String key);
+
+        /**
+         * @param shift Shift of the hash for the level of this node
+         * @param hash Hash of the key
+         * @param key Key of the mapping
+         * @param value Value of the mapping
+         * @param added Set to <tt>true</tt> if the key was not mapped
+         * @return A node with the mapping, or <tt>this</tt> if it already had it
+         */
+        abstract Node with (int shift, int hash, String key, Object value, boolean[] added);
+
+        /**
+         * @param shift Shift of the hash for the level of this node
+         * @param hash Hash of the key
+         * @param key Key of the mapping
+         * @return A node without the mapping, <tt>this</tt> if it did not have it, or <tt>null</tt> if it is empty
+         */
+        abstract Node without (int shift, int hash, String key);
+    }
+
+    /**
+     * A node that stores the mappings and subnodes of the hash bits present in its bitmap, as pairs of a key and a
+     * value or of <tt>null</tt> and a subnode.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class BitmapNode extends Node {
+
+        /** Hash bits present in this node */
+        private final int bitmap;
+
+        /** Pairs of keys and values, or of <tt>null</tt> and subnodes */
+        private final Object[] array;
+
+        BitmapNode (int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        /**
+         * @param bit A bit of the bitmap
+         * @return The index of the pair for the bit
+         */
+        private int index (int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        Object find (int shift, int hash, String key) {
+            int bit = bit(shift, hash);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+
+            int idx = index(bit);
+            Object k = array[2 * idx];
+            Object v = array[2 * idx + 1];
+            if (k == null) {
+                return ((Node) v).find(shift + BITS, hash, key);
+            }
+            return key.equals(k) ? v : null;
+        }
+
+        @Override
+        Node with (int shift, int hash, String key, Object value, boolean[] added) {
+            int bit = bit(shift, hash);
+            int idx = index(bit);
+
+            if ((bitmap & bit) == 0) {
+                int count = Integer.bitCount(bitmap);
+                Object[] newArray = new Object[2 * (count + 1)];
+                System.arraycopy(array, 0, newArray, 0, 2 * idx);
+                newArray[2 * idx] = key;
+                newArray[2 * idx + 1] = value;
+                System.arraycopy(array, 2 * idx, newArray, 2 * (idx + 1), 2 * (count - idx));
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, newArray);
+            }
+
+            Object k = array[2 * idx];
+            Object v = array[2 * idx + 1];
+            if (k == null) {
+                Node node = ((Node) v).with(shift + BITS, hash, key, value, added);
+                return node == v ? this : copyWith(2 * idx + 1, node);
+            }
+            if (key.equals(k)) {
+                return value == v ? this : copyWith(2 * idx + 1, value);
+            }
+
+            added[0] = true;
+            Node node = createNode(shift + BITS, (String) k, v, hash, key, value);
+            Object[] newArray = array.clone();
+            newArray[2 * idx] = null;
+            newArray[2 * idx + 1] = node;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        @Override
+        Node without (int shift, int hash, String key) {
+            int bit = bit(shift, hash);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+
+            int idx = index(bit);
+            Object k = array[2 * idx];
+            Object v = array[2 * idx + 1];
+            if (k == null) {
+                Node node = ((Node) v).without(shift + BITS, hash, key);
+                if (node == v) {
+                    return this;
+                }
+                if (node != null) {
+                    return copyWith(2 * idx + 1, node);
+                }
+            } else if (!key.equals(k)) {
+                return this;
+            }
+
+            // Remove the pair entirely
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, 2 * idx);
+            System.arraycopy(array, 2 * (idx + 1), newArray, 2 * idx, newArray.length - 2 * idx);
+            return new BitmapNode(bitmap ^ bit, newArray);
+        }
+
+        /**
+         * @param index Index in the array
+         * @param obj Object to store
+         * @return A copy of this node with the object stored at the given index
+         */
+        private BitmapNode copyWith (int index, Object obj) {
+            Object[] newArray = array.clone();
+            newArray[index] = obj;
+            return new BitmapNode(bitmap, newArray);
+        }
+
+        /**
+         * @param shift Shift of the hash for the level of the new node
+         * @param key1 Key of the first mapping
+         * @param value1 Value of the first mapping
+         * @param hash2 Hash of the second key
+         * @param key2 Key of the second mapping
+         * @param value2 Value of the second mapping
+         * @return A node with both mappings
+         */
+        private static Node createNode (int shift, String key1, Object value1, int hash2, String key2, Object value2) {
+            int hash1 = key1.hashCode();
+            if (hash1 == hash2) {
+                boolean[] added = new boolean[1];
+                return new CollisionNode(hash1, Entry.with(new Entry(key1, value1, null, null), key2, value2, added));
+            }
+            boolean[] added = new boolean[1];
+            return EMPTY_NODE.with(shift, hash1, key1, value1, added).with(shift, hash2, key2, value2, added);
+        }
+    }
+
+    /**
+     * A node that stores mappings whose keys have the same hash, as a balanced binary search tree ordered by key.
+     * <p>
+     * Keys that share a hash are easy to produce, so these nodes may grow large. Keeping them ordered makes lookups and
+     * updates take <tt>O(log n)</tt> comparisons and copy only the path to the updated entry.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class CollisionNode extends Node {
+
+        /** Hash of all the keys */
+        private final int hash;
+
+        /** Root of the tree of mappings */
+        private final Entry root;
+
+        CollisionNode (int hash, Entry root) {
+            this.hash = hash;
+            this.root = root;
+        }
+
+        @Override
+        Object find (int shift, int hash, String key) {
+            if (hash != this.hash) {
+                return null;
+            }
+            Entry entry = root;
+            while (entry != null) {
+                int cmp = key.compareTo(entry.key);
+                if (cmp == 0) {
+                    return entry.value;
+                }
+                entry = cmp < 0 ? entry.left : entry.right;
+            }
+            return null;
+        }
+
+        @Override
+        Node with (int shift, int hash, String key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // Push this node one level down, next to the new mapping
+                return new BitmapNode(bit(shift, this.hash), new Object[] { null, this }).with(shift, hash, key, value,
+                    added);
+            }
+            Entry newRoot = Entry.with(root, key, value, added);
+            return newRoot == root ? this : new CollisionNode(hash, newRoot);
+        }
+
+        @Override
+        Node without (int shift, int hash, String key) {
+            if (hash != this.hash) {
+                return this;
+            }
+            Entry newRoot = Entry.without(root, key);
+            if (newRoot == root) {
+                return this;
+            }
+            return newRoot == null ? null : new CollisionNode(hash, newRoot);
+        }
+    }
+
+    /**
+     * An immutable AVL tree node holding a single mapping of a collision node.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class Entry {
+
+        /** Key of the mapping */
+        final String key;
+
+        /** Value of the mapping */
+        final Object value;
+
+        /** Subtree of smaller keys */
+        final Entry left;
+
+        /** Subtree of greater keys */
+        final Entry right;
+
+        /** Height of this subtree */
+        final int height;
+
+        Entry (String key, Object value, Entry left, Entry right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+        }
+
+        /**
+         * @param entry A subtree, or <tt>null</tt>
+         * @return The height of the subtree
+         */
+        private static int height (Entry entry) {
+            return entry == null ? 0 : entry.height;
+        }
+
+        /**
+         * @param entry Root of the subtree
+         * @param key Key of the mapping
+         * @param value Value of the mapping
+         * @param added Set to <tt>true</tt> if the mapping did not exist
+         * @return The subtree with the mapping added or replaced
+         */
+        static Entry with (Entry entry, String key, Object value, boolean[] added) {
+            if (entry == null) {
+                added[0] = true;
+                return new Entry(key, value, null, null);
+            }
+            int cmp = key.compareTo(entry.key);
+            if (cmp == 0) {
+                return entry.value == value ? entry : new Entry(key, value, entry.left, entry.right);
+            }
+            if (cmp < 0) {
+                Entry newLeft = with(entry.left, key, value, added);
+                return newLeft == entry.left ? entry : balance(entry.key, entry.value, newLeft, entry.right);
+            }
+            Entry newRight = with(entry.right, key, value, added);
+            return newRight == entry.right ? entry : balance(entry.key, entry.value, entry.left, newRight);
+        }
+
+        /**
+         * @param entry Root of the subtree, or <tt>null</tt>
+         * @param key Key of the mapping
+         * @return The subtree without the mapping, or the same subtree if it did not exist
+         */
+        static Entry without (Entry entry, String key) {
+            if (entry == null) {
+                return null;
+            }
+            int cmp = key.compareTo(entry.key);
+            if (cmp < 0) {
+                Entry newLeft = without(entry.left, key);
+                return newLeft == entry.left ? entry : balance(entry.key, entry.value, newLeft, entry.right);
+            }
+            if (cmp > 0) {
+                Entry newRight = without(entry.right, key);
+                return newRight == entry.right ? entry : balance(entry.key, entry.value, entry.left, newRight);
+            }
+            if (entry.left == null) {
+                return entry.right;
+            }
+            if (entry.right == null) {
+                return entry.left;
+            }
+            Entry first = entry.right;
+            while (first.left != null) {
+                first = first.left;
+            }
+            return balance(first.key, first.value, entry.left, without(entry.right, first.key));
+        }
+
+        /**
+         * @param key Key of the new root
+         * @param value Value of the new root
+         * @param left Subtree of smaller keys
+         * @param right Subtree of greater keys
+         * @return A balanced subtree with all the given mappings
+         */
+        private static Entry balance (String key, Object value, Entry left, Entry right) {
+            int diff = height(left) - height(right);
+            if (diff > 1) {
+                if (height(left.left) < height(left.right)) {
+                    Entry pivot = left.right;
+                    return new Entry(pivot.key, pivot.value, new Entry(left.key, left.value, left.left, pivot.left),
+                        new Entry(key, value, pivot.right, right));
+                }
+                return new Entry(left.key, left.value, left.left, new Entry(key, value, left.right, right));
+            }
+            if (diff < -1) {
+                if (height(right.right) < height(right.left)) {
+                    Entry pivot = right.left;
+                    return new Entry(pivot.key, pivot.value, new Entry(key, value, left, pivot.left),
+                        new Entry(right.key, right.value, pivot.right, right.right));
+                }
+                return new Entry(right.key, right.value, new Entry(key, value, left, right.left), right.right);
+            }
+            return new Entry(key, value, left, right);
+        }
+    }
+}
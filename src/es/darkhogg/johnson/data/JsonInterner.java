@@ -0,0 +1,135 @@
+package es.darkhogg.johnson.data;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pool of canonical JSON values, that replaces equal values and subtrees with a single shared instance.
+ * <p>
+ * Values are interned bottom-up: the elements of an array and the keys and values of an object are interned before
+ * the container itself, so equal subtrees anywhere in a document, or in different documents interned by the same
+ * interner, end up being the same instance. Containers whose children were all already canonical are kept as they
+ * are, and arrays backed by primitive storage are interned as a whole.
+ * <p>
+ * Since the hash codes of JSON containers are cached and their canonical children compare by identity, interning a
+ * tree takes time proportional to its size. Every canonical value is kept by the interner until {@link #clear} is
+ * called or the interner itself becomes unreachable.
+ * <p>
+ * Instances of this class are not safe for use by multiple threads.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonInterner {
+
+    /** Canonical values, mapped to themselves */
+    private final Map<JsonValue<?>, JsonValue<?>> values = new HashMap<JsonValue<?>, JsonValue<?>>();
+
+    /** Canonical object keys, mapped to themselves */
+    private final Map<String, String> keys = new HashMap<String, String>();
+
+    /**
+     * Returns the canonical instance of a value. The returned value is equal to the given one, and is the same
+     * instance returned for every other equal value passed to this interner.
+     *
+     * @param <T> Type of the value
+     * @param value The value to intern
+     * @return The canonical instance of the value
+     * @throws NullPointerException If <tt>value</tt> is <tt>null</tt>
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends JsonValue<?>> T intern (T value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+
+        // Singletons are already canonical
+        if (value instanceof JsonNull || value instanceof JsonBoolean) {
+            return value;
+        }
+
+        JsonValue<?> rebuilt = value;
+        if (value instanceof JsonArray) {
+            rebuilt = internElements((JsonArray) value);
+        } else if (value instanceof JsonObject) {
+            rebuilt = internMappings((JsonObject) value);
+        }
+
+        JsonValue<?> canonical = values.get(rebuilt);
+        if (canonical == null) {
+            values.put(rebuilt, rebuilt);
+            canonical = rebuilt;
+        }
+        return (T) canonical;
+    }
+
+    /**
+     * @param array An array
+     * @return An array with canonical elements, or <tt>array</tt> itself if its elements were already canonical
+     */
+    private JsonArray internElements (JsonArray array) {
+        if (array.isLongArray() || array.isDoubleArray()) {
+            return array;
+        }
+
+        List<JsonValue<?>> list = array.getValue();
+        int length = list.size();
+        JsonValue<?>[] elems = null;
+        for (int i = 0; i < length; i++) {
+            JsonValue<?> elem = list.get(i);
+            JsonValue<?> canonical = intern(elem);
+            if (canonical != elem && elems == null) {
+                elems = list.toArray(new JsonValue<?>[length]);
+            }
+            if (elems != null) {
+                elems[i] = canonical;
+            }
+        }
+
+        return elems == null ? array : new JsonArray(Collections.unmodifiableList(Arrays.asList(elems)));
+    }
+
+    /**
+     * @param object An object
+     * @return An object with canonical keys and values, or <tt>object</tt> itself if they were already canonical
+     */
+    private JsonObject internMappings (JsonObject object) {
+        int size = object.getSize();
+        String[] objKeys = new String[size];
+        JsonValue<?>[] objValues = new JsonValue<?>[size];
+        boolean changed = false;
+
+        int i = 0;
+        for (Map.Entry<String, JsonValue<?>> entry : object.getValue().entrySet()) {
+            String key = entry.getKey();
+            String canonicalKey = keys.get(key);
+            if (canonicalKey == null) {
+                keys.put(key, key);
+                canonicalKey = key;
+            }
+            JsonValue<?> value = entry.getValue();
+            JsonValue<?> canonicalValue = intern(value);
+
+            changed |= canonicalKey != key || canonicalValue != value;
+            objKeys[i] = canonicalKey;
+            objValues[i] = canonicalValue;
+            i++;
+        }
+
+        return changed ? new JsonObject(new JsonObjectMap(objKeys, objValues, size)) : object;
+    }
+
+    /** @return The number of canonical values held by this interner */
+    public int size () {
+        return values.size();
+    }
+
+    /** Removes all canonical values and keys from this interner. */
+    public void clear () {
+        values.clear();
+        keys.clear();
+    }
+}
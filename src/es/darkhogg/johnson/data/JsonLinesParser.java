@@ -0,0 +1,278 @@
+package es.darkhogg.johnson.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import es.darkhogg.johnson.io.JsonReader;
+
+/**
+ * A class used to parse UTF-8 encoded JSON Lines (NDJSON) input on multiple threads.
+ * <p>
+ * The input is split into chunks of about {@linkplain #setChunkSize a fixed size} that end right after a newline, so
+ * that no record is split between two chunks. Since newlines can only appear between JSON tokens and the newline byte
+ * is never part of a multi-byte UTF-8 sequence, chunks are split by looking at raw bytes only. Each chunk is then
+ * parsed by a different task of a {@link ForkJoinPool}, using its own {@link JsonReader} and {@link JsonParser}.
+ * <p>
+ * Every record must be on a single line, and every line must contain at most one record, so that the result does not
+ * depend on where chunks are split. Empty and blank lines are ignored.
+ * <p>
+ * Instances of this class are thread-safe, as long as their chunk size is not modified while in use.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonLinesParser {
+
+    /** Default size of the chunks parsed by each task */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    /** Pool that runs the parsing tasks */
+    private final ForkJoinPool pool;
+
+    /** Approximate size of the chunks parsed by each task */
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Creates a parser that runs its tasks on the given pool.
+     *
+     * @param pool Pool that runs the parsing tasks
+     */
+    public JsonLinesParser (ForkJoinPool pool) {
+        if (pool == null) {
+            throw new NullPointerException("pool");
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * Sets the approximate size of the chunks parsed by each task. Chunks are extended up to the end of their last
+     * line, so they may be somewhat bigger. The default size is {@value #DEFAULT_CHUNK_SIZE} bytes.
+     *
+     * @param chunkSize Approximate size of the chunks, in bytes
+     * @return <tt>this</tt>
+     * @throws IllegalArgumentException If the size is not positive
+     */
+    public JsonLinesParser setChunkSize (int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("JSON: Invalid chunk size " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /** @return The approximate size of the chunks parsed by each task */
+    public int getChunkSize () {
+        return chunkSize;
+    }
+
+    /**
+     * Parses all records of the given UTF-8 encoded input, in the order they appear.
+     *
+     * @param bytes Array containing the input
+     * @return The parsed records
+     * @throws IOException If a record is not valid JSON
+     */
+    public List<JsonValue<?>> parse (byte[] bytes) throws IOException {
+        return parse(bytes, 0, bytes.length, true);
+    }
+
+    /**
+     * Parses all records of a slice of the given UTF-8 encoded input.
+     * <p>
+     * If <tt>ordered</tt> is <tt>false</tt>, the records of each chunk are still in order, but chunks are added to the
+     * result as soon as they are parsed, so that no chunk waits for the previous ones.
+     *
+     * @param bytes Array containing the input
+     * @param offset Position of the first byte of the input
+     * @param length Number of bytes of the input
+     * @param ordered Whether records are returned in the order they appear
+     * @return The parsed records
+     * @throws IOException If a record is not valid JSON
+     * @throws IndexOutOfBoundsException If the slice is not within the array
+     */
+    public List<JsonValue<?>> parse (byte[] bytes, int offset, int length, boolean ordered) throws IOException {
+        if (bytes == null) {
+            throw new NullPointerException("bytes");
+        }
+        if (offset < 0 || length < 0 || offset > bytes.length - length) {
+            throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length + ", size=" + bytes.length);
+        }
+
+        int[] bounds = split(bytes, offset, length, chunkSize);
+        Batch batch = new Batch(bytes, bounds, ordered);
+        pool.invoke(new ParseTask(batch, 0, bounds.length - 1));
+
+        for (IOException exc : batch.errors) {
+            if (exc != null) {
+                throw exc;
+            }
+        }
+        if (!ordered) {
+            return batch.unordered;
+        }
+
+        int total = 0;
+        for (List<JsonValue<?>> records : batch.results) {
+            total += records.size();
+        }
+        List<JsonValue<?>> all = new ArrayList<JsonValue<?>>(total);
+        for (List<JsonValue<?>> records : batch.results) {
+            all.addAll(records);
+        }
+        return all;
+    }
+
+    /**
+     * Splits a slice of an array in chunks of at least the given size that end after a newline, except the last one.
+     *
+     * @param bytes Array containing the input
+     * @param offset Position of the first byte of the input
+     * @param length Number of bytes of the input
+     * @param size Minimum size of the chunks
+     * @return The positions where each chunk begins, followed by the end of the input
+     */
+    private static int[] split (byte[] bytes, int offset, int length, int size) {
+        int end = offset + length;
+        int[] bounds = new int[length / size + 2];
+        int count = 0;
+
+        bounds[count++] = offset;
+        int pos = offset;
+        while (end - pos > size) {
+            pos += size;
+            while (pos < end && bytes[pos - 1] != '\n') {
+                pos++;
+            }
+            if (pos < end) {
+                bounds[count++] = pos;
+            }
+        }
+        bounds[count++] = end;
+
+        int[] result = new int[count];
+        System.arraycopy(bounds, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Parses all records of a single chunk, one line at a time.
+     *
+     * @param bytes Array containing the input
+     * @param start Position of the first byte of the chunk
+     * @param end Position after the last byte of the chunk
+     * @return The parsed records
+     * @throws IOException If a line does not contain a single valid JSON value and is not blank
+     */
+    private static List<JsonValue<?>> parseChunk (byte[] bytes, int start, int end) throws IOException {
+        JsonParser parser = new JsonParser();
+        List<JsonValue<?>> records = new ArrayList<JsonValue<?>>();
+        int lineStart = start;
+        while (lineStart < end) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && bytes[lineEnd] != '\n') {
+                lineEnd++;
+            }
+
+            try {
+                JsonReader reader = JsonReader.utf8(bytes, lineStart, lineEnd - lineStart).setLineDelimited(true);
+                JsonValue<?> value = parser.parseNext(reader);
+                if (value != null) {
+                    if (reader.next() != JsonReader.TOKEN_EOF) {
+                        throw new IOException("JSON: Expecting the end of the line");
+                    }
+                    records.add(value);
+                }
+            } catch (IOException exc) {
+                throw new IOException("JSON: Invalid record in the line of bytes " + lineStart + " to " + lineEnd, exc);
+            }
+            lineStart = lineEnd + 1;
+        }
+        return records;
+    }
+
+    /**
+     * Input and results of a single call to {@link JsonLinesParser#parse(byte[], int, int, boolean)}.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class Batch {
+
+        /** Array containing the input */
+        final byte[] bytes;
+
+        /** Positions where each chunk begins, followed by the end of the input */
+        final int[] bounds;
+
+        /** Records of each chunk, if ordered */
+        final List<JsonValue<?>>[] results;
+
+        /** Records of all chunks in the order they were parsed, if not ordered */
+        final List<JsonValue<?>> unordered;
+
+        /** Error of each chunk, or <tt>null</tt> */
+        final IOException[] errors;
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        Batch (byte[] bytes, int[] bounds, boolean ordered) {
+            this.bytes = bytes;
+            this.bounds = bounds;
+            this.results = ordered ? new List[bounds.length - 1] : null;
+            this.unordered = ordered ? null : Collections.synchronizedList(new ArrayList<JsonValue<?>>());
+            this.errors = new IOException[bounds.length - 1];
+        }
+    }
+
+    /**
+     * A task that parses a range of chunks, splitting it in halves until a single chunk remains.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class ParseTask extends RecursiveAction {
+
+        /** Serialization version */
+        private static final long serialVersionUID = 1L;
+
+        /** The batch being parsed */
+        private final transient Batch batch;
+
+        /** First chunk to parse */
+        private final int first;
+
+        /** Chunk after the last one to parse */
+        private final int last;
+
+        ParseTask (Batch batch, int first, int last) {
+            this.batch = batch;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute () {
+            if (last - first > 1) {
+                int middle = (first + last) >>> 1;
+                invokeAll(new ParseTask(batch, first, middle), new ParseTask(batch, middle, last));
+                return;
+            }
+
+            for (int i = first; i < last; i++) {
+                try {
+                    List<JsonValue<?>> records = parseChunk(batch.bytes, batch.bounds[i], batch.bounds[i + 1]);
+                    if (batch.results != null) {
+                        batch.results[i] = records;
+                    } else {
+                        batch.unordered.addAll(records);
+                    }
+                } catch (IOException exc) {
+                    batch.errors[i] = exc;
+                }
+            }
+        }
+    }
+}
@@ -3,78 +3,348 @@ package es.darkhogg.johnson.data;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 
+import es.darkhogg.johnson.io.JsonNumberParser;
+
 /**
  * Representation of a JSON number.
- * 
+ * <p>
+ * Numbers created from <tt>long</tt> and <tt>double</tt> values, which include all numbers parsed from JSON text that
+ * fit in them, keep their value unboxed and only box it when {@link #getValue} is called. Integers between
+ * {@value #CACHE_LOW} and {@value #CACHE_HIGH} are shared, like {@link Long#valueOf(long)} does. Other values are
+ * stored exactly as given.
+ * <p>
+ * Two JSON numbers are equal if their values are of the same type and are equal, with <tt>byte</tt>s, <tt>short</tt>s
+ * and <tt>int</tt>s, boxed or not, being stored as <tt>long</tt>s.
+ *
  * @author Daniel Escoz
  * @version 1.0
  */
-public final class JsonNumber extends JsonValue<Number> {
+public abstract class JsonNumber extends JsonValue<Number> {
+
+    /** Lowest integer that is cached */
+    private static final int CACHE_LOW = -128;
+
+    /** Highest integer that is cached */
+    private static final int CACHE_HIGH = 1023;
+
+    /** Storage of numbers whose value is kept boxed */
+    static final int STORAGE_BOXED = 0;
+
+    /** Storage of numbers whose value is kept as a <tt>long</tt> */
+    static final int STORAGE_LONG = 1;
+
+    /** Storage of numbers whose value is kept as a <tt>double</tt> */
+    static final int STORAGE_DOUBLE = 2;
 
     /**
      * Creates a JSON number with the given value.
-     * 
-     * @param value Value for the new JSON number
-     * @throws NullPointerException if <tt>value</tt> is <tt>null</tt>
-     * @throws IllegalArgumentException if <tt>value</tt> is not of an accepted <tt>Number</tt> subclass
+     *
+     * @param value Value for the new JSON number, or <tt>null</tt> if it is computed by {@link #getValue}
      */
     private JsonNumber (Number value) {
         super(value);
-
-        if (value == null) {
-            throw new NullPointerException("value");
-        }
-        if (!(value instanceof Byte || value instanceof Short || value instanceof Integer || value instanceof Long
-              || value instanceof Float || value instanceof Double || value instanceof BigInteger || value instanceof BigDecimal))
-        {
-            throw new IllegalArgumentException("value instanceof " + value.getClass().getName());
-        }
     }
 
-    @Override
-    public int hashCode () {
-        return value.hashCode();
-    }
+    /**
+     * @return Whether this number is an integer, that is, its value is not a <tt>Float</tt>, a <tt>Double</tt> or a
+     *         <tt>BigDecimal</tt>
+     */
+    public abstract boolean isIntegral ();
 
-    @Override
-    public boolean equals (Object obj) {
-        if (this == obj) {
-            return true;
-        }
-        if (!(obj instanceof JsonNumber)) {
-            return false;
-        }
+    /**
+     * Returns the value of this number as a <tt>long</tt>, as {@link Number#longValue} would.
+     *
+     * @return The value of this number as a <tt>long</tt>
+     */
+    public abstract long longValue ();
 
-        JsonNumber jnum = (JsonNumber) obj;
-        return value.equals(jnum.value);
-    }
+    /**
+     * Returns the value of this number as a <tt>double</tt>, as {@link Number#doubleValue} would.
+     *
+     * @return The value of this number as a <tt>double</tt>
+     */
+    public abstract double doubleValue ();
 
+    /** @return How the value of this number is stored, as one of the <tt>STORAGE_*</tt> constants */
+    abstract int storage ();
+
+    /**
+     * Returns a JSON number with the given value.
+     *
+     * @param num Value of the JSON number
+     * @return A JSON number with the given value
+     * @throws NullPointerException if <tt>num</tt> is <tt>null</tt>
+     * @throws IllegalArgumentException if <tt>num</tt> is not of an accepted <tt>Number</tt> subclass
+     */
     public static JsonNumber valueOf (Number num) {
-        return new JsonNumber(num);
+        if (num == null) {
+            throw new NullPointerException("num");
+        }
+        if (num instanceof Long || num instanceof Integer || num instanceof Short || num instanceof Byte) {
+            return valueOf(num.longValue());
+        }
+        if (num instanceof Double) {
+            return valueOf(num.doubleValue());
+        }
+        if (!(num instanceof Float || num instanceof BigInteger || num instanceof BigDecimal)) {
+            throw new IllegalArgumentException("value instanceof " + num.getClass().getName());
+        }
+        return new Boxed(num);
     }
 
+    /**
+     * Returns a JSON number with the given value, stored as a <tt>long</tt>.
+     *
+     * @param num Value of the JSON number
+     * @return A JSON number with the given value
+     */
     public static JsonNumber valueOf (int num) {
-        return JsonNumber.valueOf(Integer.valueOf(num));
+        return valueOf((long) num);
     }
 
+    /**
+     * Returns a JSON number with the given value. Small values are cached.
+     *
+     * @param num Value of the JSON number
+     * @return A JSON number with the given value
+     */
     public static JsonNumber valueOf (long num) {
-        return JsonNumber.valueOf(Long.valueOf(num));
+        if (num >= CACHE_LOW && num <= CACHE_HIGH) {
+            return Cache.VALUES[(int) num - CACHE_LOW];
+        }
+        return new OfLong(num);
     }
 
+    /**
+     * Returns a JSON number with the given value.
+     *
+     * @param num Value of the JSON number
+     * @return A JSON number with the given value
+     */
     public static JsonNumber valueOf (float num) {
-        return JsonNumber.valueOf(Float.valueOf(num));
+        return new Boxed(Float.valueOf(num));
     }
 
+    /**
+     * Returns a JSON number with the given value.
+     *
+     * @param num Value of the JSON number
+     * @return A JSON number with the given value
+     */
     public static JsonNumber valueOf (double num) {
-        return JsonNumber.valueOf(Double.valueOf(num));
+        return new OfDouble(num);
     }
 
+    /**
+     * Creates a JSON number from its JSON text. The value is stored as a <tt>Long</tt> or a <tt>Double</tt> when
+     * that loses nothing, and as a <tt>BigInteger</tt> or a <tt>BigDecimal</tt> otherwise.
+     *
+     * @param str Text of the number
+     * @return A JSON number with the value of the text
+     * @throws NumberFormatException If the text is not a valid JSON number
+     * @see JsonNumberParser#parse
+     */
     public static JsonNumber valueOf (String str) {
-        if (str.indexOf('.') >= 0) {
-            return JsonNumber.valueOf(new BigDecimal(str));
-        } else {
-            return JsonNumber.valueOf(new BigInteger(str));
+        return JsonNumber.valueOf(JsonNumberParser.parse(str));
+    }
+
+    /**
+     * Shared JSON numbers for small integers, created the first time one is needed.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class Cache {
+
+        /** Cached numbers, from {@link JsonNumber#CACHE_LOW} to {@link JsonNumber#CACHE_HIGH} */
+        static final JsonNumber[] VALUES = new JsonNumber[CACHE_HIGH - CACHE_LOW + 1];
+
+        static {
+            for (int i = 0; i < VALUES.length; i++) {
+                VALUES[i] = new OfLong(i + CACHE_LOW);
+            }
         }
     }
 
+    /**
+     * A JSON number with an unboxed <tt>long</tt> value.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class OfLong extends JsonNumber {
+
+        /** Value of this number */
+        private final long number;
+
+        /**
+         * @param number Value of the number
+         */
+        OfLong (long number) {
+            super(null);
+            this.number = number;
+        }
+
+        @Override
+        public Number getValue () {
+            return Long.valueOf(number);
+        }
+
+        @Override
+        int storage () {
+            return STORAGE_LONG;
+        }
+
+        @Override
+        public boolean isIntegral () {
+            return true;
+        }
+
+        @Override
+        public long longValue () {
+            return number;
+        }
+
+        @Override
+        public double doubleValue () {
+            return number;
+        }
+
+        @Override
+        public int hashCode () {
+            return (int) (number ^ (number >>> 32));
+        }
+
+        @Override
+        public boolean equals (Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof OfLong)) {
+                return false;
+            }
+
+            OfLong jnum = (OfLong) obj;
+            return number == jnum.number;
+        }
+    }
+
+    /**
+     * A JSON number with an unboxed <tt>double</tt> value.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class OfDouble extends JsonNumber {
+
+        /** Value of this number */
+        private final double number;
+
+        /**
+         * @param number Value of the number
+         */
+        OfDouble (double number) {
+            super(null);
+            this.number = number;
+        }
+
+        @Override
+        public Number getValue () {
+            return Double.valueOf(number);
+        }
+
+        @Override
+        int storage () {
+            return STORAGE_DOUBLE;
+        }
+
+        @Override
+        public boolean isIntegral () {
+            return false;
+        }
+
+        @Override
+        public long longValue () {
+            return (long) number;
+        }
+
+        @Override
+        public double doubleValue () {
+            return number;
+        }
+
+        @Override
+        public int hashCode () {
+            long bits = Double.doubleToLongBits(number);
+            return (int) (bits ^ (bits >>> 32));
+        }
+
+        @Override
+        public boolean equals (Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof OfDouble)) {
+                return false;
+            }
+
+            // Compared like Double.equals, so that NaN equals itself and 0.0 does not equal -0.0
+            OfDouble jnum = (OfDouble) obj;
+            return Double.doubleToLongBits(number) == Double.doubleToLongBits(jnum.number);
+        }
+    }
+
+    /**
+     * A JSON number with a boxed value of any other type.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class Boxed extends JsonNumber {
+
+        /**
+         * @param number Value of the number
+         */
+        Boxed (Number number) {
+            super(number);
+        }
+
+        @Override
+        int storage () {
+            return STORAGE_BOXED;
+        }
+
+        @Override
+        public boolean isIntegral () {
+            return !(value instanceof Float || value instanceof BigDecimal);
+        }
+
+        @Override
+        public long longValue () {
+            return value.longValue();
+        }
+
+        @Override
+        public double doubleValue () {
+            return value.doubleValue();
+        }
+
+        @Override
+        public int hashCode () {
+            return value.hashCode();
+        }
+
+        @Override
+        public boolean equals (Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Boxed)) {
+                return false;
+            }
+
+            Boxed jnum = (Boxed) obj;
+            return value.equals(jnum.value);
+        }
+    }
 }
@@ -1,17 +1,36 @@
 package es.darkhogg.johnson.data;
 
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
  * Representation of a JSON object.
+ * <p>
+ * Objects created by {@link JsonParser} and {@link Builder} keep their mappings in insertion order, so that they are
+ * iterated in the same order they were read or added.
+ * <p>
+ * Modified copies of an object are created with {@link #with} and {@link #without}. The first modification of an
+ * object copies its mappings into a persistent structure once, and from then on every modification takes
+ * <tt>O(log n)</tt> time and shares all unchanged mappings with the original object.
+ * <p>
+ * Two JSON objects are equal if they have the same keys mapped to equal values, in any order. The hash code follows
+ * the contract of {@link Map#hashCode} and is computed only once.
  * 
  * @author Daniel Escoz
  * @version 1.0
  */
 public final class JsonObject extends JsonValue<Map<String, JsonValue<?>>> {
 
+    /** An empty JSON object */
+    public static final JsonObject EMPTY = new JsonObject(Collections.<String, JsonValue<?>> emptyMap());
+
+    /** Persistent version of the mappings of this object, created on the first modification */
+    private volatile JsonPersistentMap persistent;
+
+    /** Cached hash code, or <tt>0</tt> if not computed yet */
+    private int hash;
+
     /**
      * Creates a JSON object using the given map.
      * <p>
@@ -20,10 +39,60 @@ public final class JsonObject extends JsonValue<Map<String, JsonValue<?>>> {
      * 
      * @param value The map to be wrapped in this JSON object
      */
-    private JsonObject (Map<String, JsonValue<?>> value) {
+    JsonObject (Map<String, JsonValue<?>> value) {
         super(value);
     }
 
+    /** @return The mappings of this object as a persistent map */
+    private JsonPersistentMap persistent () {
+        if (value instanceof JsonPersistentMap) {
+            return (JsonPersistentMap) value;
+        }
+        JsonPersistentMap map = persistent;
+        if (map == null) {
+            map = JsonPersistentMap.copyOf(value);
+            persistent = map;
+        }
+        return map;
+    }
+
+    /**
+     * Returns a JSON object with the same mappings as this one, plus a mapping of <tt>key</tt> to <tt>value</tt>. If
+     * this object already has a mapping for <tt>key</tt>, it is replaced and keeps its position.
+     * 
+     * @param key Key of the mapping
+     * @param value Value of the mapping
+     * @return The modified JSON object
+     */
+    public JsonObject with (String key, JsonValue<?> value) {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        JsonPersistentMap map = persistent();
+        JsonPersistentMap newMap = map.with(key, value);
+        return newMap == map ? this : new JsonObject(newMap);
+    }
+
+    /**
+     * Returns a JSON object with the same mappings as this one, except the one for <tt>key</tt>.
+     * 
+     * @param key Key of the mapping to remove
+     * @return The modified JSON object
+     */
+    public JsonObject without (String key) {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+        if (!value.containsKey(key)) {
+            return this;
+        }
+        JsonPersistentMap newMap = persistent().without(key);
+        return newMap.isEmpty() ? EMPTY : new JsonObject(newMap);
+    }
+
     /**
      * Get the number of elements in this JSON object.
      * 
@@ -43,6 +112,41 @@ public final class JsonObject extends JsonValue<Map<String, JsonValue<?>>> {
         return getValue().get(key);
     }
 
+    @Override
+    public int hashCode () {
+        // Racy single-check, as the mappings never change
+        int h = hash;
+        if (h == 0) {
+            for (Map.Entry<String, JsonValue<?>> entry : value.entrySet()) {
+                h += entry.getKey().hashCode() ^ entry.getValue().hashCode();
+            }
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public boolean equals (Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof JsonObject)) {
+            return false;
+        }
+
+        JsonObject jobj = (JsonObject) obj;
+        if (getSize() != jobj.getSize() || (hash != 0 && jobj.hash != 0 && hash != jobj.hash)) {
+            return false;
+        }
+        for (Map.Entry<String, JsonValue<?>> entry : value.entrySet()) {
+            JsonValue<?> other = jobj.get(entry.getKey());
+            if (other == null || !entry.getValue().equals(other)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * A class used to create JSON objects element by element.
      * 
@@ -53,12 +157,9 @@ public final class JsonObject extends JsonValue<Map<String, JsonValue<?>>> {
         /** Internal map used for the builder */
         private Map<String, JsonValue<?>> map;
 
-        /** Whether the list is already used */
-        private boolean dirty;
-
         /** Creates a new <tt>Builder</tt> with no elements. */
         public Builder () {
-            dirty = true;
+            map = new LinkedHashMap<String, JsonValue<?>>();
         }
 
         /**
@@ -72,14 +173,14 @@ public final class JsonObject extends JsonValue<Map<String, JsonValue<?>>> {
         }
 
         /**
-         * Adds a mapping to this JSON object builder, or replaces an already added mapping based on the key.
+         * Adds a mapping to this JSON object builder, or replaces an already added mapping based on the key. Replaced
+         * mappings keep their original position.
          * 
          * @param key Key of the mapping
          * @param value Value of the mapping
          * @return <tt>this</tt>
          */
         public Builder put (String key, JsonValue<?> value) {
-            prepare();
             map.put(key, value);
             return this;
         }
@@ -92,32 +193,17 @@ public final class JsonObject extends JsonValue<Map<String, JsonValue<?>>> {
          * @return <tt>this</tt>
          */
         public Builder putAll (Map<String, ? extends JsonValue<?>> elems) {
-            prepare();
             map.putAll(elems);
             return this;
         }
 
-        /** Prepares this builder. */
-        private void prepare () {
-            if (dirty) {
-                if (map == null) {
-                    map = new HashMap<String, JsonValue<?>>();
-                } else {
-                    map = new HashMap<String, JsonValue<?>>(map);
-                }
-                dirty = false;
-            }
-        }
-
         /**
          * Generates the final JSON object and returns it.
          * 
          * @return The generated JSON object
          */
         public JsonObject create () {
-            prepare();
-            dirty = true;
-            return new JsonObject(Collections.unmodifiableMap(map));
+            return new JsonObject(JsonObjectMap.copyOf(map));
         }
     }
 }
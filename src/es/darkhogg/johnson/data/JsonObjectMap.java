@@ -0,0 +1,282 @@
+package es.darkhogg.johnson.data;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An unmodifiable map used by {@link JsonObject}s that keeps its keys and values in two parallel arrays, in insertion
+ * order.
+ * <p>
+ * Maps with up to {@value #LINEAR_SEARCH_SIZE} mappings are searched linearly, which for such sizes is faster than
+ * hashing and needs no extra memory. Larger maps also keep an open-addressed table with the position of each key,
+ * probed linearly from the hash of the key. Since that hash is <tt>String.hashCode</tt>, keys can be chosen so that
+ * they all collide; if a probe gets longer than {@value #MAX_PROBES} slots, the table is replaced by a
+ * <tt>HashMap</tt>, which keeps lookups logarithmic for colliding keys.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+final class JsonObjectMap extends AbstractMap<String, JsonValue<?>> {
+
+    /** Maximum size of the maps that are searched linearly */
+    static final int LINEAR_SEARCH_SIZE = 8;
+
+    /** Maximum number of slots probed in the table before falling back to a <tt>HashMap</tt> */
+    static final int MAX_PROBES = 64;
+
+    /** Value returned by {@link #insert} when the probe is too long */
+    private static final int PROBE_LIMIT = -2;
+
+    /** Keys of the mappings */
+    private final String[] keys;
+
+    /** Values of the mappings, parallel to {@link #keys} */
+    private final JsonValue<?>[] values;
+
+    /** Positions of the keys plus one, placed by their hash, or <tt>null</tt> for small maps and colliding keys */
+    private final int[] table;
+
+    /** Positions of the keys, used instead of {@link #table} if its probes got too long, or <tt>null</tt> */
+    private final Map<String, Integer> index;
+
+    /** Entry set view, created on first access */
+    private Set<Map.Entry<String, JsonValue<?>>> entrySet;
+
+    /**
+     * Creates a map with the given mappings. When a key appears more than once, its mapping keeps the position of the
+     * first appearance and the value of the last one.
+     * <p>
+     * The arrays are used as the storage of the map when they have no duplicate keys and no unused positions, so
+     * callers must not modify them afterwards.
+     *
+     * @param keys Keys of the mappings
+     * @param values Values of the mappings, parallel to <tt>keys</tt>
+     * @param size Number of mappings in the arrays
+     */
+    JsonObjectMap (String[] keys, JsonValue<?>[] values, int size) {
+        int[] tbl = size <= LINEAR_SEARCH_SIZE ? null : new int[tableSize(size)];
+
+        Map<String, Integer> idx = null;
+
+        // Compact duplicate keys in place, so that unique keys need no copies
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            String key = keys[i];
+            int pos;
+            if (idx != null) {
+                Integer prev = idx.get(key);
+                if (prev == null) {
+                    idx.put(key, Integer.valueOf(count));
+                    pos = -1;
+                } else {
+                    pos = prev.intValue();
+                }
+            } else if (tbl == null) {
+                pos = linearSearch(keys, count, key);
+            } else {
+                pos = insert(tbl, keys, key, count);
+                if (pos == PROBE_LIMIT) {
+                    // Too many colliding hashes, so index the unique keys found so far and the rest in a HashMap
+                    tbl = null;
+                    idx = new HashMap<String, Integer>(size * 2);
+                    for (int j = 0; j < count; j++) {
+                        idx.put(keys[j], Integer.valueOf(j));
+                    }
+                    idx.put(key, Integer.valueOf(count));
+                    pos = -1;
+                }
+            }
+            if (pos < 0) {
+                keys[count] = key;
+                values[count] = values[i];
+                count++;
+            } else {
+                values[pos] = values[i];
+            }
+        }
+
+        if (count == keys.length) {
+            this.keys = keys;
+            this.values = values;
+        } else {
+            this.keys = Arrays.copyOf(keys, count);
+            this.values = Arrays.copyOf(values, count);
+        }
+        this.table = tbl;
+        this.index = idx;
+    }
+
+    /**
+     * Creates a map with the mappings of the given map, in its iteration order.
+     *
+     * @param map Map to copy
+     * @return A new map with the same mappings
+     * @throws NullPointerException If a key is <tt>null</tt>
+     */
+    static JsonObjectMap copyOf (Map<String, ? extends JsonValue<?>> map) {
+        int size = map.size();
+        String[] keys = new String[size];
+        JsonValue<?>[] values = new JsonValue<?>[size];
+
+        int i = 0;
+        for (Map.Entry<String, ? extends JsonValue<?>> entry : map.entrySet()) {
+            if (entry.getKey() == null) {
+                throw new NullPointerException("key");
+            }
+            keys[i] = entry.getKey();
+            values[i] = entry.getValue();
+            i++;
+        }
+        return new JsonObjectMap(keys, values, size);
+    }
+
+    /**
+     * @param size Number of mappings
+     * @return The size of a table for the given number of mappings, a power of two with a load factor of at most 1/2
+     */
+    private static int tableSize (int size) {
+        return Integer.highestOneBit(size * 2 - 1) << 1;
+    }
+
+    /**
+     * @param key A key
+     * @return The spread hash of the key
+     */
+    private static int hash (String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Searches the first <tt>count</tt> keys linearly.
+     *
+     * @param keys Keys to search
+     * @param count Number of keys to search
+     * @param key Key to find
+     * @return Position of the key, or <tt>-1</tt> if not found
+     */
+    private static int linearSearch (String[] keys, int count, Object key) {
+        for (int i = 0; i < count; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a key to a table if it is not already in it.
+     *
+     * @param tbl Table to insert into
+     * @param keys Keys referenced by the table
+     * @param key Key to insert
+     * @param pos Position of the key if it is inserted
+     * @return Position of the key if it was already in the table, <tt>-1</tt> if it has been inserted, or
+     *         {@link #PROBE_LIMIT} if it was not found in {@link #MAX_PROBES} slots
+     */
+    private static int insert (int[] tbl, String[] keys, String key, int pos) {
+        int mask = tbl.length - 1;
+        int slot = hash(key) & mask;
+        for (int probes = 0; probes < MAX_PROBES; probes++, slot = (slot + 1) & mask) {
+            int entry = tbl[slot];
+            if (entry == 0) {
+                tbl[slot] = pos + 1;
+                return -1;
+            }
+            if (keys[entry - 1].equals(key)) {
+                return entry - 1;
+            }
+        }
+        return PROBE_LIMIT;
+    }
+
+    /**
+     * @param key Key to find
+     * @return Position of the key, or <tt>-1</tt> if it is not in this map
+     */
+    private int indexOf (Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        if (index != null) {
+            Integer pos = index.get(key);
+            return pos == null ? -1 : pos.intValue();
+        }
+        if (table == null) {
+            return linearSearch(keys, keys.length, key);
+        }
+
+        String str = (String) key;
+        int mask = table.length - 1;
+        for (int slot = hash(str) & mask;; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            if (keys[entry - 1].equals(str)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    @Override
+    public JsonValue<?> get (Object key) {
+        int pos = indexOf(key);
+        return pos < 0 ? null : values[pos];
+    }
+
+    @Override
+    public boolean containsKey (Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size () {
+        return keys.length;
+    }
+
+    @Override
+    public Set<Map.Entry<String, JsonValue<?>>> entrySet () {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, JsonValue<?>>>() {
+                @Override
+                public Iterator<Map.Entry<String, JsonValue<?>>> iterator () {
+                    return new Iterator<Map.Entry<String, JsonValue<?>>>() {
+                        private int next;
+
+                        @Override
+                        public boolean hasNext () {
+                            return next < keys.length;
+                        }
+
+                        @Override
+                        public Map.Entry<String, JsonValue<?>> next () {
+                            if (next >= keys.length) {
+                                throw new NoSuchElementException();
+                            }
+                            int pos = next++;
+                            return new AbstractMap.SimpleImmutableEntry<String, JsonValue<?>>(keys[pos], values[pos]);
+                        }
+
+                        @Override
+                        public void remove () {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size () {
+                    return keys.length;
+                }
+            };
+        }
+        return entrySet;
+    }
+}
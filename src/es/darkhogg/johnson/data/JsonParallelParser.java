@@ -0,0 +1,557 @@
+package es.darkhogg.johnson.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import es.darkhogg.johnson.io.JsonReader;
+
+/**
+ * A class used to parse the elements of a single large array of a UTF-8 encoded JSON document on multiple threads.
+ * <p>
+ * The array is first located, either at the top level or at a given {@link JsonPointer}, and a cheap structural pass
+ * over its bytes finds where each element begins and ends, only tracking strings and nesting. Elements are then parsed
+ * independently, each one fully validated by its own {@link JsonReader}: either by tasks of a {@link ForkJoinPool}
+ * that fill a single {@link JsonArray}, or on demand through a {@link Spliterator} that parallel streams can split.
+ * <p>
+ * When the array is the whole document, everything around it is validated too. When it is located by a pointer, the
+ * objects along the pointer are read up to their end, so that keys that repeat are resolved to their last mapping, just
+ * like {@link JsonParser} does, while the rest of the document after the array is not read.
+ * <p>
+ * Instances of this class are thread-safe, as long as their chunk size is not modified while in use.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonParallelParser {
+
+    /** Default number of bytes of elements parsed by each task */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 18;
+
+    /** Pool that runs the parsing tasks */
+    private final ForkJoinPool pool;
+
+    /** Approximate number of bytes of elements parsed by each task */
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Creates a parser that runs its tasks on the given pool.
+     *
+     * @param pool Pool that runs the parsing tasks
+     */
+    public JsonParallelParser (ForkJoinPool pool) {
+        if (pool == null) {
+            throw new NullPointerException("pool");
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * Sets the approximate number of bytes of elements parsed by each task. Tasks never split an element, so they
+     * may parse more bytes than this. The default size is {@value #DEFAULT_CHUNK_SIZE} bytes.
+     *
+     * @param chunkSize Approximate number of bytes parsed by each task
+     * @return <tt>this</tt>
+     * @throws IllegalArgumentException If the size is not positive
+     */
+    public JsonParallelParser setChunkSize (int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("JSON: Invalid chunk size " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /** @return The approximate number of bytes of elements parsed by each task */
+    public int getChunkSize () {
+        return chunkSize;
+    }
+
+    /**
+     * Parses a document that consists of a single array.
+     *
+     * @param bytes Array containing the document
+     * @return The parsed array
+     * @throws IOException If the document is not a valid JSON array
+     */
+    public JsonArray parseArray (byte[] bytes) throws IOException {
+        return parseArray(bytes, 0, bytes.length, JsonPointer.ROOT);
+    }
+
+    /**
+     * Parses the array identified by a pointer in a slice of the given array.
+     *
+     * @param bytes Array containing the document
+     * @param offset Position of the first byte of the document
+     * @param length Number of bytes of the document
+     * @param pointer Pointer to the array to parse
+     * @return The parsed array
+     * @throws IOException If the document is not valid JSON or the pointer does not identify an array
+     * @throws IndexOutOfBoundsException If the slice is not within the array
+     */
+    public JsonArray parseArray (byte[] bytes, int offset, int length, JsonPointer pointer) throws IOException {
+        int[] bounds = index(bytes, offset, length, pointer);
+        int count = bounds.length - 1;
+        if (count == 0) {
+            return JsonArray.EMPTY;
+        }
+
+        Batch batch = new Batch(bytes, bounds);
+        pool.invoke(new ParseTask(batch, 0, count, chunkSize));
+        if (batch.error != null) {
+            throw batch.error;
+        }
+        return new JsonArray(Collections.unmodifiableList(Arrays.asList(batch.elements)));
+    }
+
+    /**
+     * Returns a spliterator over the elements of a document that consists of a single array.
+     *
+     * @param bytes Array containing the document
+     * @return A spliterator over the elements of the array
+     * @throws IOException If the structure of the document is not a valid JSON array
+     * @see #spliterator(byte[], int, int, JsonPointer)
+     */
+    public Spliterator<JsonValue<?>> spliterator (byte[] bytes) throws IOException {
+        return spliterator(bytes, 0, bytes.length, JsonPointer.ROOT);
+    }
+
+    /**
+     * Returns a spliterator over the elements of the array identified by a pointer in a slice of the given array.
+     * <p>
+     * The boundaries of the elements are found before this method returns, but each element is only parsed when the
+     * spliterator reaches it, so the array is never built as a whole. Invalid elements are reported by throwing an
+     * {@link UncheckedIOException}. The bytes must not be modified while the spliterator is in use.
+     *
+     * @param bytes Array containing the document
+     * @param offset Position of the first byte of the document
+     * @param length Number of bytes of the document
+     * @param pointer Pointer to the array to iterate
+     * @return A spliterator over the elements of the array
+     * @throws IOException If the structure of the document is not valid or the pointer does not identify an array
+     * @throws IndexOutOfBoundsException If the slice is not within the array
+     */
+    public Spliterator<JsonValue<?>> spliterator (byte[] bytes, int offset, int length, JsonPointer pointer)
+        throws IOException {
+        int[] bounds = index(bytes, offset, length, pointer);
+        return new ElementSpliterator(bytes, bounds, 0, bounds.length - 1);
+    }
+
+    /**
+     * Locates an array and finds the boundaries of its elements.
+     *
+     * @param bytes Array containing the document
+     * @param offset Position of the first byte of the document
+     * @param length Number of bytes of the document
+     * @param pointer Pointer to the array
+     * @return The positions where each element begins, followed by the position after the end of the array. Each
+     *         element ends at the comma or bracket that precedes the position where the next one begins.
+     * @throws IOException If the document is not valid or the pointer does not identify an array
+     */
+    private static int[] index (byte[] bytes, int offset, int length, JsonPointer pointer) throws IOException {
+        if (bytes == null) {
+            throw new NullPointerException("bytes");
+        }
+        if (pointer == null) {
+            throw new NullPointerException("pointer");
+        }
+        if (offset < 0 || length < 0 || offset > bytes.length - length) {
+            throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length + ", size=" + bytes.length);
+        }
+
+        int end = offset + length;
+        int[] bounds = split(bytes, locate(bytes, offset, length, pointer), end);
+        if (pointer.getDepth() == 0) {
+            for (int pos = bounds[bounds.length - 1]; pos < end; pos++) {
+                if (!isWhitespace(bytes[pos])) {
+                    throw new IOException("JSON: Expecting EOF at offset " + (pos - offset));
+                }
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Finds the array identified by a pointer by reading the document up to its beginning.
+     * <p>
+     * Objects along the pointer are read up to their end, noting where the value of every matching key begins. The
+     * search then goes on from the value of the last one, with a new reader that starts there.
+     *
+     * @param bytes Array containing the document
+     * @param offset Position of the first byte of the document
+     * @param length Number of bytes of the document
+     * @param pointer Pointer to the array
+     * @return The position of the opening bracket of the array
+     * @throws IOException If the document is not valid or the pointer does not identify an array
+     */
+    private static int locate (byte[] bytes, int offset, int length, JsonPointer pointer) throws IOException {
+        int end = offset + length;
+        int base = offset;
+        JsonReader reader = JsonReader.utf8(bytes, offset, length);
+        int token = reader.next();
+        for (int i = 0; i < pointer.getDepth(); i++) {
+            if (token == JsonReader.TOKEN_OBJECT_BEGIN) {
+                String name = pointer.getSegment(i);
+                int found = -1;
+                while (reader.next() == JsonReader.TOKEN_KEY) {
+                    if (name.equals(reader.getString())) {
+                        // Later mappings of the key replace this one, so only its position is kept
+                        int first = reader.next();
+                        found = base + (int) reader.getTokenOffset();
+                        skipRest(reader, first);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                if (found < 0) {
+                    throw new IOException("JSON: No value at " + pointer);
+                }
+                base = found;
+                reader = JsonReader.utf8(bytes, found, end - found);
+                token = reader.next();
+
+            } else if (token == JsonReader.TOKEN_ARRAY_BEGIN && pointer.getIndex(i) >= 0) {
+                for (int j = 0; j < pointer.getIndex(i); j++) {
+                    if (reader.skipValue() == JsonReader.TOKEN_ARRAY_END) {
+                        throw new IOException("JSON: No value at " + pointer);
+                    }
+                }
+                token = reader.next();
+                if (token == JsonReader.TOKEN_ARRAY_END) {
+                    throw new IOException("JSON: No value at " + pointer);
+                }
+
+            } else {
+                throw new IOException("JSON: No value at " + pointer);
+            }
+        }
+
+        if (token != JsonReader.TOKEN_ARRAY_BEGIN) {
+            String where = pointer.getDepth() == 0 ? "the top level" : pointer.toString();
+            throw new IOException("JSON: Expecting an array at " + where);
+        }
+        return base + (int) reader.getTokenOffset();
+    }
+
+    /**
+     * Reads the rest of a value whose first token has just been read.
+     *
+     * @param reader Reader positioned at the first token of the value
+     * @param first The first token of the value
+     * @throws IOException If the value is not valid
+     */
+    private static void skipRest (JsonReader reader, int first) throws IOException {
+        int depth = first == JsonReader.TOKEN_ARRAY_BEGIN || first == JsonReader.TOKEN_OBJECT_BEGIN ? 1 : 0;
+        while (depth > 0) {
+            int token = reader.next();
+            if (token == JsonReader.TOKEN_ARRAY_BEGIN || token == JsonReader.TOKEN_OBJECT_BEGIN) {
+                depth++;
+            } else if (token == JsonReader.TOKEN_ARRAY_END || token == JsonReader.TOKEN_OBJECT_END) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Finds the boundaries of the elements of an array, only tracking strings and nesting.
+     *
+     * @param bytes Array containing the document
+     * @param start Position of the opening bracket of the array
+     * @param end Position after the last byte of the document
+     * @return The positions where each element begins, followed by the position after the end of the array
+     * @throws IOException If a string or the array is not terminated
+     */
+    private static int[] split (byte[] bytes, int start, int end) throws IOException {
+        int[] bounds = new int[16];
+        int count = 0;
+        bounds[count++] = start + 1;
+
+        int depth = 0;
+        for (int pos = start + 1; pos < end; pos++) {
+            switch (bytes[pos]) {
+                case '"': {
+                    pos = skipString(bytes, pos + 1, end);
+                    break;
+                }
+
+                case '[':
+                case '{': {
+                    depth++;
+                    break;
+                }
+
+                case '}': {
+                    depth--;
+                    break;
+                }
+
+                case ']': {
+                    if (depth > 0) {
+                        depth--;
+                        break;
+                    }
+                    // End of the array, the last element is followed by the bracket
+                    if (count == 1 && isBlank(bytes, start + 1, pos)) {
+                        return new int[] { pos + 1 };
+                    }
+                    if (count == bounds.length) {
+                        bounds = Arrays.copyOf(bounds, count + 1);
+                    }
+                    bounds[count++] = pos + 1;
+                    return Arrays.copyOf(bounds, count);
+                }
+
+                case ',': {
+                    if (depth == 0) {
+                        if (count == bounds.length) {
+                            bounds = Arrays.copyOf(bounds, count * 2);
+                        }
+                        bounds[count++] = pos + 1;
+                    }
+                    break;
+                }
+
+                default: {
+                    break;
+                }
+            }
+        }
+        throw new IOException("JSON: Unterminated array");
+    }
+
+    /**
+     * @param bytes Array containing the document
+     * @param pos Position after the opening quote of a string
+     * @param end Position after the last byte of the document
+     * @return The position of the closing quote of the string
+     * @throws IOException If the string is not terminated
+     */
+    private static int skipString (byte[] bytes, int pos, int end) throws IOException {
+        for (int i = pos; i < end; i++) {
+            byte chr = bytes[i];
+            if (chr == '"') {
+                return i;
+            }
+            if (chr == '\\') {
+                i++;
+            }
+        }
+        throw new IOException("JSON: Unterminated string");
+    }
+
+    /**
+     * @param chr A byte
+     * @return Whether the byte is JSON whitespace
+     */
+    private static boolean isWhitespace (byte chr) {
+        return chr == ' ' || chr == '\t' || chr == '\n' || chr == '\r';
+    }
+
+    /**
+     * @param bytes Array of bytes
+     * @param start Position of the first byte to check
+     * @param end Position after the last byte to check
+     * @return Whether all the bytes are JSON whitespace
+     */
+    private static boolean isBlank (byte[] bytes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isWhitespace(bytes[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a single element of an array.
+     *
+     * @param parser Parser used to build the element
+     * @param bytes Array containing the document
+     * @param bounds Boundaries of the elements
+     * @param index Index of the element
+     * @return The parsed element
+     * @throws IOException If the element is not a valid JSON value
+     */
+    private static JsonValue<?> parseElement (JsonParser parser, byte[] bytes, int[] bounds, int index)
+        throws IOException {
+        int start = bounds[index];
+        int end = bounds[index + 1] - 1;
+        try {
+            return parser.parse(JsonReader.utf8(bytes, start, end - start));
+        } catch (IOException exc) {
+            throw new IOException("JSON: Invalid array element " + index + " at offset " + start, exc);
+        }
+    }
+
+    /**
+     * Input and results of a single call to {@link JsonParallelParser#parseArray(byte[], int, int, JsonPointer)}.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class Batch {
+
+        /** Array containing the document */
+        final byte[] bytes;
+
+        /** Boundaries of the elements */
+        final int[] bounds;
+
+        /** Parsed elements */
+        final JsonValue<?>[] elements;
+
+        /** Error of the invalid element with the lowest index, or <tt>null</tt> */
+        volatile IOException error;
+
+        /** Index of the element of {@link #error}, after which no more elements need to be parsed */
+        volatile int errorIndex = Integer.MAX_VALUE;
+
+        Batch (byte[] bytes, int[] bounds) {
+            this.bytes = bytes;
+            this.bounds = bounds;
+            this.elements = new JsonValue<?>[bounds.length - 1];
+        }
+
+        /**
+         * Records an error, keeping the one of the element with the lowest index.
+         *
+         * @param index Index of the invalid element
+         * @param exc Error of the element
+         */
+        synchronized void fail (int index, IOException exc) {
+            if (index < errorIndex) {
+                error = exc;
+                errorIndex = index;
+            }
+        }
+    }
+
+    /**
+     * A task that parses a range of elements, splitting it in halves until it is small enough.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class ParseTask extends RecursiveAction {
+
+        /** Serialization version */
+        private static final long serialVersionUID = 1L;
+
+        /** The batch being parsed */
+        private final transient Batch batch;
+
+        /** First element to parse */
+        private final int first;
+
+        /** Element after the last one to parse */
+        private final int last;
+
+        /** Maximum number of bytes of elements to parse without splitting */
+        private final int chunkSize;
+
+        ParseTask (Batch batch, int first, int last, int chunkSize) {
+            this.batch = batch;
+            this.first = first;
+            this.last = last;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute () {
+            int[] bounds = batch.bounds;
+            if (last - first > 1 && bounds[last] - bounds[first] > chunkSize) {
+                int middle = (first + last) >>> 1;
+                invokeAll(new ParseTask(batch, first, middle, chunkSize),
+                    new ParseTask(batch, middle, last, chunkSize));
+                return;
+            }
+
+            // Elements before an invalid one are still parsed, as they may be invalid too
+            JsonParser parser = new JsonParser();
+            for (int i = first; i < last && i < batch.errorIndex; i++) {
+                try {
+                    batch.elements[i] = parseElement(parser, batch.bytes, bounds, i);
+                } catch (IOException exc) {
+                    batch.fail(i, exc);
+                }
+            }
+        }
+    }
+
+    /**
+     * A spliterator that parses the elements of an array as it reaches them.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class ElementSpliterator implements Spliterator<JsonValue<?>> {
+
+        /** Array containing the document */
+        private final byte[] bytes;
+
+        /** Boundaries of the elements */
+        private final int[] bounds;
+
+        /** Next element to parse */
+        private int next;
+
+        /** Element after the last one to parse */
+        private final int last;
+
+        /** Parser used to build the elements, created on first use */
+        private JsonParser parser;
+
+        ElementSpliterator (byte[] bytes, int[] bounds, int next, int last) {
+            this.bytes = bytes;
+            this.bounds = bounds;
+            this.next = next;
+            this.last = last;
+        }
+
+        @Override
+        public boolean tryAdvance (Consumer<? super JsonValue<?>> action) {
+            if (action == null) {
+                throw new NullPointerException("action");
+            }
+            if (next >= last) {
+                return false;
+            }
+            if (parser == null) {
+                parser = new JsonParser();
+            }
+
+            try {
+                action.accept(parseElement(parser, bytes, bounds, next++));
+            } catch (IOException exc) {
+                throw new UncheckedIOException(exc);
+            }
+            return true;
+        }
+
+        @Override
+        public Spliterator<JsonValue<?>> trySplit () {
+            if (last - next < 2) {
+                return null;
+            }
+            int middle = (next + last) >>> 1;
+            Spliterator<JsonValue<?>> prefix = new ElementSpliterator(bytes, bounds, next, middle);
+            next = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize () {
+            return last - next;
+        }
+
+        @Override
+        public int characteristics () {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package es.darkhogg.johnson.data;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import es.darkhogg.johnson.io.JsonReader;
+import es.darkhogg.johnson.io.JsonTape;
+
+/**
+ * A class used to build {@link JsonValue} trees from the tokens of a {@link JsonReader}.
+ * <p>
+ * Elements of unfinished arrays and objects are kept in a single stack of scratch arrays that is reused across all
+ * containers and all documents parsed by the same parser. Once a container ends, its final list or map is created at
+ * its exact size, filled directly from the stack and wrapped in a JSON value without any further copies. Arrays of at
+ * least {@value #MIN_PRIMITIVE_LENGTH} numbers that are all integers or all decimals are instead backed by a
+ * <tt>long[]</tt> or a <tt>double[]</tt>, and objects keep their mappings in the order they appear in the document.
+ * The numbers of such arrays are read into a reusable primitive buffer, and only moved to the stack as values if the
+ * array turns out to contain anything else.
+ * <p>
+ * Instances of this class are not thread-safe, but are meant to be reused for any number of documents.
+ * <p>
+ * For documents of which only a few values are used, {@link #parseLazy(JsonTape)} returns a tree whose arrays and
+ * objects only create their children when they are first accessed.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonParser {
+
+    /** Initial capacity of the value stack */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Capacity above which the value stack is not retained between documents */
+    private static final int MAX_RETAINED_CAPACITY = 65536;
+
+    /** Minimum length of the number arrays that are backed by primitive arrays */
+    private static final int MIN_PRIMITIVE_LENGTH = 8;
+
+    /** Values of all unfinished containers */
+    private JsonValue<?>[] values = new JsonValue<?>[INITIAL_CAPACITY];
+
+    /** Keys of the values of unfinished objects, parallel to {@link #values} */
+    private String[] keys = new String[INITIAL_CAPACITY];
+
+    /** Number of values in the stack */
+    private int top;
+
+    /** Index in the value stack of the first value of each unfinished container */
+    private int[] starts = new int[16];
+
+    /** Key of each unfinished container in its parent, parallel to {@link #starts} */
+    private String[] containerKeys = new String[16];
+
+    /** Number of unfinished containers */
+    private int depth;
+
+    /** Integers read at the beginning of the current array, created on first use */
+    private long[] longBuffer;
+
+    /** Decimals read at the beginning of the current array, created on first use */
+    private double[] doubleBuffer;
+
+    /** Number of numbers in {@link #longBuffer} or {@link #doubleBuffer} */
+    private int numberCount;
+
+    /**
+     * Reads a complete JSON document from the given reader, checking that nothing but whitespace follows it.
+     *
+     * @param reader Reader to read the document from
+     * @return The JSON value read
+     * @throws IOException If an I/O error happens or the document is not valid JSON
+     */
+    public JsonValue<?> parse (JsonReader reader) throws IOException {
+        JsonValue<?> value = parseValue(reader);
+        if (reader.next() != JsonReader.TOKEN_EOF) {
+            throw new IOException("JSON: Expecting EOF");
+        }
+        return value;
+    }
+
+    /**
+     * Reads the next JSON value from the given reader. After this method returns, the last token of the value has
+     * been consumed from the reader.
+     *
+     * @param reader Reader to read the value from
+     * @return The JSON value read
+     * @throws IOException If an I/O error happens or the value is not valid JSON
+     */
+    public JsonValue<?> parseValue (JsonReader reader) throws IOException {
+        return parseValue(reader, reader.next());
+    }
+
+    /**
+     * Reads the next top-level JSON value from the given reader, which is usually in
+     * {@linkplain JsonReader#setLineDelimited line-delimited} mode.
+     *
+     * @param reader Reader to read the value from
+     * @return The JSON value read, or <tt>null</tt> if the reader has no more values
+     * @throws IOException If an I/O error happens or the value is not valid JSON
+     */
+    public JsonValue<?> parseNext (JsonReader reader) throws IOException {
+        int token = reader.next();
+        return token == JsonReader.TOKEN_EOF ? null : parseValue(reader, token);
+    }
+
+    /**
+     * Returns the root value of a document indexed by the given tape. Arrays and objects of the returned tree read their
+     * children from the tape only when they are first accessed, so values that are never used are never created.
+     *
+     * @param tape Tape of the document
+     * @return The root value of the document
+     */
+    public static JsonValue<?> parseLazy (JsonTape tape) {
+        if (tape == null) {
+            throw new NullPointerException("tape");
+        }
+        return JsonTapeValues.valueAt(tape, 0);
+    }
+
+    /**
+     * Builds a tape for the given UTF-8 encoded document and returns its lazily created root value.
+     *
+     * @param bytes Array containing the document
+     * @return The root value of the document
+     * @throws IOException If the document is not valid JSON
+     * @see #parseLazy(JsonTape)
+     */
+    public static JsonValue<?> parseLazy (byte[] bytes) throws IOException {
+        return parseLazy(JsonTape.build(bytes));
+    }
+
+    /**
+     * Reads a JSON value whose first token has already been read from the given reader.
+     *
+     * @param reader Reader to read the value from
+     * @param firstToken The first token of the value
+     * @return The JSON value read
+     * @throws IOException If an I/O error happens or the value is not valid JSON
+     */
+    public JsonValue<?> parseValue (JsonReader reader, int firstToken) throws IOException {
+        top = 0;
+        depth = 0;
+
+        boolean done = false;
+        try {
+            JsonValue<?> value = build(reader, firstToken);
+            done = true;
+            return value;
+
+        } finally {
+            if (!done) {
+                Arrays.fill(values, 0, top, null);
+                Arrays.fill(keys, 0, top, null);
+                Arrays.fill(containerKeys, 0, depth, null);
+            }
+            if (values.length > MAX_RETAINED_CAPACITY) {
+                values = new JsonValue<?>[INITIAL_CAPACITY];
+                keys = new String[INITIAL_CAPACITY];
+            }
+            if (longBuffer != null && longBuffer.length > MAX_RETAINED_CAPACITY) {
+                longBuffer = null;
+            }
+            if (doubleBuffer != null && doubleBuffer.length > MAX_RETAINED_CAPACITY) {
+                doubleBuffer = null;
+            }
+        }
+    }
+
+    /**
+     * Reads tokens until a complete value has been built.
+     *
+     * @param reader Reader to read the value from
+     * @param firstToken The first token of the value
+     * @return The JSON value read
+     * @throws IOException If an I/O error happens or the value is not valid JSON
+     */
+    private JsonValue<?> build (JsonReader reader, int firstToken) throws IOException {
+        String key = null;
+        int token = firstToken;
+
+        while (true) {
+            JsonValue<?> value;
+
+            switch (token) {
+                case JsonReader.TOKEN_KEY: {
+                    key = reader.getString();
+                    token = reader.next();
+                    continue;
+                }
+
+                case JsonReader.TOKEN_ARRAY_BEGIN: {
+                    token = reader.next();
+                    if (token != JsonReader.TOKEN_NUMBER) {
+                        pushContainer(key);
+                        key = null;
+                        continue;
+                    }
+
+                    int type = reader.getNumberType();
+                    token = readNumbers(reader, type);
+                    if (token == JsonReader.TOKEN_ARRAY_END && numberCount >= MIN_PRIMITIVE_LENGTH) {
+                        value = type == JsonReader.NUMBER_LONG
+                            ? new JsonArray(Arrays.copyOf(longBuffer, numberCount))
+                            : new JsonArray(Arrays.copyOf(doubleBuffer, numberCount));
+                        break;
+                    }
+
+                    // Not an array of numbers of a single type, continue with the numbers as values
+                    pushContainer(key);
+                    key = null;
+                    for (int i = 0; i < numberCount; i++) {
+                        pushValue(null, type == JsonReader.NUMBER_LONG
+                            ? JsonNumber.valueOf(longBuffer[i])
+                            : JsonNumber.valueOf(doubleBuffer[i]));
+                    }
+                    continue;
+                }
+
+                case JsonReader.TOKEN_OBJECT_BEGIN: {
+                    pushContainer(key);
+                    key = null;
+                    token = reader.next();
+                    continue;
+                }
+
+                case JsonReader.TOKEN_ARRAY_END: {
+                    if (depth == 0) {
+                        throw new IOException("JSON: Unexpected token " + token);
+                    }
+                    int start = starts[--depth];
+                    value = createArray(start);
+                    key = containerKeys[depth];
+                    containerKeys[depth] = null;
+                    break;
+                }
+
+                case JsonReader.TOKEN_OBJECT_END: {
+                    if (depth == 0) {
+                        throw new IOException("JSON: Unexpected token " + token);
+                    }
+                    int start = starts[--depth];
+                    value = createObject(start);
+                    key = containerKeys[depth];
+                    containerKeys[depth] = null;
+                    break;
+                }
+
+                default: {
+                    value = scalarValue(reader, token);
+                    break;
+                }
+            }
+
+            if (depth == 0) {
+                return value;
+            }
+
+            pushValue(key, value);
+            key = null;
+            token = reader.next();
+        }
+    }
+
+    /**
+     * Reads the numbers at the beginning of an array into {@link #longBuffer} or {@link #doubleBuffer}, as long as they
+     * are all of the type of the first one and that type is {@link JsonReader#NUMBER_LONG} or
+     * {@link JsonReader#NUMBER_DOUBLE}. The number of numbers read is left in {@link #numberCount}.
+     *
+     * @param reader Reader positioned at the first number of the array
+     * @param type Type of the first number
+     * @return The current token after the numbers read, which has not been consumed
+     * @throws IOException If an I/O error happens or the array is not valid JSON
+     */
+    private int readNumbers (JsonReader reader, int type) throws IOException {
+        numberCount = 0;
+        if (type == JsonReader.NUMBER_LONG) {
+            if (longBuffer == null) {
+                longBuffer = new long[INITIAL_CAPACITY];
+            }
+            int token;
+            do {
+                if (numberCount == longBuffer.length) {
+                    longBuffer = Arrays.copyOf(longBuffer, numberCount * 2);
+                }
+                longBuffer[numberCount++] = reader.getLong();
+                token = reader.next();
+            } while (token == JsonReader.TOKEN_NUMBER && reader.getNumberType() == type);
+            return token;
+
+        } else if (type == JsonReader.NUMBER_DOUBLE) {
+            if (doubleBuffer == null) {
+                doubleBuffer = new double[INITIAL_CAPACITY];
+            }
+            int token;
+            do {
+                if (numberCount == doubleBuffer.length) {
+                    doubleBuffer = Arrays.copyOf(doubleBuffer, numberCount * 2);
+                }
+                doubleBuffer[numberCount++] = reader.getDouble();
+                token = reader.next();
+            } while (token == JsonReader.TOKEN_NUMBER && reader.getNumberType() == type);
+            return token;
+        }
+        return JsonReader.TOKEN_NUMBER;
+    }
+
+    /**
+     * Creates a JSON value for the current scalar token of the reader.
+     *
+     * @param reader Reader positioned at a scalar token
+     * @param token Type of the token
+     * @return The JSON value of the token
+     * @throws IOException If the token is not a scalar value
+     */
+    static JsonValue<?> scalarValue (JsonReader reader, int token) throws IOException {
+        switch (token) {
+            case JsonReader.TOKEN_NULL:
+                return JsonNull.NULL;
+
+            case JsonReader.TOKEN_BOOLEAN:
+                return JsonBoolean.valueOf(reader.getBoolean());
+
+            case JsonReader.TOKEN_NUMBER:
+                switch (reader.getNumberType()) {
+                    case JsonReader.NUMBER_LONG:
+                        return JsonNumber.valueOf(reader.getLong());
+                    case JsonReader.NUMBER_DOUBLE:
+                        return JsonNumber.valueOf(reader.getDouble());
+                    default:
+                        return JsonNumber.valueOf(reader.getNumber());
+                }
+
+            case JsonReader.TOKEN_STRING: {
+                String str = reader.getString();
+                return str.length() == 0 ? JsonString.EMPTY : new JsonString(str);
+            }
+
+            default:
+                throw new IOException("JSON: Unexpected token " + token);
+        }
+    }
+
+    /**
+     * Marks the beginning of a new container.
+     *
+     * @param key Key of the container in its parent object, or <tt>null</tt>
+     */
+    private void pushContainer (String key) {
+        if (depth == starts.length) {
+            starts = Arrays.copyOf(starts, depth * 2);
+            containerKeys = Arrays.copyOf(containerKeys, depth * 2);
+        }
+        starts[depth] = top;
+        containerKeys[depth] = key;
+        depth++;
+    }
+
+    /**
+     * Pushes a value of the current container into the stack.
+     *
+     * @param key Key of the value, or <tt>null</tt> if the current container is an array
+     * @param value Value to push
+     */
+    private void pushValue (String key, JsonValue<?> value) {
+        if (top == values.length) {
+            values = Arrays.copyOf(values, top * 2);
+            keys = Arrays.copyOf(keys, top * 2);
+        }
+        values[top] = value;
+        keys[top] = key;
+        top++;
+    }
+
+    /**
+     * Creates a JSON array with the values of the stack from <tt>start</tt> to the top, and pops them.
+     *
+     * @param start Index of the first element of the array
+     * @return The new JSON array
+     */
+    private JsonArray createArray (int start) {
+        int length = top - start;
+        if (length == 0) {
+            return JsonArray.EMPTY;
+        }
+
+        JsonArray array = length < MIN_PRIMITIVE_LENGTH ? null : createPrimitiveArray(start);
+        if (array == null) {
+            JsonValue<?>[] elems = new JsonValue<?>[length];
+            System.arraycopy(values, start, elems, 0, length);
+            array = new JsonArray(Collections.unmodifiableList(Arrays.asList(elems)));
+        }
+
+        Arrays.fill(values, start, top, null);
+        top = start;
+        return array;
+    }
+
+    /**
+     * Creates a JSON array backed by a primitive array if the values of the stack from <tt>start</tt> to the top are
+     * all numbers stored as <tt>long</tt>s or all numbers stored as <tt>double</tt>s.
+     *
+     * @param start Index of the first element of the array
+     * @return The new JSON array, or <tt>null</tt> if the values are not all numbers of the same storage
+     */
+    private JsonArray createPrimitiveArray (int start) {
+        if (!(values[start] instanceof JsonNumber)) {
+            return null;
+        }
+        int storage = ((JsonNumber) values[start]).storage();
+        if (storage == JsonNumber.STORAGE_BOXED) {
+            return null;
+        }
+        for (int i = start + 1; i < top; i++) {
+            if (!(values[i] instanceof JsonNumber) || ((JsonNumber) values[i]).storage() != storage) {
+                return null;
+            }
+        }
+
+        int length = top - start;
+        if (storage == JsonNumber.STORAGE_LONG) {
+            long[] longs = new long[length];
+            for (int i = 0; i < length; i++) {
+                longs[i] = ((JsonNumber) values[start + i]).longValue();
+            }
+            return new JsonArray(longs);
+        } else {
+            double[] doubles = new double[length];
+            for (int i = 0; i < length; i++) {
+                doubles[i] = ((JsonNumber) values[start + i]).doubleValue();
+            }
+            return new JsonArray(doubles);
+        }
+    }
+
+    /**
+     * Creates a JSON object with the keys and values of the stack from <tt>start</tt> to the top, and pops them.
+     *
+     * @param start Index of the first mapping of the object
+     * @return The new JSON object
+     */
+    private JsonObject createObject (int start) {
+        int size = top - start;
+        if (size == 0) {
+            return JsonObject.EMPTY;
+        }
+
+        String[] objKeys = new String[size];
+        JsonValue<?>[] objValues = new JsonValue<?>[size];
+        System.arraycopy(keys, start, objKeys, 0, size);
+        System.arraycopy(values, start, objValues, 0, size);
+        Arrays.fill(keys, start, top, null);
+        Arrays.fill(values, start, top, null);
+        top = start;
+
+        return new JsonObject(new JsonObjectMap(objKeys, objValues, size));
+    }
+}
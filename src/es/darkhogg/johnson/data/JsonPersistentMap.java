@@ -0,0 +1,211 @@
+package es.darkhogg.johnson.data;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An unmodifiable map used by {@link JsonObject}s that have been updated, whose updates return a new map sharing all
+ * unchanged structure with the original one.
+ * <p>
+ * Mappings are kept in a {@link JsonVector} in insertion order and indexed by key in a {@link JsonHashTrie}, so both
+ * lookups and updates take <tt>O(log n)</tt> time while iteration keeps the order of the original object. Removed
+ * mappings leave an empty position in the vector, which is compacted once empty positions outnumber the mappings.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+final class JsonPersistentMap extends AbstractMap<String, JsonValue<?>> {
+
+    /** Mappings indexed by key */
+    private final JsonHashTrie<Mapping> index;
+
+    /** Mappings in insertion order, with <tt>null</tt> for removed ones */
+    private final JsonVector<Mapping> mappings;
+
+    /** Entry set view, created on first access */
+    private Set<Map.Entry<String, JsonValue<?>>> entrySet;
+
+    /**
+     * @param index Mappings indexed by key
+     * @param mappings Mappings in insertion order
+     */
+    private JsonPersistentMap (JsonHashTrie<Mapping> index, JsonVector<Mapping> mappings) {
+        this.index = index;
+        this.mappings = mappings;
+    }
+
+    /**
+     * Creates a map with the mappings of the given map, in its iteration order.
+     *
+     * @param map Map to copy
+     * @return A new map with the same mappings
+     */
+    static JsonPersistentMap copyOf (Map<String, ? extends JsonValue<?>> map) {
+        List<Mapping> list = new ArrayList<Mapping>(map.size());
+        JsonHashTrie<Mapping> index = JsonHashTrie.empty();
+        for (Map.Entry<String, ? extends JsonValue<?>> entry : map.entrySet()) {
+            Mapping mapping = new Mapping(entry.getKey(), entry.getValue(), list.size());
+            list.add(mapping);
+            index = index.with(mapping.getKey(), mapping);
+        }
+        return new JsonPersistentMap(index, JsonVector.copyOf(list));
+    }
+
+    /**
+     * Returns a map with a mapping added or replaced. New mappings are placed after all existing ones, while replaced
+     * mappings keep their position.
+     *
+     * @param key Key of the mapping
+     * @param value Value of the mapping
+     * @return The new map
+     */
+    JsonPersistentMap with (String key, JsonValue<?> value) {
+        Mapping old = index.get(key);
+        if (old != null) {
+            if (old.getValue() == value) {
+                return this;
+            }
+            Mapping mapping = new Mapping(key, value, old.ordinal);
+            return new JsonPersistentMap(index.with(key, mapping), mappings.set(old.ordinal, mapping));
+        }
+
+        Mapping mapping = new Mapping(key, value, mappings.size());
+        return new JsonPersistentMap(index.with(key, mapping), mappings.append(mapping));
+    }
+
+    /**
+     * Returns a map with a mapping removed.
+     *
+     * @param key Key of the mapping
+     * @return The new map
+     */
+    JsonPersistentMap without (String key) {
+        Mapping old = index.get(key);
+        if (old == null) {
+            return this;
+        }
+
+        JsonHashTrie<Mapping> newIndex = index.without(key);
+        JsonVector<Mapping> newMappings = mappings.set(old.ordinal, null);
+        if (newMappings.size() > 2 * newIndex.size() + 32) {
+            return compact(newIndex, newMappings);
+        }
+        return new JsonPersistentMap(newIndex, newMappings);
+    }
+
+    /**
+     * @param index Mappings indexed by key
+     * @param mappings Mappings in insertion order, with empty positions
+     * @return A map with the same mappings and no empty positions
+     */
+    private static JsonPersistentMap compact (JsonHashTrie<Mapping> index, JsonVector<Mapping> mappings) {
+        List<Mapping> list = new ArrayList<Mapping>(index.size());
+        JsonHashTrie<Mapping> newIndex = JsonHashTrie.empty();
+        for (int i = 0; i < mappings.size(); i++) {
+            Mapping old = mappings.get(i);
+            if (old != null) {
+                Mapping mapping = new Mapping(old.getKey(), old.getValue(), list.size());
+                list.add(mapping);
+                newIndex = newIndex.with(mapping.getKey(), mapping);
+            }
+        }
+        return new JsonPersistentMap(newIndex, JsonVector.copyOf(list));
+    }
+
+    @Override
+    public JsonValue<?> get (Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        Mapping mapping = index.get((String) key);
+        return mapping == null ? null : mapping.getValue();
+    }
+
+    @Override
+    public boolean containsKey (Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size () {
+        return index.size();
+    }
+
+    @Override
+    public Set<Map.Entry<String, JsonValue<?>>> entrySet () {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, JsonValue<?>>>() {
+                @Override
+                public Iterator<Map.Entry<String, JsonValue<?>>> iterator () {
+                    return new Iterator<Map.Entry<String, JsonValue<?>>>() {
+                        private int next = advance(0);
+
+                        /**
+                         * @param from First position to check
+                         * @return Position of the first mapping at or after <tt>from</tt>
+                         */
+                        private int advance (int from) {
+                            int pos = from;
+                            while (pos < mappings.size() && mappings.get(pos) == null) {
+                                pos++;
+                            }
+                            return pos;
+                        }
+
+                        @Override
+                        public boolean hasNext () {
+                            return next < mappings.size();
+                        }
+
+                        @Override
+                        public Map.Entry<String, JsonValue<?>> next () {
+                            if (next >= mappings.size()) {
+                                throw new NoSuchElementException();
+                            }
+                            Mapping mapping = mappings.get(next);
+                            next = advance(next + 1);
+                            return mapping;
+                        }
+
+                        @Override
+                        public void remove () {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size () {
+                    return index.size();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * A mapping that also knows its position in the insertion order.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class Mapping extends AbstractMap.SimpleImmutableEntry<String, JsonValue<?>> {
+
+        /** Serialization version */
+        private static final long serialVersionUID = 1L;
+
+        /** Position of the mapping in the insertion order */
+        final int ordinal;
+
+        Mapping (String key, JsonValue<?> value, int ordinal) {
+            super(key, value);
+            this.ordinal = ordinal;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package es.darkhogg.johnson.data;
+
+/**
+ * A compiled JSON Pointer, as defined by RFC 6901, that identifies a value inside a JSON document.
+ * <p>
+ * Pointers are compiled once with {@link #compile}, which splits and unescapes their segments and parses the segments
+ * that are valid array indices. Evaluating a compiled pointer against a value with {@link #evaluate} only walks the
+ * tree, without parsing nor allocating anything.
+ * <p>
+ * The parent of a pointer is created when the pointer is compiled and shares its segments, so {@link JsonPointerIndex}
+ * can reuse lookups of common prefixes.
+ * <p>
+ * Instances of this class are immutable and safe for use by multiple threads.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonPointer {
+
+    /** The pointer to a whole document */
+    public static final JsonPointer ROOT = new JsonPointer("", new String[0], new int[0], 0, null);
+
+    /** The original representation of this pointer */
+    private final String pointer;
+
+    /** Unescaped segments, shared with all the ancestors of this pointer */
+    private final String[] names;
+
+    /** Array indices of the segments, or <tt>-1</tt> for segments that are not valid indices */
+    private final int[] indices;
+
+    /** Number of segments of this pointer */
+    private final int depth;
+
+    /** The pointer to the parent value, or <tt>null</tt> for the root pointer */
+    private final JsonPointer parent;
+
+    /**
+     * @param pointer Original representation of the pointer
+     * @param names Unescaped segments
+     * @param indices Array indices of the segments
+     * @param depth Number of segments of the pointer
+     * @param parent The pointer to the parent value
+     */
+    private JsonPointer (String pointer, String[] names, int[] indices, int depth, JsonPointer parent) {
+        this.pointer = pointer;
+        this.names = names;
+        this.indices = indices;
+        this.depth = depth;
+        this.parent = parent;
+    }
+
+    /**
+     * Compiles a JSON Pointer.
+     *
+     * @param pointer The pointer, either empty or starting with a <tt>/</tt>
+     * @return The compiled pointer
+     * @throws NullPointerException If <tt>pointer</tt> is <tt>null</tt>
+     * @throws IllegalArgumentException If <tt>pointer</tt> is not a valid JSON Pointer
+     */
+    public static JsonPointer compile (String pointer) {
+        if (pointer == null) {
+            throw new NullPointerException("pointer");
+        }
+        if (pointer.isEmpty()) {
+            return ROOT;
+        }
+        if (pointer.charAt(0) != '/') {
+            throw new IllegalArgumentException("JSON: Pointer does not start with '/': " + pointer);
+        }
+
+        int depth = 0;
+        for (int i = 0; i < pointer.length(); i++) {
+            if (pointer.charAt(i) == '/') {
+                depth++;
+            }
+        }
+
+        String[] names = new String[depth];
+        int[] indices = new int[depth];
+        JsonPointer ptr = ROOT;
+        int start = 1;
+        for (int i = 0; i < depth; i++) {
+            int end = pointer.indexOf('/', start);
+            if (end < 0) {
+                end = pointer.length();
+            }
+            names[i] = unescape(pointer, start, end);
+            indices[i] = parseIndex(names[i]);
+            ptr = new JsonPointer(pointer.substring(0, end), names, indices, i + 1, ptr);
+            start = end + 1;
+        }
+        return ptr;
+    }
+
+    /**
+     * @param pointer A pointer
+     * @param start Position of the first character of a segment
+     * @param end Position after the last character of the segment
+     * @return The segment with its <tt>~0</tt> and <tt>~1</tt> escapes replaced
+     * @throws IllegalArgumentException If the segment contains an invalid escape
+     */
+    private static String unescape (String pointer, int start, int end) {
+        int tilde = pointer.indexOf('~', start);
+        if (tilde < 0 || tilde >= end) {
+            return pointer.substring(start, end);
+        }
+
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char chr = pointer.charAt(i);
+            if (chr == '~') {
+                char next = i + 1 < end ? pointer.charAt(i + 1) : 0;
+                if (next == '0') {
+                    sb.append('~');
+                } else if (next == '1') {
+                    sb.append('/');
+                } else {
+                    throw new IllegalArgumentException("JSON: Invalid escape in pointer at position " + i + ": "
+                        + pointer);
+                }
+                i++;
+            } else {
+                sb.append(chr);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param segment An unescaped segment
+     * @return The array index represented by the segment, or <tt>-1</tt> if it is not a valid array index
+     */
+    private static int parseIndex (String segment) {
+        int length = segment.length();
+        if (length == 0 || length > 10 || (length > 1 && segment.charAt(0) == '0')) {
+            return -1;
+        }
+
+        long index = 0;
+        for (int i = 0; i < length; i++) {
+            char chr = segment.charAt(i);
+            if (chr < '0' || chr > '9') {
+                return -1;
+            }
+            index = index * 10 + (chr - '0');
+        }
+        return index > Integer.MAX_VALUE ? -1 : (int) index;
+    }
+
+    /**
+     * @return The number of segments of this pointer
+     */
+    public int getDepth () {
+        return depth;
+    }
+
+    /**
+     * @return The pointer to the parent value, or <tt>null</tt> if this is the {@link #ROOT} pointer
+     */
+    public JsonPointer getParent () {
+        return parent;
+    }
+
+    /**
+     * @param index Position of the segment
+     * @return The unescaped segment at the given position
+     * @throws IndexOutOfBoundsException If <tt>index</tt> is not less than the depth of this pointer
+     */
+    public String getSegment (int index) {
+        if (index < 0 || index >= depth) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Depth: " + depth);
+        }
+        return names[index];
+    }
+
+    /**
+     * @param segment Position of the segment
+     * @return The array index represented by the segment, or <tt>-1</tt> if it is not a valid array index
+     */
+    int getIndex (int segment) {
+        return indices[segment];
+    }
+
+    /**
+     * Returns the value identified by this pointer in the given document.
+     *
+     * @param root The document
+     * @return The value identified by this pointer, or <tt>null</tt> if there is no such value
+     * @throws NullPointerException If <tt>root</tt> is <tt>null</tt>
+     */
+    public JsonValue<?> evaluate (JsonValue<?> root) {
+        if (root == null) {
+            throw new NullPointerException("root");
+        }
+
+        JsonValue<?> value = root;
+        for (int i = 0; i < depth && value != null; i++) {
+            value = step(value, i);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value identified by the last segment of this pointer in the value identified by its parent.
+     *
+     * @param parentValue The value identified by the parent of this pointer
+     * @return The value identified by this pointer, or <tt>null</tt> if there is no such value
+     */
+    JsonValue<?> evaluateLast (JsonValue<?> parentValue) {
+        return step(parentValue, depth - 1);
+    }
+
+    /**
+     * @param value A value
+     * @param segment Position of a segment
+     * @return The value identified by the segment in the given value, or <tt>null</tt> if there is no such value
+     */
+    JsonValue<?> step (JsonValue<?> value, int segment) {
+        if (value instanceof JsonObject) {
+            return ((JsonObject) value).get(names[segment]);
+        }
+        if (value instanceof JsonArray) {
+            JsonArray array = (JsonArray) value;
+            int index = indices[segment];
+            return index >= 0 && index < array.getLength() ? array.get(index) : null;
+        }
+        return null;
+    }
+
+    @Override
+    public int hashCode () {
+        return pointer.hashCode();
+    }
+
+    @Override
+    public boolean equals (Object obj) {
+        return obj instanceof JsonPointer && pointer.equals(((JsonPointer) obj).pointer);
+    }
+
+    /**
+     * @return The original representation of this pointer
+     */
+    @Override
+    public String toString () {
+        return pointer;
+    }
+}
@@ -0,0 +1,83 @@
+package es.darkhogg.johnson.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An index of a single JSON document that remembers the values found by the {@link JsonPointer}s evaluated against it.
+ * <p>
+ * Each pointer is evaluated at most once per index. The first time a pointer is evaluated, the value of its parent is
+ * looked up in the index as well, so pointers that share a prefix only walk the common part of the document once.
+ * Missing values are remembered too.
+ * <p>
+ * Indices are meant to be created for each document that is queried with the same set of pointers many times. They
+ * keep every value found, so they should not outlive their document. Instances of this class are not safe for use by
+ * multiple threads.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonPointerIndex {
+
+    /** Marker for pointers that do not identify any value */
+    private static final Object MISSING = new Object();
+
+    /** The indexed document */
+    private final JsonValue<?> root;
+
+    /** Values found for each pointer, or {@link #MISSING} */
+    private final Map<JsonPointer, Object> values = new HashMap<JsonPointer, Object>();
+
+    /**
+     * Creates an empty index for the given document.
+     *
+     * @param root The document
+     * @throws NullPointerException If <tt>root</tt> is <tt>null</tt>
+     */
+    public JsonPointerIndex (JsonValue<?> root) {
+        if (root == null) {
+            throw new NullPointerException("root");
+        }
+        this.root = root;
+    }
+
+    /**
+     * @return The indexed document
+     */
+    public JsonValue<?> getRoot () {
+        return root;
+    }
+
+    /**
+     * Returns the value identified by the given pointer in the indexed document, evaluating it only if it is not in the
+     * index already.
+     *
+     * @param pointer The pointer to evaluate
+     * @return The value identified by the pointer, or <tt>null</tt> if there is no such value
+     * @throws NullPointerException If <tt>pointer</tt> is <tt>null</tt>
+     */
+    public JsonValue<?> get (JsonPointer pointer) {
+        if (pointer == null) {
+            throw new NullPointerException("pointer");
+        }
+        if (pointer.getDepth() == 0) {
+            return root;
+        }
+
+        Object found = values.get(pointer);
+        if (found == null) {
+            JsonValue<?> parentValue = get(pointer.getParent());
+            JsonValue<?> value = parentValue == null ? null : pointer.evaluateLast(parentValue);
+            values.put(pointer, value == null ? MISSING : value);
+            return value;
+        }
+        return found == MISSING ? null : (JsonValue<?>) found;
+    }
+
+    /**
+     * @return The number of pointers in this index
+     */
+    public int size () {
+        return values.size();
+    }
+}
@@ -0,0 +1,346 @@
+package es.darkhogg.johnson.data;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import es.darkhogg.johnson.io.JsonReader;
+import es.darkhogg.johnson.io.JsonTape;
+
+/**
+ * Lazy JSON values backed by a {@link JsonTape}.
+ * <p>
+ * Arrays and objects are wrapped around unmodifiable lists and maps that read their children from the tape only when
+ * they are first accessed, and then remember them. Since all created values are immutable, racing threads can at worst
+ * materialize the same child twice.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+final class JsonTapeValues {
+
+    /** Objects with at most this many mappings are searched linearly */
+    private static final int LINEAR_SEARCH_SIZE = 16;
+
+    private JsonTapeValues () {
+        throw new AssertionError();
+    }
+
+    /**
+     * Creates a JSON value for the tape entry at the given index. Arrays and objects are returned as lazy views, while
+     * scalars are decoded immediately.
+     *
+     * @param tape The tape containing the value
+     * @param index Index of the value on the tape
+     * @return The JSON value at <tt>index</tt>
+     */
+    static JsonValue<?> valueAt (JsonTape tape, int index) {
+        switch (tape.getToken(index)) {
+            case JsonReader.TOKEN_NULL:
+                return JsonNull.NULL;
+
+            case JsonReader.TOKEN_BOOLEAN:
+                return JsonBoolean.valueOf(tape.getBoolean(index));
+
+            case JsonReader.TOKEN_NUMBER:
+                switch (tape.getNumberType(index)) {
+                    case JsonReader.NUMBER_LONG:
+                        return JsonNumber.valueOf(tape.getLong(index));
+                    case JsonReader.NUMBER_DOUBLE:
+                        return JsonNumber.valueOf(tape.getDouble(index));
+                    default:
+                        return JsonNumber.valueOf(tape.getNumber(index));
+                }
+
+            case JsonReader.TOKEN_STRING: {
+                String str = tape.getString(index);
+                return str.length() == 0 ? JsonString.EMPTY : new JsonString(str);
+            }
+
+            case JsonReader.TOKEN_ARRAY_BEGIN:
+                return tape.getCount(index) == 0 ? JsonArray.EMPTY : new JsonArray(new TapeList(tape, index));
+
+            case JsonReader.TOKEN_OBJECT_BEGIN:
+                return tape.getCount(index) == 0 ? JsonObject.EMPTY : new JsonObject(new TapeMap(tape, index));
+
+            default:
+                throw new IllegalArgumentException("JSON: Tape entry " + index + " is not a value");
+        }
+    }
+
+    /**
+     * An unmodifiable list of the elements of an array on a tape.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class TapeList extends AbstractList<JsonValue<?>> {
+
+        /** The tape */
+        private final JsonTape tape;
+
+        /** Index of the array beginning */
+        private final int begin;
+
+        /** Number of elements */
+        private final int size;
+
+        /** Tape indices of the elements, computed on first access */
+        private volatile int[] indices;
+
+        /** Already materialized elements */
+        private final JsonValue<?>[] elements;
+
+        TapeList (JsonTape tape, int begin) {
+            this.tape = tape;
+            this.begin = begin;
+            this.size = tape.getCount(begin);
+            this.elements = new JsonValue<?>[size];
+        }
+
+        @Override
+        public JsonValue<?> get (int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+
+            JsonValue<?> elem = elements[index];
+            if (elem == null) {
+                elem = valueAt(tape, indices()[index]);
+                elements[index] = elem;
+            }
+            return elem;
+        }
+
+        /** @return The tape indices of the elements */
+        private int[] indices () {
+            int[] idxs = indices;
+            if (idxs == null) {
+                idxs = new int[size];
+                int idx = begin + 1;
+                for (int i = 0; i < size; i++) {
+                    idxs[i] = idx;
+                    idx = tape.skip(idx);
+                }
+                indices = idxs;
+            }
+            return idxs;
+        }
+
+        @Override
+        public int size () {
+            return size;
+        }
+    }
+
+    /**
+     * An unmodifiable map of the mappings of an object on a tape. As in {@link JsonObjectMap}, a key that appears more
+     * than once keeps the position of its first appearance and the value of its last one.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class TapeMap extends AbstractMap<String, JsonValue<?>> {
+
+        /** The tape */
+        private final JsonTape tape;
+
+        /** Index of the object beginning */
+        private final int begin;
+
+        /** Keys of the object, computed on first access */
+        private volatile Members members;
+
+        /** Entry set view, created on first access */
+        private Set<Map.Entry<String, JsonValue<?>>> entrySet;
+
+        TapeMap (JsonTape tape, int begin) {
+            this.tape = tape;
+            this.begin = begin;
+        }
+
+        /** @return The keys of the object, with duplicate keys collapsed */
+        private Members members () {
+            Members mbrs = members;
+            if (mbrs == null) {
+                mbrs = new Members(tape, begin);
+                members = mbrs;
+            }
+            return mbrs;
+        }
+
+        /**
+         * Returns the materialized value of a mapping.
+         *
+         * @param mbrs The keys of the object
+         * @param pos Position of the mapping in the object
+         * @return The value of the mapping
+         */
+        private JsonValue<?> valueOf (Members mbrs, int pos) {
+            JsonValue<?> value = mbrs.values[pos];
+            if (value == null) {
+                value = valueAt(tape, mbrs.keyIndices[pos] + 1);
+                mbrs.values[pos] = value;
+            }
+            return value;
+        }
+
+        @Override
+        public JsonValue<?> get (Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            Members mbrs = members();
+            int pos = mbrs.find((String) key);
+            return pos < 0 ? null : valueOf(mbrs, pos);
+        }
+
+        @Override
+        public boolean containsKey (Object key) {
+            return key instanceof String && members().find((String) key) >= 0;
+        }
+
+        @Override
+        public int size () {
+            return members().keys.length;
+        }
+
+        @Override
+        public Set<Map.Entry<String, JsonValue<?>>> entrySet () {
+            if (entrySet == null) {
+                entrySet = new AbstractSet<Map.Entry<String, JsonValue<?>>>() {
+                    @Override
+                    public Iterator<Map.Entry<String, JsonValue<?>>> iterator () {
+                        return new Iterator<Map.Entry<String, JsonValue<?>>>() {
+                            private final Members mbrs = members();
+                            private int pos = 0;
+
+                            @Override
+                            public boolean hasNext () {
+                                return pos < mbrs.keys.length;
+                            }
+
+                            @Override
+                            public Map.Entry<String, JsonValue<?>> next () {
+                                if (pos >= mbrs.keys.length) {
+                                    throw new NoSuchElementException();
+                                }
+                                Map.Entry<String, JsonValue<?>> entry =
+                                    new AbstractMap.SimpleImmutableEntry<String, JsonValue<?>>(
+                                        mbrs.keys[pos], valueOf(mbrs, pos));
+                                pos++;
+                                return entry;
+                            }
+
+                            @Override
+                            public void remove () {
+                                throw new UnsupportedOperationException();
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size () {
+                        return TapeMap.this.size();
+                    }
+                };
+            }
+            return entrySet;
+        }
+    }
+
+    /**
+     * The distinct keys of an object on a tape, with the tape index of the mapping that holds the value of each one.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class Members {
+
+        /** Distinct keys, in the position of their first appearance */
+        final String[] keys;
+
+        /** Tape indices of the last appearance of every key, parallel to {@link #keys} */
+        final int[] keyIndices;
+
+        /** Position of every key, or <tt>null</tt> for small objects */
+        final Map<String, Integer> index;
+
+        /** Already materialized values, parallel to {@link #keys} */
+        final JsonValue<?>[] values;
+
+        Members (JsonTape tape, int begin) {
+            int count = tape.getCount(begin);
+            String[] ks = new String[count];
+            int[] kidxs = new int[count];
+            Map<String, Integer> idx =
+                count <= LINEAR_SEARCH_SIZE ? null : new HashMap<String, Integer>(count * 4 / 3 + 1);
+
+            int size = 0;
+            int tidx = begin + 1;
+            for (int i = 0; i < count; i++) {
+                String key = tape.getString(tidx);
+                int pos;
+                if (idx == null) {
+                    pos = linearSearch(ks, size, key);
+                } else {
+                    Integer prev = idx.get(key);
+                    pos = prev == null ? -1 : prev.intValue();
+                }
+
+                if (pos < 0) {
+                    if (idx != null) {
+                        idx.put(key, Integer.valueOf(size));
+                    }
+                    ks[size] = key;
+                    kidxs[size] = tidx;
+                    size++;
+                } else {
+                    // Later duplicates replace the value of earlier ones, just like a parsed map
+                    kidxs[pos] = tidx;
+                }
+                tidx = tape.skip(tidx + 1);
+            }
+
+            this.keys = size == count ? ks : Arrays.copyOf(ks, size);
+            this.keyIndices = size == count ? kidxs : Arrays.copyOf(kidxs, size);
+            this.index = idx;
+            this.values = new JsonValue<?>[size];
+        }
+
+        /**
+         * @param key A key
+         * @return The position of the key, or <tt>-1</tt> if it is not in the object
+         */
+        int find (String key) {
+            if (index == null) {
+                return linearSearch(keys, keys.length, key);
+            }
+            Integer pos = index.get(key);
+            return pos == null ? -1 : pos.intValue();
+        }
+
+        /**
+         * Searches the first <tt>count</tt> keys linearly.
+         *
+         * @param keys Keys to search
+         * @param count Number of keys to search
+         * @param key Key to find
+         * @return The position of the key, or <tt>-1</tt> if it is not found
+         */
+        private static int linearSearch (String[] keys, int count, String key) {
+            for (int i = 0; i < count; i++) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
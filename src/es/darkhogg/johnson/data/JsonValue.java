@@ -22,9 +22,12 @@ public abstract class JsonValue<T> {
     }
     
     /**
+     * Returns the actual value of this JSON value. Subclasses that store their value in another form, such as an
+     * unboxed primitive, override this method to create it when requested.
+     * 
      * @return The actual value of this JSON value.
      */
-    public final T getValue () {
+    public T getValue () {
         return value;
     }
     
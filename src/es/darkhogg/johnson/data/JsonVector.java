@@ -0,0 +1,240 @@
+package es.darkhogg.johnson.data;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable vector whose updates return a new vector sharing all unchanged structure with the original one.
+ * <p>
+ * Elements are stored in a trie of 32-element arrays, with the last up to 32 elements kept apart in a <i>tail</i> array,
+ * as in Clojure's persistent vectors. Reads and updates touch one array per level of the trie, so they take
+ * <tt>O(log<sub>32</sub> n)</tt> time, while appends only copy the tail most of the time.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ * @param <E> Type of the elements
+ */
+final class JsonVector<E> {
+
+    /** Number of index bits consumed by each level of the trie */
+    private static final int BITS = 5;
+
+    /** Number of elements of each array of the trie */
+    private static final int WIDTH = 1 << BITS;
+
+    /** Mask of the index bits of a single level */
+    private static final int MASK = WIDTH - 1;
+
+    /** An empty vector */
+    private static final JsonVector<Object> EMPTY = new JsonVector<Object>(0, BITS, new Object[WIDTH], new Object[0]);
+
+    /** Number of elements */
+    private final int size;
+
+    /** Shift of the index for the root level */
+    private final int shift;
+
+    /** Root of the trie */
+    private final Object[] root;
+
+    /** Last elements, not yet in the trie */
+    private final Object[] tail;
+
+    /**
+     * @param size Number of elements
+     * @param shift Shift of the index for the root level
+     * @param root Root of the trie
+     * @param tail Last elements
+     */
+    private JsonVector (int size, int shift, Object[] root, Object[] tail) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /**
+     * @param <E> Type of the elements
+     * @return An empty vector
+     */
+    @SuppressWarnings("unchecked")
+    static <E> JsonVector<E> empty () {
+        return (JsonVector<E>) EMPTY;
+    }
+
+    /**
+     * Creates a vector with the elements of a list, filling the arrays of the trie directly.
+     *
+     * @param <E> Type of the elements
+     * @param list List to copy
+     * @return A vector with the same elements as the list
+     */
+    static <E> JsonVector<E> copyOf (List<? extends E> list) {
+        JsonVector<E> vec = empty();
+        Object[] chunk = new Object[WIDTH];
+        int count = 0;
+        for (E elem : list) {
+            if (count == WIDTH) {
+                vec = vec.appendTail(chunk, WIDTH);
+                chunk = new Object[WIDTH];
+                count = 0;
+            }
+            chunk[count++] = elem;
+        }
+        return count == 0 ? vec : vec.appendTail(Arrays.copyOf(chunk, count), count);
+    }
+
+    /** @return The number of elements */
+    int size () {
+        return size;
+    }
+
+    /** @return The index of the first element of the tail */
+    private int tailOffset () {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    /**
+     * @param index Index of an element
+     * @throws IndexOutOfBoundsException If the index is out of bounds
+     */
+    private void checkIndex (int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * @param index Index of an element
+     * @return The array that contains the element
+     */
+    private Object[] arrayFor (int index) {
+        if (index >= tailOffset()) {
+            return tail;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    /**
+     * @param index Index of the element
+     * @return The element at the given index
+     * @throws IndexOutOfBoundsException If the index is out of bounds
+     */
+    @SuppressWarnings("unchecked")
+    E get (int index) {
+        checkIndex(index);
+        return (E) arrayFor(index)[index & MASK];
+    }
+
+    /**
+     * Returns a vector with the element at the given index replaced.
+     *
+     * @param index Index of the element
+     * @param elem New element
+     * @return The new vector
+     * @throws IndexOutOfBoundsException If the index is out of bounds
+     */
+    JsonVector<E> set (int index, E elem) {
+        checkIndex(index);
+        if (index >= tailOffset()) {
+            Object[] newTail = tail.clone();
+            newTail[index & MASK] = elem;
+            return new JsonVector<E>(size, shift, root, newTail);
+        }
+        return new JsonVector<E>(size, shift, set(shift, root, index, elem), tail);
+    }
+
+    /**
+     * @param level Shift of the index for the level of the node
+     * @param node Node to copy
+     * @param index Index of the element
+     * @param elem New element
+     * @return A copy of the node with the element replaced
+     */
+    private static Object[] set (int level, Object[] node, int index, Object elem) {
+        Object[] copy = node.clone();
+        if (level == 0) {
+            copy[index & MASK] = elem;
+        } else {
+            int sub = (index >>> level) & MASK;
+            copy[sub] = set(level - BITS, (Object[]) node[sub], index, elem);
+        }
+        return copy;
+    }
+
+    /**
+     * Returns a vector with an element added at the end.
+     *
+     * @param elem Element to add
+     * @return The new vector
+     */
+    JsonVector<E> append (E elem) {
+        if (size - tailOffset() < WIDTH) {
+            Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = elem;
+            return new JsonVector<E>(size + 1, shift, root, newTail);
+        }
+        return appendTail(new Object[] { elem }, 1);
+    }
+
+    /**
+     * Returns a vector with the full tail of this one moved into the trie and the given array as its new tail.
+     *
+     * @param newTail The new tail
+     * @param count Number of elements of the new tail
+     * @return The new vector
+     */
+    private JsonVector<E> appendTail (Object[] newTail, int count) {
+        if (size == 0) {
+            return new JsonVector<E>(count, shift, root, newTail);
+        }
+
+        Object[] newRoot;
+        int newShift = shift;
+        if ((size >>> BITS) > (1 << shift)) {
+            // The trie is full, so it grows a new root
+            newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = newPath(shift, tail);
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(shift, root);
+        }
+        return new JsonVector<E>(size + count, newShift, newRoot, newTail);
+    }
+
+    /**
+     * @param level Shift of the index for the level of the node
+     * @param parent Node to copy
+     * @return A copy of the node with the tail of this vector added to its last path
+     */
+    private Object[] pushTail (int level, Object[] parent) {
+        int sub = ((size - 1) >>> level) & MASK;
+        Object[] copy = parent.clone();
+        if (level == BITS) {
+            copy[sub] = tail;
+        } else {
+            Object[] child = (Object[]) parent[sub];
+            copy[sub] = child != null ? pushTail(level - BITS, child) : newPath(level - BITS, tail);
+        }
+        return copy;
+    }
+
+    /**
+     * @param level Shift of the index for the level of the path
+     * @param leaf Array of elements at the end of the path
+     * @return A path of nodes from the given level down to the leaf
+     */
+    private static Object[] newPath (int level, Object[] leaf) {
+        if (level == 0) {
+            return leaf;
+        }
+        Object[] node = new Object[WIDTH];
+        node[0] = newPath(level - BITS, leaf);
+        return node;
+    }
+}
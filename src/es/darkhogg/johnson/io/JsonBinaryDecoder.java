@@ -0,0 +1,660 @@
+package es.darkhogg.johnson.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+
+/**
+ * A source of tokens that decodes the binary format described in {@link JsonBinaryFormat}.
+ * <p>
+ * The grammar is still checked by {@link JsonReader}, which calls {@link #readToken} instead of scanning characters.
+ * Integers and <tt>double</tt> values are kept in binary and only formatted as text if the text is requested, and
+ * arrays, objects and strings can be skipped without reading their contents.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+final class JsonBinaryDecoder extends JsonTokenSource {
+
+    /** Value returned by {@link #readToken} at the end of an array or object */
+    static final int END = -2;
+
+    /** Size of the buffer used to read from streams */
+    private static final int BUFFER_SIZE = 32768;
+
+    /** Initial depth of the stack of open containers */
+    private static final int INITIAL_DEPTH = 16;
+
+    /** Number storage: the text of the number is the current token */
+    private static final int NUMBER_TEXT = 0;
+
+    /** Number storage: the number is in {@link #longValue} */
+    private static final int NUMBER_LONG = 1;
+
+    /** Number storage: the number is in {@link #doubleValue} */
+    private static final int NUMBER_DOUBLE = 2;
+
+    /** Number storage: the number is in {@link #floatValue} */
+    private static final int NUMBER_FLOAT = 3;
+
+    /** Number storage: the text of the number is the current token, and it is read as a <tt>BigDecimal</tt> */
+    private static final int NUMBER_BIG_DECIMAL = 4;
+
+    /** Underlying stream, or <tt>null</tt> if the whole input is in {@link #buffer} */
+    private final InputStream stream;
+
+    /** Strings shared with the writer, or <tt>null</tt> */
+    final JsonKeySet dictionary;
+
+    /** Byte buffer */
+    private byte[] buffer;
+
+    /** Position of the next byte to read in the buffer */
+    private int pos;
+
+    /** Number of valid bytes in the buffer */
+    private int limit;
+
+    /** Offset in the input of the index <tt>0</tt> of the buffer */
+    private long bufferOffset;
+
+    /** Offsets in the input of the end of every open array and object */
+    private long[] ends = new long[INITIAL_DEPTH];
+
+    /** Number of open arrays and objects */
+    private int depth;
+
+    /** Value of the current boolean token */
+    boolean tokenBoolean;
+
+    /** Index in {@link #dictionary} of the current string token, or <tt>-1</tt> if it is not shared */
+    int tokenShared = -1;
+
+    /** How the current number token is stored, as one of the <tt>NUMBER_*</tt> constants */
+    private int numberStorage;
+
+    /** Value of the current integer token */
+    private long longValue;
+
+    /** Value of the current <tt>double</tt> token */
+    private double doubleValue;
+
+    /** Value of the current <tt>float</tt> token */
+    private float floatValue;
+
+    /**
+     * Creates a decoder that reads from the given stream.
+     *
+     * @param stream Stream used for this decoder
+     * @param dictionary Strings shared with the writer, or <tt>null</tt>
+     */
+    JsonBinaryDecoder (InputStream stream, JsonKeySet dictionary) {
+        this.stream = stream;
+        this.dictionary = dictionary;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Creates a decoder that reads the given bytes. The array is used as is, without copying it.
+     *
+     * @param bytes Array containing the input
+     * @param offset Position of the first byte of the input
+     * @param length Number of bytes of the input
+     * @param dictionary Strings shared with the writer, or <tt>null</tt>
+     */
+    JsonBinaryDecoder (byte[] bytes, int offset, int length, JsonKeySet dictionary) {
+        this.stream = null;
+        this.dictionary = dictionary;
+        this.buffer = bytes;
+        this.pos = offset;
+        this.limit = offset + length;
+        this.bufferOffset = -offset;
+    }
+
+    /**
+     * Refills the buffer. Must be called only when all bytes of the buffer have been consumed.
+     *
+     * @return Whether new bytes were read
+     * @throws IOException If an I/O error happens
+     */
+    private boolean fill () throws IOException {
+        if (stream == null) {
+            return false;
+        }
+
+        bufferOffset += limit;
+        pos = 0;
+        limit = 0;
+
+        int read;
+        do {
+            read = stream.read(buffer, 0, buffer.length);
+        } while (read == 0);
+
+        if (read < 0) {
+            return false;
+        }
+
+        limit = read;
+        return true;
+    }
+
+    /**
+     * Makes sure that the given number of bytes are available in the buffer, growing it if necessary.
+     *
+     * @param length Number of bytes needed
+     * @throws IOException If an I/O error happens or the input ends before
+     */
+    private void require (int length) throws IOException {
+        int available = limit - pos;
+        if (available >= length) {
+            return;
+        }
+        if (stream == null) {
+            throw formatError("Unexpected EOF", offset());
+        }
+
+        byte[] dst = length > buffer.length ? new byte[Math.max(length, buffer.length * 2)] : buffer;
+        System.arraycopy(buffer, pos, dst, 0, available);
+        buffer = dst;
+        bufferOffset += pos;
+        pos = 0;
+        limit = available;
+
+        while (limit < length) {
+            int read = stream.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                throw formatError("Unexpected EOF", offset());
+            }
+            limit += read;
+        }
+    }
+
+    /**
+     * @return The next byte of the input
+     * @throws IOException If an I/O error happens or the input has ended
+     */
+    private int readByte () throws IOException {
+        if (pos == limit) {
+            require(1);
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    /**
+     * @return The next variable length integer of the input
+     * @throws IOException If an I/O error happens or the integer is not valid
+     */
+    private long readVarint () throws IOException {
+        long start = offset();
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+        throw formatError("Malformed integer", start);
+    }
+
+    /**
+     * @return The next variable length integer of the input, which must be a valid length or index
+     * @throws IOException If an I/O error happens or the integer is not valid
+     */
+    private int readLength () throws IOException {
+        long start = offset();
+        long length = readVarint();
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw formatError("Invalid length " + length, start);
+        }
+        return (int) length;
+    }
+
+    /**
+     * Skips the given number of bytes without reading them.
+     *
+     * @param length Number of bytes to skip
+     * @throws IOException If an I/O error happens or the input ends before
+     */
+    private void skipBytes (long length) throws IOException {
+        if (length <= limit - pos) {
+            pos += (int) length;
+            return;
+        }
+        if (stream == null) {
+            throw formatError("Unexpected EOF", offset());
+        }
+
+        long remaining = length - (limit - pos);
+        bufferOffset += limit;
+        pos = 0;
+        limit = 0;
+        while (remaining > 0) {
+            long skipped = stream.skip(remaining);
+            if (skipped <= 0) {
+                if (stream.read() < 0) {
+                    throw formatError("Unexpected EOF", offset());
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+            bufferOffset += skipped;
+        }
+    }
+
+    /**
+     * Reads the next token. Strings become the current token, numbers are kept so they can be converted later, and
+     * arrays and objects are entered.
+     *
+     * @param skipStrings Whether strings are skipped instead of decoded
+     * @return The type of the token as one of the <tt>TOKEN_*</tt> constants of {@link JsonReader}, where the
+     *         beginnings of arrays and objects are returned as such and their endings as {@link #END}
+     * @throws IOException If an I/O error happens or the input is not valid
+     */
+    int readToken (boolean skipStrings) throws IOException {
+        if (depth > 0) {
+            long end = ends[depth - 1];
+            long off = offset();
+            if (off >= end) {
+                if (off > end) {
+                    throw formatError("Value overruns its container", off);
+                }
+                depth--;
+                return END;
+            }
+        }
+
+        if (pos == limit && !fill()) {
+            return JsonReader.TOKEN_EOF;
+        }
+
+        long start = offset();
+        int tag = buffer[pos++] & 0xFF;
+        tokenShared = -1;
+
+        if (tag >= JsonBinaryFormat.TAG_SMALL_INTEGER) {
+            setLong(tag - JsonBinaryFormat.TAG_SMALL_INTEGER + JsonBinaryFormat.MIN_SMALL_INTEGER);
+            return JsonReader.TOKEN_NUMBER;
+        } else if (tag >= JsonBinaryFormat.TAG_SHORT_SHARED) {
+            readShared(tag - JsonBinaryFormat.TAG_SHORT_SHARED, start);
+            return JsonReader.TOKEN_STRING;
+        } else if (tag >= JsonBinaryFormat.TAG_SHORT_STRING) {
+            readString(tag - JsonBinaryFormat.TAG_SHORT_STRING, skipStrings, start);
+            return JsonReader.TOKEN_STRING;
+        }
+
+        switch (tag) {
+            case JsonBinaryFormat.TAG_NULL:
+                return JsonReader.TOKEN_NULL;
+
+            case JsonBinaryFormat.TAG_FALSE:
+                tokenBoolean = false;
+                return JsonReader.TOKEN_BOOLEAN;
+
+            case JsonBinaryFormat.TAG_TRUE:
+                tokenBoolean = true;
+                return JsonReader.TOKEN_BOOLEAN;
+
+            case JsonBinaryFormat.TAG_INTEGER: {
+                long zigzag = readVarint();
+                setLong((zigzag >>> 1) ^ -(zigzag & 1));
+                return JsonReader.TOKEN_NUMBER;
+            }
+
+            case JsonBinaryFormat.TAG_DOUBLE: {
+                require(8);
+                long bits = 0;
+                for (int i = 0; i < 8; i++) {
+                    bits = (bits << 8) | (buffer[pos++] & 0xFF);
+                }
+                doubleValue = Double.longBitsToDouble(bits);
+                if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+                    throw formatError("Non-finite number", start);
+                }
+                numberStorage = NUMBER_DOUBLE;
+                tokenIntegral = false;
+                return JsonReader.TOKEN_NUMBER;
+            }
+
+            case JsonBinaryFormat.TAG_FLOAT: {
+                require(4);
+                int bits = 0;
+                for (int i = 0; i < 4; i++) {
+                    bits = (bits << 8) | (buffer[pos++] & 0xFF);
+                }
+                floatValue = Float.intBitsToFloat(bits);
+                if (Float.isNaN(floatValue) || Float.isInfinite(floatValue)) {
+                    throw formatError("Non-finite number", start);
+                }
+                numberStorage = NUMBER_FLOAT;
+                tokenIntegral = false;
+                return JsonReader.TOKEN_NUMBER;
+            }
+
+            case JsonBinaryFormat.TAG_DECIMAL:
+                readDecimal(readLength(), start);
+                return JsonReader.TOKEN_NUMBER;
+
+            case JsonBinaryFormat.TAG_BIG_DECIMAL:
+                readDecimal(readLength(), start);
+                numberStorage = NUMBER_BIG_DECIMAL;
+                return JsonReader.TOKEN_NUMBER;
+
+            case JsonBinaryFormat.TAG_STRING:
+                readString(readLength(), skipStrings, start);
+                return JsonReader.TOKEN_STRING;
+
+            case JsonBinaryFormat.TAG_SHARED:
+                readShared(readLength(), start);
+                return JsonReader.TOKEN_STRING;
+
+            case JsonBinaryFormat.TAG_ARRAY:
+                enter(start);
+                return JsonReader.TOKEN_ARRAY_BEGIN;
+
+            case JsonBinaryFormat.TAG_OBJECT:
+                enter(start);
+                return JsonReader.TOKEN_OBJECT_BEGIN;
+
+            default:
+                throw formatError("Invalid tag 0x" + Integer.toHexString(tag), start);
+        }
+    }
+
+    /**
+     * Sets an integer as the current token.
+     *
+     * @param value Value of the integer
+     */
+    private void setLong (long value) {
+        longValue = value;
+        numberStorage = NUMBER_LONG;
+        tokenIntegral = true;
+    }
+
+    /**
+     * Reads the length of an array or object whose tag has already been read, and enters it.
+     *
+     * @param start Offset of the tag
+     * @throws IOException If an I/O error happens or the length is not valid
+     */
+    private void enter (long start) throws IOException {
+        long length = readVarint();
+        long end = offset() + length;
+        if (length < 0 || (depth > 0 && end > ends[depth - 1])) {
+            throw formatError("Container overruns its parent", start);
+        }
+        if (depth == ends.length) {
+            long[] newEnds = new long[depth * 2];
+            System.arraycopy(ends, 0, newEnds, 0, depth);
+            ends = newEnds;
+        }
+        ends[depth++] = end;
+    }
+
+    /**
+     * Skips the rest of the contents of the innermost open array or object, and leaves it.
+     *
+     * @throws IOException If an I/O error happens or the input ends before the container
+     */
+    void skipContainer () throws IOException {
+        long end = ends[--depth];
+        skipBytes(end - offset());
+    }
+
+    /**
+     * Reads a string whose tag and length have already been read, and sets it as the current token.
+     *
+     * @param length Length of the string in bytes
+     * @param skip Whether to skip the string instead of decoding it
+     * @param start Offset of the tag
+     * @throws IOException If an I/O error happens or the string is not valid UTF-8
+     */
+    private void readString (int length, boolean skip, long start) throws IOException {
+        numberStorage = NUMBER_TEXT;
+        if (skip) {
+            skipBytes(length);
+            return;
+        }
+
+        require(length);
+        if (scratch.length < length) {
+            scratchLength = 0;
+            growScratch(length);
+        }
+
+        final byte[] buf = buffer;
+        final char[] dst = scratch;
+        int p = pos;
+        int end = p + length;
+        int n = 0;
+        while (p < end) {
+            int b = buf[p++];
+            if (b >= 0) {
+                dst[n++] = (char) b;
+                continue;
+            }
+
+            int extra;
+            int value;
+            int min;
+            if ((b & 0xE0) == 0xC0) {
+                extra = 1;
+                value = b & 0x1F;
+                min = 0x80;
+            } else if ((b & 0xF0) == 0xE0) {
+                extra = 2;
+                value = b & 0x0F;
+                min = 0x800;
+            } else if ((b & 0xF8) == 0xF0) {
+                extra = 3;
+                value = b & 0x07;
+                min = 0x10000;
+            } else {
+                throw formatError("Invalid UTF-8 string", start);
+            }
+
+            if (end - p < extra) {
+                throw formatError("Invalid UTF-8 string", start);
+            }
+            for (int i = 0; i < extra; i++) {
+                int cont = buf[p++];
+                if ((cont & 0xC0) != 0x80) {
+                    throw formatError("Invalid UTF-8 string", start);
+                }
+                value = (value << 6) | (cont & 0x3F);
+            }
+            if (value < min || value > Character.MAX_CODE_POINT) {
+                throw formatError("Invalid UTF-8 string", start);
+            }
+
+            if (value >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                dst[n++] = Character.highSurrogate(value);
+                dst[n++] = Character.lowSurrogate(value);
+            } else {
+                dst[n++] = (char) value;
+            }
+        }
+
+        pos = end;
+        setToken(dst, 0, n);
+    }
+
+    /**
+     * Sets a string of the dictionary as the current token.
+     *
+     * @param index Index of the string in the dictionary
+     * @param start Offset of the tag
+     * @throws IOException If there is no string with the given index
+     */
+    private void readShared (int index, long start) throws IOException {
+        if (dictionary == null || index >= dictionary.size()) {
+            throw formatError("Unknown dictionary string " + index, start);
+        }
+
+        String str = dictionary.get(index);
+        int length = str.length();
+        if (scratch.length < length) {
+            scratchLength = 0;
+            growScratch(length);
+        }
+        str.getChars(0, length, scratch, 0);
+        setToken(scratch, 0, length);
+        tokenShared = index;
+        numberStorage = NUMBER_TEXT;
+    }
+
+    /**
+     * Reads a number stored as text whose tag and length have already been read, and sets it as the current token.
+     *
+     * @param length Length of the text
+     * @param start Offset of the tag
+     * @throws IOException If an I/O error happens or the text is not a valid JSON number
+     */
+    private void readDecimal (int length, long start) throws IOException {
+        require(length);
+        if (scratch.length < length) {
+            scratchLength = 0;
+            growScratch(length);
+        }
+
+        int numState = JsonLexer.NUM_START;
+        for (int i = 0; i < length && numState >= 0; i++) {
+            int chr = buffer[pos + i];
+            numState = JsonLexer.nextNumberState(numState, chr);
+            scratch[i] = (char) chr;
+        }
+        if (numState != JsonLexer.NUM_ZERO && numState != JsonLexer.NUM_INT && numState != JsonLexer.NUM_FRAC
+            && numState != JsonLexer.NUM_EXP_DIGITS)
+        {
+            throw formatError("Malformed number", start);
+        }
+
+        pos += length;
+        setToken(scratch, 0, length);
+        numberStorage = NUMBER_TEXT;
+        tokenIntegral = numState == JsonLexer.NUM_ZERO || numState == JsonLexer.NUM_INT;
+    }
+
+    /** Formats the current number token as text and sets it as the current token. */
+    private void formatNumber () {
+        if (scratch.length < JsonDoubleFormat.MAX_LENGTH) {
+            scratchLength = 0;
+            growScratch(JsonDoubleFormat.MAX_LENGTH);
+        }
+
+        int length;
+        switch (numberStorage) {
+            case NUMBER_LONG: {
+                String str = Long.toString(longValue);
+                length = str.length();
+                str.getChars(0, length, scratch, 0);
+                break;
+            }
+            case NUMBER_DOUBLE:
+                length = JsonDoubleFormat.formatDouble(doubleValue, scratch);
+                break;
+            case NUMBER_FLOAT:
+                length = JsonDoubleFormat.formatFloat(floatValue, scratch);
+                break;
+            default:
+                return;
+        }
+        setToken(scratch, 0, length);
+        numberStorage = NUMBER_TEXT;
+    }
+
+    @Override
+    String tokenString () {
+        formatNumber();
+        return super.tokenString();
+    }
+
+    @Override
+    long tokenLong () {
+        if (numberStorage == NUMBER_LONG) {
+            return longValue;
+        }
+        formatNumber();
+        return super.tokenLong();
+    }
+
+    @Override
+    double tokenDouble () {
+        if (numberStorage == NUMBER_DOUBLE) {
+            return doubleValue;
+        } else if (numberStorage == NUMBER_LONG) {
+            return longValue;
+        }
+        formatNumber();
+        return super.tokenDouble();
+    }
+
+    /**
+     * Returns the value of the current number token without any loss of precision. Integers are returned as
+     * <tt>Long</tt>s, <tt>double</tt> and <tt>float</tt> values as <tt>Double</tt>s and <tt>Float</tt>s, and
+     * <tt>BigDecimal</tt> values as <tt>BigDecimal</tt>s with their original scale. Other numbers stored as text are
+     * converted as {@link JsonReader#getNumber} describes.
+     *
+     * @return The value of the current number
+     */
+    @Override
+    Number tokenNumber () {
+        switch (numberStorage) {
+            case NUMBER_LONG:
+                return Long.valueOf(longValue);
+            case NUMBER_DOUBLE:
+                return Double.valueOf(doubleValue);
+            case NUMBER_FLOAT:
+                return Float.valueOf(floatValue);
+            case NUMBER_BIG_DECIMAL:
+                try {
+                    return new BigDecimal(tokenChars, tokenStart, tokenLength);
+                } catch (NumberFormatException exc) {
+                    // Not written by a JsonWriter, as the exponent does not fit in the scale of a BigDecimal
+                    return super.tokenNumber();
+                }
+            default:
+                return super.tokenNumber();
+        }
+    }
+
+    @Override
+    int tokenNumberType () {
+        switch (numberStorage) {
+            case NUMBER_LONG:
+                return JsonReader.NUMBER_LONG;
+            case NUMBER_DOUBLE:
+                return JsonReader.NUMBER_DOUBLE;
+            case NUMBER_FLOAT:
+            case NUMBER_BIG_DECIMAL:
+                return JsonReader.NUMBER_OTHER;
+            default:
+                return super.tokenNumberType();
+        }
+    }
+
+    @Override
+    long offset () {
+        return bufferOffset + pos;
+    }
+
+    /**
+     * Creates an exception for an invalid input.
+     *
+     * @param message Description of the error
+     * @param offset Offset in the input of the error
+     * @return The exception to be thrown
+     */
+    IOException formatError (String message, long offset) {
+        return new IOException("JSON: " + message + " at offset " + offset);
+    }
+
+    @Override
+    public void close () throws IOException {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+}
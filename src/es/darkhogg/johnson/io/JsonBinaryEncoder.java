@@ -0,0 +1,393 @@
+package es.darkhogg.johnson.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+
+/**
+ * An encoder that writes the binary format described in {@link JsonBinaryFormat} to an {@link OutputStream}.
+ * <p>
+ * The grammar is still checked by {@link JsonWriter}, which calls this encoder instead of its text sink. Since arrays
+ * and objects are preceded by the length of their contents, they are kept in an internal buffer, which grows as
+ * needed, until they are complete. Complete top-level values are passed to the stream when the buffer fills up and on
+ * calls to {@link #drain}, {@link #flush} and {@link #close}.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+final class JsonBinaryEncoder implements Closeable, Flushable {
+
+    /** Initial size of the byte buffer */
+    private static final int BUFFER_SIZE = 32768;
+
+    /** Initial depth of the stack of open containers */
+    private static final int INITIAL_DEPTH = 16;
+
+    /** Underlying stream */
+    private final OutputStream stream;
+
+    /** Strings shared with the reader, or <tt>null</tt> */
+    private final JsonKeySet dictionary;
+
+    /** Byte buffer */
+    private byte[] buffer = new byte[BUFFER_SIZE];
+
+    /** Number of bytes in the buffer */
+    private int count;
+
+    /** Number of bytes in the buffer that belong to complete top-level values */
+    private int complete;
+
+    /** Position in the buffer of the contents of every open array and object */
+    private int[] starts = new int[INITIAL_DEPTH];
+
+    /** Number of open arrays and objects */
+    private int depth;
+
+    /**
+     * Creates an encoder that writes to the given stream.
+     *
+     * @param stream Stream used for this encoder
+     * @param dictionary Strings shared with the reader, or <tt>null</tt>
+     */
+    JsonBinaryEncoder (OutputStream stream, JsonKeySet dictionary) {
+        this.stream = stream;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Makes room for the given number of bytes in the buffer, passing complete values to the stream or growing the
+     * buffer if necessary.
+     *
+     * @param length Number of bytes needed
+     * @throws IOException If an I/O error happens
+     */
+    private void ensure (int length) throws IOException {
+        if (count + length > buffer.length) {
+            drain();
+            if (count + length > buffer.length) {
+                byte[] newBuffer = new byte[Math.max(count + length, buffer.length * 2)];
+                System.arraycopy(buffer, 0, newBuffer, 0, count);
+                buffer = newBuffer;
+            }
+        }
+    }
+
+    /** Marks the end of a value, which completes a top-level value if no array or object is open. */
+    private void valueEnd () {
+        if (depth == 0) {
+            complete = count;
+        }
+    }
+
+    /**
+     * @param value A non-negative integer
+     * @return The number of bytes of the variable length encoding of the integer
+     */
+    private static int varintSize (long value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Writes a variable length integer at the given position of the buffer, which must have room for it.
+     *
+     * @param value Integer to write
+     * @param position Position of the first byte
+     * @return The position that follows the last byte
+     */
+    private int putVarint (long value, int position) {
+        final byte[] buf = buffer;
+        int p = position;
+        while ((value & ~0x7FL) != 0) {
+            buf[p++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[p++] = (byte) value;
+        return p;
+    }
+
+    /**
+     * Writes a tag followed by a variable length integer.
+     *
+     * @param tag Tag to write
+     * @param value Integer to write after the tag
+     * @throws IOException If an I/O error happens
+     */
+    private void writeTagged (int tag, long value) throws IOException {
+        ensure(11);
+        buffer[count] = (byte) tag;
+        count = putVarint(value, count + 1);
+    }
+
+    /**
+     * Writes a <tt>null</tt> value.
+     *
+     * @throws IOException If an I/O error happens
+     */
+    void writeNull () throws IOException {
+        ensure(1);
+        buffer[count++] = JsonBinaryFormat.TAG_NULL;
+        valueEnd();
+    }
+
+    /**
+     * Writes a boolean value.
+     *
+     * @param bool Value to write
+     * @throws IOException If an I/O error happens
+     */
+    void writeBoolean (boolean bool) throws IOException {
+        ensure(1);
+        buffer[count++] = (byte) (bool ? JsonBinaryFormat.TAG_TRUE : JsonBinaryFormat.TAG_FALSE);
+        valueEnd();
+    }
+
+    /**
+     * Writes an integer.
+     *
+     * @param number Value to write
+     * @throws IOException If an I/O error happens
+     */
+    void writeLong (long number) throws IOException {
+        if (number >= JsonBinaryFormat.MIN_SMALL_INTEGER && number <= JsonBinaryFormat.MAX_SMALL_INTEGER) {
+            ensure(1);
+            buffer[count++] = (byte) (JsonBinaryFormat.TAG_SMALL_INTEGER + number - JsonBinaryFormat.MIN_SMALL_INTEGER);
+        } else {
+            writeTagged(JsonBinaryFormat.TAG_INTEGER, (number << 1) ^ (number >> 63));
+        }
+        valueEnd();
+    }
+
+    /**
+     * Writes a finite <tt>double</tt> value.
+     *
+     * @param number Value to write
+     * @throws IOException If an I/O error happens
+     */
+    void writeDouble (double number) throws IOException {
+        ensure(9);
+        buffer[count++] = JsonBinaryFormat.TAG_DOUBLE;
+        long bits = Double.doubleToLongBits(number);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[count++] = (byte) (bits >>> shift);
+        }
+        valueEnd();
+    }
+
+    /**
+     * Writes a finite <tt>float</tt> value.
+     *
+     * @param number Value to write
+     * @throws IOException If an I/O error happens
+     */
+    void writeFloat (float number) throws IOException {
+        ensure(5);
+        buffer[count++] = JsonBinaryFormat.TAG_FLOAT;
+        int bits = Float.floatToIntBits(number);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            buffer[count++] = (byte) (bits >>> shift);
+        }
+        valueEnd();
+    }
+
+    /**
+     * Writes a number as text.
+     *
+     * @param text Text of the number, which must be a valid JSON number
+     * @throws IOException If an I/O error happens
+     */
+    void writeDecimal (String text) throws IOException {
+        writeText(JsonBinaryFormat.TAG_DECIMAL, text);
+    }
+
+    /**
+     * Writes a <tt>BigDecimal</tt> as text, under a tag that makes it be read back as a <tt>BigDecimal</tt> with the
+     * same scale.
+     *
+     * @param number Value to write
+     * @throws IOException If an I/O error happens
+     */
+    void writeBigDecimal (BigDecimal number) throws IOException {
+        writeText(JsonBinaryFormat.TAG_BIG_DECIMAL, number.toString());
+    }
+
+    /**
+     * Writes a tag followed by the length of an ASCII text and the text itself.
+     *
+     * @param tag Tag to write
+     * @param text Text to write
+     * @throws IOException If an I/O error happens
+     */
+    private void writeText (int tag, String text) throws IOException {
+        int length = text.length();
+        writeTagged(tag, length);
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            buffer[count++] = (byte) text.charAt(i);
+        }
+        valueEnd();
+    }
+
+    /**
+     * Writes a string value or key, as a reference to the dictionary if it is in it.
+     *
+     * @param string String to write
+     * @throws IOException If an I/O error happens
+     */
+    void writeString (String string) throws IOException {
+        int index = dictionary == null ? -1 : dictionary.indexOf(string);
+        if (index >= 0) {
+            if (index <= JsonBinaryFormat.MAX_SHORT_SHARED) {
+                ensure(1);
+                buffer[count++] = (byte) (JsonBinaryFormat.TAG_SHORT_SHARED + index);
+            } else {
+                writeTagged(JsonBinaryFormat.TAG_SHARED, index);
+            }
+            valueEnd();
+            return;
+        }
+
+        int chars = string.length();
+        int length = chars;
+        for (int i = 0; i < chars; i++) {
+            char chr = string.charAt(i);
+            if (chr >= 0x80) {
+                if (chr < 0x800) {
+                    length++;
+                } else if (Character.isHighSurrogate(chr) && i + 1 < chars
+                    && Character.isLowSurrogate(string.charAt(i + 1)))
+                {
+                    length += 2;
+                    i++;
+                } else {
+                    length += 2;
+                }
+            }
+        }
+
+        if (length <= JsonBinaryFormat.MAX_SHORT_STRING) {
+            ensure(1 + length);
+            buffer[count++] = (byte) (JsonBinaryFormat.TAG_SHORT_STRING + length);
+        } else {
+            writeTagged(JsonBinaryFormat.TAG_STRING, length);
+            ensure(length);
+        }
+
+        final byte[] buf = buffer;
+        int p = count;
+        for (int i = 0; i < chars; i++) {
+            char chr = string.charAt(i);
+            if (chr < 0x80) {
+                buf[p++] = (byte) chr;
+            } else if (chr < 0x800) {
+                buf[p++] = (byte) (0xC0 | (chr >> 6));
+                buf[p++] = (byte) (0x80 | (chr & 0x3F));
+            } else if (Character.isHighSurrogate(chr) && i + 1 < chars
+                && Character.isLowSurrogate(string.charAt(i + 1)))
+            {
+                int cp = Character.toCodePoint(chr, string.charAt(++i));
+                buf[p++] = (byte) (0xF0 | (cp >> 18));
+                buf[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[p++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                buf[p++] = (byte) (0xE0 | (chr >> 12));
+                buf[p++] = (byte) (0x80 | ((chr >> 6) & 0x3F));
+                buf[p++] = (byte) (0x80 | (chr & 0x3F));
+            }
+        }
+        count = p;
+        valueEnd();
+    }
+
+    /**
+     * Begins an array or object.
+     *
+     * @param tag Either {@link JsonBinaryFormat#TAG_ARRAY} or {@link JsonBinaryFormat#TAG_OBJECT}
+     * @throws IOException If an I/O error happens
+     */
+    void beginContainer (int tag) throws IOException {
+        ensure(2);
+        buffer[count++] = (byte) tag;
+        // Room for the length of a short container, moved later if it is longer
+        buffer[count++] = 0;
+
+        if (depth == starts.length) {
+            int[] newStarts = new int[depth * 2];
+            System.arraycopy(starts, 0, newStarts, 0, depth);
+            starts = newStarts;
+        }
+        starts[depth++] = count;
+    }
+
+    /**
+     * Ends the innermost open array or object, writing the length of its contents before them.
+     *
+     * @throws IOException If an I/O error happens
+     */
+    void endContainer () throws IOException {
+        int start = starts[depth - 1];
+        int length = count - start;
+        int extra = varintSize(length) - 1;
+        if (extra > 0) {
+            ensure(extra);
+            start = starts[depth - 1];
+            System.arraycopy(buffer, start, buffer, start + extra, length);
+            count += extra;
+        }
+        putVarint(length, start - 1);
+        depth--;
+        valueEnd();
+    }
+
+    /**
+     * Passes all complete top-level values to the stream.
+     *
+     * @throws IOException If an I/O error happens
+     */
+    void drain () throws IOException {
+        if (complete == 0) {
+            return;
+        }
+
+        stream.write(buffer, 0, complete);
+        System.arraycopy(buffer, complete, buffer, 0, count - complete);
+        for (int i = 0; i < depth; i++) {
+            starts[i] -= complete;
+        }
+        count -= complete;
+        complete = 0;
+    }
+
+    /**
+     * Passes all complete top-level values to the stream, then flushes it. Incomplete values are kept until they are
+     * complete.
+     *
+     * @throws IOException If an I/O error happens
+     */
+    @Override
+    public void flush () throws IOException {
+        drain();
+        stream.flush();
+    }
+
+    /**
+     * Passes all complete top-level values to the stream, then closes it. Incomplete values are discarded.
+     *
+     * @throws IOException If an I/O error happens
+     */
+    @Override
+    public void close () throws IOException {
+        try {
+            drain();
+        } finally {
+            stream.close();
+        }
+    }
+}
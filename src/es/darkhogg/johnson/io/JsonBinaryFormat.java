@@ -0,0 +1,91 @@
+package es.darkhogg.johnson.io;
+
+/**
+ * Constants of the binary format written by {@link JsonBinaryEncoder} and read by {@link JsonBinaryDecoder}.
+ * <p>
+ * Every value starts with a tag byte, followed by its contents:
+ * <ul>
+ * <li><tt>null</tt>, <tt>false</tt> and <tt>true</tt> have no contents.</li>
+ * <li>Integers from -64 to 63 are stored in the tag itself. Other integers in the <tt>long</tt> range are stored as a
+ * zig-zag encoded variable length integer of 7 bits per byte, least significant group first.</li>
+ * <li><tt>double</tt> and <tt>float</tt> values are stored as their 8 or 4 IEEE 754 bytes, most significant first.</li>
+ * <li><tt>BigDecimal</tt> values are stored as their JSON text, preceded by its length in bytes, under a tag of their
+ * own, so that they are read back as a <tt>BigDecimal</tt> with the same scale.</li>
+ * <li>Any other number is stored as its JSON text, preceded by its length in bytes.</li>
+ * <li>Strings are stored as UTF-8, preceded by their length in bytes. Strings of up to 31 bytes store their length in
+ * the tag. Unpaired surrogates are encoded as three bytes, so every Java string is preserved.</li>
+ * <li>Strings found in the dictionary shared by the writer and the reader are stored as their index in it. Indexes
+ * below 64 are stored in the tag.</li>
+ * <li>Arrays and objects are stored as the length in bytes of their contents, followed by their elements or by their
+ * keys and values. Keys are stored as strings.</li>
+ * </ul>
+ * All lengths and indexes are variable length integers as described above, without the zig-zag encoding. Since every
+ * array, object and string is preceded by its length, a reader can skip them without reading their contents.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+final class JsonBinaryFormat {
+
+    /** Tag of <tt>null</tt> values */
+    static final int TAG_NULL = 0x00;
+
+    /** Tag of <tt>false</tt> values */
+    static final int TAG_FALSE = 0x01;
+
+    /** Tag of <tt>true</tt> values */
+    static final int TAG_TRUE = 0x02;
+
+    /** Tag of integers stored as a variable length integer */
+    static final int TAG_INTEGER = 0x03;
+
+    /** Tag of <tt>double</tt> values */
+    static final int TAG_DOUBLE = 0x04;
+
+    /** Tag of <tt>float</tt> values */
+    static final int TAG_FLOAT = 0x05;
+
+    /** Tag of numbers stored as text */
+    static final int TAG_DECIMAL = 0x06;
+
+    /** Tag of strings with their length stored after the tag */
+    static final int TAG_STRING = 0x07;
+
+    /** Tag of strings of the dictionary with their index stored after the tag */
+    static final int TAG_SHARED = 0x08;
+
+    /** Tag of arrays */
+    static final int TAG_ARRAY = 0x09;
+
+    /** Tag of objects */
+    static final int TAG_OBJECT = 0x0A;
+
+    /** Tag of numbers stored as text that are always read as a <tt>BigDecimal</tt> */
+    static final int TAG_BIG_DECIMAL = 0x0B;
+
+    /** First tag of strings with their length stored in the tag */
+    static final int TAG_SHORT_STRING = 0x20;
+
+    /** First tag of strings of the dictionary with their index stored in the tag */
+    static final int TAG_SHORT_SHARED = 0x40;
+
+    /** First tag of integers stored in the tag */
+    static final int TAG_SMALL_INTEGER = 0x80;
+
+    /** Maximum length of the strings with their length stored in the tag */
+    static final int MAX_SHORT_STRING = 0x1F;
+
+    /** Maximum index of the dictionary strings with their index stored in the tag */
+    static final int MAX_SHORT_SHARED = 0x3F;
+
+    /** Smallest integer stored in the tag */
+    static final int MIN_SMALL_INTEGER = -64;
+
+    /** Largest integer stored in the tag */
+    static final int MAX_SMALL_INTEGER = 63;
+
+    /** Not instantiable */
+    private JsonBinaryFormat () {
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,397 @@
+package es.darkhogg.johnson.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A lexer that scans UTF-8 encoded bytes directly, without decoding them to characters first.
+ * <p>
+ * Structural characters, literals and numbers are scanned as raw ASCII bytes, and UTF-8 is only decoded inside string
+ * tokens. Input is consumed as a sequence of {@link ByteBuffer} windows provided by subclasses through {@link #fill}.
+ * Whitespace and plain string runs are scanned eight bytes at a time by {@link JsonByteScanner}, so windows must use
+ * big-endian byte order.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+abstract class JsonByteLexer extends JsonLexer {
+
+    /** Current input window */
+    ByteBuffer buffer;
+
+    /** Position of the next byte to read in the window */
+    int pos;
+
+    /** Limit of the valid bytes in the window */
+    int limit;
+
+    /** Offset in the input of the index <tt>0</tt> of the current window */
+    long bufferOffset;
+
+    /**
+     * Advances to the next input window. Must be called only when all bytes of the current window have been consumed.
+     * <p>
+     * Implementations must update {@link #buffer}, {@link #pos}, {@link #limit} and {@link #bufferOffset}.
+     *
+     * @return Whether new bytes are available
+     * @throws IOException If an I/O error happens
+     */
+    abstract boolean fill () throws IOException;
+
+    @Override
+    final int peek () throws IOException {
+        while (true) {
+            int p = JsonByteScanner.skipWhitespace(buffer, pos, limit);
+            pos = p;
+            if (p < limit) {
+                return buffer.get(p) & 0xFF;
+            }
+
+            if (!fill()) {
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    final void skip () {
+        pos++;
+    }
+
+    @Override
+    final int readChar () throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer.get(pos++) & 0xFF;
+    }
+
+    @Override
+    final void readLiteral (String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Expecting '" + literal + "'", -1);
+            }
+            int chr = buffer.get(pos) & 0xFF;
+            if (chr != literal.charAt(i)) {
+                throw syntaxError("Expecting '" + literal + "'", chr);
+            }
+            pos++;
+        }
+    }
+
+    @Override
+    final void readString () throws IOException {
+        scratchLength = 0;
+
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Unterminated string", -1);
+            }
+
+            // Find and copy the run of plain ASCII characters in bulk
+            final ByteBuffer buf = buffer;
+            final int lim = limit;
+            int start = pos;
+            int p = JsonByteScanner.scanAscii(buf, start, lim);
+            int run = p - start;
+            if (run > 0) {
+                if (scratchLength + run > scratch.length) {
+                    growScratch(scratchLength + run);
+                }
+                JsonByteScanner.copyAscii(buf, start, p, scratch, scratchLength);
+                scratchLength += run;
+            }
+            pos = p;
+
+            if (p < lim) {
+                byte chr = buf.get(p);
+                pos++;
+                if (chr == '"') {
+                    setToken(scratch, 0, scratchLength);
+                    return;
+                } else if (chr == '\\') {
+                    appendScratch(readEscape());
+                } else if (chr < 0) {
+                    decodeUtf8(chr & 0xFF);
+                } else {
+                    pos--;
+                    throw syntaxError("Unescaped control character", chr);
+                }
+            }
+        }
+    }
+
+    @Override
+    final void skipString () throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Unterminated string", -1);
+            }
+
+            final int lim = limit;
+            int p = JsonByteScanner.scanString(buffer, pos, lim);
+            pos = p;
+
+            if (p < lim) {
+                byte chr = buffer.get(p);
+                if (chr == '"') {
+                    pos++;
+                    return;
+                }
+                if (chr == '\\') {
+                    pos++;
+                    readEscape();
+                } else {
+                    throw syntaxError("Unescaped control character", chr);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decodes a multi-byte UTF-8 sequence whose leading byte has already been consumed, appending the resulting
+     * characters to the scratch buffer.
+     *
+     * @param lead Leading byte of the sequence
+     * @throws IOException If an I/O error happens or the sequence is not valid UTF-8
+     */
+    private void decodeUtf8 (int lead) throws IOException {
+        int codePoint;
+        int minimum;
+        int continuations;
+
+        if (lead >= 0xC2 && lead <= 0xDF) {
+            codePoint = lead & 0x1F;
+            minimum = 0x80;
+            continuations = 1;
+        } else if (lead >= 0xE0 && lead <= 0xEF) {
+            codePoint = lead & 0x0F;
+            minimum = 0x800;
+            continuations = 2;
+        } else if (lead >= 0xF0 && lead <= 0xF4) {
+            codePoint = lead & 0x07;
+            minimum = 0x10000;
+            continuations = 3;
+        } else {
+            throw syntaxError("Invalid UTF-8 sequence", lead);
+        }
+
+        for (int i = 0; i < continuations; i++) {
+            int cont = readChar();
+            if ((cont & 0xC0) != 0x80) {
+                throw syntaxError("Invalid UTF-8 sequence", cont);
+            }
+            codePoint = (codePoint << 6) | (cont & 0x3F);
+        }
+
+        if (codePoint < minimum || codePoint > Character.MAX_CODE_POINT
+            || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE))
+        {
+            throw syntaxError("Invalid UTF-8 sequence", lead);
+        }
+
+        if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            int offset = codePoint - Character.MIN_SUPPLEMENTARY_CODE_POINT;
+            appendScratch((char) (Character.MIN_HIGH_SURROGATE + (offset >>> 10)));
+            appendScratch((char) (Character.MIN_LOW_SURROGATE + (offset & 0x3FF)));
+        } else {
+            appendScratch((char) codePoint);
+        }
+    }
+
+    @Override
+    final void readNumber () throws IOException {
+        boolean integral = true;
+        int numState = NUM_START;
+        scratchLength = 0;
+
+        while (pos < limit || fill()) {
+            int chr = buffer.get(pos);
+            int nextState = nextNumberState(numState, chr);
+            if (nextState < 0) {
+                break;
+            }
+            if (nextState == NUM_DOT || nextState == NUM_EXP) {
+                integral = false;
+            }
+            numState = nextState;
+            appendScratch((char) chr);
+            pos++;
+        }
+
+        setToken(scratch, 0, scratchLength);
+        tokenIntegral = integral;
+
+        checkNumberEnd(numState, pos < limit ? buffer.get(pos) & 0xFF : -1);
+    }
+
+    @Override
+    final long offset () {
+        return bufferOffset + pos;
+    }
+
+    /**
+     * A byte lexer reading from a single, already available, buffer.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    static final class FromBuffer extends JsonByteLexer {
+
+        /**
+         * Creates a lexer that reads the remaining bytes of the given buffer. Neither the position nor the byte order
+         * of the buffer are modified.
+         *
+         * @param buffer Buffer to read
+         */
+        FromBuffer (ByteBuffer buffer) {
+            this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+            this.pos = buffer.position();
+            this.limit = buffer.limit();
+            this.bufferOffset = -pos;
+        }
+
+        /**
+         * Moves this lexer to the given offset of the buffer.
+         *
+         * @param offset Offset of the next byte to read, relative to the initial position of the buffer
+         */
+        void seek (long offset) {
+            pos = (int) (offset - bufferOffset);
+        }
+
+        @Override
+        boolean fill () {
+            return false;
+        }
+
+        @Override
+        public void close () {
+            // Nothing to close
+        }
+    }
+
+    /**
+     * A byte lexer reading from an {@link InputStream} into a reusable buffer.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    static final class FromStream extends JsonByteLexer {
+
+        /** Size of the byte buffer */
+        private static final int BUFFER_SIZE = 32768;
+
+        /** Underlying stream */
+        private final InputStream stream;
+
+        /** Backing array of the buffer */
+        private final byte[] array = new byte[BUFFER_SIZE];
+
+        /**
+         * Creates a lexer that reads from the given stream.
+         *
+         * @param stream Stream to read
+         */
+        FromStream (InputStream stream) {
+            this.stream = stream;
+            this.buffer = ByteBuffer.wrap(array);
+        }
+
+        @Override
+        boolean fill () throws IOException {
+            bufferOffset += limit;
+            pos = 0;
+            limit = 0;
+
+            int read;
+            do {
+                read = stream.read(array, 0, array.length);
+            } while (read == 0);
+
+            if (read < 0) {
+                return false;
+            }
+
+            limit = read;
+            return true;
+        }
+
+        @Override
+        public void close () throws IOException {
+            stream.close();
+        }
+    }
+
+    /**
+     * A byte lexer reading from a file mapped in memory, one window at a time.
+     * <p>
+     * Each window is mapped independently, so tokens crossing a window boundary are copied to the scratch buffer just
+     * like tokens crossing a buffer refill of a stream.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    static final class FromChannel extends JsonByteLexer {
+
+        /** Underlying file channel */
+        private final FileChannel channel;
+
+        /** Size of each mapped window */
+        private final int windowSize;
+
+        /** End of the mapped region */
+        private final long end;
+
+        /** Offset in the file of the next window to map */
+        private long nextWindow;
+
+        /** Offset in the file of the first byte to read */
+        private final long start;
+
+        /**
+         * Creates a lexer that maps the given channel from its current position to its end.
+         *
+         * @param channel Channel to map
+         * @param windowSize Maximum size of each mapped window
+         * @throws IOException If an I/O error happens
+         */
+        FromChannel (FileChannel channel, int windowSize) throws IOException {
+            this.channel = channel;
+            this.windowSize = windowSize;
+            this.start = channel.position();
+            this.end = channel.size();
+            this.nextWindow = start;
+            this.bufferOffset = -start;
+        }
+
+        @Override
+        boolean fill () throws IOException {
+            if (nextWindow >= end) {
+                return false;
+            }
+
+            int size = (int) Math.min(windowSize, end - nextWindow);
+
+            // Release the previous window before mapping the next one
+            buffer = null;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, nextWindow, size);
+            bufferOffset = nextWindow - start;
+            pos = 0;
+            limit = size;
+
+            nextWindow += size;
+            return true;
+        }
+
+        @Override
+        public void close () throws IOException {
+            buffer = null;
+            channel.close();
+        }
+    }
+}
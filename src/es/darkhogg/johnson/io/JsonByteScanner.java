@@ -0,0 +1,218 @@
+package es.darkhogg.johnson.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Scanning primitives used by {@link JsonByteLexer} to find the end of plain string runs and whitespace runs.
+ * <p>
+ * Bytes are examined eight at a time by reading them as a single big-endian <tt>long</tt> and computing, without
+ * branches, a word with the high bit set on every byte that stops the scan. All masks are computed exactly, without
+ * carries crossing byte boundaries, so the first stopping byte is always the most significant marked byte. The last
+ * bytes of a window, when fewer than eight remain, are examined one at a time.
+ * <p>
+ * All buffers passed to this class must use big-endian byte order.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+final class JsonByteScanner {
+
+    /** A word with the lowest 7 bits of every byte set */
+    private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+
+    /** A word with the highest bit of every byte set */
+    private static final long HIGH = 0x8080808080808080L;
+
+    /** A word with every byte set to <tt>'"'</tt> */
+    private static final long QUOTES = 0x2222222222222222L;
+
+    /** A word with every byte set to <tt>'\\'</tt> */
+    private static final long BACKSLASHES = 0x5C5C5C5C5C5C5C5CL;
+
+    /** A word with every byte set to <tt>0x60</tt>, which carries into the high bit only for bytes <tt>&gt;= 0x20</tt> */
+    private static final long CONTROL_BIAS = 0x6060606060606060L;
+
+    /** A word with every byte set to <tt>' '</tt> */
+    private static final long SPACES = 0x2020202020202020L;
+
+    /** A word with every byte set to <tt>'\n'</tt> */
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+
+    /** A word with every byte set to <tt>'\r'</tt> */
+    private static final long RETURNS = 0x0D0D0D0D0D0D0D0DL;
+
+    /** A word with every byte set to <tt>'\t'</tt> */
+    private static final long TABS = 0x0909090909090909L;
+
+    private JsonByteScanner () {
+        throw new AssertionError();
+    }
+
+    /**
+     * @param word A word
+     * @return A word with the high bit set on every zero byte of <tt>word</tt>
+     */
+    private static long zeroBytes (long word) {
+        return ~(((word & LOW7) + LOW7) | word | LOW7);
+    }
+
+    /**
+     * @param word A word
+     * @return A word with the high bit set on every byte of <tt>word</tt> lower than <tt>0x20</tt> or higher than
+     *         <tt>0x7F</tt>
+     */
+    private static long controlOrNonAsciiBytes (long word) {
+        return (~((word & LOW7) + CONTROL_BIAS) | word) & HIGH;
+    }
+
+    /**
+     * @param word A word
+     * @return A word with the high bit set on every byte of <tt>word</tt> lower than <tt>0x20</tt>
+     */
+    private static long controlBytes (long word) {
+        return ~((word & LOW7) + CONTROL_BIAS) & ~word & HIGH;
+    }
+
+    /**
+     * @param mask A non-zero mask with the high bit set on some bytes
+     * @return The index of the first marked byte
+     */
+    private static int firstMarked (long mask) {
+        return Long.numberOfLeadingZeros(mask) >>> 3;
+    }
+
+    /**
+     * Finds the end of a run of printable ASCII string characters, that is, the first byte that is a quote, a
+     * backslash, a control character or part of a non-ASCII UTF-8 sequence.
+     *
+     * @param buf Buffer to scan
+     * @param pos Position of the first byte to scan
+     * @param limit Limit of the bytes to scan
+     * @return Position of the first byte that ends the run, or <tt>limit</tt> if none does
+     */
+    static int scanAscii (ByteBuffer buf, int pos, int limit) {
+        int p = pos;
+        while (p <= limit - 8) {
+            long word = buf.getLong(p);
+            long mask = zeroBytes(word ^ QUOTES) | zeroBytes(word ^ BACKSLASHES) | controlOrNonAsciiBytes(word);
+            if (mask != 0) {
+                return p + firstMarked(mask);
+            }
+            p += 8;
+        }
+
+        for (; p < limit; p++) {
+            byte chr = buf.get(p);
+            if (chr == '"' || chr == '\\' || chr < 0x20) {
+                break;
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Finds the end of a run of string bytes that need no validation beyond UTF-8 decoding, that is, the first byte
+     * that is a quote, a backslash or a control character.
+     *
+     * @param buf Buffer to scan
+     * @param pos Position of the first byte to scan
+     * @param limit Limit of the bytes to scan
+     * @return Position of the first byte that ends the run, or <tt>limit</tt> if none does
+     */
+    static int scanString (ByteBuffer buf, int pos, int limit) {
+        int p = pos;
+        while (p <= limit - 8) {
+            long word = buf.getLong(p);
+            long mask = zeroBytes(word ^ QUOTES) | zeroBytes(word ^ BACKSLASHES) | controlBytes(word);
+            if (mask != 0) {
+                return p + firstMarked(mask);
+            }
+            p += 8;
+        }
+
+        for (; p < limit; p++) {
+            byte chr = buf.get(p);
+            if (chr == '"' || chr == '\\' || (chr & 0xE0) == 0) {
+                break;
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Finds the end of a run of JSON whitespace.
+     *
+     * @param buf Buffer to scan
+     * @param pos Position of the first byte to scan
+     * @param limit Limit of the bytes to scan
+     * @return Position of the first non-whitespace byte, or <tt>limit</tt> if there is none
+     */
+    static int skipWhitespace (ByteBuffer buf, int pos, int limit) {
+        int p = pos;
+
+        // Most runs are a single space or none at all, so check a couple of bytes before going wide
+        for (int n = 0; n < 2 && p < limit; n++, p++) {
+            if (!isWhitespace(buf.get(p))) {
+                return p;
+            }
+        }
+
+        while (p <= limit - 8) {
+            long word = buf.getLong(p);
+            long space =
+                zeroBytes(word ^ SPACES) | zeroBytes(word ^ NEWLINES) | zeroBytes(word ^ RETURNS)
+                    | zeroBytes(word ^ TABS);
+            long mask = ~space & HIGH;
+            if (mask != 0) {
+                return p + firstMarked(mask);
+            }
+            p += 8;
+        }
+
+        while (p < limit && isWhitespace(buf.get(p))) {
+            p++;
+        }
+        return p;
+    }
+
+    /**
+     * @param chr A byte
+     * @return Whether the byte is JSON whitespace
+     */
+    private static boolean isWhitespace (byte chr) {
+        return chr == ' ' || chr == '\n' || chr == '\r' || chr == '\t';
+    }
+
+    /**
+     * Copies a run of ASCII bytes, as found by {@link #scanAscii}, to a char array.
+     *
+     * @param buf Buffer to copy from
+     * @param pos Position of the first byte to copy
+     * @param end Position following the last byte to copy
+     * @param out Array to copy to
+     * @param offset Position in <tt>out</tt> of the first character
+     */
+    static void copyAscii (ByteBuffer buf, int pos, int end, char[] out, int offset) {
+        int o = offset;
+        if (buf.hasArray()) {
+            // A plain widening loop over the array, which the compiler can unroll and vectorize
+            final byte[] arr = buf.array();
+            int base = buf.arrayOffset();
+            for (int i = base + pos, e = base + end; i < e; i++) {
+                out[o++] = (char) arr[i];
+            }
+        } else {
+            int p = pos;
+            while (p <= end - 8) {
+                long word = buf.getLong(p);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    out[o++] = (char) ((word >>> shift) & 0x7F);
+                }
+                p += 8;
+            }
+            for (; p < end; p++) {
+                out[o++] = (char) buf.get(p);
+            }
+        }
+    }
+}
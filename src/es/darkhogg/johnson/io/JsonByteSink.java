@@ -0,0 +1,243 @@
+package es.darkhogg.johnson.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A sink that encodes its output as UTF-8 directly into a {@link ByteBuffer}, without an intermediate character
+ * encoder.
+ * <p>
+ * ASCII text, which includes all structural characters, literals and numbers, is written one byte per character
+ * without further checks. Unpaired surrogates, which UTF-8 cannot encode, are written as <tt>\\uXXXX</tt> escapes, so
+ * that every Java string is read back unchanged. Subclasses pass the filled buffer to their target through
+ * {@link #drain}.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+abstract class JsonByteSink extends JsonSink {
+
+    /** Size of the output buffer */
+    static final int BUFFER_SIZE = 16384;
+
+    /** Maximum number of bytes of a single encoded character, which is that of an escaped unpaired surrogate */
+    private static final int MAX_CHAR_BYTES = 6;
+
+    /** Output buffer */
+    final ByteBuffer buffer;
+
+    /** Position of the next byte to write in the buffer */
+    int pos;
+
+    /**
+     * Creates a sink that uses the given buffer.
+     *
+     * @param buffer Output buffer
+     */
+    JsonByteSink (ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    final void write (char chr) throws IOException {
+        if (pos == buffer.capacity()) {
+            drain();
+        }
+        buffer.put(pos++, (byte) chr);
+    }
+
+    @Override
+    final void writeRun (String text, int start, int end) throws IOException {
+        final ByteBuffer buf = buffer;
+        final int cap = buf.capacity();
+        int i = start;
+
+        while (i < end) {
+            if (pos == cap) {
+                drain();
+            }
+
+            // Copy as many ASCII characters as fit in the buffer
+            int p = pos;
+            int runEnd = Math.min(end, i + cap - p);
+            while (i < runEnd) {
+                char chr = text.charAt(i);
+                if (chr >= 0x80) {
+                    break;
+                }
+                buf.put(p++, (byte) chr);
+                i++;
+            }
+            pos = p;
+
+            if (i < runEnd) {
+                i = writeNonAscii(text, i, end);
+            }
+        }
+    }
+
+    /**
+     * Encodes the non-ASCII character, or surrogate pair, at the given position of a string.
+     *
+     * @param text String containing the character
+     * @param index Position of the character
+     * @param end Position following the last character that may be encoded
+     * @return Position of the character following the encoded one
+     * @throws IOException If an I/O error happens
+     */
+    private int writeNonAscii (String text, int index, int end) throws IOException {
+        if (buffer.capacity() - pos < MAX_CHAR_BYTES) {
+            drain();
+        }
+
+        final ByteBuffer buf = buffer;
+        int p = pos;
+        char chr = text.charAt(index);
+        int next = index + 1;
+
+        if (chr < 0x800) {
+            buf.put(p++, (byte) (0xC0 | (chr >> 6)));
+            buf.put(p++, (byte) (0x80 | (chr & 0x3F)));
+
+        } else if (chr < Character.MIN_SURROGATE || chr > Character.MAX_SURROGATE) {
+            buf.put(p++, (byte) (0xE0 | (chr >> 12)));
+            buf.put(p++, (byte) (0x80 | ((chr >> 6) & 0x3F)));
+            buf.put(p++, (byte) (0x80 | (chr & 0x3F)));
+
+        } else if (chr <= Character.MAX_HIGH_SURROGATE && next < end
+            && text.charAt(next) >= Character.MIN_LOW_SURROGATE && text.charAt(next) <= Character.MAX_LOW_SURROGATE)
+        {
+            int codePoint =
+                ((chr - Character.MIN_HIGH_SURROGATE) << 10) + (text.charAt(next) - Character.MIN_LOW_SURROGATE)
+                    + Character.MIN_SUPPLEMENTARY_CODE_POINT;
+            next++;
+            buf.put(p++, (byte) (0xF0 | (codePoint >> 18)));
+            buf.put(p++, (byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+            buf.put(p++, (byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            buf.put(p++, (byte) (0x80 | (codePoint & 0x3F)));
+
+        } else {
+            // Unpaired surrogate, only found inside strings, so escaped instead of lost
+            buf.put(p++, (byte) '\\');
+            buf.put(p++, (byte) 'u');
+            buf.put(p++, (byte) HEX_DIGITS[chr >>> 12]);
+            buf.put(p++, (byte) HEX_DIGITS[(chr >>> 8) & 0xF]);
+            buf.put(p++, (byte) HEX_DIGITS[(chr >>> 4) & 0xF]);
+            buf.put(p++, (byte) HEX_DIGITS[chr & 0xF]);
+        }
+
+        pos = p;
+        return next;
+    }
+
+    @Override
+    final void writeChars (char[] chars, int start, int end) throws IOException {
+        if (end - start > buffer.capacity() - pos) {
+            drain();
+        }
+
+        final ByteBuffer buf = buffer;
+        int p = pos;
+        for (int i = start; i < end; i++) {
+            buf.put(p++, (byte) chars[i]);
+        }
+        pos = p;
+    }
+
+    /**
+     * A byte sink writing to an {@link OutputStream} from a reusable array.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    static final class ToStream extends JsonByteSink {
+
+        /** Underlying stream */
+        private final OutputStream stream;
+
+        /**
+         * Creates a sink that writes to the given stream.
+         *
+         * @param stream Stream to write to
+         */
+        ToStream (OutputStream stream) {
+            super(ByteBuffer.wrap(new byte[BUFFER_SIZE]));
+            this.stream = stream;
+        }
+
+        @Override
+        void drain () throws IOException {
+            if (pos > 0) {
+                stream.write(buffer.array(), 0, pos);
+                pos = 0;
+            }
+        }
+
+        @Override
+        public void flush () throws IOException {
+            drain();
+            stream.flush();
+        }
+
+        @Override
+        public void close () throws IOException {
+            try {
+                drain();
+            } finally {
+                stream.close();
+            }
+        }
+    }
+
+    /**
+     * A byte sink writing to a {@link WritableByteChannel} from a reusable direct buffer, so that the channel does not
+     * need to copy the bytes again before writing them.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    static final class ToChannel extends JsonByteSink {
+
+        /** Underlying channel */
+        private final WritableByteChannel channel;
+
+        /**
+         * Creates a sink that writes to the given channel.
+         *
+         * @param channel Channel to write to
+         */
+        ToChannel (WritableByteChannel channel) {
+            super(ByteBuffer.allocateDirect(BUFFER_SIZE));
+            this.channel = channel;
+        }
+
+        @Override
+        void drain () throws IOException {
+            if (pos > 0) {
+                buffer.limit(pos);
+                buffer.position(0);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+                pos = 0;
+            }
+        }
+
+        @Override
+        public void flush () throws IOException {
+            drain();
+        }
+
+        @Override
+        public void close () throws IOException {
+            try {
+                drain();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package es.darkhogg.johnson.io;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A lexer that scans characters read from a {@link Reader} into a reusable buffer.
+ * <p>
+ * Strings with no escapes and numbers that are entirely contained in the buffer are referenced directly from it, so
+ * no copies are made for most tokens.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+final class JsonCharLexer extends JsonLexer {
+
+    /** Size of the character buffer */
+    private static final int BUFFER_SIZE = 16384;
+
+    /** Underlying reader */
+    private final Reader reader;
+
+    /** Character buffer */
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    /** Position of the next character to read in the buffer */
+    private int pos;
+
+    /** Number of valid characters in the buffer */
+    private int limit;
+
+    /** Offset in the stream of the first character of the buffer */
+    private long bufferOffset;
+
+    /**
+     * Creates a lexer that reads from the given reader.
+     *
+     * @param reader Reader used for this lexer
+     */
+    JsonCharLexer (Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Refills the buffer. Must be called only when all characters of the buffer have been consumed.
+     *
+     * @return Whether new characters were read
+     * @throws IOException If an I/O error happens
+     */
+    private boolean fill () throws IOException {
+        bufferOffset += limit;
+        pos = 0;
+        limit = 0;
+
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+
+        if (read < 0) {
+            return false;
+        }
+
+        limit = read;
+        return true;
+    }
+
+    @Override
+    int peek () throws IOException {
+        while (true) {
+            final char[] buf = buffer;
+            final int lim = limit;
+            int p = pos;
+
+            while (p < lim) {
+                char chr = buf[p];
+                if (chr != ' ' && chr != '\n' && chr != '\r' && chr != '\t') {
+                    pos = p;
+                    return chr;
+                }
+                p++;
+            }
+
+            pos = p;
+            if (!fill()) {
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    void skip () {
+        pos++;
+    }
+
+    @Override
+    int readChar () throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++];
+    }
+
+    @Override
+    void readLiteral (String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Expecting '" + literal + "'", -1);
+            }
+            char chr = buffer[pos];
+            if (chr != literal.charAt(i)) {
+                throw syntaxError("Expecting '" + literal + "'", chr);
+            }
+            pos++;
+        }
+    }
+
+    @Override
+    void readString () throws IOException {
+        final char[] buf = buffer;
+        int start = pos;
+        int p = start;
+
+        // Fast path: look for the closing quote in the buffer
+        while (p < limit) {
+            char chr = buf[p];
+            if (chr == '"') {
+                setToken(buf, start, p - start);
+                pos = p + 1;
+                return;
+            }
+            if (chr == '\\' || chr < 0x20) {
+                break;
+            }
+            p++;
+        }
+
+        // Slow path: decode into the scratch buffer
+        scratchLength = 0;
+        appendScratch(buf, start, p - start);
+        pos = p;
+
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Unterminated string", -1);
+            }
+
+            start = pos;
+            p = start;
+            while (p < limit) {
+                char chr = buf[p];
+                if (chr == '"' || chr == '\\' || chr < 0x20) {
+                    break;
+                }
+                p++;
+            }
+            appendScratch(buf, start, p - start);
+            pos = p;
+
+            if (p < limit) {
+                char chr = buf[p];
+                if (chr == '"') {
+                    pos++;
+                    setToken(scratch, 0, scratchLength);
+                    return;
+                }
+                if (chr == '\\') {
+                    pos++;
+                    appendScratch(readEscape());
+                } else {
+                    throw syntaxError("Unescaped control character", chr);
+                }
+            }
+        }
+    }
+
+    @Override
+    void skipString () throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Unterminated string", -1);
+            }
+
+            final char[] buf = buffer;
+            final int lim = limit;
+            int p = pos;
+            while (p < lim) {
+                char chr = buf[p];
+                if (chr == '"' || chr == '\\' || chr < 0x20) {
+                    break;
+                }
+                p++;
+            }
+            pos = p;
+
+            if (p < lim) {
+                char chr = buf[p];
+                if (chr == '"') {
+                    pos++;
+                    return;
+                }
+                if (chr == '\\') {
+                    pos++;
+                    readEscape();
+                } else {
+                    throw syntaxError("Unescaped control character", chr);
+                }
+            }
+        }
+    }
+
+    @Override
+    void readNumber () throws IOException {
+        final char[] buf = buffer;
+        boolean copied = false;
+        boolean integral = true;
+        int start = pos;
+        int numState = NUM_START;
+
+        while (true) {
+            if (pos == limit) {
+                if (!copied) {
+                    scratchLength = 0;
+                    copied = true;
+                }
+                appendScratch(buf, start, pos - start);
+                boolean filled = fill();
+                start = pos;
+                if (!filled) {
+                    break;
+                }
+            }
+
+            int nextState = nextNumberState(numState, buf[pos]);
+            if (nextState < 0) {
+                break;
+            }
+            if (nextState == NUM_DOT || nextState == NUM_EXP) {
+                integral = false;
+            }
+            numState = nextState;
+            pos++;
+        }
+
+        if (copied) {
+            appendScratch(buf, start, pos - start);
+            setToken(scratch, 0, scratchLength);
+        } else {
+            setToken(buf, start, pos - start);
+        }
+        tokenIntegral = integral;
+
+        checkNumberEnd(numState, pos < limit ? buf[pos] : -1);
+    }
+
+    @Override
+    long offset () {
+        return bufferOffset + pos;
+    }
+
+    @Override
+    public void close () throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,89 @@
+package es.darkhogg.johnson.io;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A sink that writes characters to a {@link Writer} through a reusable buffer.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+final class JsonCharSink extends JsonSink {
+
+    /** Size of the output buffer */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Underlying writer */
+    private final Writer writer;
+
+    /** Output buffer */
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    /** Number of characters in the output buffer */
+    private int length;
+
+    /**
+     * Creates a sink that writes to the given writer.
+     *
+     * @param writer Writer to write to
+     */
+    JsonCharSink (Writer writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    void write (char chr) throws IOException {
+        if (length == buffer.length) {
+            drain();
+        }
+        buffer[length++] = chr;
+    }
+
+    @Override
+    void writeRun (String text, int start, int end) throws IOException {
+        int count = end - start;
+        if (count > buffer.length - length) {
+            drain();
+            if (count > buffer.length) {
+                writer.write(text, start, count);
+                return;
+            }
+        }
+        text.getChars(start, end, buffer, length);
+        length += count;
+    }
+
+    @Override
+    void writeChars (char[] chars, int start, int end) throws IOException {
+        int count = end - start;
+        if (count > buffer.length - length) {
+            drain();
+        }
+        System.arraycopy(chars, start, buffer, length, count);
+        length += count;
+    }
+
+    @Override
+    void drain () throws IOException {
+        if (length > 0) {
+            writer.write(buffer, 0, length);
+            length = 0;
+        }
+    }
+
+    @Override
+    public void flush () throws IOException {
+        drain();
+        writer.flush();
+    }
+
+    @Override
+    public void close () throws IOException {
+        try {
+            drain();
+        } finally {
+            writer.close();
+        }
+    }
+}
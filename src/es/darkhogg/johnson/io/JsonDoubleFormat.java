@@ -0,0 +1,468 @@
+package es.darkhogg.johnson.io;
+
+import java.math.BigInteger;
+
+/**
+ * Formats <tt>double</tt> and <tt>float</tt> values with the shortest decimal representation that rounds back to the
+ * same value, using Raffaello Giulietti's <i>Schubfach</i> algorithm.
+ * <p>
+ * Among all decimals in the rounding interval of a value, the algorithm finds the ones with the fewest digits and
+ * picks the closest to the value, using only a few 64-bit multiplications against a table of 126-bit approximations
+ * of powers of ten. Results are laid out like {@link Double#toString(double)} and {@link Float#toString(float)} do:
+ * plain notation for magnitudes in <tt>[10<sup>-3</sup>, 10<sup>7</sup>)</tt> and computerized scientific notation
+ * otherwise, always with at least one digit after the decimal point. Only finite values are supported.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+final class JsonDoubleFormat {
+
+    /** Maximum number of characters of a formatted value */
+    static final int MAX_LENGTH = 24;
+
+    /** Minimum decimal exponent in the table */
+    private static final int K_MIN = -324;
+
+    /** Maximum decimal exponent in the table */
+    private static final int K_MAX = 292;
+
+    /** A mask for the lowest 63 bits */
+    private static final long MASK_63 = 0x7FFFFFFFFFFFFFFFL;
+
+    /** A mask for the lowest 32 bits */
+    private static final long MASK_32 = 0xFFFFFFFFL;
+
+    /** Precision of <tt>double</tt> values, in bits */
+    private static final int DOUBLE_P = 53;
+
+    /** Minimum binary exponent of the unit of <tt>double</tt> values */
+    private static final int DOUBLE_Q_MIN = -1074;
+
+    /** Smallest significand of normal <tt>double</tt> values */
+    private static final long DOUBLE_C_MIN = 1L << (DOUBLE_P - 1);
+
+    /** Subnormal <tt>double</tt> significands below this are scaled to get enough digits */
+    private static final long DOUBLE_C_TINY = 3;
+
+    /** Precision of <tt>float</tt> values, in bits */
+    private static final int FLOAT_P = 24;
+
+    /** Minimum binary exponent of the unit of <tt>float</tt> values */
+    private static final int FLOAT_Q_MIN = -149;
+
+    /** Smallest significand of normal <tt>float</tt> values */
+    private static final int FLOAT_C_MIN = 1 << (FLOAT_P - 1);
+
+    /** Subnormal <tt>float</tt> significands below this are scaled to get enough digits */
+    private static final int FLOAT_C_TINY = 8;
+
+    /** Highest 63 bits of <tt>g(k)</tt>, the 126-bit approximations of <tt>10<sup>-k</sup></tt> */
+    private static final long[] G1 = new long[K_MAX - K_MIN + 1];
+
+    /** Lowest 63 bits of <tt>g(k)</tt> */
+    private static final long[] G0 = new long[K_MAX - K_MIN + 1];
+
+    static {
+        // g(k) = floor(10^-k * 2^-r) + 1, with r chosen so that 2^125 <= g(k) < 2^126
+        BigInteger mask63 = BigInteger.valueOf(MASK_63);
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            int r = flog2pow10(-k) - 125;
+            BigInteger g;
+            if (k <= 0) {
+                BigInteger pow = BigInteger.TEN.pow(-k);
+                g = r >= 0 ? pow.shiftRight(r) : pow.shiftLeft(-r);
+            } else {
+                g = BigInteger.ONE.shiftLeft(-r).divide(BigInteger.TEN.pow(k));
+            }
+            g = g.add(BigInteger.ONE);
+
+            G1[k - K_MIN] = g.shiftRight(63).longValue();
+            G0[k - K_MIN] = g.and(mask63).longValue();
+        }
+    }
+
+    private JsonDoubleFormat () {
+        throw new AssertionError();
+    }
+
+    /**
+     * @param e An exponent, with <tt>|e| &lt;= 5456721</tt>
+     * @return <tt>floor(log10(2<sup>e</sup>))</tt>
+     */
+    private static int flog10pow2 (int e) {
+        return (int) (e * 661971961083L >> 41);
+    }
+
+    /**
+     * @param e An exponent, with <tt>|e| &lt;= 2759823</tt>
+     * @return <tt>floor(log10(3/4 * 2<sup>e</sup>))</tt>
+     */
+    private static int flog10threeQuartersPow2 (int e) {
+        return (int) (e * 661971961083L - 274743187321L >> 41);
+    }
+
+    /**
+     * @param e An exponent, with <tt>|e| &lt;= 1838394</tt>
+     * @return <tt>floor(log2(10<sup>e</sup>))</tt>
+     */
+    private static int flog2pow10 (int e) {
+        return (int) (e * 913124641741L >> 38);
+    }
+
+    /**
+     * @param x A value
+     * @param y A value
+     * @return The highest 64 bits of the 128-bit signed product of <tt>x</tt> and <tt>y</tt>
+     */
+    static long multiplyHigh (long x, long y) {
+        long x1 = x >> 32;
+        long x2 = x & MASK_32;
+        long y1 = y >> 32;
+        long y2 = y & MASK_32;
+
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = (t & MASK_32) + x2 * y1;
+        long z0 = t >> 32;
+
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+
+    /**
+     * Formats a finite <tt>double</tt> value.
+     *
+     * @param value Value to format
+     * @param buf Array to write the characters to, with room for at least {@link #MAX_LENGTH} characters
+     * @return Number of characters written
+     */
+    static int formatDouble (double value, char[] buf) {
+        long bits = Double.doubleToRawLongBits(value);
+        boolean negative = bits < 0;
+        long t = bits & (DOUBLE_C_MIN - 1);
+        int bq = (int) (bits >>> (DOUBLE_P - 1)) & 0x7FF;
+
+        if (bq != 0) {
+            // Normal value
+            int mq = -DOUBLE_Q_MIN + 1 - bq;
+            long c = DOUBLE_C_MIN | t;
+
+            // Integers are formatted directly
+            if (0 < mq && mq < DOUBLE_P) {
+                long f = c >> mq;
+                if (f << mq == c) {
+                    return toChars(buf, negative, f, 0);
+                }
+            }
+            return toDecimal(buf, negative, -mq, c, 0);
+        }
+
+        if (t != 0) {
+            // Subnormal value
+            return t < DOUBLE_C_TINY
+                ? toDecimal(buf, negative, DOUBLE_Q_MIN, 10 * t, -1) : toDecimal(buf, negative, DOUBLE_Q_MIN, t, 0);
+        }
+
+        return zero(buf, negative);
+    }
+
+    /**
+     * Finds the shortest decimal of a <tt>double</tt> value of the form <tt>c * 2<sup>q</sup></tt>.
+     *
+     * @param buf Array to write the characters to
+     * @param negative Whether the value is negative
+     * @param q Binary exponent
+     * @param c Significand
+     * @param dk Correction of the decimal exponent for scaled significands
+     * @return Number of characters written
+     */
+    private static int toDecimal (char[] buf, boolean negative, int q, long c, int dk) {
+        int out = (int) c & 1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+
+        // The rounding interval is asymmetric on powers of two
+        if (c != DOUBLE_C_MIN || q == DOUBLE_Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+
+        int h = q + flog2pow10(-k) + 2;
+        long g1 = G1[k - K_MIN];
+        long g0 = G0[k - K_MIN];
+
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+        if (s >= 100) {
+            // Try the candidates with one digit less first
+            long sp10 = s / 10 * 10;
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                return toChars(buf, negative, upin ? sp10 : tp10, k);
+            }
+        }
+
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            return toChars(buf, negative, uin ? s : t, k + dk);
+        }
+
+        // Both candidates are in the interval, pick the closest one or the even one on ties
+        long cmp = vb - (s + t << 1);
+        return toChars(buf, negative, cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk);
+    }
+
+    /**
+     * Computes the rounded-to-odd product of <tt>g</tt> and <tt>cp</tt>, scaled down by 2<sup>127</sup>.
+     *
+     * @param g1 Highest bits of <tt>g</tt>
+     * @param g0 Lowest bits of <tt>g</tt>
+     * @param cp Scaled significand
+     * @return The rounded product
+     */
+    private static long rop (long g1, long g0, long cp) {
+        long x1 = multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+    /**
+     * Formats a finite <tt>float</tt> value.
+     *
+     * @param value Value to format
+     * @param buf Array to write the characters to, with room for at least {@link #MAX_LENGTH} characters
+     * @return Number of characters written
+     */
+    static int formatFloat (float value, char[] buf) {
+        int bits = Float.floatToRawIntBits(value);
+        boolean negative = bits < 0;
+        int t = bits & (FLOAT_C_MIN - 1);
+        int bq = (bits >>> (FLOAT_P - 1)) & 0xFF;
+
+        if (bq != 0) {
+            // Normal value
+            int mq = -FLOAT_Q_MIN + 1 - bq;
+            int c = FLOAT_C_MIN | t;
+
+            // Integers are formatted directly
+            if (0 < mq && mq < FLOAT_P) {
+                int f = c >> mq;
+                if (f << mq == c) {
+                    return toChars(buf, negative, f, 0);
+                }
+            }
+            return toDecimal(buf, negative, -mq, c, 0);
+        }
+
+        if (t != 0) {
+            // Subnormal value
+            return t < FLOAT_C_TINY
+                ? toDecimal(buf, negative, FLOAT_Q_MIN, 10 * t, -1) : toDecimal(buf, negative, FLOAT_Q_MIN, t, 0);
+        }
+
+        return zero(buf, negative);
+    }
+
+    /**
+     * Finds the shortest decimal of a <tt>float</tt> value of the form <tt>c * 2<sup>q</sup></tt>.
+     *
+     * @param buf Array to write the characters to
+     * @param negative Whether the value is negative
+     * @param q Binary exponent
+     * @param c Significand
+     * @param dk Correction of the decimal exponent for scaled significands
+     * @return Number of characters written
+     */
+    private static int toDecimal (char[] buf, boolean negative, int q, int c, int dk) {
+        int out = c & 1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+
+        // The rounding interval is asymmetric on powers of two
+        if (c != FLOAT_C_MIN || q == FLOAT_Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+
+        int h = q + flog2pow10(-k) + 33;
+        long g = G1[k - K_MIN] + 1;
+
+        int vb = rop(g, cb << h);
+        int vbl = rop(g, cbl << h);
+        int vbr = rop(g, cbr << h);
+
+        int s = vb >> 2;
+        if (s >= 100) {
+            // Try the candidates with one digit less first
+            int sp10 = s / 10 * 10;
+            int tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                return toChars(buf, negative, upin ? sp10 : tp10, k);
+            }
+        }
+
+        int t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            return toChars(buf, negative, uin ? s : t, k + dk);
+        }
+
+        // Both candidates are in the interval, pick the closest one or the even one on ties
+        int cmp = vb - (s + t << 1);
+        return toChars(buf, negative, cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk);
+    }
+
+    /**
+     * Computes the rounded-to-odd product of <tt>g</tt> and <tt>cp</tt>, scaled down by 2<sup>95</sup>.
+     *
+     * @param g Highest bits of <tt>g</tt>, rounded up
+     * @param cp Scaled significand
+     * @return The rounded product
+     */
+    private static int rop (long g, long cp) {
+        long x1 = multiplyHigh(g, cp);
+        long vbp = x1 >>> 31;
+        return (int) (vbp | (x1 & MASK_32) + MASK_32 >>> 32);
+    }
+
+    /**
+     * Writes a zero.
+     *
+     * @param buf Array to write the characters to
+     * @param negative Whether the zero is negative
+     * @return Number of characters written
+     */
+    private static int zero (char[] buf, boolean negative) {
+        int pos = 0;
+        if (negative) {
+            buf[pos++] = '-';
+        }
+        buf[pos++] = '0';
+        buf[pos++] = '.';
+        buf[pos++] = '0';
+        return pos;
+    }
+
+    /**
+     * Writes the decimal <tt>f * 10<sup>e</sup></tt>.
+     *
+     * @param buf Array to write the characters to
+     * @param negative Whether the value is negative
+     * @param f Decimal significand, not zero
+     * @param e Decimal exponent
+     * @return Number of characters written
+     */
+    private static int toChars (char[] buf, boolean negative, long f, int e) {
+        int pos = 0;
+        if (negative) {
+            buf[pos++] = '-';
+        }
+
+        while (f % 10 == 0) {
+            f /= 10;
+            e++;
+        }
+
+        int n = 1;
+        for (long pow = 10; n < 19 && f >= pow; pow *= 10) {
+            n++;
+        }
+
+        // Decimal exponent of the first digit
+        int exp = e + n - 1;
+
+        if (exp >= 0 && exp < 7) {
+            // Plain notation, at least 1
+            if (n <= exp + 1) {
+                pos = putDigits(buf, pos, f, n, n);
+                for (int i = n; i <= exp; i++) {
+                    buf[pos++] = '0';
+                }
+                buf[pos++] = '.';
+                buf[pos++] = '0';
+            } else {
+                pos = putDigits(buf, pos, f, n, exp + 1);
+            }
+            return pos;
+        }
+
+        if (exp < 0 && exp >= -3) {
+            // Plain notation, less than 1
+            buf[pos++] = '0';
+            buf[pos++] = '.';
+            for (int i = -1; i > exp; i--) {
+                buf[pos++] = '0';
+            }
+            return putDigits(buf, pos, f, n, n);
+        }
+
+        // Scientific notation
+        if (n == 1) {
+            buf[pos++] = (char) ('0' + f);
+            buf[pos++] = '.';
+            buf[pos++] = '0';
+        } else {
+            pos = putDigits(buf, pos, f, n, 1);
+        }
+
+        buf[pos++] = 'E';
+        if (exp < 0) {
+            buf[pos++] = '-';
+            exp = -exp;
+        }
+        if (exp >= 100) {
+            buf[pos++] = (char) ('0' + exp / 100);
+            exp %= 100;
+            buf[pos++] = (char) ('0' + exp / 10);
+        } else if (exp >= 10) {
+            buf[pos++] = (char) ('0' + exp / 10);
+        }
+        buf[pos++] = (char) ('0' + exp % 10);
+        return pos;
+    }
+
+    /**
+     * Writes the digits of a number, optionally with a decimal point between them.
+     *
+     * @param buf Array to write the characters to
+     * @param pos Position of the first character
+     * @param f Number to write
+     * @param n Number of digits of <tt>f</tt>
+     * @param dot Number of digits before the decimal point, or <tt>n</tt> for no decimal point
+     * @return Position following the last character written
+     */
+    private static int putDigits (char[] buf, int pos, long f, int n, int dot) {
+        int end = pos + n + (dot < n ? 1 : 0);
+        int p = end;
+        for (int i = n - 1; i >= 0; i--) {
+            buf[--p] = (char) ('0' + f % 10);
+            f /= 10;
+            if (i == dot) {
+                buf[--p] = '.';
+            }
+        }
+        return end;
+    }
+}
@@ -0,0 +1,63 @@
+package es.darkhogg.johnson.io;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * An object key whose escaped form is computed once, so that it can be written by {@link JsonWriter#key(JsonKey)} any
+ * number of times without escaping it again.
+ * <p>
+ * The key is escaped once for every escape policy of {@link JsonWriter}, so a single instance can be used with any
+ * writer. Instances of this class are immutable and safe for use by multiple threads.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonKey {
+
+    /** The unescaped key */
+    private final String name;
+
+    /** Quoted and escaped key followed by a colon, for each escape policy */
+    private final String[] escaped = new String[3];
+
+    /**
+     * Creates a pre-escaped key.
+     *
+     * @param name The unescaped key
+     */
+    public JsonKey (String name) {
+        if (name == null) {
+            throw new NullPointerException("name");
+        }
+        this.name = name;
+
+        for (int policy = JsonWriter.ESCAPE_MINIMAL; policy <= JsonWriter.ESCAPE_HTML; policy++) {
+            StringWriter sw = new StringWriter(name.length() + 3);
+            try {
+                new JsonWriter(sw).setEscapePolicy(policy).value(name).flush();
+            } catch (IOException exc) {
+                throw new AssertionError(exc);
+            }
+            escaped[policy] = sw.append(':').toString();
+        }
+    }
+
+    /**
+     * @param policy One of the <tt>ESCAPE_*</tt> constants of {@link JsonWriter}
+     * @return The quoted and escaped key followed by a colon
+     */
+    String getEscaped (int policy) {
+        return escaped[policy];
+    }
+
+    /** @return The unescaped key */
+    public String getName () {
+        return name;
+    }
+
+    @Override
+    public String toString () {
+        return name;
+    }
+}
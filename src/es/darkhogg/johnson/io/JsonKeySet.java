@@ -0,0 +1,189 @@
+package es.darkhogg.johnson.io;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A fixed set of object keys, used by {@link JsonReader#getKeyIndex} to find which of them is the current key or string
+ * without creating a <tt>String</tt> for it.
+ * <p>
+ * Keys are placed in an open-addressed table by a multiplicative hash of their characters. When the set is created,
+ * several multipliers and table sizes are tried until one is found that places every key in a different slot, so that
+ * a lookup hashes the characters of the key token once and compares them against at most one key. If no such
+ * combination is found, colliding keys are placed in the following free slots.
+ * <p>
+ * Instances of this class are immutable and safe for use by multiple threads.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonKeySet {
+
+    /** Number of multipliers tried for every table size */
+    private static final int MAX_ATTEMPTS = 16;
+
+    /** Number of times the table size is doubled looking for a perfect hash */
+    private static final int MAX_GROWTH = 2;
+
+    /** The keys of this set, in the order they were given */
+    private final String[] keys;
+
+    /** Position in {@link #keys} plus one of the key in each slot, or zero for empty slots */
+    private final int[] slots;
+
+    /** Multiplier of the hash */
+    private final int multiplier;
+
+    /** Number of bits of the hash that are discarded to get a slot */
+    private final int shift;
+
+    /**
+     * Creates a set with the given keys.
+     *
+     * @param keys The keys of the set, which are given their position as index
+     * @throws IllegalArgumentException If a key is repeated
+     */
+    public JsonKeySet (String... keys) {
+        this(Arrays.asList(keys));
+    }
+
+    /**
+     * Creates a set with the given keys.
+     *
+     * @param keys The keys of the set, which are given their position as index
+     * @throws IllegalArgumentException If a key is repeated
+     */
+    public JsonKeySet (List<String> keys) {
+        if (keys == null) {
+            throw new NullPointerException("keys");
+        }
+        this.keys = keys.toArray(new String[keys.size()]);
+        if (new HashSet<String>(keys).size() != this.keys.length) {
+            throw new IllegalArgumentException("JSON: Repeated key in " + keys);
+        }
+        for (String key : this.keys) {
+            if (key == null) {
+                throw new NullPointerException("key");
+            }
+        }
+
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(2, this.keys.length * 2) - 1);
+        int[] table = null;
+        int mult = 0x9E3779B9;
+        int shft = 32 - bits;
+        for (int growth = 0; growth <= MAX_GROWTH && table == null; growth++) {
+            for (int attempt = 0; attempt < MAX_ATTEMPTS && table == null; attempt++) {
+                mult = 0x9E3779B9 * (2 * attempt + 1);
+                shft = 32 - bits - growth;
+                table = place(mult, shft, false);
+            }
+        }
+        if (table == null) {
+            mult = 0x9E3779B9;
+            shft = 32 - bits;
+            table = place(mult, shft, true);
+        }
+
+        this.slots = table;
+        this.multiplier = mult;
+        this.shift = shft;
+    }
+
+    /**
+     * Places the keys in a new table.
+     *
+     * @param mult Multiplier of the hash
+     * @param shft Number of bits of the hash that are discarded
+     * @param probe Whether keys that collide are placed in the following slots
+     * @return The new table, or <tt>null</tt> if two keys collide and <tt>probe</tt> is <tt>false</tt>
+     */
+    private int[] place (int mult, int shft, boolean probe) {
+        int[] table = new int[1 << (32 - shft)];
+        int mask = table.length - 1;
+        for (int i = 0; i < keys.length; i++) {
+            int slot = (keys[i].hashCode() * mult) >>> shft;
+            while (table[slot] != 0) {
+                if (!probe) {
+                    return null;
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+        return table;
+    }
+
+    /**
+     * Finds a key given its characters.
+     *
+     * @param chars Array containing the characters of the key
+     * @param start Position of the first character
+     * @param length Number of characters
+     * @return The index of the key, or <tt>-1</tt> if it is not in this set
+     */
+    int find (char[] chars, int start, int length) {
+        // Same hash as String.hashCode, which strings cache
+        int hash = 0;
+        int end = start + length;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        final int[] tbl = slots;
+        int mask = tbl.length - 1;
+        for (int slot = (hash * multiplier) >>> shift; tbl[slot] != 0; slot = (slot + 1) & mask) {
+            String key = keys[tbl[slot] - 1];
+            if (key.length() == length && key.hashCode() == hash && matches(key, chars, start)) {
+                return tbl[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param key A key
+     * @param chars Array containing at least as many characters as the key
+     * @param start Position of the first character
+     * @return Whether the key consists of the given characters
+     */
+    private static boolean matches (String key, char[] chars, int start) {
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param key A key
+     * @return The index of the key, or <tt>-1</tt> if it is not in this set
+     */
+    public int indexOf (String key) {
+        int hash = key.hashCode();
+        final int[] tbl = slots;
+        int mask = tbl.length - 1;
+        for (int slot = (hash * multiplier) >>> shift; tbl[slot] != 0; slot = (slot + 1) & mask) {
+            String candidate = keys[tbl[slot] - 1];
+            if (candidate.hashCode() == hash && candidate.equals(key)) {
+                return tbl[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param index Index of a key
+     * @return The key with the given index
+     * @throws IndexOutOfBoundsException If there is no key with the given index
+     */
+    public String get (int index) {
+        return keys[index];
+    }
+
+    /** @return The number of keys of this set */
+    public int size () {
+        return keys.length;
+    }
+}
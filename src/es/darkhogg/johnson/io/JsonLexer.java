@@ -0,0 +1,195 @@
+package es.darkhogg.johnson.io;
+
+import java.io.IOException;
+
+/**
+ * Low-level scanner used by {@link JsonReader} to split its input into tokens. Subclasses implement the actual
+ * scanning over a specific kind of input, while the grammar is checked by the reader itself.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+abstract class JsonLexer extends JsonTokenSource {
+
+    /** Number state: nothing read */
+    static final int NUM_START = 0;
+
+    /** Number state: minus sign read */
+    static final int NUM_MINUS = 1;
+
+    /** Number state: leading zero read */
+    static final int NUM_ZERO = 2;
+
+    /** Number state: integer digits read */
+    static final int NUM_INT = 3;
+
+    /** Number state: decimal dot read */
+    static final int NUM_DOT = 4;
+
+    /** Number state: fraction digits read */
+    static final int NUM_FRAC = 5;
+
+    /** Number state: exponent mark read */
+    static final int NUM_EXP = 6;
+
+    /** Number state: exponent sign read */
+    static final int NUM_EXP_SIGN = 7;
+
+    /** Number state: exponent digits read */
+    static final int NUM_EXP_DIGITS = 8;
+
+    /**
+     * Skips all whitespace and returns the next character without consuming it.
+     *
+     * @return The next non-whitespace character, or <tt>-1</tt> on EOF
+     * @throws IOException If an I/O error happens
+     */
+    abstract int peek () throws IOException;
+
+    /** Consumes the character last returned by {@link #peek}. */
+    abstract void skip ();
+
+    /**
+     * Consumes and returns a single character.
+     *
+     * @return The read character, or <tt>-1</tt> on EOF
+     * @throws IOException If an I/O error happens or the input is not valid
+     */
+    abstract int readChar () throws IOException;
+
+    /**
+     * Reads a string whose opening quote has already been consumed, leaving its decoded contents as the current token.
+     *
+     * @throws IOException If an I/O error happens or the string is not valid
+     */
+    abstract void readString () throws IOException;
+
+    /**
+     * Consumes a string whose opening quote has already been consumed, checking its escapes but without decoding it.
+     *
+     * @throws IOException If an I/O error happens or the string is not valid
+     */
+    abstract void skipString () throws IOException;
+
+    /**
+     * Reads a number, validating its syntax and leaving its text as the current token.
+     *
+     * @throws IOException If an I/O error happens or the number is not valid
+     */
+    abstract void readNumber () throws IOException;
+
+    /**
+     * Reads a literal token, checking that it matches the expected text.
+     *
+     * @param literal Expected literal
+     * @throws IOException If an I/O error happens or the literal does not match
+     */
+    abstract void readLiteral (String literal) throws IOException;
+
+    /**
+     * Reads an escape sequence whose backslash has already been consumed.
+     *
+     * @return The escaped character
+     * @throws IOException If an I/O error happens or the escape is not valid
+     */
+    final char readEscape () throws IOException {
+        int chr = readChar();
+        switch (chr) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) chr;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u': {
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int hex = readChar();
+                    int digit = Character.digit(hex, 16);
+                    if (hex < 0 || digit < 0) {
+                        throw syntaxError("Invalid unicode escape", hex);
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            }
+            default:
+                throw syntaxError("Invalid escape sequence", chr);
+        }
+    }
+
+    /**
+     * Computes the transitions of the number syntax automaton.
+     *
+     * @param numState Current state
+     * @param chr Next character
+     * @return The next state, or <tt>-1</tt> if the character does not belong to the number
+     */
+    @SuppressWarnings("fallthrough")
+    static final int nextNumberState (int numState, int chr) {
+        boolean digit = chr >= '0' && chr <= '9';
+        switch (numState) {
+            case NUM_START:
+                if (chr == '-') {
+                    return NUM_MINUS;
+                }
+                // fall through
+            case NUM_MINUS:
+                return chr == '0' ? NUM_ZERO : digit ? NUM_INT : -1;
+            case NUM_INT:
+                if (digit) {
+                    return NUM_INT;
+                }
+                // fall through
+            case NUM_ZERO:
+                return chr == '.' ? NUM_DOT : (chr == 'e' || chr == 'E') ? NUM_EXP : -1;
+            case NUM_DOT:
+                return digit ? NUM_FRAC : -1;
+            case NUM_FRAC:
+                return digit ? NUM_FRAC : (chr == 'e' || chr == 'E') ? NUM_EXP : -1;
+            case NUM_EXP:
+                if (chr == '+' || chr == '-') {
+                    return NUM_EXP_SIGN;
+                }
+                // fall through
+            case NUM_EXP_SIGN:
+            case NUM_EXP_DIGITS:
+                return digit ? NUM_EXP_DIGITS : -1;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Checks that a number ended on an accepting state of the number automaton.
+     *
+     * @param numState Final state
+     * @param chr Character following the number, or <tt>-1</tt> on EOF
+     * @throws IOException If the number is not complete
+     */
+    final void checkNumberEnd (int numState, int chr) throws IOException {
+        if (numState != NUM_ZERO && numState != NUM_INT && numState != NUM_FRAC && numState != NUM_EXP_DIGITS) {
+            throw syntaxError("Malformed number", chr);
+        }
+    }
+
+    /**
+     * Creates an exception for a syntax error at the current position.
+     *
+     * @param message Description of the error
+     * @param chr Offending character, or <tt>-1</tt> for EOF
+     * @return The exception to be thrown
+     */
+    final IOException syntaxError (String message, int chr) {
+        String found = chr < 0 ? "EOF" : "'" + (char) chr + "'";
+        return new IOException("JSON: " + message + ", found " + found + " at offset " + offset());
+    }
+}
@@ -0,0 +1,438 @@
+package es.darkhogg.johnson.io;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Converts the text of JSON numbers to Java numbers, avoiding <tt>BigInteger</tt> and <tt>BigDecimal</tt> unless they
+ * are really needed.
+ * <p>
+ * Integers that fit in a <tt>long</tt> are accumulated directly. Conversions to <tt>double</tt> are correctly rounded:
+ * values whose significand and power of ten are both exactly representable are computed with a single floating-point
+ * operation, and all others use the Eisel-Lemire algorithm, which multiplies the significand by a 128-bit
+ * approximation of the power of ten and only needs the exact decimal text for numbers with more than 19 significant
+ * digits whose result is ambiguous.
+ * <p>
+ * {@link #parse} chooses the type of the result so that the value of the text is never lost: <tt>Long</tt> for
+ * integers in range, <tt>Double</tt> for numbers with at most 15 significant digits that are within the normal
+ * <tt>double</tt> range, as the <tt>double</tt> then always converts back to the same digits, and <tt>BigInteger</tt>
+ * or <tt>BigDecimal</tt> otherwise. Numbers whose exponent is beyond the range of a <tt>BigDecimal</tt> are returned as
+ * the <tt>Double</tt> they round to, which is either zero or infinite.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonNumberParser {
+
+    /** Maximum number of significant digits accumulated in the significand */
+    private static final int MAX_DIGITS = 19;
+
+    /** Maximum number of significant digits that a <tt>double</tt> always preserves */
+    private static final int MAX_DOUBLE_DIGITS = 15;
+
+    /** Minimum decimal exponent of normal <tt>double</tt> values */
+    private static final int MIN_DOUBLE_EXPONENT = -307;
+
+    /** Maximum decimal exponent of numbers that are always finite as <tt>double</tt>s */
+    private static final int MAX_DOUBLE_EXPONENT = 307;
+
+    /** Powers of ten exactly representable as a <tt>double</tt> */
+    private static final double[] EXACT_POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19,
+        1e20, 1e21, 1e22 };
+
+    /** Smallest power of ten in the table, below which all significands round to zero */
+    private static final int MIN_POW5 = -342;
+
+    /** Largest power of ten in the table, above which all significands round to infinity */
+    private static final int MAX_POW5 = 308;
+
+    /** Highest 64 bits of the normalized 128-bit approximations of <tt>5<sup>q</sup></tt> */
+    private static final long[] POW5_HI = new long[MAX_POW5 - MIN_POW5 + 1];
+
+    /** Lowest 64 bits of the normalized 128-bit approximations of <tt>5<sup>q</sup></tt> */
+    private static final long[] POW5_LO = new long[MAX_POW5 - MIN_POW5 + 1];
+
+    static {
+        BigInteger two128 = BigInteger.ONE.shiftLeft(128);
+        BigInteger two127 = BigInteger.ONE.shiftLeft(127);
+        BigInteger mask64 = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+        for (int q = MIN_POW5; q <= MAX_POW5; q++) {
+            BigInteger pow5 = BigInteger.valueOf(5).pow(Math.abs(q));
+            BigInteger value;
+
+            if (q >= 0) {
+                // Truncated, with the most significant bit on bit 127
+                int shift = 128 - pow5.bitLength();
+                value = shift >= 0 ? pow5.shiftLeft(shift) : pow5.shiftRight(-shift);
+            } else {
+                // Reciprocal, rounded up, with the most significant bit on bit 127
+                int z = pow5.subtract(BigInteger.ONE).bitLength();
+                int b = q >= -27 ? z + 127 : 2 * z + 128;
+                value = BigInteger.ONE.shiftLeft(b).divide(pow5).add(BigInteger.ONE);
+                while (value.compareTo(two128) >= 0) {
+                    value = value.shiftRight(1);
+                }
+                while (value.compareTo(two127) < 0) {
+                    value = value.shiftLeft(1);
+                }
+            }
+
+            POW5_HI[q - MIN_POW5] = value.shiftRight(64).longValue();
+            POW5_LO[q - MIN_POW5] = value.and(mask64).longValue();
+        }
+    }
+
+    /** Characters of the number */
+    private char[] chars;
+
+    /** Position of the number in {@link #chars} */
+    private int start;
+
+    /** Length of the number */
+    private int length;
+
+    /** Whether the number is negative */
+    private boolean negative;
+
+    /** Whether the number has neither a fraction nor an exponent */
+    private boolean integral;
+
+    /** First {@value #MAX_DIGITS} significant digits, as an unsigned value */
+    private long significand;
+
+    /** Number of significant digits in {@link #significand} */
+    private int digits;
+
+    /** Whether non-zero digits were dropped from the significand */
+    private boolean truncated;
+
+    /** Decimal exponent of the significand */
+    private int exponent;
+
+    /** Creates a parser for use by lexers. */
+    JsonNumberParser () {
+        // Nothing to initialize
+    }
+
+    /**
+     * Parses the given JSON number to the narrowest of <tt>Long</tt>, <tt>Double</tt>, <tt>BigInteger</tt> and
+     * <tt>BigDecimal</tt> that represents it without loss.
+     *
+     * @param text Text of the number
+     * @return The parsed number
+     * @throws NumberFormatException If the text is not a valid JSON number
+     */
+    public static Number parse (String text) {
+        JsonNumberParser parser = new JsonNumberParser();
+        parser.scan(check(text), 0, text.length());
+        return parser.numberValue();
+    }
+
+    /**
+     * Parses the given JSON number to the nearest <tt>double</tt>.
+     *
+     * @param text Text of the number
+     * @return The parsed number
+     * @throws NumberFormatException If the text is not a valid JSON number
+     */
+    public static double parseDouble (String text) {
+        JsonNumberParser parser = new JsonNumberParser();
+        parser.scan(check(text), 0, text.length());
+        return parser.doubleValue();
+    }
+
+    /**
+     * Checks that a text follows the JSON number syntax.
+     *
+     * @param text Text to check
+     * @return The characters of the text
+     * @throws NumberFormatException If the text is not a valid JSON number
+     */
+    private static char[] check (String text) {
+        if (text == null) {
+            throw new NullPointerException("text");
+        }
+
+        char[] chars = text.toCharArray();
+        int numState = JsonLexer.NUM_START;
+        for (char chr : chars) {
+            numState = JsonLexer.nextNumberState(numState, chr);
+            if (numState < 0) {
+                break;
+            }
+        }
+
+        if (numState != JsonLexer.NUM_ZERO && numState != JsonLexer.NUM_INT && numState != JsonLexer.NUM_FRAC
+            && numState != JsonLexer.NUM_EXP_DIGITS)
+        {
+            throw new NumberFormatException("JSON: Invalid number " + text);
+        }
+        return chars;
+    }
+
+    /**
+     * Scans a number that is already known to be syntactically valid.
+     *
+     * @param chars Array containing the number
+     * @param start Position of the number
+     * @param length Length of the number
+     */
+    void scan (char[] chars, int start, int length) {
+        this.chars = chars;
+        this.start = start;
+        this.length = length;
+
+        int i = start;
+        int end = start + length;
+        negative = chars[i] == '-';
+        if (negative) {
+            i++;
+        }
+
+        long sig = 0;
+        int digs = 0;
+        int exp = 0;
+        boolean trunc = false;
+
+        for (; i < end; i++) {
+            int digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            if (digs < MAX_DIGITS) {
+                sig = sig * 10 + digit;
+                if (sig != 0) {
+                    digs++;
+                }
+            } else {
+                exp++;
+                trunc |= digit != 0;
+            }
+        }
+
+        integral = true;
+        if (i < end && chars[i] == '.') {
+            integral = false;
+            for (i++; i < end; i++) {
+                int digit = chars[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                if (digs < MAX_DIGITS) {
+                    sig = sig * 10 + digit;
+                    if (sig != 0) {
+                        digs++;
+                    }
+                    exp--;
+                } else {
+                    trunc |= digit != 0;
+                }
+            }
+        }
+
+        if (i < end) {
+            // Exponent, saturated well beyond the range of doubles
+            integral = false;
+            i++;
+            boolean expNegative = chars[i] == '-';
+            if (chars[i] == '-' || chars[i] == '+') {
+                i++;
+            }
+            int value = 0;
+            for (; i < end && value < 100000; i++) {
+                value = value * 10 + (chars[i] - '0');
+            }
+            exp += expNegative ? -value : value;
+        }
+
+        significand = sig;
+        digits = digs;
+        truncated = trunc;
+        exponent = exp;
+    }
+
+    /** @return Whether the scanned number is an integer in the <tt>long</tt> range */
+    boolean fitsLong () {
+        return integral && !truncated && exponent == 0
+            && (significand >= 0 || negative && significand == Long.MIN_VALUE);
+    }
+
+    /** @return The scanned number as a <tt>long</tt>, valid only if {@link #fitsLong} */
+    long longValue () {
+        return negative ? -significand : significand;
+    }
+
+    /** @return The scanned number rounded to the nearest <tt>double</tt> */
+    double doubleValue () {
+        if (truncated) {
+            // The exact value lies between the truncated significand and the next one
+            double lower = eiselLemire(negative, significand, exponent);
+            double upper = eiselLemire(negative, significand + 1, exponent);
+            if (lower == upper) {
+                return lower;
+            }
+            return Double.parseDouble(new String(chars, start, length));
+        }
+
+        if (significand >= 0 && significand < 1L << 53 && exponent >= -22 && exponent <= 22) {
+            // Both operands are exact, so a single operation is correctly rounded
+            double value = significand;
+            if (exponent < 0) {
+                value /= EXACT_POWERS_OF_TEN[-exponent];
+            } else {
+                value *= EXACT_POWERS_OF_TEN[exponent];
+            }
+            return negative ? -value : value;
+        }
+
+        return eiselLemire(negative, significand, exponent);
+    }
+
+    /**
+     * @return The type of the value of {@link #numberValue} for the scanned number, as one of the <tt>NUMBER_*</tt>
+     *         constants of {@link JsonReader}
+     */
+    int numberType () {
+        if (integral) {
+            return fitsLong() ? JsonReader.NUMBER_LONG : JsonReader.NUMBER_OTHER;
+        }
+
+        if (!truncated && significand >= 0) {
+            if (significand == 0) {
+                return JsonReader.NUMBER_DOUBLE;
+            }
+
+            // Trailing zeros are not significant for the double
+            long sig = significand;
+            int digs = digits;
+            int exp = exponent;
+            while (sig % 10 == 0) {
+                sig /= 10;
+                digs--;
+                exp++;
+            }
+
+            int magnitude = exp + digs - 1;
+            if (digs <= MAX_DOUBLE_DIGITS && magnitude >= MIN_DOUBLE_EXPONENT && magnitude <= MAX_DOUBLE_EXPONENT) {
+                return JsonReader.NUMBER_DOUBLE;
+            }
+        }
+
+        return JsonReader.NUMBER_OTHER;
+    }
+
+    /** @return The scanned number as the narrowest type that represents it without loss */
+    Number numberValue () {
+        switch (numberType()) {
+            case JsonReader.NUMBER_LONG:
+                return Long.valueOf(longValue());
+
+            case JsonReader.NUMBER_DOUBLE:
+                return Double.valueOf(doubleValue());
+
+            default:
+                if (integral) {
+                    return new BigInteger(new String(chars, start, length));
+                }
+                try {
+                    return new BigDecimal(chars, start, length);
+                } catch (NumberFormatException exc) {
+                    // The exponent does not fit in the scale of a BigDecimal, so the rounded double is all that is left
+                    return Double.valueOf(doubleValue());
+                }
+        }
+    }
+
+    /**
+     * Converts <tt>w * 10<sup>q</sup></tt> to the nearest <tt>double</tt> using the Eisel-Lemire algorithm.
+     *
+     * @param negative Whether the result is negative
+     * @param w Decimal significand, as an unsigned value with at most 19 digits
+     * @param q Decimal exponent
+     * @return The nearest <tt>double</tt>
+     */
+    private static double eiselLemire (boolean negative, long w, int q) {
+        if (w == 0 || q < MIN_POW5) {
+            return negative ? -0.0 : 0.0;
+        }
+        if (q > MAX_POW5) {
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+
+        int lz = Long.numberOfLeadingZeros(w);
+        w <<= lz;
+
+        // 128-bit product of the normalized significand and the power of five, refined only when needed
+        long pow5Hi = POW5_HI[q - MIN_POW5];
+        long hi = unsignedMultiplyHigh(w, pow5Hi);
+        long lo = w * pow5Hi;
+        if ((hi & 0x1FF) == 0x1FF) {
+            long hi2 = unsignedMultiplyHigh(w, POW5_LO[q - MIN_POW5]);
+            lo += hi2;
+            if (lo + Long.MIN_VALUE < hi2 + Long.MIN_VALUE) {
+                hi++;
+            }
+        }
+
+        int upperBit = (int) (hi >>> 63);
+        long mantissa = hi >>> (upperBit + 9);
+        int power2 = (((152170 + 65536) * q) >> 16) + 63 + upperBit - lz + 1023;
+
+        if (power2 <= 0) {
+            // Subnormal result
+            if (-power2 + 1 >= 64) {
+                return negative ? -0.0 : 0.0;
+            }
+            mantissa >>>= -power2 + 1;
+            mantissa += mantissa & 1;
+            mantissa >>>= 1;
+            power2 = mantissa < 1L << 52 ? 0 : 1;
+            return toDouble(negative, mantissa, power2);
+        }
+
+        // Exact halfway cases round to even
+        if ((lo == 0 || lo == 1) && q >= -4 && q <= 23 && (mantissa & 3) == 1
+            && mantissa << (upperBit + 9) == hi)
+        {
+            mantissa &= ~1L;
+        }
+
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        if (mantissa >= 2L << 52) {
+            mantissa = 1L << 52;
+            power2++;
+        }
+        mantissa &= ~(1L << 52);
+
+        if (power2 >= 0x7FF) {
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+        return toDouble(negative, mantissa, power2);
+    }
+
+    /**
+     * @param negative Whether the result is negative
+     * @param mantissa Explicit bits of the significand
+     * @param power2 Biased binary exponent
+     * @return The <tt>double</tt> with the given parts
+     */
+    private static double toDouble (boolean negative, long mantissa, int power2) {
+        long bits = mantissa | (long) power2 << 52;
+        if (negative) {
+            bits |= Long.MIN_VALUE;
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * @param x An unsigned value
+     * @param y An unsigned value
+     * @return The highest 64 bits of the 128-bit unsigned product of <tt>x</tt> and <tt>y</tt>
+     */
+    private static long unsignedMultiplyHigh (long x, long y) {
+        return JsonDoubleFormat.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+}
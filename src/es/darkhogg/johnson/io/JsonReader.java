@@ -1,14 +1,35 @@
 package es.darkhogg.johnson.io;
 
 import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
- * A class used to read JSON from character streams. Note that this class does
- * not provide high-level reading of {@link es.darkhogg.johnson.data.JsonValue}
- * s, but instead allows JSON to be read at the token level.
- * 
+ * A class used to read JSON from character streams or UTF-8 encoded bytes.
+ * Note that this class does not provide high-level reading of
+ * {@link es.darkhogg.johnson.data.JsonValue}s, but instead allows JSON to be
+ * read at the token level.
+ * <p>
+ * Tokens are obtained by repeatedly calling {@link #next}. The value of the
+ * last returned token can then be retrieved using the appropriate accessor,
+ * such as {@link #getString}, {@link #getLong} or {@link #getBoolean}. Values
+ * are only available until the next call to {@link #next}.
+ * <p>
+ * By default a reader reads a single top-level value. In
+ * {@linkplain #setLineDelimited line-delimited} mode it reads any number of
+ * them, as in JSON Lines or NDJSON streams.
+ * <p>
+ * Readers created with {@link #binary(InputStream)} read the binary encoding
+ * written by {@link JsonWriter#binary(java.io.OutputStream)} instead of text,
+ * and return the same tokens. Since binary strings, arrays and objects are
+ * preceded by their length, {@link #skipValue} skips them without reading
+ * their contents.
+ *
  * @author Daniel Escoz
  * @version 1.0
  */
@@ -38,18 +59,60 @@ public final class JsonReader implements Closeable {
 	/** Token identifier for JSON object endings */
 	public static final int TOKEN_OBJECT_END = 8;
 
+	/** Token identifier for JSON object keys */
+	public static final int TOKEN_KEY = 9;
+
 	/** Token identifier for the end of the document */
 	public static final int TOKEN_EOF = 0;
 
-	/** Underlying reader */
-	private final Reader reader;
+	/** Number type for integers in the <tt>long</tt> range */
+	public static final int NUMBER_LONG = 0;
+
+	/** Number type for numbers whose digits a <tt>double</tt> preserves */
+	public static final int NUMBER_DOUBLE = 1;
+
+	/** Number type for any other number */
+	public static final int NUMBER_OTHER = 2;
+
+	/** Default size of the windows used to map files */
+	private static final int MAPPED_WINDOW_SIZE = 1 << 30;
+
+	/** Lexer used to scan text input, or <tt>null</tt> for binary input */
+	private final JsonLexer lexer;
+
+	/** Decoder used to read binary input, or <tt>null</tt> for text input */
+	private final JsonBinaryDecoder binary;
+
+	/** Source of the contents of the current token */
+	private final JsonTokenSource tokens;
 
 	/** State object */
 	private final JsonState state = new JsonState();
 
+	/** Whether strings and keys are skipped instead of decoded */
+	boolean skipStrings;
+
+	/** Offset in the input of the first character of the last value or key */
+	long tokenOffset;
+
+	/** Last token returned by {@link #next} */
+	private int token = -1;
+
+	/** Value of the current boolean token */
+	private boolean tokenBoolean;
+
+	/** Table of canonical keys, created on the first key if not set */
+	private JsonSymbolTable symbols;
+
+	/** Whether keys are looked up in {@link #symbols} */
+	private boolean internKeys = true;
+
+	/** Whether more top-level values may follow a complete one */
+	private boolean lineDelimited;
+
 	/**
 	 * Creates a JSON reader using the passed <tt>reader</tt> object.
-	 * 
+	 *
 	 * @param reader
 	 *            Reader used for this JSON reader
 	 */
@@ -58,24 +121,1005 @@ public final class JsonReader implements Closeable {
 			throw new NullPointerException("reader");
 		}
 
-		this.reader = reader;
+		this.lexer = new JsonCharLexer(reader);
+		this.binary = null;
+		this.tokens = lexer;
 
 		state.begin();
 	}
 
-	public int next() {
-		return -1;
+	/**
+	 * Creates a JSON reader using the passed <tt>lexer</tt> object.
+	 *
+	 * @param lexer
+	 *            Lexer used for this JSON reader
+	 */
+	JsonReader(JsonLexer lexer) {
+		this.lexer = lexer;
+		this.binary = null;
+		this.tokens = lexer;
+
+		state.begin();
+	}
+
+	/**
+	 * Creates a JSON reader using the passed binary <tt>decoder</tt>.
+	 *
+	 * @param decoder
+	 *            Decoder used for this JSON reader
+	 */
+	JsonReader(JsonBinaryDecoder decoder) {
+		this.lexer = null;
+		this.binary = decoder;
+		this.tokens = decoder;
+
+		state.begin();
+	}
+
+	/**
+	 * Creates a JSON reader that reads UTF-8 encoded bytes from the passed
+	 * <tt>stream</tt>.
+	 * <p>
+	 * Bytes are scanned directly and only decoded inside strings, so this is
+	 * faster than wrapping the stream in an
+	 * {@link java.io.InputStreamReader}.
+	 *
+	 * @param stream
+	 *            Stream used for this JSON reader
+	 * @return A new JSON reader
+	 */
+	public static JsonReader utf8(InputStream stream) {
+		if (stream == null) {
+			throw new NullPointerException("stream");
+		}
+
+		return new JsonReader(new JsonByteLexer.FromStream(stream));
+	}
+
+	/**
+	 * Creates a JSON reader that reads UTF-8 encoded bytes from the passed
+	 * array.
+	 *
+	 * @param bytes
+	 *            Array used for this JSON reader
+	 * @return A new JSON reader
+	 */
+	public static JsonReader utf8(byte[] bytes) {
+		return utf8(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Creates a JSON reader that reads UTF-8 encoded bytes from a slice of
+	 * the passed array.
+	 *
+	 * @param bytes
+	 *            Array used for this JSON reader
+	 * @param offset
+	 *            Offset of the first byte to read
+	 * @param length
+	 *            Number of bytes to read
+	 * @return A new JSON reader
+	 * @throws IndexOutOfBoundsException
+	 *             If the slice is not within the array
+	 */
+	public static JsonReader utf8(byte[] bytes, int offset, int length) {
+		return utf8(ByteBuffer.wrap(bytes, offset, length).slice());
+	}
+
+	/**
+	 * Creates a JSON reader that reads the remaining UTF-8 encoded bytes of
+	 * the passed heap or direct buffer. The position of the buffer is not
+	 * modified by the returned reader.
+	 *
+	 * @param buffer
+	 *            Buffer used for this JSON reader
+	 * @return A new JSON reader
+	 */
+	public static JsonReader utf8(ByteBuffer buffer) {
+		if (buffer == null) {
+			throw new NullPointerException("buffer");
+		}
+
+		return new JsonReader(new JsonByteLexer.FromBuffer(buffer));
+	}
+
+	/**
+	 * Creates a JSON reader that reads the passed UTF-8 encoded file by
+	 * mapping it in memory.
+	 * <p>
+	 * The file is mapped in large windows that are scanned directly, so no
+	 * copies are made other than those done by the OS page cache. Closing the
+	 * returned reader closes the file.
+	 *
+	 * @param file
+	 *            File used for this JSON reader
+	 * @return A new JSON reader
+	 * @throws IOException
+	 *             If the file cannot be opened or mapped
+	 */
+	public static JsonReader mapped(File file) throws IOException {
+		if (file == null) {
+			throw new NullPointerException("file");
+		}
+
+		FileChannel channel = new FileInputStream(file).getChannel();
+		try {
+			return mapped(channel, MAPPED_WINDOW_SIZE);
+		} catch (IOException exc) {
+			channel.close();
+			throw exc;
+		}
+	}
+
+	/**
+	 * Creates a JSON reader that reads the passed UTF-8 encoded file channel,
+	 * from its current position to its end, by mapping it in memory. The
+	 * position of the channel is not modified by the returned reader.
+	 *
+	 * @param channel
+	 *            Channel used for this JSON reader
+	 * @return A new JSON reader
+	 * @throws IOException
+	 *             If the channel cannot be mapped
+	 * @see #mapped(File)
+	 */
+	public static JsonReader mapped(FileChannel channel) throws IOException {
+		return mapped(channel, MAPPED_WINDOW_SIZE);
+	}
+
+	/**
+	 * Creates a JSON reader that reads the passed UTF-8 encoded file channel,
+	 * from its current position to its end, by mapping it in memory using
+	 * windows of at most <tt>windowSize</tt> bytes. The position of the
+	 * channel is not modified by the returned reader.
+	 *
+	 * @param channel
+	 *            Channel used for this JSON reader
+	 * @param windowSize
+	 *            Maximum size of each mapped window
+	 * @return A new JSON reader
+	 * @throws IOException
+	 *             If the channel cannot be mapped
+	 * @throws IllegalArgumentException
+	 *             If <tt>windowSize</tt> is not positive
+	 * @see #mapped(File)
+	 */
+	public static JsonReader mapped(FileChannel channel, int windowSize)
+			throws IOException {
+		if (channel == null) {
+			throw new NullPointerException("channel");
+		}
+		if (windowSize <= 0) {
+			throw new IllegalArgumentException("windowSize <= 0");
+		}
+
+		return new JsonReader(new JsonByteLexer.FromChannel(channel,
+				windowSize));
+	}
+
+	/**
+	 * Creates a JSON reader that reads the binary encoding from the passed
+	 * <tt>stream</tt>, without a dictionary.
+	 *
+	 * @param stream
+	 *            Stream used for this JSON reader
+	 * @return A new JSON reader
+	 * @see #binary(InputStream, JsonKeySet)
+	 */
+	public static JsonReader binary(InputStream stream) {
+		return binary(stream, null);
+	}
+
+	/**
+	 * Creates a JSON reader that reads the binary encoding from the passed
+	 * <tt>stream</tt>.
+	 * <p>
+	 * The <tt>dictionary</tt> must be the same the data was written with.
+	 * Strings of the dictionary are returned from it instead of being
+	 * decoded, and {@link #getKeyIndex getKeyIndex} returns their index
+	 * directly when given the dictionary itself.
+	 *
+	 * @param stream
+	 *            Stream used for this JSON reader
+	 * @param dictionary
+	 *            Strings shared with the writer, or <tt>null</tt> if the data
+	 *            was written without a dictionary
+	 * @return A new JSON reader
+	 */
+	public static JsonReader binary(InputStream stream, JsonKeySet dictionary) {
+		if (stream == null) {
+			throw new NullPointerException("stream");
+		}
+
+		return new JsonReader(new JsonBinaryDecoder(stream, dictionary));
+	}
+
+	/**
+	 * Creates a JSON reader that reads the binary encoding from the passed
+	 * <tt>bytes</tt>. The array is not copied, so it must not be modified
+	 * while it is being read.
+	 *
+	 * @param bytes
+	 *            Array containing the binary encoding
+	 * @param dictionary
+	 *            Strings shared with the writer, or <tt>null</tt> if the data
+	 *            was written without a dictionary
+	 * @return A new JSON reader
+	 */
+	public static JsonReader binary(byte[] bytes, JsonKeySet dictionary) {
+		if (bytes == null) {
+			throw new NullPointerException("bytes");
+		}
+
+		return new JsonReader(new JsonBinaryDecoder(bytes, 0, bytes.length,
+				dictionary));
+	}
+
+	/**
+	 * Reads the next token from the stream and returns its type as one of the
+	 * <tt>TOKEN_*</tt> constants of this class.
+	 * <p>
+	 * Once the top-level value has been completely read, this method returns
+	 * {@link #TOKEN_EOF} if there is nothing but whitespace left on the
+	 * stream.
+	 *
+	 * @return The type of the token just read
+	 * @throws IOException
+	 *             If an I/O error happens or the stream is not valid JSON
+	 */
+	public int next() throws IOException {
+		if (binary != null) {
+			return token = nextBinary();
+		}
+
+		int chr = lexer.peek();
+
+		switch (state.getState()) {
+			case JsonState.TOP_VALUE: {
+				if (chr == -1 && lineDelimited) {
+					return token = TOKEN_EOF;
+				}
+				return token = readValue(chr);
+			}
+
+			case JsonState.ARRAY_VALUE_FIRST: {
+				if (chr == ']') {
+					lexer.skip();
+					state.endArray();
+					return token = TOKEN_ARRAY_END;
+				}
+				return token = readValue(chr);
+			}
+
+			case JsonState.ARRAY_VALUE: {
+				if (chr == ']') {
+					lexer.skip();
+					state.endArray();
+					return token = TOKEN_ARRAY_END;
+				}
+				if (chr != ',') {
+					throw lexer.syntaxError("Expecting ',' or ']'", chr);
+				}
+				lexer.skip();
+				return token = readValue(lexer.peek());
+			}
+
+			case JsonState.OBJECT_KEY_FIRST: {
+				if (chr == '}') {
+					lexer.skip();
+					state.endObject();
+					return token = TOKEN_OBJECT_END;
+				}
+				return token = readKey(chr);
+			}
+
+			case JsonState.OBJECT_KEY: {
+				if (chr == '}') {
+					lexer.skip();
+					state.endObject();
+					return token = TOKEN_OBJECT_END;
+				}
+				if (chr != ',') {
+					throw lexer.syntaxError("Expecting ',' or '}'", chr);
+				}
+				lexer.skip();
+				return token = readKey(lexer.peek());
+			}
+
+			case JsonState.OBJECT_VALUE: {
+				if (chr != ':') {
+					throw lexer.syntaxError("Expecting ':'", chr);
+				}
+				lexer.skip();
+				return token = readValue(lexer.peek());
+			}
+
+			case JsonState.EMPTY:
+			default: {
+				if (chr == -1) {
+					return token = TOKEN_EOF;
+				}
+				if (!lineDelimited) {
+					throw lexer.syntaxError("Expecting EOF", chr);
+				}
+				state.begin();
+				return token = readValue(chr);
+			}
+		}
+	}
+
+	/**
+	 * Reads the next token from the binary input, checking the grammar as
+	 * {@link #next} does for text.
+	 *
+	 * @return The type of the token just read
+	 * @throws IOException
+	 *             If an I/O error happens or the input is not valid
+	 */
+	private int nextBinary() throws IOException {
+		long offset = binary.offset();
+		int tok = binary.readToken(skipStrings);
+
+		switch (state.getState()) {
+			case JsonState.TOP_VALUE: {
+				if (tok == TOKEN_EOF && lineDelimited) {
+					return TOKEN_EOF;
+				}
+				return binaryValue(tok, offset);
+			}
+
+			case JsonState.ARRAY_VALUE_FIRST:
+			case JsonState.ARRAY_VALUE: {
+				if (tok == JsonBinaryDecoder.END) {
+					state.endArray();
+					return TOKEN_ARRAY_END;
+				}
+				return binaryValue(tok, offset);
+			}
+
+			case JsonState.OBJECT_KEY_FIRST:
+			case JsonState.OBJECT_KEY: {
+				if (tok == JsonBinaryDecoder.END) {
+					state.endObject();
+					return TOKEN_OBJECT_END;
+				}
+				if (tok != TOKEN_STRING) {
+					throw binary.formatError("Expecting an object key", offset);
+				}
+				tokenOffset = offset;
+				state.key();
+				return TOKEN_KEY;
+			}
+
+			case JsonState.OBJECT_VALUE: {
+				return binaryValue(tok, offset);
+			}
+
+			case JsonState.EMPTY:
+			default: {
+				if (tok == TOKEN_EOF) {
+					return TOKEN_EOF;
+				}
+				if (!lineDelimited) {
+					throw binary.formatError("Expecting EOF", offset);
+				}
+				state.begin();
+				return binaryValue(tok, offset);
+			}
+		}
+	}
+
+	/**
+	 * Checks that a token read from the binary input is a value.
+	 *
+	 * @param tok
+	 *            Token returned by the decoder
+	 * @param offset
+	 *            Offset of the token
+	 * @return The token type of the value
+	 * @throws IOException
+	 *             If the token is not a value
+	 */
+	private int binaryValue(int tok, long offset) throws IOException {
+		switch (tok) {
+			case TOKEN_EOF:
+			case JsonBinaryDecoder.END: {
+				throw binary.formatError("Expecting a value", offset);
+			}
+
+			case TOKEN_ARRAY_BEGIN: {
+				state.beginArray();
+				break;
+			}
+
+			case TOKEN_OBJECT_BEGIN: {
+				state.beginObject();
+				break;
+			}
+
+			case TOKEN_BOOLEAN: {
+				tokenBoolean = binary.tokenBoolean;
+				state.value();
+				break;
+			}
+
+			default: {
+				state.value();
+				break;
+			}
+		}
+		tokenOffset = offset;
+		return tok;
+	}
+
+	/**
+	 * Sets whether this reader reads a sequence of top-level values instead of
+	 * a single one. In line-delimited mode, the first token of the next value
+	 * is returned right after the last token of the previous one, and
+	 * {@link #TOKEN_EOF} is only returned at the end of the input, which may
+	 * contain no values at all. Values may be separated by any whitespace,
+	 * so JSON Lines and NDJSON streams are read as expected.
+	 *
+	 * @param lineDelimited
+	 *            Whether to read a sequence of values
+	 * @return <tt>this</tt>
+	 */
+	public JsonReader setLineDelimited(boolean lineDelimited) {
+		this.lineDelimited = lineDelimited;
+		return this;
+	}
+
+	/**
+	 * @return Whether this reader reads a sequence of top-level values
+	 */
+	public boolean isLineDelimited() {
+		return lineDelimited;
+	}
+
+	/**
+	 * Reads an object key starting at the given character.
+	 *
+	 * @param chr
+	 *            First character of the key
+	 * @return {@link #TOKEN_KEY}
+	 * @throws IOException
+	 *             If an I/O error happens or the key is not valid
+	 */
+	private int readKey(int chr) throws IOException {
+		if (chr != '"') {
+			throw lexer.syntaxError("Expecting an object key", chr);
+		}
+		tokenOffset = lexer.offset();
+		lexer.skip();
+		if (skipStrings) {
+			lexer.skipString();
+		} else {
+			lexer.readString();
+		}
+		state.key();
+		return TOKEN_KEY;
+	}
+
+	/**
+	 * Reads a value starting at the given character.
+	 *
+	 * @param chr
+	 *            First character of the value
+	 * @return The token type of the value
+	 * @throws IOException
+	 *             If an I/O error happens or the value is not valid
+	 */
+	private int readValue(int chr) throws IOException {
+		tokenOffset = lexer.offset();
+		switch (chr) {
+			case '{': {
+				lexer.skip();
+				state.beginObject();
+				return TOKEN_OBJECT_BEGIN;
+			}
+
+			case '[': {
+				lexer.skip();
+				state.beginArray();
+				return TOKEN_ARRAY_BEGIN;
+			}
+
+			case '"': {
+				lexer.skip();
+				if (skipStrings) {
+					lexer.skipString();
+				} else {
+					lexer.readString();
+				}
+				state.value();
+				return TOKEN_STRING;
+			}
+
+			case 't': {
+				lexer.readLiteral("true");
+				tokenBoolean = true;
+				state.value();
+				return TOKEN_BOOLEAN;
+			}
+
+			case 'f': {
+				lexer.readLiteral("false");
+				tokenBoolean = false;
+				state.value();
+				return TOKEN_BOOLEAN;
+			}
+
+			case 'n': {
+				lexer.readLiteral("null");
+				state.value();
+				return TOKEN_NULL;
+			}
+
+			case '-':
+			case '0':
+			case '1':
+			case '2':
+			case '3':
+			case '4':
+			case '5':
+			case '6':
+			case '7':
+			case '8':
+			case '9': {
+				lexer.readNumber();
+				state.value();
+				return TOKEN_NUMBER;
+			}
+
+			default: {
+				throw lexer.syntaxError("Expecting a value", chr);
+			}
+		}
+	}
+
+	/**
+	 * Checks that the current token is of the given type.
+	 *
+	 * @param expected
+	 *            Expected token type
+	 * @throws IllegalStateException
+	 *             If the current token is of a different type
+	 */
+	private void checkToken(int expected) {
+		if (token != expected) {
+			throw new IllegalStateException("JSON: Current token is not a "
+					+ tokenName(expected));
+		}
+	}
+
+	/**
+	 * @param tok
+	 *            A token type
+	 * @return A human readable name for the token type
+	 */
+	private static String tokenName(int tok) {
+		switch (tok) {
+			case TOKEN_NULL:
+				return "null";
+			case TOKEN_BOOLEAN:
+				return "boolean";
+			case TOKEN_NUMBER:
+				return "number";
+			case TOKEN_STRING:
+				return "string";
+			case TOKEN_KEY:
+				return "key";
+			case TOKEN_ARRAY_BEGIN:
+				return "array";
+			case TOKEN_OBJECT_BEGIN:
+				return "object";
+			default:
+				return "token " + tok;
+		}
+	}
+
+	/**
+	 * @return The type of the last token returned by {@link #next}, or
+	 *         <tt>-1</tt> if no token has been read yet
+	 */
+	public int getToken() {
+		return token;
+	}
+
+	/**
+	 * Returns the offset in the input of the first character of the last
+	 * value or key token read. Offsets are counted in characters for readers
+	 * of characters and in bytes for readers of UTF-8 bytes, from the start
+	 * of the input given to this reader.
+	 *
+	 * @return The offset of the last value or key token
+	 */
+	public long getTokenOffset() {
+		return tokenOffset;
+	}
+
+	/**
+	 * Skips the next value, including all the contents of an array or object,
+	 * and returns the type of its first token. The skipped tokens are still
+	 * checked for validity, but strings are not decoded and numbers are not
+	 * converted, and after this method returns there is no current token.
+	 * Binary arrays, objects and strings are skipped by their length, without
+	 * checking their contents.
+	 * <p>
+	 * If the current array has no more elements, its
+	 * {@link #TOKEN_ARRAY_END} token is read as if by {@link #next} and
+	 * returned instead, so this method can be used to skip the elements of an
+	 * array until its end. Likewise, in line-delimited mode
+	 * {@link #TOKEN_EOF} is returned if there are no more top-level values.
+	 *
+	 * @return The type of the first token of the skipped value, or
+	 *         {@link #TOKEN_ARRAY_END} or {@link #TOKEN_EOF} if there are no
+	 *         more values
+	 * @throws IOException
+	 *             If an I/O error happens or the stream is not valid JSON
+	 * @throws IllegalStateException
+	 *             If the next token is not a value nor the end of an array
+	 */
+	public int skipValue() throws IOException {
+		int st = state.getState();
+		if ((st == JsonState.EMPTY && !lineDelimited)
+				|| st == JsonState.OBJECT_KEY_FIRST || st == JsonState.OBJECT_KEY) {
+			throw new IllegalStateException("JSON: Next token is not a value");
+		}
+
+		boolean skip = skipStrings;
+		skipStrings = true;
+		try {
+			int first = next();
+			if (first == TOKEN_ARRAY_END || first == TOKEN_EOF) {
+				return first;
+			}
+
+			if (binary != null) {
+				// Containers are skipped by their length
+				if (first == TOKEN_ARRAY_BEGIN) {
+					binary.skipContainer();
+					state.endArray();
+				} else if (first == TOKEN_OBJECT_BEGIN) {
+					binary.skipContainer();
+					state.endObject();
+				}
+				token = -1;
+				return first;
+			}
+
+			int depth = 0;
+			int tok = first;
+			while (true) {
+				if (tok == TOKEN_ARRAY_BEGIN || tok == TOKEN_OBJECT_BEGIN) {
+					depth++;
+				} else if (tok == TOKEN_ARRAY_END || tok == TOKEN_OBJECT_END) {
+					depth--;
+				}
+				if (depth == 0) {
+					break;
+				}
+				tok = next();
+			}
+			token = -1;
+			return first;
+
+		} finally {
+			skipStrings = skip;
+		}
+	}
+
+	/**
+	 * Returns the value of the current {@link #TOKEN_BOOLEAN} token.
+	 *
+	 * @return The value of the current boolean
+	 * @throws IllegalStateException
+	 *             If the current token is not a boolean
+	 */
+	public boolean getBoolean() {
+		checkToken(TOKEN_BOOLEAN);
+		return tokenBoolean;
+	}
+
+	/**
+	 * Returns the text of the current {@link #TOKEN_STRING} or
+	 * {@link #TOKEN_KEY} token with all escapes resolved. For
+	 * {@link #TOKEN_NUMBER} tokens, the number text is returned unmodified.
+	 * <p>
+	 * Keys are looked up in the {@linkplain #setSymbolTable symbol table} of
+	 * this reader, so that keys that repeat return the same instance.
+	 *
+	 * @return The value of the current string, key or number
+	 * @throws IllegalStateException
+	 *             If the current token is not a string, key or number
+	 */
+	public String getString() {
+		if (binary != null && binary.tokenShared >= 0
+				&& (token == TOKEN_KEY || token == TOKEN_STRING)) {
+			return binary.dictionary.get(binary.tokenShared);
+		}
+		if (token == TOKEN_KEY && internKeys) {
+			if (symbols == null) {
+				symbols = new JsonSymbolTable();
+			}
+			return symbols.intern(tokens.tokenChars, tokens.tokenStart,
+					tokens.tokenLength);
+		}
+		if (token != TOKEN_STRING && token != TOKEN_KEY
+				&& token != TOKEN_NUMBER) {
+			checkToken(TOKEN_STRING);
+		}
+		return tokens.tokenString();
+	}
+
+	/**
+	 * Returns the index of the current {@link #TOKEN_KEY} or
+	 * {@link #TOKEN_STRING} token in the given set of keys. The text of the
+	 * token is compared directly against the characters read, so no
+	 * <tt>String</tt> is created for it.
+	 *
+	 * @param keys
+	 *            Set of keys to look the current token up in
+	 * @return The index of the current key or string in <tt>keys</tt>, or
+	 *         <tt>-1</tt> if it is not one of them
+	 * @throws IllegalStateException
+	 *             If the current token is not a key or string
+	 */
+	public int getKeyIndex(JsonKeySet keys) {
+		if (keys == null) {
+			throw new NullPointerException("keys");
+		}
+		if (token != TOKEN_STRING) {
+			checkToken(TOKEN_KEY);
+		}
+		if (binary != null && binary.tokenShared >= 0
+				&& keys == binary.dictionary) {
+			return binary.tokenShared;
+		}
+		return keys.find(tokens.tokenChars, tokens.tokenStart,
+				tokens.tokenLength);
+	}
+
+	/**
+	 * Sets the table used to reuse the strings of object keys. By default,
+	 * every reader creates its own table when it reads its first key, which
+	 * is then used for all the documents it reads. A single table can be
+	 * shared by several readers so that they also reuse each other's keys.
+	 *
+	 * @param table
+	 *            Table of keys to use, or <tt>null</tt> to create a new string
+	 *            for every key
+	 * @return <tt>this</tt>
+	 */
+	public JsonReader setSymbolTable(JsonSymbolTable table) {
+		symbols = table;
+		internKeys = table != null;
+		return this;
+	}
+
+	/**
+	 * @return Whether the current {@link #TOKEN_NUMBER} token has neither a
+	 *         fraction nor an exponent
+	 * @throws IllegalStateException
+	 *             If the current token is not a number
+	 */
+	public boolean isIntegral() {
+		checkToken(TOKEN_NUMBER);
+		return tokens.tokenIntegral;
+	}
+
+	/**
+	 * Returns the value of the current {@link #TOKEN_NUMBER} token as an
+	 * <tt>int</tt>.
+	 *
+	 * @return The value of the current number
+	 * @throws IllegalStateException
+	 *             If the current token is not a number
+	 * @throws NumberFormatException
+	 *             If the number is not an integer in the <tt>int</tt> range
+	 */
+	public int getInt() {
+		long value = getLong();
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw tokens.numberFormatError("int");
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Returns the value of the current {@link #TOKEN_NUMBER} token as a
+	 * <tt>long</tt>.
+	 *
+	 * @return The value of the current number
+	 * @throws IllegalStateException
+	 *             If the current token is not a number
+	 * @throws NumberFormatException
+	 *             If the number is not an integer in the <tt>long</tt> range
+	 */
+	public long getLong() {
+		checkToken(TOKEN_NUMBER);
+		return tokens.tokenLong();
+	}
+
+	/**
+	 * Returns the value of the current {@link #TOKEN_NUMBER} token as a
+	 * <tt>double</tt>, correctly rounded to the nearest representable value.
+	 *
+	 * @return The value of the current number
+	 * @throws IllegalStateException
+	 *             If the current token is not a number
+	 */
+	public double getDouble() {
+		checkToken(TOKEN_NUMBER);
+		return tokens.tokenDouble();
+	}
+
+	/**
+	 * Returns the value of the current {@link #TOKEN_NUMBER} token without any
+	 * loss of precision. Integral numbers are returned as <tt>Long</tt>s or
+	 * <tt>BigInteger</tt>s if they do not fit in a <tt>long</tt>. Other
+	 * numbers are returned as <tt>Double</tt>s if they have at most 15
+	 * significant digits and are within the normal <tt>double</tt> range, and
+	 * as <tt>BigDecimal</tt>s otherwise. Numbers whose exponent is beyond the
+	 * range of a <tt>BigDecimal</tt> are returned as the <tt>Double</tt> they
+	 * round to, which is either zero or infinite.
+	 *
+	 * @return The value of the current number
+	 * @throws IllegalStateException
+	 *             If the current token is not a number
+	 */
+	public Number getNumber() {
+		checkToken(TOKEN_NUMBER);
+		return tokens.tokenNumber();
+	}
+
+	/**
+	 * Returns the type of the current {@link #TOKEN_NUMBER} token, so that
+	 * callers can read it with {@link #getLong} or {@link #getDouble} without
+	 * creating any objects when that loses nothing.
+	 *
+	 * @return {@link #NUMBER_LONG} if {@link #getNumber} would return a
+	 *         <tt>Long</tt>, {@link #NUMBER_DOUBLE} if it would return a
+	 *         <tt>Double</tt> that converts back to the same digits, and
+	 *         {@link #NUMBER_OTHER} otherwise
+	 * @throws IllegalStateException
+	 *             If the current token is not a number
+	 */
+	public int getNumberType() {
+		checkToken(TOKEN_NUMBER);
+		return tokens.tokenNumberType();
+	}
+
+	/**
+	 * Reads the following numbers of the current array as <tt>long</tt>s into
+	 * the given array, without creating any objects for them. Reading stops
+	 * after <tt>length</tt> numbers have been read or when the end of the
+	 * array is reached, in which case the current token becomes
+	 * {@link #TOKEN_ARRAY_END}.
+	 * <p>
+	 * This method must be called right after a {@link #TOKEN_ARRAY_BEGIN}
+	 * token or an element of the array has been read, and is meant to be
+	 * called repeatedly until it returns less than <tt>length</tt>.
+	 *
+	 * @param dst
+	 *            Array to store the numbers into
+	 * @param offset
+	 *            Position of <tt>dst</tt> where the first number is stored
+	 * @param length
+	 *            Maximum number of numbers to read
+	 * @return The number of numbers read
+	 * @throws IOException
+	 *             If an I/O error happens, the stream is not valid JSON or an
+	 *             element of the array is not a number
+	 * @throws IllegalStateException
+	 *             If the reader is not reading the elements of an array
+	 * @throws NumberFormatException
+	 *             If a number is not an integer in the <tt>long</tt> range
+	 */
+	public int readLongs(long[] dst, int offset, int length)
+			throws IOException {
+		checkArray(dst.length, offset, length);
+		for (int i = 0; i < length; i++) {
+			if (!nextArrayNumber()) {
+				return i;
+			}
+			dst[offset + i] = tokens.tokenLong();
+		}
+		return length;
+	}
+
+	/**
+	 * Reads the following numbers of the current array as <tt>double</tt>s
+	 * into the given array, without creating any objects for them. Reading
+	 * stops after <tt>length</tt> numbers have been read or when the end of
+	 * the array is reached, in which case the current token becomes
+	 * {@link #TOKEN_ARRAY_END}.
+	 * <p>
+	 * This method must be called right after a {@link #TOKEN_ARRAY_BEGIN}
+	 * token or an element of the array has been read, and is meant to be
+	 * called repeatedly until it returns less than <tt>length</tt>.
+	 *
+	 * @param dst
+	 *            Array to store the numbers into
+	 * @param offset
+	 *            Position of <tt>dst</tt> where the first number is stored
+	 * @param length
+	 *            Maximum number of numbers to read
+	 * @return The number of numbers read
+	 * @throws IOException
+	 *             If an I/O error happens, the stream is not valid JSON or an
+	 *             element of the array is not a number
+	 * @throws IllegalStateException
+	 *             If the reader is not reading the elements of an array
+	 */
+	public int readDoubles(double[] dst, int offset, int length)
+			throws IOException {
+		checkArray(dst.length, offset, length);
+		for (int i = 0; i < length; i++) {
+			if (!nextArrayNumber()) {
+				return i;
+			}
+			dst[offset + i] = tokens.tokenDouble();
+		}
+		return length;
+	}
+
+	/**
+	 * Checks the arguments of a bulk read and that the reader is reading the
+	 * elements of an array.
+	 *
+	 * @param size
+	 *            Size of the destination array
+	 * @param offset
+	 *            Position of the first element to store
+	 * @param length
+	 *            Maximum number of elements to store
+	 * @throws IndexOutOfBoundsException
+	 *             If the range does not fit in the destination array
+	 * @throws IllegalStateException
+	 *             If the reader is not reading the elements of an array
+	 */
+	private void checkArray(int size, int offset, int length) {
+		if (offset < 0 || length < 0 || offset > size - length) {
+			throw new IndexOutOfBoundsException("offset=" + offset
+					+ ", length=" + length + ", size=" + size);
+		}
+		int st = state.getState();
+		if (st != JsonState.ARRAY_VALUE_FIRST && st != JsonState.ARRAY_VALUE) {
+			throw new IllegalStateException("JSON: Not reading an array");
+		}
+	}
+
+	/**
+	 * Reads the next element of the current array, which must be a number.
+	 *
+	 * @return <tt>true</tt> if a number was read, <tt>false</tt> if the array
+	 *         ended
+	 * @throws IOException
+	 *             If an I/O error happens, the stream is not valid JSON or the
+	 *             element is not a number
+	 */
+	private boolean nextArrayNumber() throws IOException {
+		int tok = next();
+		if (tok == TOKEN_ARRAY_END) {
+			return false;
+		}
+		if (tok != TOKEN_NUMBER) {
+			throw new IOException("JSON: Expecting a number, found "
+					+ tokenName(tok) + " at offset " + tokenOffset);
+		}
+		return true;
 	}
 
 	/**
 	 * Closes the underlying reader.
-	 * 
+	 *
 	 * @throws IOException
 	 *             If the underlying reader throws it
 	 * @see java.io.Reader#close
 	 */
 	@Override
 	public void close() throws IOException {
-		reader.close();
+		tokens.close();
 	}
 }
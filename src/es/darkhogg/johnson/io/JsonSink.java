@@ -0,0 +1,250 @@
+package es.darkhogg.johnson.io;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * Low-level output used by {@link JsonWriter} to emit its tokens. Subclasses implement the actual buffering and
+ * encoding for a specific kind of output, while the grammar is checked by the writer itself.
+ * <p>
+ * All output is buffered until {@link #drain} is called or the buffer fills up.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+abstract class JsonSink implements Closeable, Flushable {
+
+    /** Maximum number of characters of a formatted <tt>long</tt> */
+    private static final int MAX_LONG_LENGTH = 20;
+
+    /** Tens digit of every number from 0 to 99 */
+    private static final char[] DIGIT_TENS = new char[100];
+
+    /** Ones digit of every number from 0 to 99 */
+    private static final char[] DIGIT_ONES = new char[100];
+
+    static {
+        for (int i = 0; i < 100; i++) {
+            DIGIT_TENS[i] = (char) ('0' + i / 10);
+            DIGIT_ONES[i] = (char) ('0' + i % 10);
+        }
+    }
+
+    /** Lowercase hexadecimal digits */
+    static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Escapes of the ASCII characters that JSON requires to be escaped, or <tt>0</tt> for unescaped characters */
+    private static final byte[] REQUIRED_ESCAPES = new byte[128];
+
+    /** Escapes of the ASCII characters that are escaped to make output safe to embed in HTML */
+    private static final byte[] HTML_ESCAPES;
+
+    static {
+        for (int i = 0; i < 0x20; i++) {
+            REQUIRED_ESCAPES[i] = 'u';
+        }
+        REQUIRED_ESCAPES['"'] = '"';
+        REQUIRED_ESCAPES['\\'] = '\\';
+        REQUIRED_ESCAPES['\b'] = 'b';
+        REQUIRED_ESCAPES['\f'] = 'f';
+        REQUIRED_ESCAPES['\n'] = 'n';
+        REQUIRED_ESCAPES['\r'] = 'r';
+        REQUIRED_ESCAPES['\t'] = 't';
+
+        HTML_ESCAPES = REQUIRED_ESCAPES.clone();
+        HTML_ESCAPES['<'] = 'u';
+        HTML_ESCAPES['>'] = 'u';
+        HTML_ESCAPES['&'] = 'u';
+        HTML_ESCAPES['\''] = 'u';
+        HTML_ESCAPES['='] = 'u';
+    }
+
+    /** Characters of the last formatted number */
+    private final char[] digits = new char[Math.max(MAX_LONG_LENGTH, JsonDoubleFormat.MAX_LENGTH)];
+
+    /** Escapes of the ASCII characters for the current policy */
+    private byte[] escapes = REQUIRED_ESCAPES;
+
+    /** Whether all non-ASCII characters are escaped */
+    private boolean escapeNonAscii;
+
+    /** Whether the JavaScript line terminators U+2028 and U+2029 are escaped */
+    private boolean escapeLineTerminators;
+
+    /**
+     * Writes a single ASCII character.
+     *
+     * @param chr Character to write
+     * @throws IOException If an I/O error happens
+     */
+    abstract void write (char chr) throws IOException;
+
+    /**
+     * Writes arbitrary text.
+     *
+     * @param text Text to write
+     * @throws IOException If an I/O error happens
+     */
+    final void write (String text) throws IOException {
+        writeRun(text, 0, text.length());
+    }
+
+    /**
+     * Writes a range of a string without escaping it.
+     *
+     * @param text String containing the text to write
+     * @param start Position of the first character to write
+     * @param end Position following the last character to write
+     * @throws IOException If an I/O error happens
+     */
+    abstract void writeRun (String text, int start, int end) throws IOException;
+
+    /**
+     * Writes a range of an array of ASCII characters that fits in the output buffer.
+     *
+     * @param chars Array containing the characters
+     * @param start Position of the first character
+     * @param end Position following the last character
+     * @throws IOException If an I/O error happens
+     */
+    abstract void writeChars (char[] chars, int start, int end) throws IOException;
+
+    /**
+     * Writes the decimal representation of a number.
+     *
+     * @param number Number to write
+     * @throws IOException If an I/O error happens
+     */
+    final void writeLong (long number) throws IOException {
+        writeChars(digits, formatLong(number), digits.length);
+    }
+
+    /**
+     * Writes the shortest decimal representation of a finite number.
+     *
+     * @param number Number to write
+     * @throws IOException If an I/O error happens
+     * @see JsonDoubleFormat
+     */
+    final void writeDouble (double number) throws IOException {
+        writeChars(digits, 0, JsonDoubleFormat.formatDouble(number, digits));
+    }
+
+    /**
+     * Writes the shortest decimal representation of a finite number.
+     *
+     * @param number Number to write
+     * @throws IOException If an I/O error happens
+     * @see JsonDoubleFormat
+     */
+    final void writeFloat (float number) throws IOException {
+        writeChars(digits, 0, JsonDoubleFormat.formatFloat(number, digits));
+    }
+
+    /**
+     * Passes all buffered output to the underlying target, without flushing it.
+     *
+     * @throws IOException If an I/O error happens
+     */
+    abstract void drain () throws IOException;
+
+    /**
+     * Sets the characters escaped by {@link #writeString}.
+     *
+     * @param policy One of the <tt>ESCAPE_*</tt> constants of {@link JsonWriter}
+     */
+    final void setEscapePolicy (int policy) {
+        escapes = policy == JsonWriter.ESCAPE_HTML ? HTML_ESCAPES : REQUIRED_ESCAPES;
+        escapeNonAscii = policy == JsonWriter.ESCAPE_ASCII;
+        escapeLineTerminators = policy == JsonWriter.ESCAPE_HTML;
+    }
+
+    /**
+     * Writes a quoted JSON string, escaping its characters according to the current escape policy. Runs of characters
+     * that need no escaping are written in bulk.
+     *
+     * @param text String to write
+     * @throws IOException If an I/O error happens
+     */
+    final void writeString (String text) throws IOException {
+        final byte[] esc = escapes;
+        final boolean nonAscii = escapeNonAscii;
+        final boolean lineTerminators = escapeLineTerminators;
+
+        write('"');
+
+        int length = text.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char chr = text.charAt(i);
+            boolean escaped =
+                chr < 0x80 ? esc[chr] != 0 : nonAscii || (lineTerminators && (chr == '\u2028' || chr == '\u2029'));
+            if (escaped) {
+                if (i > start) {
+                    writeRun(text, start, i);
+                }
+                writeEscape(chr, chr < 0x80 ? esc[chr] : 'u');
+                start = i + 1;
+            }
+        }
+        if (start < length) {
+            writeRun(text, start, length);
+        }
+
+        write('"');
+    }
+
+    /**
+     * Writes an escape sequence.
+     *
+     * @param chr Escaped character
+     * @param escape Character following the backslash in the escape sequence
+     * @throws IOException If an I/O error happens
+     */
+    private void writeEscape (char chr, int escape) throws IOException {
+        write('\\');
+        write((char) escape);
+        if (escape == 'u') {
+            write(HEX_DIGITS[chr >>> 12]);
+            write(HEX_DIGITS[(chr >>> 8) & 0xF]);
+            write(HEX_DIGITS[(chr >>> 4) & 0xF]);
+            write(HEX_DIGITS[chr & 0xF]);
+        }
+    }
+
+    /**
+     * Formats the decimal representation of a number into {@link #digits}, aligned to its end.
+     *
+     * @param number Number to format
+     * @return Index in {@link #digits} of the first character
+     */
+    private int formatLong (long number) {
+        final char[] buf = digits;
+        int pos = buf.length;
+
+        // Work with negative values, so that Long.MIN_VALUE needs no special case
+        boolean negative = number < 0;
+        long q = negative ? number : -number;
+
+        while (q <= -100) {
+            long div = q / 100;
+            int rem = (int) (div * 100 - q);
+            q = div;
+            buf[--pos] = DIGIT_ONES[rem];
+            buf[--pos] = DIGIT_TENS[rem];
+        }
+        if (q <= -10) {
+            int rem = (int) -q;
+            buf[--pos] = DIGIT_ONES[rem];
+            buf[--pos] = DIGIT_TENS[rem];
+        } else {
+            buf[--pos] = (char) ('0' - q);
+        }
+        if (negative) {
+            buf[--pos] = '-';
+        }
+
+        return pos;
+    }
+}
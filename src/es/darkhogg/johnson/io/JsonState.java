@@ -259,6 +259,7 @@ final class JsonState {
             case ARRAY_VALUE_FIRST:
             case OBJECT_VALUE: {
                 // Value -- push the array
+                commaNeeded = false;
                 pushState(OBJECT_KEY_FIRST);
                 break;
             }
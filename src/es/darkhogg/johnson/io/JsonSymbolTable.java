@@ -0,0 +1,115 @@
+package es.darkhogg.johnson.io;
+
+import java.util.Arrays;
+
+/**
+ * A bounded pool of canonical <tt>String</tt> instances for object keys, used by {@link JsonReader} so that keys that
+ * repeat across objects and documents are only allocated once.
+ * <p>
+ * Keys are hashed directly from the characters of the token, and looked up in a fixed-size open-addressed table that
+ * is never resized. A key is only added if a free slot is found within a few probes of its hash and if it is not
+ * longer than {@value #MAX_KEY_LENGTH} characters, so the memory used by a table is bounded no matter the input, and
+ * the cost of a lookup is bounded even for keys crafted to collide. Keys that cannot be added are returned as new
+ * strings.
+ * <p>
+ * A table can be shared by any number of readers, including readers used from different threads. Concurrent lookups
+ * never return wrong strings, although they may occasionally add a key twice or return a non-canonical instance.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ * @see JsonReader#setSymbolTable
+ */
+public final class JsonSymbolTable {
+
+    /** Default number of slots of a table */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /** Maximum length of the keys that are added to a table */
+    static final int MAX_KEY_LENGTH = 64;
+
+    /** Maximum number of slots probed for a key */
+    private static final int MAX_PROBES = 8;
+
+    /** Canonical strings, placed by their hash */
+    private final String[] slots;
+
+    /** Creates a table with {@value #DEFAULT_CAPACITY} slots. */
+    public JsonSymbolTable () {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a table that can hold up to <tt>capacity</tt> keys, rounded up to a power of two.
+     *
+     * @param capacity Number of slots of the table
+     * @throws IllegalArgumentException If the capacity is not positive or too big
+     */
+    public JsonSymbolTable (int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("JSON: Invalid symbol table capacity " + capacity);
+        }
+        slots = new String[capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1];
+    }
+
+    /**
+     * Returns a string with the given characters, reusing an existing instance when possible.
+     *
+     * @param chars Array containing the characters
+     * @param start Position of the first character
+     * @param length Number of characters
+     * @return A string with the given characters
+     */
+    String intern (char[] chars, int start, int length) {
+        if (length > MAX_KEY_LENGTH) {
+            return new String(chars, start, length);
+        }
+
+        // Same hash as String.hashCode, which strings cache
+        int hash = 0;
+        int end = start + length;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+
+        final String[] tbl = slots;
+        int mask = tbl.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        for (int probe = 0; probe < MAX_PROBES; probe++, slot = (slot + 1) & mask) {
+            String str = tbl[slot];
+            if (str == null) {
+                str = new String(chars, start, length);
+                tbl[slot] = str;
+                return str;
+            }
+            if (str.hashCode() == hash && matches(str, chars, start, length)) {
+                return str;
+            }
+        }
+
+        return new String(chars, start, length);
+    }
+
+    /**
+     * @param str A string
+     * @param chars Array containing some characters
+     * @param start Position of the first character
+     * @param length Number of characters
+     * @return Whether the string consists of exactly the given characters
+     */
+    private static boolean matches (String str, char[] chars, int start, int length) {
+        if (str.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (str.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Removes all strings from this table. */
+    public void clear () {
+        Arrays.fill(slots, null);
+    }
+}
@@ -0,0 +1,414 @@
+package es.darkhogg.johnson.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A compact structural index of an in-memory UTF-8 JSON document.
+ * <p>
+ * A tape is built by a single validating pass over the document that records every token in a <tt>long[]</tt> without
+ * decoding any string or number. Each entry stores the token type in its upper bits, along with either the offset of
+ * the token in the input for scalars and keys, or the position of the matching entry for array and object beginnings
+ * and endings. This allows whole subtrees to be skipped in constant time, while scalar values are only decoded when
+ * requested.
+ * <p>
+ * Tapes are immutable once built and may be shared between threads.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonTape {
+
+    /** Number of bits used for the payload of each entry */
+    private static final int KIND_SHIFT = 60;
+
+    /** Mask for the payload of each entry */
+    private static final long PAYLOAD_MASK = (1L << KIND_SHIFT) - 1;
+
+    /** Number of bits used for the matching entry of container beginnings */
+    private static final int COUNT_SHIFT = 32;
+
+    /** Maximum number of elements that can be stored in a container beginning */
+    private static final int MAX_COUNT = (int) (PAYLOAD_MASK >>> COUNT_SHIFT);
+
+    /** Input bytes */
+    private final ByteBuffer input;
+
+    /** Tape entries */
+    private final long[] tape;
+
+    /** Number of entries of the tape */
+    private final int length;
+
+    /** Lexer used to decode scalar values */
+    private final JsonByteLexer.FromBuffer lexer;
+
+    /** Table of canonical keys, created on the first decoded key */
+    private JsonSymbolTable symbols;
+
+    /**
+     * Creates a tape from already computed entries.
+     *
+     * @param input Input bytes
+     * @param tape Tape entries
+     * @param length Number of entries
+     */
+    private JsonTape (ByteBuffer input, long[] tape, int length) {
+        this.input = input;
+        this.tape = tape;
+        this.length = length;
+        this.lexer = new JsonByteLexer.FromBuffer(input);
+    }
+
+    /**
+     * Builds a tape for the UTF-8 encoded JSON document contained in the given array.
+     *
+     * @param bytes Array containing the document
+     * @return A tape for the document
+     * @throws IOException If the document is not valid JSON
+     */
+    public static JsonTape build (byte[] bytes) throws IOException {
+        return build(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Builds a tape for the UTF-8 encoded JSON document contained in a slice of the given array.
+     *
+     * @param bytes Array containing the document
+     * @param offset Offset of the first byte of the document
+     * @param length Length of the document
+     * @return A tape for the document
+     * @throws IOException If the document is not valid JSON
+     */
+    public static JsonTape build (byte[] bytes, int offset, int length) throws IOException {
+        return build(ByteBuffer.wrap(bytes, offset, length).slice());
+    }
+
+    /**
+     * Builds a tape for the UTF-8 encoded JSON document contained in the remaining bytes of the given buffer. The
+     * buffer must not be modified while the tape is in use.
+     *
+     * @param buffer Buffer containing the document
+     * @return A tape for the document
+     * @throws IOException If the document is not valid JSON
+     */
+    public static JsonTape build (ByteBuffer buffer) throws IOException {
+        if (buffer == null) {
+            throw new NullPointerException("buffer");
+        }
+
+        ByteBuffer input = buffer.slice();
+        JsonReader reader = new JsonReader(new JsonByteLexer.FromBuffer(input));
+        reader.skipStrings = true;
+
+        // Most tokens take several bytes, so start at half the size of the input and grow if needed
+        long[] tape = new long[Math.max(16, input.remaining() >>> 4)];
+        int length = 0;
+
+        int[] open = new int[16];
+        int[] counts = new int[16];
+        int depth = 0;
+
+        int token;
+        while ((token = reader.next()) != JsonReader.TOKEN_EOF) {
+            if (length == tape.length) {
+                tape = Arrays.copyOf(tape, length * 2);
+            }
+
+            switch (token) {
+                case JsonReader.TOKEN_ARRAY_END:
+                case JsonReader.TOKEN_OBJECT_END: {
+                    depth--;
+                    int begin = open[depth];
+                    long count = Math.min(counts[depth], MAX_COUNT);
+                    tape[begin] |= (count << COUNT_SHIFT) | length;
+                    tape[length++] = ((long) token << KIND_SHIFT) | begin;
+                    break;
+                }
+
+                case JsonReader.TOKEN_KEY: {
+                    counts[depth - 1]++;
+                    tape[length++] = ((long) token << KIND_SHIFT) | reader.tokenOffset;
+                    break;
+                }
+
+                default: {
+                    if (depth > 0 && kind(tape[open[depth - 1]]) == JsonReader.TOKEN_ARRAY_BEGIN) {
+                        counts[depth - 1]++;
+                    }
+
+                    if (token == JsonReader.TOKEN_ARRAY_BEGIN || token == JsonReader.TOKEN_OBJECT_BEGIN) {
+                        if (depth == open.length) {
+                            open = Arrays.copyOf(open, depth * 2);
+                            counts = Arrays.copyOf(counts, depth * 2);
+                        }
+                        open[depth] = length;
+                        counts[depth] = 0;
+                        depth++;
+                        tape[length++] = (long) token << KIND_SHIFT;
+                    } else {
+                        tape[length++] = ((long) token << KIND_SHIFT) | reader.tokenOffset;
+                    }
+                    break;
+                }
+            }
+        }
+
+        // Do not keep more than a quarter of the tape unused for the life of the tape
+        if (length < tape.length - (tape.length >>> 2)) {
+            tape = Arrays.copyOf(tape, length);
+        }
+        return new JsonTape(input, tape, length);
+    }
+
+    /**
+     * @param entry A tape entry
+     * @return The token type of the entry
+     */
+    private static int kind (long entry) {
+        return (int) (entry >>> KIND_SHIFT);
+    }
+
+    /**
+     * Checks that an entry is of the given type.
+     *
+     * @param index Index of the entry
+     * @param expected Expected token type
+     * @throws IllegalStateException If the entry is of a different type
+     */
+    private void checkToken (int index, int expected) {
+        if (getToken(index) != expected) {
+            throw new IllegalStateException("JSON: Tape entry " + index + " is not of type " + expected);
+        }
+    }
+
+    /**
+     * Checks that an entry is an array or object beginning.
+     *
+     * @param index Index of the entry
+     * @return The entry
+     * @throws IllegalStateException If the entry is not a container beginning
+     */
+    private long checkContainer (int index) {
+        long entry = tape[index];
+        int kind = kind(entry);
+        if (kind != JsonReader.TOKEN_ARRAY_BEGIN && kind != JsonReader.TOKEN_OBJECT_BEGIN) {
+            throw new IllegalStateException("JSON: Tape entry " + index + " is not an array or object beginning");
+        }
+        return entry;
+    }
+
+    /** @return The number of entries of this tape */
+    public int size () {
+        return length;
+    }
+
+    /**
+     * Returns the token type of an entry, as one of the <tt>TOKEN_*</tt> constants of {@link JsonReader}.
+     *
+     * @param index Index of the entry
+     * @return The token type of the entry
+     * @throws IndexOutOfBoundsException If the index is out of bounds
+     */
+    public int getToken (int index) {
+        if (index >= length) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return kind(tape[index]);
+    }
+
+    /**
+     * Returns the index of the entry that ends the array or object beginning at the given index.
+     *
+     * @param index Index of an array or object beginning
+     * @return Index of the matching ending
+     */
+    public int getEnd (int index) {
+        return (int) checkContainer(index);
+    }
+
+    /**
+     * Returns the number of elements of an array, or of mappings of an object, beginning at the given index.
+     *
+     * @param index Index of an array or object beginning
+     * @return Number of direct children of the container
+     */
+    public int getCount (int index) {
+        long entry = checkContainer(index);
+        int count = (int) ((entry & PAYLOAD_MASK) >>> COUNT_SHIFT);
+        if (count < MAX_COUNT) {
+            return count;
+        }
+
+        // Saturated count, walk the container
+        count = 0;
+        int end = (int) entry;
+        boolean object = kind(entry) == JsonReader.TOKEN_OBJECT_BEGIN;
+        for (int i = index + 1; i < end; i = skip(i)) {
+            if (object) {
+                i++;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the index of the entry that follows the value at the given index. For arrays and objects, this is the
+     * entry following their ending, so that whole subtrees are skipped in constant time.
+     *
+     * @param index Index of a value
+     * @return Index of the next entry
+     */
+    public int skip (int index) {
+        long entry = tape[index];
+        int kind = kind(entry);
+        if (kind == JsonReader.TOKEN_ARRAY_BEGIN || kind == JsonReader.TOKEN_OBJECT_BEGIN) {
+            return (int) entry + 1;
+        }
+        return index + 1;
+    }
+
+    /**
+     * Returns the offset in the input of the token of a scalar or key entry.
+     *
+     * @param index Index of the entry
+     * @return Offset of the token
+     */
+    public long getOffset (int index) {
+        return tape[index] & PAYLOAD_MASK;
+    }
+
+    /**
+     * @param index Index of a {@link JsonReader#TOKEN_BOOLEAN} entry
+     * @return The value of the boolean
+     */
+    public boolean getBoolean (int index) {
+        checkToken(index, JsonReader.TOKEN_BOOLEAN);
+        return input.get((int) getOffset(index)) == 't';
+    }
+
+    /**
+     * Decodes a {@link JsonReader#TOKEN_STRING} or {@link JsonReader#TOKEN_KEY} entry. Keys that repeat in the document
+     * return the same instance.
+     *
+     * @param index Index of the entry
+     * @return The decoded string
+     * @throws IllegalStateException If the entry is not a string or a key, or the string is not valid UTF-8
+     */
+    public synchronized String getString (int index) {
+        int kind = getToken(index);
+        if (kind != JsonReader.TOKEN_KEY) {
+            checkToken(index, JsonReader.TOKEN_STRING);
+        }
+
+        lexer.seek(getOffset(index) + 1);
+        try {
+            lexer.readString();
+        } catch (IOException exc) {
+            throw new IllegalStateException(exc.getMessage(), exc);
+        }
+
+        if (kind == JsonReader.TOKEN_KEY) {
+            if (symbols == null) {
+                symbols = new JsonSymbolTable();
+            }
+            return symbols.intern(lexer.tokenChars, lexer.tokenStart, lexer.tokenLength);
+        }
+        return lexer.tokenString();
+    }
+
+    /**
+     * Checks whether a {@link JsonReader#TOKEN_STRING} or {@link JsonReader#TOKEN_KEY} entry is equal to the given
+     * string. Unescaped ASCII strings are compared directly against the input, without decoding.
+     *
+     * @param index Index of the entry
+     * @param str String to compare
+     * @return Whether the entry is equal to <tt>str</tt>
+     */
+    public boolean stringEquals (int index, String str) {
+        int pos = (int) getOffset(index) + 1;
+        int limit = input.limit();
+
+        for (int i = 0; i < str.length(); i++, pos++) {
+            if (pos >= limit) {
+                return false;
+            }
+
+            byte byt = input.get(pos);
+            char chr = str.charAt(i);
+            if (byt == '\\' || byt < 0 || chr >= 0x80) {
+                // Escapes or non-ASCII characters, compare the decoded string
+                return str.equals(getString(index));
+            }
+            if (byt != chr || byt == '"') {
+                return false;
+            }
+        }
+        return pos < limit && input.get(pos) == '"';
+    }
+
+    /**
+     * @param index Index of a {@link JsonReader#TOKEN_NUMBER} entry
+     * @return Whether the number has neither a fraction nor an exponent
+     */
+    public synchronized boolean isIntegral (int index) {
+        readNumber(index);
+        return lexer.tokenIntegral;
+    }
+
+    /**
+     * @param index Index of a {@link JsonReader#TOKEN_NUMBER} entry
+     * @return The value of the number as a <tt>long</tt>
+     * @throws NumberFormatException If the number is not an integer in the <tt>long</tt> range
+     */
+    public synchronized long getLong (int index) {
+        readNumber(index);
+        return lexer.tokenLong();
+    }
+
+    /**
+     * @param index Index of a {@link JsonReader#TOKEN_NUMBER} entry
+     * @return The value of the number as a <tt>double</tt>
+     */
+    public synchronized double getDouble (int index) {
+        readNumber(index);
+        return lexer.tokenDouble();
+    }
+
+    /**
+     * @param index Index of a {@link JsonReader#TOKEN_NUMBER} entry
+     * @return The value of the number without loss of precision
+     * @see JsonReader#getNumber
+     */
+    public synchronized Number getNumber (int index) {
+        readNumber(index);
+        return lexer.tokenNumber();
+    }
+
+    /**
+     * @param index Index of a {@link JsonReader#TOKEN_NUMBER} entry
+     * @return The type of the value that {@link #getNumber} returns for the number
+     * @see JsonReader#getNumberType
+     */
+    public synchronized int getNumberType (int index) {
+        readNumber(index);
+        return lexer.tokenNumberType();
+    }
+
+    /**
+     * Reads a number entry into the lexer.
+     *
+     * @param index Index of the entry
+     */
+    private void readNumber (int index) {
+        checkToken(index, JsonReader.TOKEN_NUMBER);
+        lexer.seek(getOffset(index));
+        try {
+            lexer.readNumber();
+        } catch (IOException exc) {
+            throw new IllegalStateException(exc.getMessage(), exc);
+        }
+    }
+}
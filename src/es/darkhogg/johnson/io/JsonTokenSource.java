@@ -0,0 +1,161 @@
+package es.darkhogg.johnson.io;
+
+import java.io.Closeable;
+
+/**
+ * Source of the tokens read by {@link JsonReader}. Holds the contents of the current token and converts them to the
+ * values returned by the reader, independently of the format of the input.
+ * <p>
+ * The text of string, key and number tokens is left in {@link #tokenChars}, and is only valid until the next token is
+ * read. Sources whose numbers are not stored as text override the number conversions.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+abstract class JsonTokenSource implements Closeable {
+
+    /** Array containing the characters of the current token */
+    char[] tokenChars;
+
+    /** Offset of the current token on {@link #tokenChars} */
+    int tokenStart;
+
+    /** Length of the current token */
+    int tokenLength;
+
+    /** Whether the current number token has no fraction nor exponent */
+    boolean tokenIntegral;
+
+    /** Parser used to convert number tokens */
+    private final JsonNumberParser numberParser = new JsonNumberParser();
+
+    /** Whether the current token has already been scanned by {@link #numberParser} */
+    private boolean numberScanned;
+
+    /** Buffer used for tokens that cannot be referenced from the input */
+    char[] scratch = new char[128];
+
+    /** Number of characters in the scratch buffer */
+    int scratchLength;
+
+    /** @return The offset in the input of the next character or byte to be read */
+    abstract long offset ();
+
+    /**
+     * Sets the characters of the current token.
+     *
+     * @param chars Array containing the token
+     * @param start Offset of the token
+     * @param length Length of the token
+     */
+    final void setToken (char[] chars, int start, int length) {
+        tokenChars = chars;
+        tokenStart = start;
+        tokenLength = length;
+        numberScanned = false;
+    }
+
+    /** @return The parser of number tokens, after scanning the current token with it if it was not already */
+    private JsonNumberParser scanNumber () {
+        if (!numberScanned) {
+            numberParser.scan(tokenChars, tokenStart, tokenLength);
+            numberScanned = true;
+        }
+        return numberParser;
+    }
+
+    /**
+     * Appends characters to the scratch buffer, growing it if necessary.
+     *
+     * @param chars Characters to append
+     * @param start Offset of the first character
+     * @param length Number of characters to append
+     */
+    final void appendScratch (char[] chars, int start, int length) {
+        int newLength = scratchLength + length;
+        if (newLength > scratch.length) {
+            growScratch(newLength);
+        }
+        System.arraycopy(chars, start, scratch, scratchLength, length);
+        scratchLength = newLength;
+    }
+
+    /**
+     * Appends a single character to the scratch buffer, growing it if necessary.
+     *
+     * @param chr Character to append
+     */
+    final void appendScratch (char chr) {
+        if (scratchLength == scratch.length) {
+            growScratch(scratchLength + 1);
+        }
+        scratch[scratchLength++] = chr;
+    }
+
+    /**
+     * Grows the scratch buffer to hold at least the given number of chars.
+     *
+     * @param minLength Minimum length of the new scratch buffer
+     */
+    final void growScratch (int minLength) {
+        char[] newScratch = new char[Math.max(minLength, scratch.length * 2)];
+        System.arraycopy(scratch, 0, newScratch, 0, scratchLength);
+        scratch = newScratch;
+    }
+
+    /** @return The text of the current token */
+    String tokenString () {
+        return new String(tokenChars, tokenStart, tokenLength);
+    }
+
+    /**
+     * Returns the value of the current number token as a <tt>long</tt>.
+     *
+     * @return The value of the current number
+     * @throws NumberFormatException If the number is not an integer in the <tt>long</tt> range
+     */
+    long tokenLong () {
+        JsonNumberParser parser = scanNumber();
+        if (!parser.fitsLong()) {
+            throw numberFormatError("long");
+        }
+        return parser.longValue();
+    }
+
+    /**
+     * Returns the value of the current number token as a <tt>double</tt>, rounded to the nearest representable value.
+     *
+     * @return The value of the current number
+     */
+    double tokenDouble () {
+        return scanNumber().doubleValue();
+    }
+
+    /**
+     * Returns the value of the current number token without any loss of precision.
+     *
+     * @return The value of the current number
+     * @see JsonReader#getNumber
+     */
+    Number tokenNumber () {
+        return scanNumber().numberValue();
+    }
+
+    /**
+     * Returns the type of the value of the current number token.
+     *
+     * @return The type of the current number
+     * @see JsonReader#getNumberType
+     */
+    int tokenNumberType () {
+        return scanNumber().numberType();
+    }
+
+    /**
+     * @param type Name of the target type
+     * @return An exception indicating the current number does not fit
+     */
+    final NumberFormatException numberFormatError (String type) {
+        return new NumberFormatException("JSON: Number " + tokenString() + " is not a valid " + type);
+    }
+}
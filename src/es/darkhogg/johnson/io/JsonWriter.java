@@ -1,24 +1,79 @@
 package es.darkhogg.johnson.io;
 
 import java.io.Closeable;
+import java.io.Flushable;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.channels.WritableByteChannel;
 
 /**
- * A class used to write JSON to character streams. Note that this class does not provide high-level writing of
- * {@link es.darkhogg.johnson.data.JsonValue}s, but instead allows JSON to be written at the token level.
+ * A class used to write JSON to character streams, or as UTF-8 to byte streams and channels. Note that this class
+ * does not provide high-level writing of {@link es.darkhogg.johnson.data.JsonValue}s, but instead allows JSON to be
+ * written at the token level.
+ * <p>
+ * Output is accumulated in an internal buffer and passed to the underlying target in large blocks: whenever the buffer
+ * fills up, whenever a complete top-level value has been written, and on calls to {@link #flush} and {@link #close}.
+ * Numbers are formatted directly into that buffer without creating intermediate strings.
+ * <p>
+ * In {@linkplain #setLineDelimited line-delimited} mode, any number of top-level values can be written, each followed
+ * by a newline, as in JSON Lines or NDJSON streams. Complete values are then only passed to the underlying target when
+ * the buffer fills up or on calls to {@link #flush} and {@link #close}.
+ * <p>
+ * Writers created with {@link #binary(OutputStream)} write a compact binary encoding instead of text, through the same
+ * methods, which is read back with {@link JsonReader#binary(java.io.InputStream)}. It stores numbers in binary,
+ * strings and containers prefixed by their length so that readers can skip them, and strings found in an optional
+ * dictionary as their index in it. Escape policies have no effect on it, and values are not separated by newlines in
+ * line-delimited mode.
  * 
  * @author Daniel Escoz
  * @version 1.0
  */
-public final class JsonWriter implements Closeable {
+public final class JsonWriter implements Closeable, Flushable {
 
-    /** Underlying writer */
-    private final Writer writer;
+    /** Escape policy: only quotes, backslashes and control characters are escaped, as JSON requires */
+    public static final int ESCAPE_MINIMAL = 0;
+
+    /** Escape policy: all non-ASCII characters are also escaped, so the output is pure ASCII */
+    public static final int ESCAPE_ASCII = 1;
+
+    /**
+     * Escape policy: the characters <tt>&lt; &gt; &amp; ' =</tt> and the line terminators U+2028 and U+2029 are also
+     * escaped, so the output can be safely embedded in HTML and JavaScript
+     */
+    public static final int ESCAPE_HTML = 2;
+
+    /** Non-finite policy: infinities and NaN are rejected with an <tt>IllegalArgumentException</tt> */
+    public static final int NON_FINITE_ERROR = 0;
+
+    /** Non-finite policy: infinities and NaN are written as <tt>null</tt> */
+    public static final int NON_FINITE_NULL = 1;
+
+    /**
+     * Non-finite policy: infinities and NaN are written as the strings <tt>"Infinity"</tt>, <tt>"-Infinity"</tt> and
+     * <tt>"NaN"</tt>
+     */
+    public static final int NON_FINITE_STRING = 2;
+
+    /** Sink used to emit text output, or <tt>null</tt> if this writer writes binary output */
+    private final JsonSink sink;
+
+    /** Encoder used to emit binary output, or <tt>null</tt> if this writer writes text */
+    private final JsonBinaryEncoder binary;
 
     /** State structure */
     private final JsonState state = new JsonState();
 
+    /** Current escape policy */
+    private int escapePolicy = ESCAPE_MINIMAL;
+
+    /** Current non-finite policy */
+    private int nonFinitePolicy = NON_FINITE_ERROR;
+
+    /** Whether more top-level values may follow a complete one */
+    private boolean lineDelimited;
+
     /**
      * Creates a JSON writer using the passed <tt>writer</tt> object.
      * 
@@ -29,31 +84,202 @@ public final class JsonWriter implements Closeable {
             throw new NullPointerException("writer");
         }
 
-        this.writer = writer;
+        this.sink = new JsonCharSink(writer);
+        this.binary = null;
 
         state.begin();
     }
 
     /**
-     * Writes the specified string to the underlying writer.
+     * Creates a JSON writer using the passed <tt>sink</tt> object.
      * 
-     * @param string String to be written
-     * @throws IOException If an I/O error happens
-     * @see Writer#write(String)
+     * @param sink Sink used for this JSON writer
+     */
+    JsonWriter (JsonSink sink) {
+        this.sink = sink;
+        this.binary = null;
+
+        state.begin();
+    }
+
+    /**
+     * Creates a JSON writer using the passed binary <tt>encoder</tt>.
+     * 
+     * @param encoder Encoder used for this JSON writer
+     */
+    JsonWriter (JsonBinaryEncoder encoder) {
+        this.sink = null;
+        this.binary = encoder;
+
+        state.begin();
+    }
+
+    /**
+     * Creates a JSON writer that writes UTF-8 encoded bytes to the passed <tt>stream</tt>.
+     * <p>
+     * Characters are encoded directly into an internal byte array, so this is faster than wrapping the stream in an
+     * {@link java.io.OutputStreamWriter}.
+     * 
+     * @param stream Stream used for this JSON writer
+     * @return A new JSON writer
+     */
+    public static JsonWriter utf8 (OutputStream stream) {
+        if (stream == null) {
+            throw new NullPointerException("stream");
+        }
+
+        return new JsonWriter(new JsonByteSink.ToStream(stream));
+    }
+
+    /**
+     * Creates a JSON writer that writes UTF-8 encoded bytes to the passed <tt>channel</tt>.
+     * <p>
+     * Characters are encoded directly into an internal direct buffer that is handed to the channel as is.
+     * 
+     * @param channel Channel used for this JSON writer
+     * @return A new JSON writer
+     */
+    public static JsonWriter utf8 (WritableByteChannel channel) {
+        if (channel == null) {
+            throw new NullPointerException("channel");
+        }
+
+        return new JsonWriter(new JsonByteSink.ToChannel(channel));
+    }
+
+    /**
+     * Creates a JSON writer that writes the binary encoding to the passed <tt>stream</tt>, without a dictionary.
+     * 
+     * @param stream Stream used for this JSON writer
+     * @return A new JSON writer
+     * @see #binary(OutputStream, JsonKeySet)
+     */
+    public static JsonWriter binary (OutputStream stream) {
+        return binary(stream, null);
+    }
+
+    /**
+     * Creates a JSON writer that writes the binary encoding to the passed <tt>stream</tt>.
+     * <p>
+     * Strings and keys found in the <tt>dictionary</tt> are written as their index in it, so the same dictionary must
+     * be given to the reader. Arrays and objects are kept in memory until they are complete, since they are preceded by
+     * their length.
+     * 
+     * @param stream Stream used for this JSON writer
+     * @param dictionary Strings shared with the reader, or <tt>null</tt> to write all strings in full
+     * @return A new JSON writer
+     */
+    public static JsonWriter binary (OutputStream stream, JsonKeySet dictionary) {
+        if (stream == null) {
+            throw new NullPointerException("stream");
+        }
+
+        return new JsonWriter(new JsonBinaryEncoder(stream, dictionary));
+    }
+
+    /**
+     * Sets which characters are escaped in strings and keys written from now on. The default policy is
+     * {@link #ESCAPE_MINIMAL}.
+     * 
+     * @param policy One of {@link #ESCAPE_MINIMAL}, {@link #ESCAPE_ASCII} or {@link #ESCAPE_HTML}
+     * @return <tt>this</tt>
+     * @throws IllegalArgumentException If the policy is not valid
+     */
+    public JsonWriter setEscapePolicy (int policy) {
+        if (policy != ESCAPE_MINIMAL && policy != ESCAPE_ASCII && policy != ESCAPE_HTML) {
+            throw new IllegalArgumentException("JSON: Invalid escape policy " + policy);
+        }
+        escapePolicy = policy;
+        if (sink != null) {
+            sink.setEscapePolicy(policy);
+        }
+        return this;
+    }
+
+    /** @return The current escape policy */
+    public int getEscapePolicy () {
+        return escapePolicy;
+    }
+
+    /**
+     * Sets how infinite and NaN <tt>float</tt> and <tt>double</tt> values, which have no JSON representation, are
+     * written. The default policy is {@link #NON_FINITE_ERROR}.
+     * 
+     * @param policy One of {@link #NON_FINITE_ERROR}, {@link #NON_FINITE_NULL} or {@link #NON_FINITE_STRING}
+     * @return <tt>this</tt>
+     * @throws IllegalArgumentException If the policy is not valid
+     */
+    public JsonWriter setNonFinitePolicy (int policy) {
+        if (policy != NON_FINITE_ERROR && policy != NON_FINITE_NULL && policy != NON_FINITE_STRING) {
+            throw new IllegalArgumentException("JSON: Invalid non-finite policy " + policy);
+        }
+        nonFinitePolicy = policy;
+        return this;
+    }
+
+    /** @return The current non-finite policy */
+    public int getNonFinitePolicy () {
+        return nonFinitePolicy;
+    }
+
+    /**
+     * Sets whether this writer writes a sequence of top-level values, each followed by a newline, instead of a single
+     * one.
+     * 
+     * @param lineDelimited Whether to write a sequence of values
+     * @return <tt>this</tt>
+     */
+    public JsonWriter setLineDelimited (boolean lineDelimited) {
+        this.lineDelimited = lineDelimited;
+        if (lineDelimited && state.getState() == JsonState.EMPTY) {
+            state.begin();
+        }
+        return this;
+    }
+
+    /** @return Whether this writer writes a sequence of top-level values */
+    public boolean isLineDelimited () {
+        return lineDelimited;
+    }
+
+    /**
+     * Writes an infinite or NaN value according to the current non-finite policy.
+     * 
+     * @param text Text of the value, as given by {@link Double#toString(double)}
+     * @return <tt>this</tt>
+     * @throws IOException If some I/O error happens
+     * @throws IllegalArgumentException If the policy is {@link #NON_FINITE_ERROR}
      */
-    private void writeToWriter (String string) throws IOException {
-        writer.write(string);
+    private JsonWriter nonFiniteValue (String text) throws IOException {
+        switch (nonFinitePolicy) {
+            case NON_FINITE_NULL:
+                return valueNull();
+            case NON_FINITE_STRING:
+                return value(text);
+            default:
+                throw new IllegalArgumentException("JSON: Non-finite number " + text);
+        }
     }
 
     /**
-     * Writes the specified character to the underlying writer.
+     * Passes the buffered output to the underlying target if the top-level value has been completely written. In
+     * line-delimited mode, ends the line instead and expects a new top-level value.
      * 
-     * @param chr Character to be written
      * @throws IOException If an I/O error happens
-     * @see Writer#write(int)
      */
-    private void writeToWriter (int chr) throws IOException {
-        writer.write(chr);
+    private void drainIfComplete () throws IOException {
+        if (state.getState() == JsonState.EMPTY) {
+            if (lineDelimited) {
+                if (sink != null) {
+                    sink.write('\n');
+                }
+                state.begin();
+            } else if (binary != null) {
+                binary.drain();
+            } else {
+                sink.drain();
+            }
+        }
     }
 
     /**
@@ -65,7 +291,7 @@ public final class JsonWriter implements Closeable {
      */
     private void writeCommaIfNeeded () throws IOException {
         if (state.isCommaNeeded()) {
-            writeToWriter(',');
+            sink.write(',');
         }
     }
 
@@ -78,8 +304,13 @@ public final class JsonWriter implements Closeable {
      */
     public JsonWriter valueNull () throws IOException {
         state.value();
-        writeCommaIfNeeded();
-        writeToWriter("null");
+        if (binary != null) {
+            binary.writeNull();
+        } else {
+            writeCommaIfNeeded();
+            sink.write("null");
+        }
+        drainIfComplete();
         return this;
     }
 
@@ -94,8 +325,13 @@ public final class JsonWriter implements Closeable {
      */
     public JsonWriter value (boolean bool) throws IOException {
         state.value();
-        writeCommaIfNeeded();
-        writeToWriter(bool ? "true" : "false");
+        if (binary != null) {
+            binary.writeBoolean(bool);
+        } else {
+            writeCommaIfNeeded();
+            sink.write(bool ? "true" : "false");
+        }
+        drainIfComplete();
         return this;
     }
 
@@ -110,8 +346,13 @@ public final class JsonWriter implements Closeable {
      */
     public JsonWriter value (int number) throws IOException {
         state.value();
-        writeCommaIfNeeded();
-        writeToWriter(String.valueOf(number));
+        if (binary != null) {
+            binary.writeLong(number);
+        } else {
+            writeCommaIfNeeded();
+            sink.writeLong(number);
+        }
+        drainIfComplete();
         return this;
     }
 
@@ -126,45 +367,80 @@ public final class JsonWriter implements Closeable {
      */
     public JsonWriter value (long number) throws IOException {
         state.value();
-        writeCommaIfNeeded();
-        writeToWriter(String.valueOf(number));
+        if (binary != null) {
+            binary.writeLong(number);
+        } else {
+            writeCommaIfNeeded();
+            sink.writeLong(number);
+        }
+        drainIfComplete();
         return this;
     }
 
     /**
      * Writes a JSON <i>number</i> value to the stream.
      * 
+     * <p>
+     * The shortest decimal that reads back as the same <tt>float</tt> is written. Infinities and NaN are handled
+     * according to the current {@linkplain #setNonFinitePolicy non-finite policy}.
+     * 
      * @param number Value to be written
      * 
      * @return <tt>this</tt>
      * @throws IOException If some I/O error happens
      * @throws IllegalStateException If this writer did not expect a value
+     * @throws IllegalArgumentException If the value is not finite and the policy is {@link #NON_FINITE_ERROR}
      */
     public JsonWriter value (float number) throws IOException {
+        if (Float.isNaN(number) || Float.isInfinite(number)) {
+            return nonFiniteValue(String.valueOf(number));
+        }
         state.value();
-        writeCommaIfNeeded();
-        writeToWriter(String.valueOf(number));
+        if (binary != null) {
+            binary.writeFloat(number);
+        } else {
+            writeCommaIfNeeded();
+            sink.writeFloat(number);
+        }
+        drainIfComplete();
         return this;
     }
 
     /**
      * Writes a JSON <i>number</i> value to the stream.
      * 
+     * <p>
+     * The shortest decimal that reads back as the same <tt>double</tt> is written. Infinities and NaN are handled
+     * according to the current {@linkplain #setNonFinitePolicy non-finite policy}.
+     * 
      * @param number Value to be written
      * 
      * @return <tt>this</tt>
      * @throws IOException If some I/O error happens
      * @throws IllegalStateException If this writer did not expect a value
+     * @throws IllegalArgumentException If the value is not finite and the policy is {@link #NON_FINITE_ERROR}
      */
     public JsonWriter value (double number) throws IOException {
+        if (Double.isNaN(number) || Double.isInfinite(number)) {
+            return nonFiniteValue(String.valueOf(number));
+        }
         state.value();
-        writeCommaIfNeeded();
-        writeToWriter(String.valueOf(number));
+        if (binary != null) {
+            binary.writeDouble(number);
+        } else {
+            writeCommaIfNeeded();
+            sink.writeDouble(number);
+        }
+        drainIfComplete();
         return this;
     }
 
     /**
      * Writes a JSON <i>number</i> value to the stream.
+     * <p>
+     * Binary writers store <tt>BigDecimal</tt> values under a tag of their own, so that {@link JsonReader#getNumber}
+     * reads them back as an equal <tt>BigDecimal</tt>, with the same scale. Text writers write their
+     * <tt>toString</tt>, which text readers convert as {@link JsonReader#getNumber} describes.
      * 
      * @param number Value to be written
      * 
@@ -176,12 +452,95 @@ public final class JsonWriter implements Closeable {
         if (number == null) {
             throw new NullPointerException("number");
         }
+        if (number instanceof Double) {
+            return value(number.doubleValue());
+        }
+        if (number instanceof Float) {
+            return value(number.floatValue());
+        }
         state.value();
-        writeCommaIfNeeded();
-        writeToWriter(number.toString());
+        boolean integer = number instanceof Integer || number instanceof Long || number instanceof Short
+            || number instanceof Byte;
+        if (binary != null) {
+            if (integer) {
+                binary.writeLong(number.longValue());
+            } else if (number instanceof BigDecimal) {
+                binary.writeBigDecimal((BigDecimal) number);
+            } else {
+                binary.writeDecimal(number.toString());
+            }
+        } else {
+            writeCommaIfNeeded();
+            if (integer) {
+                sink.writeLong(number.longValue());
+            } else {
+                sink.write(number.toString());
+            }
+        }
+        drainIfComplete();
         return this;
     }
 
+    /**
+     * Writes a JSON <i>array</i> of numbers to the stream.
+     * 
+     * @param numbers Values to be written
+     * 
+     * @return <tt>this</tt>
+     * @throws IOException If some I/O error happens
+     * @throws IllegalStateException If this writer did not expect a value
+     */
+    public JsonWriter value (long[] numbers) throws IOException {
+        if (numbers == null) {
+            throw new NullPointerException("numbers");
+        }
+        beginArray();
+        for (long number : numbers) {
+            state.value();
+            if (binary != null) {
+                binary.writeLong(number);
+            } else {
+                writeCommaIfNeeded();
+                sink.writeLong(number);
+            }
+        }
+        return endArray();
+    }
+
+    /**
+     * Writes a JSON <i>array</i> of numbers to the stream.
+     * 
+     * <p>
+     * Each number is written as {@link #value(double)} would.
+     * 
+     * @param numbers Values to be written
+     * 
+     * @return <tt>this</tt>
+     * @throws IOException If some I/O error happens
+     * @throws IllegalStateException If this writer did not expect a value
+     * @throws IllegalArgumentException If a value is not finite and the policy is {@link #NON_FINITE_ERROR}
+     */
+    public JsonWriter value (double[] numbers) throws IOException {
+        if (numbers == null) {
+            throw new NullPointerException("numbers");
+        }
+        beginArray();
+        for (double number : numbers) {
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                nonFiniteValue(String.valueOf(number));
+            } else {
+                state.value();
+                if (binary != null) {
+                    binary.writeDouble(number);
+                } else {
+                    writeCommaIfNeeded();
+                    sink.writeDouble(number);
+                }
+            }
+        }
+        return endArray();
+    }
+
     /**
      * Writes a JSON <i>string</i> value to the stream.
      * 
@@ -196,8 +555,13 @@ public final class JsonWriter implements Closeable {
             throw new NullPointerException("string");
         }
         state.value();
-        writeCommaIfNeeded();
-        writeToWriter(encodeString(string));
+        if (binary != null) {
+            binary.writeString(string);
+        } else {
+            writeCommaIfNeeded();
+            sink.writeString(string);
+        }
+        drainIfComplete();
         return this;
     }
 
@@ -215,9 +579,37 @@ public final class JsonWriter implements Closeable {
             throw new NullPointerException("string");
         }
         state.key();
-        writeCommaIfNeeded();
-        writeToWriter(encodeString(string));
-        writeToWriter(':');
+        if (binary != null) {
+            binary.writeString(string);
+        } else {
+            writeCommaIfNeeded();
+            sink.writeString(string);
+            sink.write(':');
+        }
+        return this;
+    }
+
+    /**
+     * Writes a pre-escaped JSON <i>string</i> key to the stream.
+     * 
+     * @param key Key to be written
+     * 
+     * @return <tt>this</tt>
+     * @throws IOException If some I/O error happens
+     * @throws IllegalStateException If this writer did not expect a key
+     */
+    public JsonWriter key (JsonKey key) throws IOException {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+        state.key();
+        if (binary != null) {
+            binary.writeString(key.getName());
+        } else {
+            writeCommaIfNeeded();
+            String escaped = key.getEscaped(escapePolicy);
+            sink.writeRun(escaped, 0, escaped.length());
+        }
         return this;
     }
 
@@ -230,8 +622,12 @@ public final class JsonWriter implements Closeable {
      */
     public JsonWriter beginArray () throws IOException {
         state.beginArray();
-        writeCommaIfNeeded();
-        writeToWriter('[');
+        if (binary != null) {
+            binary.beginContainer(JsonBinaryFormat.TAG_ARRAY);
+        } else {
+            writeCommaIfNeeded();
+            sink.write('[');
+        }
         return this;
     }
 
@@ -244,7 +640,12 @@ public final class JsonWriter implements Closeable {
      */
     public JsonWriter endArray () throws IOException {
         state.endArray();
-        writeToWriter(']');
+        if (binary != null) {
+            binary.endContainer();
+        } else {
+            sink.write(']');
+        }
+        drainIfComplete();
         return this;
     }
 
@@ -257,8 +658,12 @@ public final class JsonWriter implements Closeable {
      */
     public JsonWriter beginObject () throws IOException {
         state.beginObject();
-        writeCommaIfNeeded();
-        writeToWriter('{');
+        if (binary != null) {
+            binary.beginContainer(JsonBinaryFormat.TAG_OBJECT);
+        } else {
+            writeCommaIfNeeded();
+            sink.write('{');
+        }
         return this;
     }
 
@@ -271,7 +676,12 @@ public final class JsonWriter implements Closeable {
      */
     public JsonWriter endObject () throws IOException {
         state.endObject();
-        writeToWriter('}');
+        if (binary != null) {
+            binary.endContainer();
+        } else {
+            sink.write('}');
+        }
+        drainIfComplete();
         return this;
     }
 
@@ -282,7 +692,7 @@ public final class JsonWriter implements Closeable {
      * object a complete and correct JSON value.
      * <p>
      * It's recommended to call this method before calling {@link #close} if the exact status of the stream is not
-     * known, in order to complete a valid JSON value.
+     * known, in order to complete a valid JSON value. In line-delimited mode, only the current value is completed.
      * 
      * @return <tt>this</tt>
      * @throws IOException If an I/O error happens
@@ -291,7 +701,15 @@ public final class JsonWriter implements Closeable {
         byte stateb;
         while ((stateb = state.getState()) != JsonState.EMPTY) {
             switch (stateb) {
-                case JsonState.TOP_VALUE:
+                case JsonState.TOP_VALUE: {
+                    if (lineDelimited) {
+                        // No value has been started
+                        return this;
+                    }
+                    valueNull();
+                    break;
+                }
+
                 case JsonState.OBJECT_VALUE: {
                     valueNull();
                     break;
@@ -315,31 +733,31 @@ public final class JsonWriter implements Closeable {
     }
 
     /**
-     * Closes the underlying writer object.
+     * Writes any buffered output to the underlying target, then flushes it.
      * 
-     * @throws IOException If the underlying writer throws it
-     * @see java.io.Writer#close
+     * @throws IOException If the underlying target throws it
+     * @see java.io.Writer#flush
      */
-    public void close () throws IOException {
-        writer.close();
+    public void flush () throws IOException {
+        if (binary != null) {
+            binary.flush();
+        } else {
+            sink.flush();
+        }
     }
 
     /**
-     * Encodes a string as a JSON string.
+     * Writes any buffered output to the underlying target, then closes it.
      * 
-     * @param toEncode String to be encoded
-     * @return JSON representation of the stream
+     * @throws IOException If the underlying target throws it
+     * @see java.io.Writer#close
      */
-    private static final String encodeString (String toEncode) {
-        StringBuilder sb = new StringBuilder(toEncode.length() * 5 / 2).append('"');
-        for (int i = 0; i < toEncode.length(); i++) {
-            char c = toEncode.charAt(i);
-
-            if (c < 32 || c > 255) {
-                sb.append(String.format("\\u%04x", c));
-            }
+    public void close () throws IOException {
+        if (binary != null) {
+            binary.close();
+        } else {
+            sink.close();
         }
-        return sb.append('"').toString();
     }
 
 }
@@ -0,0 +1,37 @@
+package es.darkhogg.johnson.mapping;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class for which {@link JsonCodecProcessor} generates a codec at compile time.
+ * <p>
+ * The codec of a class <tt>Foo</tt> is a class named <tt>FooJsonCodec</tt> in the same package, or
+ * <tt>Outer_FooJsonCodec</tt> if <tt>Foo</tt> is nested in <tt>Outer</tt>. It has the following static methods, which
+ * read and write the same properties as {@link JsonSerializer} and {@link JsonDeserializer}, but without any runtime
+ * reflection or generated classes:
+ * <ul>
+ * <li><tt>void write(JsonWriter writer, Foo obj)</tt></li>
+ * <li><tt>Foo read(JsonReader reader)</tt>, which reads a complete document</li>
+ * <li><tt>Foo readValue(JsonReader reader, int token)</tt>, which reads a value whose first token has already been
+ * read</li>
+ * </ul>
+ * Since the codec is ordinary code in the package of the class, it can only use fields and constructors that are not
+ * private. Private fields without a public accessor are ignored, and fields that are accessible from the package are
+ * also written, unlike with {@link JsonSerializer}. Properties whose types have a generated codec use it. Properties
+ * of types that cannot be handled in the generated code, such as <tt>Object</tt> or classes without a codec of their
+ * own, are delegated to {@link JsonSerializer} and {@link JsonDeserializer}, which need reflection at run time. The
+ * processor reports a warning for each of them.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface JsonCodec {
+    // Marker annotation
+}
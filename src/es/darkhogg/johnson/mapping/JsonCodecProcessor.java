@@ -0,0 +1,1110 @@
+package es.darkhogg.johnson.mapping;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * An annotation processor that generates a codec for every class annotated with {@link JsonCodec}.
+ * <p>
+ * Generated codecs call {@link es.darkhogg.johnson.io.JsonWriter} and {@link es.darkhogg.johnson.io.JsonReader}
+ * directly, with the names of the properties escaped once in static fields and resolved through a
+ * {@link es.darkhogg.johnson.io.JsonKeySet}. They follow the same rules as {@link JsonSerializer} and
+ * {@link JsonDeserializer} to find the properties of a class, except that members that are private and have no public
+ * accessor cannot be used.
+ * <p>
+ * The processor is enabled by adding it to the processor path of the compiler, and naming it with the
+ * <tt>-processor</tt> option.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+@SupportedAnnotationTypes("es.darkhogg.johnson.mapping.JsonCodec")
+public final class JsonCodecProcessor extends AbstractProcessor {
+
+    /** Suffix of the names of the generated classes */
+    static final String SUFFIX = "JsonCodec";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion () {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process (Set<? extends TypeElement> annotations, RoundEnvironment env) {
+        for (Element elem : env.getElementsAnnotatedWith(JsonCodec.class)) {
+            if (elem.getKind() != ElementKind.CLASS) {
+                error(elem, "JSON: Only classes can have a generated codec");
+                continue;
+            }
+
+            TypeElement type = (TypeElement) elem;
+            Set<Modifier> mods = type.getModifiers();
+            if (mods.contains(Modifier.PRIVATE) || mods.contains(Modifier.ABSTRACT)) {
+                error(type, "JSON: Classes with a generated codec cannot be private or abstract");
+            } else if (type.getNestingKind() != NestingKind.TOP_LEVEL && !mods.contains(Modifier.STATIC)) {
+                error(type, "JSON: Nested classes with a generated codec must be static");
+            } else if (!type.getTypeParameters().isEmpty()) {
+                error(type, "JSON: Classes with a generated codec cannot be generic");
+            } else {
+                try {
+                    new Generator(type).generate();
+                } catch (IllegalArgumentException | IOException exc) {
+                    error(type, exc.getMessage());
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reports an error on an element.
+     *
+     * @param elem The element
+     * @param message The error message
+     */
+    private void error (Element elem, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, elem);
+    }
+
+    /**
+     * Returns the name of the codec of a class, relative to its package.
+     *
+     * @param type The class
+     * @param elements Utilities used to find its package
+     * @return The name of the codec
+     */
+    static String codecName (TypeElement type, Elements elements) {
+        String pkg = elements.getPackageOf(type).getQualifiedName().toString();
+        String name = type.getQualifiedName().toString();
+        if (!pkg.isEmpty()) {
+            name = name.substring(pkg.length() + 1);
+        }
+        return name.replace('.', '_') + SUFFIX;
+    }
+
+    /**
+     * Generates the codec of a single class.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private final class Generator {
+
+        /** Utilities to work with types */
+        private final Types types = processingEnv.getTypeUtils();
+
+        /** Utilities to work with elements */
+        private final Elements elements = processingEnv.getElementUtils();
+
+        /** The class the codec is generated for */
+        private final TypeElement type;
+
+        /** Package of the class */
+        private final String pkg;
+
+        /** Static fields of the codec */
+        private final StringBuilder fields = new StringBuilder();
+
+        /** Name of the static fields with the names of the constants of each enum */
+        private final Map<String, String> enums = new HashMap<String, String>();
+
+        /** Number of local variables and static fields created so far, used to name them */
+        private int counter;
+
+        /** Name of the property whose code is being generated */
+        private String property;
+
+        Generator (TypeElement type) {
+            this.type = type;
+            this.pkg = elements.getPackageOf(type).getQualifiedName().toString();
+        }
+
+        /**
+         * Writes the source file of the codec.
+         *
+         * @throws IOException If the file cannot be written
+         */
+        void generate () throws IOException {
+            String name = codecName(type, elements);
+            String cls = type.getQualifiedName().toString();
+
+            StringBuilder write = new StringBuilder();
+            generateWrite(write);
+            StringBuilder read = new StringBuilder();
+            generateRead(read);
+
+            StringBuilder src = new StringBuilder();
+            if (!pkg.isEmpty()) {
+                src.append("package ").append(pkg).append(";\n\n");
+            }
+            src.append("import java.io.IOException;\n\n");
+            src.append("import es.darkhogg.johnson.io.JsonKey;\n");
+            src.append("import es.darkhogg.johnson.io.JsonKeySet;\n");
+            src.append("import es.darkhogg.johnson.io.JsonReader;\n");
+            src.append("import es.darkhogg.johnson.io.JsonWriter;\n");
+            src.append("import es.darkhogg.johnson.mapping.JsonCodecs;\n\n");
+            src.append("/**\n * JSON codec for {@link ").append(cls).append("}, generated by {@link ")
+                .append(JsonCodecProcessor.class.getName()).append("}.\n */\n");
+            src.append("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+            src.append("public final class ").append(name).append(" {\n\n");
+            src.append(fields);
+            src.append("\n    private ").append(name).append(" () {}\n\n");
+
+            src.append("    public static void write (JsonWriter writer, ").append(cls).append(" obj)\n");
+            src.append("        throws IOException {\n");
+            src.append(write);
+            src.append("    }\n\n");
+
+            src.append("    public static ").append(cls).append(" read (JsonReader reader) throws IOException {\n");
+            src.append("        ").append(cls).append(" value = readValue(reader, reader.next());\n");
+            src.append("        if (reader.next() != JsonReader.TOKEN_EOF) {\n");
+            src.append("            throw new IOException(\"JSON: Expecting EOF\");\n");
+            src.append("        }\n");
+            src.append("        return value;\n");
+            src.append("    }\n\n");
+
+            src.append("    public static ").append(cls).append(" readValue (JsonReader reader, int token)\n");
+            src.append("        throws IOException {\n");
+            src.append(read);
+            src.append("    }\n");
+            src.append("}\n");
+
+            Writer out = processingEnv.getFiler().createSourceFile(pkg.isEmpty() ? name : pkg + "." + name, type)
+                .openWriter();
+            try {
+                out.write(src.toString());
+            } finally {
+                out.close();
+            }
+        }
+
+        /**
+         * @return The non-static fields of the class and its superclasses, from the topmost superclass down
+         */
+        private List<VariableElement> instanceFields () {
+            List<TypeElement> hierarchy = new ArrayList<TypeElement>();
+            for (TypeElement cls = type; cls != null; cls = superclass(cls)) {
+                hierarchy.add(0, cls);
+            }
+
+            List<VariableElement> result = new ArrayList<VariableElement>();
+            for (TypeElement cls : hierarchy) {
+                for (VariableElement field : ElementFilter.fieldsIn(cls.getEnclosedElements())) {
+                    if (!field.getModifiers().contains(Modifier.STATIC)) {
+                        result.add(field);
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @param cls A class
+         * @return The superclass of <tt>cls</tt>, or <tt>null</tt> if it is {@link Object} or has none
+         */
+        private TypeElement superclass (TypeElement cls) {
+            TypeMirror sup = cls.getSuperclass();
+            if (sup.getKind() != TypeKind.DECLARED) {
+                return null;
+            }
+            TypeElement elem = (TypeElement) ((DeclaredType) sup).asElement();
+            return elem.getQualifiedName().contentEquals("java.lang.Object") ? null : elem;
+        }
+
+        /**
+         * @return The public instance methods of the class, including inherited ones, except those of {@link Object}
+         */
+        private List<ExecutableElement> publicMethods () {
+            List<ExecutableElement> result = new ArrayList<ExecutableElement>();
+            for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+                Set<Modifier> mods = method.getModifiers();
+                TypeElement owner = (TypeElement) method.getEnclosingElement();
+                if (mods.contains(Modifier.PUBLIC) && !mods.contains(Modifier.STATIC)
+                    && !owner.getQualifiedName().contentEquals("java.lang.Object"))
+                {
+                    result.add(method);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * @param member A member of the class or its superclasses
+         * @return Whether the member can be used from the package of the codec
+         */
+        private boolean isAccessible (Element member) {
+            Set<Modifier> mods = member.getModifiers();
+            if (mods.contains(Modifier.PUBLIC)) {
+                return true;
+            }
+            return !mods.contains(Modifier.PRIVATE)
+                && elements.getPackageOf(member).getQualifiedName().contentEquals(pkg);
+        }
+
+        /**
+         * @param member A member of the class or its superclasses
+         * @return The type of the member as seen from the class
+         */
+        private TypeMirror memberType (Element member) {
+            return types.asMemberOf((DeclaredType) type.asType(), member);
+        }
+
+        /**
+         * @param name A property name
+         * @return The name with its first character in upper case
+         */
+        private String capitalize (String name) {
+            return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        }
+
+        /**
+         * @param suffix The part of the name of an accessor after <tt>get</tt>, <tt>is</tt> or <tt>set</tt>
+         * @return The name of the property
+         */
+        private String decapitalize (String suffix) {
+            if (suffix.length() > 1 && Character.isUpperCase(suffix.charAt(0))
+                && Character.isUpperCase(suffix.charAt(1)))
+            {
+                return suffix;
+            }
+            return Character.toLowerCase(suffix.charAt(0)) + suffix.substring(1);
+        }
+
+        /**
+         * Declares a static field with a pre-escaped key.
+         *
+         * @param name The key
+         * @return The name of the field
+         */
+        private String keyField (String name) {
+            String field = "KEY_" + counter++;
+            fields.append("    private static final JsonKey ").append(field).append(" = new JsonKey(")
+                .append(literal(name)).append(");\n");
+            return field;
+        }
+
+        /**
+         * @param str A string
+         * @return A Java string literal with the given value
+         */
+        private String literal (String str) {
+            StringBuilder sb = new StringBuilder("\"");
+            for (int i = 0; i < str.length(); i++) {
+                char chr = str.charAt(i);
+                if (chr == '"' || chr == '\\') {
+                    sb.append('\\').append(chr);
+                } else if (chr < 0x20 || chr > 0x7E) {
+                    sb.append(String.format("\\u%04x", (int) chr));
+                } else {
+                    sb.append(chr);
+                }
+            }
+            return sb.append('"').toString();
+        }
+
+        /**
+         * @param prefix Prefix of the name
+         * @return A new name for a local variable
+         */
+        private String local (String prefix) {
+            return prefix + counter++;
+        }
+
+        /**
+         * Generates the body of the <tt>write</tt> method.
+         *
+         * @param out Builder to append the code to
+         */
+        private void generateWrite (StringBuilder out) {
+            String ind = "        ";
+            out.append(ind).append("if (obj == null) {\n");
+            out.append(ind).append("    writer.valueNull();\n");
+            out.append(ind).append("    return;\n");
+            out.append(ind).append("}\n");
+            out.append(ind).append("writer.beginObject();\n");
+
+            Set<String> names = new HashSet<String>();
+            Set<ExecutableElement> used = new HashSet<ExecutableElement>();
+            List<ExecutableElement> methods = publicMethods();
+
+            for (VariableElement field : instanceFields()) {
+                String name = field.getSimpleName().toString();
+                if (!names.add(name) || field.getModifiers().contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+
+                TypeMirror fieldType = memberType(field);
+                ExecutableElement getter = getter(methods, name, fieldType);
+                if (getter != null) {
+                    used.add(getter);
+                    writeProperty(out, ind, name, fieldType, "obj." + getter.getSimpleName() + "()");
+                } else if (isAccessible(field)) {
+                    writeProperty(out, ind, name, fieldType, "obj." + name);
+                }
+            }
+
+            Map<String, ExecutableElement> getters = new TreeMap<String, ExecutableElement>();
+            for (ExecutableElement method : methods) {
+                String name = getterName(method);
+                if (name != null && !used.contains(method) && !names.contains(name)) {
+                    getters.put(name, method);
+                }
+            }
+            for (Map.Entry<String, ExecutableElement> entry : getters.entrySet()) {
+                ExecutableType exec = (ExecutableType) memberType(entry.getValue());
+                writeProperty(out, ind, entry.getKey(), exec.getReturnType(),
+                    "obj." + entry.getValue().getSimpleName() + "()");
+            }
+
+            out.append(ind).append("writer.endObject();\n");
+        }
+
+        /**
+         * Finds the public accessor of a field.
+         *
+         * @param methods The public methods of the class
+         * @param name Name of the field
+         * @param fieldType Type of the field
+         * @return The <tt>getX</tt>, <tt>isX</tt> or <tt>x</tt> method that reads the field, or <tt>null</tt>
+         */
+        private ExecutableElement getter (List<ExecutableElement> methods, String name, TypeMirror fieldType) {
+            String[] candidates = fieldType.getKind() == TypeKind.BOOLEAN
+                ? new String[] { "is" + capitalize(name), "get" + capitalize(name), name }
+                : new String[] { "get" + capitalize(name), name };
+            for (String candidate : candidates) {
+                for (ExecutableElement method : methods) {
+                    if (method.getSimpleName().contentEquals(candidate) && method.getParameters().isEmpty()
+                        && types.isSameType(((ExecutableType) memberType(method)).getReturnType(), fieldType))
+                    {
+                        return method;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @param method A public method
+         * @return The name of the property read by <tt>method</tt> if it is a getter, or <tt>null</tt> if it is not
+         */
+        private String getterName (ExecutableElement method) {
+            String name = method.getSimpleName().toString();
+            TypeMirror ret = method.getReturnType();
+            if (!method.getParameters().isEmpty() || ret.getKind() == TypeKind.VOID) {
+                return null;
+            }
+            if (name.startsWith("get") && name.length() > 3) {
+                return decapitalize(name.substring(3));
+            }
+            boolean bool = ret.getKind() == TypeKind.BOOLEAN || ret.toString().equals("java.lang.Boolean");
+            if (name.startsWith("is") && name.length() > 2 && bool) {
+                return decapitalize(name.substring(2));
+            }
+            return null;
+        }
+
+        /**
+         * Generates the code that writes a member.
+         *
+         * @param out Builder to append the code to
+         * @param ind Indentation of the code
+         * @param name Name of the member
+         * @param propType Type of the value
+         * @param expr Expression that reads the value
+         */
+        private void writeProperty (StringBuilder out, String ind, String name, TypeMirror propType, String expr) {
+            property = name;
+            out.append(ind).append("writer.key(").append(keyField(name)).append(");\n");
+            writeValue(out, ind, propType, expr);
+        }
+
+        /**
+         * Warns that values of a type of the current property are handled at run time, through reflection.
+         *
+         * @param valueType Type of the values
+         * @param runtime Name of the class that handles them
+         */
+        private void warnRuntime (TypeMirror valueType, String runtime) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "JSON: Values of type " + valueType
+                + " in property " + property + " cannot be handled by the generated code, and are delegated to "
+                + runtime + " at run time", type);
+        }
+
+        /**
+         * Generates the code that writes a value.
+         *
+         * @param out Builder to append the code to
+         * @param ind Indentation of the code
+         * @param valueType Type of the value
+         * @param expr Expression that evaluates to the value
+         */
+        private void writeValue (StringBuilder out, String ind, TypeMirror valueType, String expr) {
+            TypeMirror vt = bound(valueType);
+            switch (vt.getKind()) {
+                case BOOLEAN:
+                case BYTE:
+                case SHORT:
+                case INT:
+                case LONG:
+                case FLOAT:
+                case DOUBLE:
+                    out.append(ind).append("writer.value(").append(expr).append(");\n");
+                    return;
+                case CHAR:
+                    out.append(ind).append("writer.value(String.valueOf(").append(expr).append("));\n");
+                    return;
+                case ARRAY:
+                case DECLARED:
+                    break;
+                default:
+                    warnRuntime(vt, "JsonSerializer");
+                    out.append(ind).append("es.darkhogg.johnson.mapping.JsonSerializer.serialize(writer, ")
+                        .append(expr).append(");\n");
+                    return;
+            }
+
+            TypeElement codec = codecOf(vt);
+            if (codec != null) {
+                out.append(ind).append(codecReference(codec)).append(".write(writer, ").append(expr)
+                    .append(");\n");
+                return;
+            }
+
+            String var = local("v");
+            String in = ind + "    ";
+            out.append(ind).append(typeName(vt)).append(' ').append(var).append(" = ").append(expr).append(";\n");
+            out.append(ind).append("if (").append(var).append(" == null) {\n");
+            out.append(in).append("writer.valueNull();\n");
+            out.append(ind).append("} else {\n");
+
+            String qname = vt.getKind() == TypeKind.DECLARED ? qualifiedName(vt) : "";
+            if (vt.getKind() == TypeKind.ARRAY) {
+                TypeMirror comp = ((ArrayType) vt).getComponentType();
+                if (comp.getKind() == TypeKind.LONG || comp.getKind() == TypeKind.DOUBLE) {
+                    out.append(in).append("writer.value(").append(var).append(");\n");
+                } else {
+                    String elem = local("e");
+                    out.append(in).append("writer.beginArray();\n");
+                    out.append(in).append("for (").append(typeName(comp)).append(' ').append(elem).append(" : ")
+                        .append(var).append(") {\n");
+                    writeValue(out, in + "    ", comp, elem);
+                    out.append(in).append("}\n");
+                    out.append(in).append("writer.endArray();\n");
+                }
+            } else if (qname.equals("java.lang.String")) {
+                out.append(in).append("writer.value(").append(var).append(");\n");
+            } else if (qname.equals("java.lang.Boolean")) {
+                out.append(in).append("writer.value(").append(var).append(".booleanValue());\n");
+            } else if (qname.equals("java.lang.Character")) {
+                out.append(in).append("writer.value(").append(var).append(".toString());\n");
+            } else if (isSubtype(vt, "java.lang.Number")) {
+                out.append(in).append("writer.value((Number) ").append(var).append(");\n");
+            } else if (((DeclaredType) vt).asElement().getKind() == ElementKind.ENUM) {
+                out.append(in).append("writer.value(").append(var).append(".name());\n");
+            } else if (isSubtype(vt, "java.util.Map")) {
+                String entry = local("e");
+                TypeMirror val = typeArgument(vt, "java.util.Map", 1);
+                out.append(in).append("writer.beginObject();\n");
+                out.append(in).append("for (java.util.Map.Entry<?, ? extends ").append(typeName(val)).append("> ")
+                    .append(entry).append(" : ").append(var).append(".entrySet()) {\n");
+                out.append(in).append("    writer.key(String.valueOf(").append(entry).append(".getKey()));\n");
+                writeValue(out, in + "    ", val, entry + ".getValue()");
+                out.append(in).append("}\n");
+                out.append(in).append("writer.endObject();\n");
+            } else if (isSubtype(vt, "java.lang.Iterable")) {
+                String elem = local("e");
+                TypeMirror comp = typeArgument(vt, "java.lang.Iterable", 0);
+                out.append(in).append("writer.beginArray();\n");
+                out.append(in).append("for (").append(typeName(comp)).append(' ').append(elem).append(" : ")
+                    .append(var).append(") {\n");
+                writeValue(out, in + "    ", comp, elem);
+                out.append(in).append("}\n");
+                out.append(in).append("writer.endArray();\n");
+            } else {
+                warnRuntime(vt, "JsonSerializer");
+                out.append(in).append("es.darkhogg.johnson.mapping.JsonSerializer.serialize(writer, ").append(var)
+                    .append(");\n");
+            }
+            out.append(ind).append("}\n");
+        }
+
+        /**
+         * Generates the body of the <tt>readValue</tt> method.
+         *
+         * @param out Builder to append the code to
+         */
+        private void generateRead (StringBuilder out) {
+            String ind = "        ";
+            String cls = type.getQualifiedName().toString();
+            out.append(ind).append("if (!JsonCodecs.beginObject(reader, token)) {\n");
+            out.append(ind).append("    return null;\n");
+            out.append(ind).append("}\n");
+
+            List<VariableElement> all = instanceFields();
+            ExecutableElement noArgs = null;
+            ExecutableElement creator = null;
+            for (ExecutableElement ctor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+                if (ctor.getParameters().isEmpty()) {
+                    noArgs = ctor;
+                } else if (ctor.getParameters().size() == all.size()) {
+                    boolean matches = true;
+                    for (int i = 0; i < all.size(); i++) {
+                        matches &= types.isSameType(types.erasure(ctor.getParameters().get(i).asType()),
+                            types.erasure(memberType(all.get(i))));
+                    }
+                    if (matches) {
+                        creator = ctor;
+                    }
+                }
+            }
+
+            List<String> names = new ArrayList<String>();
+            List<TypeMirror> propTypes = new ArrayList<TypeMirror>();
+            List<String> targets = new ArrayList<String>();
+
+            if (noArgs != null) {
+                if (!isAccessible(noArgs)) {
+                    throw new IllegalArgumentException("JSON: The constructor without parameters of " + cls
+                        + " is private");
+                }
+                readableProperties(all, names, propTypes, targets);
+                out.append(ind).append(cls).append(" obj = new ").append(cls).append("();\n");
+            } else if (creator != null) {
+                if (!isAccessible(creator)) {
+                    throw new IllegalArgumentException("JSON: The constructor that takes all fields of " + cls
+                        + " is private");
+                }
+                for (int i = 0; i < all.size(); i++) {
+                    TypeMirror paramType = creator.getParameters().get(i).asType();
+                    String var = local("p");
+                    names.add(all.get(i).getSimpleName().toString());
+                    propTypes.add(paramType);
+                    targets.add(var + " = %s");
+                    out.append(ind).append(typeName(paramType)).append(' ').append(var).append(" = ")
+                        .append(defaultValue(paramType)).append(";\n");
+                }
+            } else {
+                throw new IllegalArgumentException("JSON: No constructor without parameters or taking all fields in "
+                    + cls);
+            }
+
+            String keys = "KEYS_" + counter++;
+            fields.append("    private static final JsonKeySet ").append(keys).append(" = new JsonKeySet(");
+            for (int i = 0; i < names.size(); i++) {
+                fields.append(i == 0 ? "" : ", ").append(literal(names.get(i)));
+            }
+            fields.append(");\n");
+
+            out.append(ind).append("while (reader.next() == JsonReader.TOKEN_KEY) {\n");
+            out.append(ind).append("    switch (reader.getKeyIndex(").append(keys).append(")) {\n");
+            String in = ind + "            ";
+            for (int i = 0; i < names.size(); i++) {
+                String tok = local("t");
+                property = names.get(i);
+                out.append(ind).append("        case ").append(i).append(": {\n");
+                out.append(in).append("int ").append(tok).append(" = reader.next();\n");
+                String expr = readValue(out, in, propTypes.get(i), tok);
+                out.append(in).append(String.format(targets.get(i), expr)).append(";\n");
+                out.append(in).append("break;\n");
+                out.append(ind).append("        }\n");
+            }
+            out.append(ind).append("        default:\n");
+            out.append(ind).append("            reader.skipValue();\n");
+            out.append(ind).append("            break;\n");
+            out.append(ind).append("    }\n");
+            out.append(ind).append("}\n");
+
+            if (noArgs != null) {
+                out.append(ind).append("return obj;\n");
+            } else {
+                out.append(ind).append("return new ").append(cls).append('(');
+                for (int i = 0; i < targets.size(); i++) {
+                    String target = targets.get(i);
+                    out.append(i == 0 ? "" : ", ").append(target.substring(0, target.indexOf(' ')));
+                }
+                out.append(");\n");
+            }
+        }
+
+        /**
+         * Finds the properties that are stored by setters or fields.
+         *
+         * @param all The non-static fields of the class and its superclasses
+         * @param names Names of the properties, filled by this method
+         * @param propTypes Types of the properties, filled by this method
+         * @param targets Format of the statement that stores each property, filled by this method
+         */
+        private void readableProperties (List<VariableElement> all, List<String> names, List<TypeMirror> propTypes,
+            List<String> targets)
+        {
+            Set<String> seen = new HashSet<String>();
+            Set<ExecutableElement> used = new HashSet<ExecutableElement>();
+            List<ExecutableElement> methods = publicMethods();
+
+            for (VariableElement field : all) {
+                String name = field.getSimpleName().toString();
+                if (!seen.add(name) || field.getModifiers().contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+
+                TypeMirror fieldType = memberType(field);
+                ExecutableElement setter = setter(methods, "set" + capitalize(name), fieldType);
+                if (setter != null) {
+                    used.add(setter);
+                    names.add(name);
+                    propTypes.add(((ExecutableType) memberType(setter)).getParameterTypes().get(0));
+                    targets.add("obj." + setter.getSimpleName() + "(%s)");
+                } else if (!field.getModifiers().contains(Modifier.FINAL) && isAccessible(field)) {
+                    names.add(name);
+                    propTypes.add(fieldType);
+                    targets.add("obj." + name + " = %s");
+                }
+            }
+
+            for (ExecutableElement method : methods) {
+                String name = method.getSimpleName().toString();
+                if (name.length() > 3 && name.startsWith("set") && method.getParameters().size() == 1
+                    && !used.contains(method) && seen.add(decapitalize(name.substring(3))))
+                {
+                    names.add(decapitalize(name.substring(3)));
+                    propTypes.add(((ExecutableType) memberType(method)).getParameterTypes().get(0));
+                    targets.add("obj." + name + "(%s)");
+                }
+            }
+        }
+
+        /**
+         * @param methods The public methods of the class
+         * @param name Name of a setter
+         * @param param Preferred type of the parameter
+         * @return A public setter with the given name taking <tt>param</tt> or else any single parameter, or
+         *         <tt>null</tt>
+         */
+        private ExecutableElement setter (List<ExecutableElement> methods, String name, TypeMirror param) {
+            ExecutableElement found = null;
+            for (ExecutableElement method : methods) {
+                if (method.getSimpleName().contentEquals(name) && method.getParameters().size() == 1) {
+                    TypeMirror actual = ((ExecutableType) memberType(method)).getParameterTypes().get(0);
+                    if (types.isSameType(actual, param)) {
+                        return method;
+                    }
+                    found = method;
+                }
+            }
+            return found;
+        }
+
+        /**
+         * @param valueType A type
+         * @return An expression with the default value of the type
+         */
+        private String defaultValue (TypeMirror valueType) {
+            switch (valueType.getKind()) {
+                case BOOLEAN:
+                    return "false";
+                case BYTE:
+                case SHORT:
+                case INT:
+                case LONG:
+                case CHAR:
+                case FLOAT:
+                case DOUBLE:
+                    return "0";
+                default:
+                    return "null";
+            }
+        }
+
+        /**
+         * Generates the code that reads a value whose first token has already been read.
+         *
+         * @param out Builder to append the statements that read the value to
+         * @param ind Indentation of the code
+         * @param valueType Type of the value
+         * @param tok Name of the variable with the first token of the value
+         * @return An expression that evaluates to the value after the statements have run
+         */
+        private String readValue (StringBuilder out, String ind, TypeMirror valueType, String tok) {
+            TypeMirror vt = bound(valueType);
+            String args = "(reader, " + tok + ")";
+            switch (vt.getKind()) {
+                case BOOLEAN:
+                    return "JsonCodecs.readBoolean" + args;
+                case BYTE:
+                    return "JsonCodecs.readByte" + args;
+                case SHORT:
+                    return "JsonCodecs.readShort" + args;
+                case INT:
+                    return "JsonCodecs.readInt" + args;
+                case LONG:
+                    return "JsonCodecs.readLong" + args;
+                case CHAR:
+                    return "JsonCodecs.readChar" + args;
+                case FLOAT:
+                    return "JsonCodecs.readFloat" + args;
+                case DOUBLE:
+                    return "JsonCodecs.readDouble" + args;
+                case ARRAY:
+                    return readArray(out, ind, (ArrayType) vt, tok);
+                case DECLARED:
+                    break;
+                default:
+                    warnRuntime(vt, "JsonDeserializer");
+                    return "es.darkhogg.johnson.mapping.JsonDeserializer.of(Object.class).readValue" + args;
+            }
+
+            TypeElement codec = codecOf(vt);
+            if (codec != null) {
+                return codecReference(codec) + ".readValue" + args;
+            }
+
+            String qname = qualifiedName(vt);
+            String nullCheck = "(" + tok + " == JsonReader.TOKEN_NULL ? null : ";
+            if (qname.equals("java.lang.String")) {
+                return "JsonCodecs.readString" + args;
+            } else if (qname.equals("java.lang.Boolean")) {
+                return nullCheck + "Boolean.valueOf(JsonCodecs.readBoolean" + args + "))";
+            } else if (qname.equals("java.lang.Character")) {
+                return nullCheck + "Character.valueOf(JsonCodecs.readChar" + args + "))";
+            } else if (qname.equals("java.lang.Integer")) {
+                return nullCheck + "Integer.valueOf(JsonCodecs.readInt" + args + "))";
+            } else if (qname.equals("java.lang.Long")) {
+                return nullCheck + "Long.valueOf(JsonCodecs.readLong" + args + "))";
+            } else if (qname.equals("java.lang.Short")) {
+                return nullCheck + "Short.valueOf(JsonCodecs.readShort" + args + "))";
+            } else if (qname.equals("java.lang.Byte")) {
+                return nullCheck + "Byte.valueOf(JsonCodecs.readByte" + args + "))";
+            } else if (qname.equals("java.lang.Double")) {
+                return nullCheck + "Double.valueOf(JsonCodecs.readDouble" + args + "))";
+            } else if (qname.equals("java.lang.Float")) {
+                return nullCheck + "Float.valueOf(JsonCodecs.readFloat" + args + "))";
+            }
+
+            TypeElement elem = (TypeElement) ((DeclaredType) vt).asElement();
+            if (elem.getKind() == ElementKind.ENUM && isAccessible(elem)) {
+                return "JsonCodecs.readEnum(reader, " + tok + ", " + enumField(elem) + "_NAMES, " + enumField(elem)
+                    + "_VALUES)";
+            }
+
+            String impl = null;
+            if (isSubtype(vt, "java.util.Collection")) {
+                impl = implementation(elem, "java.util.ArrayList", "java.util.LinkedHashSet", "java.util.TreeSet",
+                    "java.util.ArrayDeque");
+                if (impl != null) {
+                    return readCollection(out, ind, vt, impl, tok);
+                }
+            } else if (isSubtype(vt, "java.util.Map")) {
+                TypeMirror key = bound(typeArgument(vt, "java.util.Map", 0));
+                String keyName = key.getKind() == TypeKind.DECLARED ? qualifiedName(key) : "";
+                impl = implementation(elem, "java.util.LinkedHashMap", "java.util.TreeMap");
+                if (impl != null && (keyName.equals("java.lang.String") || keyName.equals("java.lang.Object"))) {
+                    return readMap(out, ind, vt, impl, tok);
+                }
+            }
+
+            warnRuntime(vt, "JsonDeserializer");
+            return "es.darkhogg.johnson.mapping.JsonDeserializer.of(" + typeName(types.erasure(vt))
+                + ".class).readValue" + args;
+        }
+
+        /**
+         * Generates the code that reads an array.
+         *
+         * @param out Builder to append the statements to
+         * @param ind Indentation of the code
+         * @param arrayType Type of the array
+         * @param tok Name of the variable with the first token of the value
+         * @return The name of the variable that holds the array
+         */
+        private String readArray (StringBuilder out, String ind, ArrayType arrayType, String tok) {
+            TypeMirror comp = arrayType.getComponentType();
+            if (comp.getKind() == TypeKind.LONG) {
+                return "JsonCodecs.readLongs(reader, " + tok + ")";
+            } else if (comp.getKind() == TypeKind.DOUBLE) {
+                return "JsonCodecs.readDoubles(reader, " + tok + ")";
+            }
+
+            String var = local("a");
+            String list = local("l");
+            String elemTok = local("t");
+            String index = local("i");
+            String in = ind + "    ";
+            String boxed = comp.getKind().isPrimitive() ? types.boxedClass((javax.lang.model.type.PrimitiveType) comp)
+                .getQualifiedName().toString() : typeName(comp);
+            String erased = types.erasure(comp).toString();
+            int dims = erased.indexOf('[');
+
+            out.append(ind).append(typeName(arrayType)).append(' ').append(var).append(" = null;\n");
+            out.append(ind).append("if (JsonCodecs.beginArray(reader, ").append(tok).append(")) {\n");
+            out.append(in).append("java.util.ArrayList<").append(boxed).append("> ").append(list)
+                .append(" = new java.util.ArrayList<").append(boxed).append(">();\n");
+            out.append(in).append("for (int ").append(elemTok).append(" = reader.next(); ").append(elemTok)
+                .append(" != JsonReader.TOKEN_ARRAY_END; ").append(elemTok).append(" = reader.next()) {\n");
+            String expr = readValue(out, in + "    ", comp, elemTok);
+            out.append(in).append("    ").append(list).append(".add(").append(expr).append(");\n");
+            out.append(in).append("}\n");
+            out.append(in).append(var).append(" = new ")
+                .append(dims < 0 ? erased : erased.substring(0, dims)).append('[').append(list).append(".size()]")
+                .append(dims < 0 ? "" : erased.substring(dims)).append(";\n");
+            out.append(in).append("for (int ").append(index).append(" = 0; ").append(index).append(" < ").append(var)
+                .append(".length; ").append(index).append("++) {\n");
+            out.append(in).append("    ").append(var).append('[').append(index).append("] = ").append(list)
+                .append(".get(").append(index).append(");\n");
+            out.append(in).append("}\n");
+            out.append(ind).append("}\n");
+            return var;
+        }
+
+        /**
+         * Generates the code that reads a collection.
+         *
+         * @param out Builder to append the statements to
+         * @param ind Indentation of the code
+         * @param collType Type of the collection
+         * @param impl Class of the created collection
+         * @param tok Name of the variable with the first token of the value
+         * @return The name of the variable that holds the collection
+         */
+        private String readCollection (StringBuilder out, String ind, TypeMirror collType, String impl, String tok) {
+            TypeMirror comp = typeArgument(collType, "java.util.Collection", 0);
+            String local = isGeneric(impl) ? impl + "<" + typeName(comp) + ">" : impl;
+            String var = local("c");
+            String elemTok = local("t");
+            String in = ind + "    ";
+
+            out.append(ind).append(local).append(' ').append(var).append(" = null;\n");
+            out.append(ind).append("if (JsonCodecs.beginArray(reader, ").append(tok).append(")) {\n");
+            out.append(in).append(var).append(" = new ").append(local).append("();\n");
+            out.append(in).append("for (int ").append(elemTok).append(" = reader.next(); ").append(elemTok)
+                .append(" != JsonReader.TOKEN_ARRAY_END; ").append(elemTok).append(" = reader.next()) {\n");
+            String expr = readValue(out, in + "    ", comp, elemTok);
+            out.append(in).append("    ").append(var).append(".add(").append(expr).append(");\n");
+            out.append(in).append("}\n");
+            out.append(ind).append("}\n");
+            return var;
+        }
+
+        /**
+         * Generates the code that reads a map.
+         *
+         * @param out Builder to append the statements to
+         * @param ind Indentation of the code
+         * @param mapType Type of the map
+         * @param impl Class of the created map
+         * @param tok Name of the variable with the first token of the value
+         * @return The name of the variable that holds the map
+         */
+        private String readMap (StringBuilder out, String ind, TypeMirror mapType, String impl, String tok) {
+            TypeMirror key = typeArgument(mapType, "java.util.Map", 0);
+            TypeMirror val = typeArgument(mapType, "java.util.Map", 1);
+            String local = isGeneric(impl) ? impl + "<" + typeName(key) + ", " + typeName(val) + ">" : impl;
+            String var = local("m");
+            String name = local("k");
+            String valTok = local("t");
+            String in = ind + "    ";
+
+            out.append(ind).append(local).append(' ').append(var).append(" = null;\n");
+            out.append(ind).append("if (JsonCodecs.beginObject(reader, ").append(tok).append(")) {\n");
+            out.append(in).append(var).append(" = new ").append(local).append("();\n");
+            out.append(in).append("while (reader.next() == JsonReader.TOKEN_KEY) {\n");
+            out.append(in).append("    String ").append(name).append(" = reader.getString();\n");
+            out.append(in).append("    int ").append(valTok).append(" = reader.next();\n");
+            String expr = readValue(out, in + "    ", val, valTok);
+            out.append(in).append("    ").append(var).append(".put(").append(name).append(", ").append(expr)
+                .append(");\n");
+            out.append(in).append("}\n");
+            out.append(ind).append("}\n");
+            return var;
+        }
+
+        /**
+         * Chooses the class of the collections or maps created for a declared class.
+         *
+         * @param elem The declared class
+         * @param impls Common implementations, from the most to the least preferred
+         * @return The qualified name of the class to create, or <tt>null</tt> if none is suitable
+         */
+        private String implementation (TypeElement elem, String... impls) {
+            Set<Modifier> mods = elem.getModifiers();
+            if (elem.getKind() == ElementKind.CLASS && !mods.contains(Modifier.ABSTRACT)) {
+                for (ExecutableElement ctor : ElementFilter.constructorsIn(elem.getEnclosedElements())) {
+                    if (ctor.getParameters().isEmpty() && isAccessible(ctor) && isAccessible(elem)) {
+                        return elem.getQualifiedName().toString();
+                    }
+                }
+                return null;
+            }
+            for (String impl : impls) {
+                TypeElement implElem = elements.getTypeElement(impl);
+                if (types.isSubtype(types.erasure(implElem.asType()), types.erasure(elem.asType()))) {
+                    return impl;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @param name Qualified name of a class
+         * @return Whether the class has type parameters
+         */
+        private boolean isGeneric (String name) {
+            return !elements.getTypeElement(name).getTypeParameters().isEmpty();
+        }
+
+        /**
+         * Declares the static fields with the names and values of the constants of an enum.
+         *
+         * @param elem The enum
+         * @return The prefix of the fields
+         */
+        private String enumField (TypeElement elem) {
+            String qname = elem.getQualifiedName().toString();
+            String field = enums.get(qname);
+            if (field == null) {
+                field = "ENUM_" + counter++;
+                enums.put(qname, field);
+
+                StringBuilder names = new StringBuilder();
+                StringBuilder values = new StringBuilder();
+                for (Element member : elem.getEnclosedElements()) {
+                    if (member.getKind() == ElementKind.ENUM_CONSTANT) {
+                        names.append(names.length() == 0 ? "" : ", ").append(literal(member.getSimpleName()
+                            .toString()));
+                        values.append(values.length() == 0 ? "" : ", ").append(qname).append('.')
+                            .append(member.getSimpleName());
+                    }
+                }
+                fields.append("    private static final JsonKeySet ").append(field).append("_NAMES = new JsonKeySet(")
+                    .append(names).append(");\n");
+                fields.append("    private static final ").append(qname).append("[] ").append(field)
+                    .append("_VALUES = { ").append(values).append(" };\n");
+            }
+            return field;
+        }
+
+        /**
+         * @param valueType A type
+         * @return The class annotated with {@link JsonCodec} that the type refers to, or <tt>null</tt>
+         */
+        private TypeElement codecOf (TypeMirror valueType) {
+            if (valueType.getKind() != TypeKind.DECLARED) {
+                return null;
+            }
+            TypeElement elem = (TypeElement) ((DeclaredType) valueType).asElement();
+            return elem.getAnnotation(JsonCodec.class) != null ? elem : null;
+        }
+
+        /**
+         * @param elem A class annotated with {@link JsonCodec}
+         * @return The qualified name of its codec
+         */
+        private String codecReference (TypeElement elem) {
+            String elemPkg = elements.getPackageOf(elem).getQualifiedName().toString();
+            String name = codecName(elem, elements);
+            return elemPkg.isEmpty() ? name : elemPkg + "." + name;
+        }
+
+        /**
+         * @param valueType A type
+         * @return The upper bound of the type if it is a wildcard or type variable, or the type itself otherwise
+         */
+        private TypeMirror bound (TypeMirror valueType) {
+            if (valueType.getKind() == TypeKind.WILDCARD) {
+                TypeMirror ext = ((WildcardType) valueType).getExtendsBound();
+                return ext == null ? elements.getTypeElement("java.lang.Object").asType() : bound(ext);
+            } else if (valueType.getKind() == TypeKind.TYPEVAR) {
+                return types.erasure(valueType);
+            }
+            return valueType;
+        }
+
+        /**
+         * @param valueType A type
+         * @return The name used to declare a variable of the type
+         */
+        private String typeName (TypeMirror valueType) {
+            return bound(valueType).toString();
+        }
+
+        /**
+         * @param valueType A declared type
+         * @return The qualified name of its class
+         */
+        private String qualifiedName (TypeMirror valueType) {
+            return ((TypeElement) ((DeclaredType) valueType).asElement()).getQualifiedName().toString();
+        }
+
+        /**
+         * @param valueType A type
+         * @param name Qualified name of a class or interface
+         * @return Whether the erasure of the type is a subtype of the class or interface
+         */
+        private boolean isSubtype (TypeMirror valueType, String name) {
+            TypeElement sup = elements.getTypeElement(name);
+            return types.isSubtype(types.erasure(valueType), types.erasure(sup.asType()));
+        }
+
+        /**
+         * Finds a type argument of a generic supertype.
+         *
+         * @param valueType A type
+         * @param name Qualified name of a generic supertype of the type
+         * @param index Position of the type argument
+         * @return The type argument of the supertype, or {@link Object} if the supertype is raw
+         */
+        private TypeMirror typeArgument (TypeMirror valueType, String name, int index) {
+            DeclaredType sup = findSupertype(valueType, elements.getTypeElement(name));
+            if (sup == null || sup.getTypeArguments().size() <= index) {
+                return elements.getTypeElement("java.lang.Object").asType();
+            }
+            return sup.getTypeArguments().get(index);
+        }
+
+        /**
+         * @param valueType A type
+         * @param target A generic class or interface
+         * @return The parameterization of <tt>target</tt> that the type extends, or <tt>null</tt>
+         */
+        private DeclaredType findSupertype (TypeMirror valueType, TypeElement target) {
+            if (valueType.getKind() == TypeKind.DECLARED && ((DeclaredType) valueType).asElement().equals(target)) {
+                return (DeclaredType) valueType;
+            }
+            for (TypeMirror sup : types.directSupertypes(valueType)) {
+                DeclaredType found = findSupertype(sup, target);
+                if (found != null) {
+                    return found;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package es.darkhogg.johnson.mapping;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import es.darkhogg.johnson.io.JsonKeySet;
+import es.darkhogg.johnson.io.JsonReader;
+
+/**
+ * Methods used by the codecs generated by {@link JsonCodecProcessor} and by {@link JsonDeserializer} to read values
+ * whose first token has already been read, checking that it is of the expected type.
+ * <p>
+ * Methods that return primitive types reject <tt>null</tt>. All other methods return <tt>null</tt> or <tt>false</tt>
+ * for it. Numbers that do not fit in the type being read are rejected with an <tt>IOException</tt>, like any other
+ * value that does not match it.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonCodecs {
+
+    /** Initial size of the arrays read in bulk */
+    private static final int INITIAL_ARRAY_SIZE = 16;
+
+    /** Not instantiable */
+    private JsonCodecs () {
+        throw new AssertionError();
+    }
+
+    /**
+     * Checks that the current token begins an array.
+     *
+     * @param reader Reader the token was read from
+     * @param token The current token
+     * @return <tt>true</tt> if the token begins an array, <tt>false</tt> if it is <tt>null</tt>
+     * @throws IOException If the token is of any other type
+     */
+    public static boolean beginArray (JsonReader reader, int token) throws IOException {
+        if (token == JsonReader.TOKEN_ARRAY_BEGIN) {
+            return true;
+        } else if (token == JsonReader.TOKEN_NULL) {
+            return false;
+        }
+        throw JsonDeserializer.mismatch(reader, token, "an array");
+    }
+
+    /**
+     * Checks that the current token begins an object.
+     *
+     * @param reader Reader the token was read from
+     * @param token The current token
+     * @return <tt>true</tt> if the token begins an object, <tt>false</tt> if it is <tt>null</tt>
+     * @throws IOException If the token is of any other type
+     */
+    public static boolean beginObject (JsonReader reader, int token) throws IOException {
+        if (token == JsonReader.TOKEN_OBJECT_BEGIN) {
+            return true;
+        } else if (token == JsonReader.TOKEN_NULL) {
+            return false;
+        }
+        throw JsonDeserializer.mismatch(reader, token, "an object");
+    }
+
+    /**
+     * @param reader Reader the token was read from
+     * @param token The current token
+     * @return The value of the current boolean
+     * @throws IOException If the token is not a boolean
+     */
+    public static boolean readBoolean (JsonReader reader, int token) throws IOException {
+        if (token != JsonReader.TOKEN_BOOLEAN) {
+            throw JsonDeserializer.mismatch(reader, token, "a boolean");
+        }
+        return reader.getBoolean();
+    }
+
+    /**
+     * @param reader Reader the token was read from
+     * @param token The current token
+     * @return The value of the current number
+     * @throws IOException If the token is not a number, or not an integer in the <tt>int</tt> range
+     */
+    public static int readInt (JsonReader reader, int token) throws IOException {
+        checkNumber(reader, token);
+        try {
+            return reader.getInt();
+        } catch (NumberFormatException exc) {
+            throw outOfRange(reader, "int", exc);
+        }
+    }
+
+    /**
+     * @param reader Reader the token was read from
+     * @param token The current token
+     * @return The value of the current number
+     * @throws IOException If the token is not a number, or not an integer in the <tt>long</tt> range
+     */
+    public static long readLong (JsonReader reader, int token) throws IOException {
+        checkNumber(reader, token);
+        try {
+            return reader.getLong();
+        } catch (NumberFormatException exc) {
+            throw outOfRange(reader, "long", exc);
+        }
+    }
+
+    /**
+     * @param reader Reader the token was read from
+     * @param token The current token
+     * @return The value of the current number
+     * @throws IOException If the token is not a number, or not an integer in the <tt>short</tt> range
+     */
+    public static short readShort (JsonReader reader, int token) throws IOException {
+        int value = readInt(reader, token);
+        if (value != (short) value) {
+            throw outOfRange(reader, "short", null);
+        }
+        return (short) value;
+    }
+
+    /**
+     * @param reader Reader the token was read from
+     * @param token The current token
+     * @return The value of the current number
+     * @throws IOException If the token is not a number, or not an integer in the <tt>byte</tt> range
+     */
+    public static byte readByte (JsonReader reader, int token) throws IOException {
+        int value = readInt(reader, token);
+        if (value != (byte) value) {
+            throw outOfRange(reader, "byte", null);
+        }
+        return (byte) value;
+    }
+
+    /**
+     * @param reader Reader the token was read from
+     * @param token The current token
+     * @return The value of the current number
+     * @throws IOException If the token is not a number
+     */
+    public static double readDouble (JsonReader reader, int token) throws IOException {
+        checkNumber(reader, token);
+        return reader.getDouble();
+    }
+
+    /**
+     * @param reader Reader the token was read from
+     * @param token The current token
+     * @return The value of the current number, rounded to a <tt>float</tt>
+     * @throws IOException If the token is not a number
+     */
+    public static float readFloat (JsonReader reader, int token) throws IOException {
+        checkNumber(reader, token);
+        return (float) reader.getDouble();
+    }
+
+    /**
+     * @param reader Reader the token was read from
+     * @param token The current token
+     * @return The only character of the current string
+     * @throws IOException If the token is not a string of a single character
+     */
+    public static char readChar (JsonReader reader, int token) throws IOException {
+        if (token != JsonReader.TOKEN_STRING) {
+            throw JsonDeserializer.mismatch(reader, token, "a string");
+        }
+        String str = reader.getString();
+        if (str.length() != 1) {
+            throw new IOException("JSON: Expecting a single character at offset " + reader.getTokenOffset());
+        }
+        return str.charAt(0);
+    }
+
+    /**
+     * @param reader Reader the token was read from
+     * @param token The current token
+     * @return The value of the current string, or <tt>null</tt>
+     * @throws IOException If the token is not a string
+     */
+    public static String readString (JsonReader reader, int token) throws IOException {
+        if (token == JsonReader.TOKEN_STRING) {
+            return reader.getString();
+        } else if (token == JsonReader.TOKEN_NULL) {
+            return null;
+        }
+        throw JsonDeserializer.mismatch(reader, token, "a string");
+    }
+
+    /**
+     * Reads an enum constant from its name, without creating a <tt>String</tt> for it.
+     *
+     * @param reader Reader the token was read from
+     * @param token The current token
+     * @param names Names of the constants
+     * @param constants The constants, in the same order as their names
+     * @return The constant, or <tt>null</tt>
+     * @throws IOException If the token is not a string or not the name of a constant
+     */
+    public static <E> E readEnum (JsonReader reader, int token, JsonKeySet names, E[] constants)
+        throws IOException {
+        if (token == JsonReader.TOKEN_NULL) {
+            return null;
+        } else if (token != JsonReader.TOKEN_STRING) {
+            throw JsonDeserializer.mismatch(reader, token, "a string");
+        }
+        int index = reader.getKeyIndex(names);
+        if (index < 0) {
+            throw new IOException("JSON: Unknown constant \"" + reader.getString() + "\" at offset "
+                + reader.getTokenOffset());
+        }
+        return constants[index];
+    }
+
+    /**
+     * Reads an array of numbers with {@link JsonReader#readLongs}.
+     *
+     * @param reader Reader the token was read from
+     * @param token The current token
+     * @return The numbers of the array, or <tt>null</tt>
+     * @throws IOException If the token does not begin an array, or an element is not an integer in the <tt>long</tt>
+     *         range
+     */
+    public static long[] readLongs (JsonReader reader, int token) throws IOException {
+        if (!beginArray(reader, token)) {
+            return null;
+        }
+        long[] array = new long[INITIAL_ARRAY_SIZE];
+        int size = 0;
+        for (;;) {
+            try {
+                size += reader.readLongs(array, size, array.length - size);
+            } catch (NumberFormatException exc) {
+                throw outOfRange(reader, "long", exc);
+            }
+            if (size < array.length) {
+                return Arrays.copyOf(array, size);
+            }
+            array = Arrays.copyOf(array, size * 2);
+        }
+    }
+
+    /**
+     * Reads an array of numbers with {@link JsonReader#readDoubles}.
+     *
+     * @param reader Reader the token was read from
+     * @param token The current token
+     * @return The numbers of the array, or <tt>null</tt>
+     * @throws IOException If the token does not begin an array, or an element is not a number
+     */
+    public static double[] readDoubles (JsonReader reader, int token) throws IOException {
+        if (!beginArray(reader, token)) {
+            return null;
+        }
+        double[] array = new double[INITIAL_ARRAY_SIZE];
+        int size = 0;
+        for (;;) {
+            size += reader.readDoubles(array, size, array.length - size);
+            if (size < array.length) {
+                return Arrays.copyOf(array, size);
+            }
+            array = Arrays.copyOf(array, size * 2);
+        }
+    }
+
+    /**
+     * Creates the exception thrown when a number is not an integer in the range of the type being read.
+     *
+     * @param reader Reader the number was read from
+     * @param type Name of the type being read
+     * @param cause Exception thrown by the reader, or <tt>null</tt>
+     * @return A new exception
+     */
+    static IOException outOfRange (JsonReader reader, String type, NumberFormatException cause) {
+        return new IOException("JSON: Expecting an integer in the " + type + " range, found " + reader.getString()
+            + " at offset " + reader.getTokenOffset(), cause);
+    }
+
+    /**
+     * @param reader Reader the token was read from
+     * @param token The current token
+     * @throws IOException If the token is not a number
+     */
+    private static void checkNumber (JsonReader reader, int token) throws IOException {
+        if (token != JsonReader.TOKEN_NUMBER) {
+            throw JsonDeserializer.mismatch(reader, token, "a number");
+        }
+    }
+}
@@ -0,0 +1,1098 @@
+package es.darkhogg.johnson.mapping;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import es.darkhogg.johnson.data.JsonParser;
+import es.darkhogg.johnson.data.JsonValue;
+import es.darkhogg.johnson.io.JsonKeySet;
+import es.darkhogg.johnson.io.JsonReader;
+
+/**
+ * A class used to read Java objects directly from a {@link JsonReader}, without building a {@link JsonValue} first.
+ * <p>
+ * A deserializer is built once for every class, the first time an instance of it is read, and then cached for the
+ * lifetime of the class. Strings, numbers, booleans, characters, enums, {@link JsonValue}s, arrays, collections and
+ * maps with string keys are read from the corresponding JSON value, using the declared generic types of properties to
+ * read their elements. Properties declared as {@link Object} are read as <tt>null</tt>, a {@link Boolean}, a
+ * {@link Number}, a {@link String}, a {@link List} or a {@link Map}. Any other class is read from a JSON <i>object</i>:
+ * <ul>
+ * <li>If the class has a constructor without parameters, it is used to create the instance, and each member of the
+ * object is then stored by the public setter named <tt>setX</tt> or, failing that, directly in the non-final field of
+ * the same name. Public setters without a field are also used.</li>
+ * <li>Otherwise, the class must have a constructor whose parameters have the same types as its non-static fields, in
+ * declaration order, such as the canonical constructor of a record. The members of the object are then collected and
+ * passed to that constructor, with missing members passed as <tt>null</tt> or zero.</li>
+ * </ul>
+ * The names of the properties of each class are placed in a {@link JsonKeySet}, so that each key of the input is
+ * resolved to its property without creating a <tt>String</tt> for it. Members with unknown keys are skipped with
+ * {@link JsonReader#skipValue}. Properties of primitive types are read with the primitive accessors of the reader and
+ * stored without boxing them.
+ * <p>
+ * Instances of this class are immutable and safe for use by multiple threads.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ * @param <T> Type of the objects read by this deserializer
+ */
+public abstract class JsonDeserializer<T> {
+
+    /** Lookup used to access the properties of the deserialized classes */
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /** Deserializer of each class */
+    private static final ClassValue<JsonDeserializer<?>> DESERIALIZERS = new ClassValue<JsonDeserializer<?>>() {
+        @Override
+        protected JsonDeserializer<?> computeValue (Class<?> type) {
+            return create(type);
+        }
+    };
+
+    /** Only allow subclasses in this class */
+    JsonDeserializer () {}
+
+    /**
+     * Returns the deserializer used for the instances of the given class.
+     *
+     * @param type Class of the deserialized objects
+     * @return The deserializer for <tt>type</tt>
+     * @throws IllegalArgumentException If the class cannot be instantiated or its properties cannot be accessed
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> JsonDeserializer<T> of (Class<T> type) {
+        if (type == null) {
+            throw new NullPointerException("type");
+        }
+        return (JsonDeserializer<T>) (type.isPrimitive() ? forType(type) : DESERIALIZERS.get(type));
+    }
+
+    /**
+     * Reads a complete JSON document from the given reader, checking that nothing but whitespace follows it.
+     *
+     * @param reader Reader to read the document from
+     * @return The object read
+     * @throws IOException If an I/O error happens, the document is not valid JSON or it does not match the class
+     * @throws IllegalStateException If a setter or constructor threw a checked exception
+     */
+    public final T read (JsonReader reader) throws IOException {
+        T value = readValue(reader);
+        if (reader.next() != JsonReader.TOKEN_EOF) {
+            throw new IOException("JSON: Expecting EOF");
+        }
+        return value;
+    }
+
+    /**
+     * Reads the next JSON value from the given reader. After this method returns, the last token of the value has
+     * been consumed from the reader.
+     *
+     * @param reader Reader to read the value from
+     * @return The object read
+     * @throws IOException If an I/O error happens, the value is not valid JSON or it does not match the class
+     * @throws IllegalStateException If a setter or constructor threw a checked exception
+     */
+    public final T readValue (JsonReader reader) throws IOException {
+        if (reader == null) {
+            throw new NullPointerException("reader");
+        }
+        return readValue(reader, reader.next());
+    }
+
+    /**
+     * Reads a JSON value whose first token has already been read from the given reader.
+     *
+     * @param reader Reader to read the value from
+     * @param token The first token of the value
+     * @return The object read
+     * @throws IOException If an I/O error happens, the value is not valid JSON or it does not match the class
+     * @throws IllegalStateException If a setter or constructor threw a checked exception
+     */
+    public abstract T readValue (JsonReader reader, int token) throws IOException;
+
+    /**
+     * Creates the deserializer for a class.
+     *
+     * @param type Class of the deserialized objects
+     * @return A new deserializer for <tt>type</tt>
+     */
+    static JsonDeserializer<?> create (Class<?> type) {
+        if (type == String.class) {
+            return new StringDeserializer();
+        } else if (type == Boolean.class || type == Character.class || Number.class.isAssignableFrom(type)) {
+            return new ScalarDeserializer(type, false);
+        } else if (type == Object.class) {
+            return new NaturalDeserializer();
+        } else if (type.isEnum()) {
+            return new EnumDeserializer(type);
+        } else if (JsonValue.class.isAssignableFrom(type)) {
+            return new TreeDeserializer(type);
+        } else if (type.isArray()) {
+            return new ArrayDeserializer(type.getComponentType(), forType(type.getComponentType()));
+        } else if (Collection.class.isAssignableFrom(type)) {
+            return new CollectionDeserializer(factory(type), new NaturalDeserializer());
+        } else if (Map.class.isAssignableFrom(type)) {
+            return new MapDeserializer(factory(type), new NaturalDeserializer());
+        } else {
+            return BeanDeserializer.create(type);
+        }
+    }
+
+    /**
+     * Returns a deserializer for a declared type.
+     * <p>
+     * Deserializers of classes read as JSON <i>objects</i> are looked up every time a value is read, so that classes
+     * that contain themselves can be read.
+     *
+     * @param type Declared type of the deserialized objects
+     * @return A deserializer for <tt>type</tt>
+     */
+    static JsonDeserializer<?> forType (Type type) {
+        if (type instanceof ParameterizedType) {
+            Type[] args = ((ParameterizedType) type).getActualTypeArguments();
+            Class<?> raw = rawClass(type);
+            if (Collection.class.isAssignableFrom(raw)) {
+                return new CollectionDeserializer(factory(raw), forType(args[0]));
+            } else if (Map.class.isAssignableFrom(raw)) {
+                Class<?> key = rawClass(args[0]);
+                if (key != String.class && key != Object.class) {
+                    throw new IllegalArgumentException("JSON: Unsupported map key type " + args[0]);
+                }
+                return new MapDeserializer(factory(raw), forType(args[1]));
+            }
+            return forType(raw);
+
+        } else if (type instanceof GenericArrayType) {
+            Type component = ((GenericArrayType) type).getGenericComponentType();
+            return new ArrayDeserializer(rawClass(component), forType(component));
+
+        } else if (!(type instanceof Class)) {
+            return forType(rawClass(type));
+        }
+
+        Class<?> cls = (Class<?>) type;
+        if (cls.isPrimitive()) {
+            return new ScalarDeserializer(cls, true);
+        } else if (cls.isArray() || Collection.class.isAssignableFrom(cls) || Map.class.isAssignableFrom(cls)) {
+            return create(cls);
+        } else if (cls.getName().startsWith("java.") || cls.isEnum() || JsonValue.class.isAssignableFrom(cls)) {
+            return DESERIALIZERS.get(cls);
+        }
+        return new DeferredDeserializer(cls);
+    }
+
+    /**
+     * @param type A type
+     * @return The class that represents the erasure of <tt>type</tt>
+     */
+    private static Class<?> rawClass (Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        } else if (type instanceof GenericArrayType) {
+            Class<?> component = rawClass(((GenericArrayType) type).getGenericComponentType());
+            return Array.newInstance(component, 0).getClass();
+        } else if (type instanceof WildcardType) {
+            return rawClass(((WildcardType) type).getUpperBounds()[0]);
+        } else if (type instanceof TypeVariable) {
+            return rawClass(((TypeVariable<?>) type).getBounds()[0]);
+        }
+        return Object.class;
+    }
+
+    /**
+     * Returns a handle that creates instances of a collection or map class, using a common implementation for
+     * interfaces and abstract classes.
+     *
+     * @param type A collection or map class
+     * @return A handle of type <tt>()Object</tt>
+     */
+    private static MethodHandle factory (Class<?> type) {
+        Class<?> impl = type;
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            if (type.isAssignableFrom(ArrayList.class)) {
+                impl = ArrayList.class;
+            } else if (type.isAssignableFrom(LinkedHashSet.class)) {
+                impl = LinkedHashSet.class;
+            } else if (type.isAssignableFrom(TreeSet.class) && SortedSet.class.isAssignableFrom(type)) {
+                impl = TreeSet.class;
+            } else if (type.isAssignableFrom(ArrayDeque.class)) {
+                impl = ArrayDeque.class;
+            } else if (type.isAssignableFrom(LinkedHashMap.class)) {
+                impl = LinkedHashMap.class;
+            } else if (type.isAssignableFrom(TreeMap.class) && SortedMap.class.isAssignableFrom(type)) {
+                impl = TreeMap.class;
+            } else {
+                throw new IllegalArgumentException("JSON: Cannot instantiate " + type);
+            }
+        }
+
+        try {
+            Constructor<?> ctor = impl.getDeclaredConstructor();
+            ctor.setAccessible(true);
+            return LOOKUP.unreflectConstructor(ctor).asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException | RuntimeException exc) {
+            throw new IllegalArgumentException("JSON: Cannot instantiate " + type, exc);
+        }
+    }
+
+    /**
+     * Creates an object with a handle of type <tt>()Object</tt>.
+     *
+     * @param handle Handle that creates the object
+     * @return The new object
+     */
+    static Object newInstance (MethodHandle handle) {
+        try {
+            return handle.invokeExact();
+        } catch (Throwable exc) {
+            throw JsonSerializer.rethrow(exc);
+        }
+    }
+
+    /**
+     * Creates the exception thrown when a value does not match the type being read.
+     *
+     * @param reader Reader the value was read from
+     * @param token First token of the value
+     * @param expected Description of the expected value
+     * @return A new exception
+     */
+    static IOException mismatch (JsonReader reader, int token, String expected) {
+        String found;
+        switch (token) {
+            case JsonReader.TOKEN_NULL:
+                found = "null";
+                break;
+            case JsonReader.TOKEN_BOOLEAN:
+                found = "boolean";
+                break;
+            case JsonReader.TOKEN_NUMBER:
+                found = "number";
+                break;
+            case JsonReader.TOKEN_STRING:
+                found = "string";
+                break;
+            case JsonReader.TOKEN_ARRAY_BEGIN:
+                found = "array";
+                break;
+            case JsonReader.TOKEN_OBJECT_BEGIN:
+                found = "object";
+                break;
+            default:
+                found = "token " + token;
+                break;
+        }
+        return new IOException("JSON: Expecting " + expected + ", found " + found + " at offset "
+            + reader.getTokenOffset());
+    }
+
+    /**
+     * Deserializer of classes read as objects, looked up when a value is read.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class DeferredDeserializer extends JsonDeserializer<Object> {
+
+        /** Class of the deserialized objects */
+        private final Class<?> type;
+
+        DeferredDeserializer (Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        public Object readValue (JsonReader reader, int token) throws IOException {
+            return DESERIALIZERS.get(type).readValue(reader, token);
+        }
+    }
+
+    /**
+     * Deserializer for strings.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class StringDeserializer extends JsonDeserializer<String> {
+        @Override
+        public String readValue (JsonReader reader, int token) throws IOException {
+            return JsonCodecs.readString(reader, token);
+        }
+    }
+
+    /**
+     * Deserializer for primitive types, their wrappers and other numbers.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class ScalarDeserializer extends JsonDeserializer<Object> {
+
+        /** Class of the deserialized values, primitive or not */
+        private final Class<?> type;
+
+        /** Whether <tt>null</tt> is rejected */
+        private final boolean primitive;
+
+        ScalarDeserializer (Class<?> type, boolean primitive) {
+            this.type = type;
+            this.primitive = primitive;
+        }
+
+        @Override
+        public Object readValue (JsonReader reader, int token) throws IOException {
+            if (token == JsonReader.TOKEN_NULL && !primitive) {
+                return null;
+            }
+
+            if (type == boolean.class || type == Boolean.class) {
+                return Boolean.valueOf(JsonCodecs.readBoolean(reader, token));
+            } else if (type == char.class || type == Character.class) {
+                return Character.valueOf(JsonCodecs.readChar(reader, token));
+            } else if (type == int.class || type == Integer.class) {
+                return Integer.valueOf(JsonCodecs.readInt(reader, token));
+            } else if (type == long.class || type == Long.class) {
+                return Long.valueOf(JsonCodecs.readLong(reader, token));
+            } else if (type == double.class || type == Double.class) {
+                return Double.valueOf(JsonCodecs.readDouble(reader, token));
+            } else if (type == float.class || type == Float.class) {
+                return Float.valueOf(JsonCodecs.readFloat(reader, token));
+            } else if (type == short.class || type == Short.class) {
+                return Short.valueOf(JsonCodecs.readShort(reader, token));
+            } else if (type == byte.class || type == Byte.class) {
+                return Byte.valueOf(JsonCodecs.readByte(reader, token));
+            }
+
+            if (token != JsonReader.TOKEN_NUMBER) {
+                throw mismatch(reader, token, "a number");
+            }
+            if (type == BigDecimal.class) {
+                try {
+                    return new BigDecimal(reader.getString());
+                } catch (NumberFormatException exc) {
+                    throw new IOException("JSON: Number out of BigDecimal range at offset " + reader.getTokenOffset(),
+                        exc);
+                }
+            } else if (type == BigInteger.class) {
+                try {
+                    return new BigDecimal(reader.getString()).toBigIntegerExact();
+                } catch (ArithmeticException | NumberFormatException exc) {
+                    throw new IOException("JSON: Expecting an integer, found " + reader.getString() + " at offset "
+                        + reader.getTokenOffset(), exc);
+                }
+            } else if (type.isInstance(reader.getNumber())) {
+                return reader.getNumber();
+            }
+            throw new IOException("JSON: Cannot read a number as " + type.getName());
+        }
+    }
+
+    /**
+     * Deserializer for properties declared as {@link Object}.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class NaturalDeserializer extends JsonDeserializer<Object> {
+        @Override
+        public Object readValue (JsonReader reader, int token) throws IOException {
+            switch (token) {
+                case JsonReader.TOKEN_NULL:
+                    return null;
+                case JsonReader.TOKEN_BOOLEAN:
+                    return Boolean.valueOf(reader.getBoolean());
+                case JsonReader.TOKEN_NUMBER:
+                    return reader.getNumber();
+                case JsonReader.TOKEN_STRING:
+                    return reader.getString();
+                case JsonReader.TOKEN_ARRAY_BEGIN: {
+                    List<Object> list = new ArrayList<Object>();
+                    for (int tok = reader.next(); tok != JsonReader.TOKEN_ARRAY_END; tok = reader.next()) {
+                        list.add(readValue(reader, tok));
+                    }
+                    return list;
+                }
+                case JsonReader.TOKEN_OBJECT_BEGIN: {
+                    Map<String, Object> map = new LinkedHashMap<String, Object>();
+                    while (reader.next() == JsonReader.TOKEN_KEY) {
+                        String key = reader.getString();
+                        map.put(key, readValue(reader, reader.next()));
+                    }
+                    return map;
+                }
+                default:
+                    throw mismatch(reader, token, "a value");
+            }
+        }
+    }
+
+    /**
+     * Deserializer for enums, read from the name of the constant.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class EnumDeserializer extends JsonDeserializer<Object> {
+
+        /** Names of the constants */
+        private final JsonKeySet names;
+
+        /** The constants, by ordinal */
+        private final Object[] constants;
+
+        EnumDeserializer (Class<?> type) {
+            constants = type.getEnumConstants();
+            List<String> list = new ArrayList<String>();
+            for (Object constant : constants) {
+                list.add(((Enum<?>) constant).name());
+            }
+            names = new JsonKeySet(list);
+        }
+
+        @Override
+        public Object readValue (JsonReader reader, int token) throws IOException {
+            return JsonCodecs.readEnum(reader, token, names, constants);
+        }
+    }
+
+    /**
+     * Deserializer for {@link JsonValue} trees.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class TreeDeserializer extends JsonDeserializer<Object> {
+
+        /** Class of the deserialized values */
+        private final Class<?> type;
+
+        TreeDeserializer (Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        public Object readValue (JsonReader reader, int token) throws IOException {
+            long offset = reader.getTokenOffset();
+            JsonValue<?> value = new JsonParser().parseValue(reader, token);
+            if (!type.isInstance(value)) {
+                throw new IOException("JSON: Cannot read " + value.getClass().getSimpleName() + " as "
+                    + type.getSimpleName() + " at offset " + offset);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Deserializer for arrays.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class ArrayDeserializer extends JsonDeserializer<Object> {
+
+        /** Component type of the arrays */
+        private final Class<?> component;
+
+        /** Deserializer of the elements */
+        private final JsonDeserializer<?> elements;
+
+        ArrayDeserializer (Class<?> component, JsonDeserializer<?> elements) {
+            this.component = component;
+            this.elements = elements;
+        }
+
+        @Override
+        public Object readValue (JsonReader reader, int token) throws IOException {
+            if (component == long.class) {
+                return JsonCodecs.readLongs(reader, token);
+            } else if (component == double.class) {
+                return JsonCodecs.readDoubles(reader, token);
+            } else if (!JsonCodecs.beginArray(reader, token)) {
+                return null;
+            }
+
+            List<Object> list = new ArrayList<Object>();
+            for (int tok = reader.next(); tok != JsonReader.TOKEN_ARRAY_END; tok = reader.next()) {
+                list.add(elements.readValue(reader, tok));
+            }
+            Object array = Array.newInstance(component, list.size());
+            for (int i = 0; i < list.size(); i++) {
+                Array.set(array, i, list.get(i));
+            }
+            return array;
+        }
+    }
+
+    /**
+     * Deserializer for collections.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class CollectionDeserializer extends JsonDeserializer<Object> {
+
+        /** Handle that creates the collections */
+        private final MethodHandle factory;
+
+        /** Deserializer of the elements */
+        private final JsonDeserializer<?> elements;
+
+        CollectionDeserializer (MethodHandle factory, JsonDeserializer<?> elements) {
+            this.factory = factory;
+            this.elements = elements;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object readValue (JsonReader reader, int token) throws IOException {
+            if (!JsonCodecs.beginArray(reader, token)) {
+                return null;
+            }
+
+            Collection<Object> coll = (Collection<Object>) newInstance(factory);
+            for (int tok = reader.next(); tok != JsonReader.TOKEN_ARRAY_END; tok = reader.next()) {
+                coll.add(elements.readValue(reader, tok));
+            }
+            return coll;
+        }
+    }
+
+    /**
+     * Deserializer for maps with string keys.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class MapDeserializer extends JsonDeserializer<Object> {
+
+        /** Handle that creates the maps */
+        private final MethodHandle factory;
+
+        /** Deserializer of the values */
+        private final JsonDeserializer<?> values;
+
+        MapDeserializer (MethodHandle factory, JsonDeserializer<?> values) {
+            this.factory = factory;
+            this.values = values;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object readValue (JsonReader reader, int token) throws IOException {
+            if (!JsonCodecs.beginObject(reader, token)) {
+                return null;
+            }
+
+            Map<String, Object> map = (Map<String, Object>) newInstance(factory);
+            while (reader.next() == JsonReader.TOKEN_KEY) {
+                String key = reader.getString();
+                map.put(key, values.readValue(reader, reader.next()));
+            }
+            return map;
+        }
+    }
+
+    /**
+     * Deserializer for any other class, read from an object with a member for each property.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class BeanDeserializer extends JsonDeserializer<Object> {
+
+        /** Names of the properties */
+        private final JsonKeySet keys;
+
+        /** Properties stored in an object created by {@link #factory}, by index in {@link #keys}, or <tt>null</tt> */
+        private final Property[] properties;
+
+        /** Handle that creates an empty object, of type <tt>()Object</tt>, or <tt>null</tt> */
+        private final MethodHandle factory;
+
+        /** Deserializers of the arguments of {@link #creator}, by index in {@link #keys}, or <tt>null</tt> */
+        private final JsonDeserializer<?>[] arguments;
+
+        /** Handle of the constructor that takes all properties, of type <tt>(Object[])Object</tt>, or <tt>null</tt> */
+        private final MethodHandle creator;
+
+        /** Values passed to {@link #creator} for missing properties */
+        private final Object[] defaults;
+
+        /**
+         * Creates a deserializer that stores properties in a new object.
+         *
+         * @param keys Names of the properties
+         * @param properties Properties of the class, by index in <tt>keys</tt>
+         * @param factory Handle that creates an empty object
+         */
+        BeanDeserializer (JsonKeySet keys, Property[] properties, MethodHandle factory) {
+            this.keys = keys;
+            this.properties = properties;
+            this.factory = factory;
+            this.arguments = null;
+            this.creator = null;
+            this.defaults = null;
+        }
+
+        /**
+         * Creates a deserializer that passes all properties to a constructor.
+         *
+         * @param keys Names of the properties
+         * @param arguments Deserializers of the arguments of the constructor, by index in <tt>keys</tt>
+         * @param creator Handle of the constructor
+         * @param defaults Values passed to the constructor for missing properties
+         */
+        BeanDeserializer (JsonKeySet keys, JsonDeserializer<?>[] arguments, MethodHandle creator, Object[] defaults) {
+            this.keys = keys;
+            this.properties = null;
+            this.factory = null;
+            this.arguments = arguments;
+            this.creator = creator;
+            this.defaults = defaults;
+        }
+
+        /**
+         * Creates the deserializer for a class read from an object.
+         *
+         * @param type The deserialized class
+         * @return A new deserializer for <tt>type</tt>
+         */
+        static BeanDeserializer create (Class<?> type) {
+            if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+                throw new IllegalArgumentException("JSON: Cannot instantiate " + type);
+            }
+
+            List<Field> fields = new ArrayList<Field>();
+            List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+            for (Class<?> cls = type; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+                hierarchy.add(0, cls);
+            }
+            for (Class<?> cls : hierarchy) {
+                for (Field field : cls.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+                        fields.add(field);
+                    }
+                }
+            }
+
+            try {
+                Constructor<?> ctor = type.getDeclaredConstructor();
+                ctor.setAccessible(true);
+                MethodHandle factory = LOOKUP.unreflectConstructor(ctor).asType(MethodType.methodType(Object.class));
+                return withSetters(type, fields, factory);
+            } catch (NoSuchMethodException exc) {
+                return withCreator(type, fields);
+            } catch (IllegalAccessException | RuntimeException exc) {
+                throw new IllegalArgumentException("JSON: Cannot access the constructor of " + type, exc);
+            }
+        }
+
+        /**
+         * Creates a deserializer that stores properties in a new object with setters or fields.
+         *
+         * @param type The deserialized class
+         * @param fields Non-static fields of the class and its superclasses
+         * @param factory Handle that creates an empty object
+         * @return A new deserializer
+         */
+        private static BeanDeserializer withSetters (Class<?> type, List<Field> fields, MethodHandle factory) {
+            List<String> names = new ArrayList<String>();
+            List<Property> props = new ArrayList<Property>();
+            Set<String> seen = new HashSet<String>();
+            Set<Method> used = new HashSet<Method>();
+
+            for (Field field : fields) {
+                String name = field.getName();
+                if (!seen.add(name)) {
+                    continue;
+                }
+                if (Modifier.isTransient(field.getModifiers())) {
+                    continue;
+                }
+
+                Method setter = setter(type, "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1),
+                    field.getType());
+                try {
+                    if (setter != null) {
+                        used.add(setter);
+                        setter.setAccessible(true);
+                        props.add(property(LOOKUP.unreflect(setter), setter.getGenericParameterTypes()[0]));
+                        names.add(name);
+                    } else if (!Modifier.isFinal(field.getModifiers())) {
+                        field.setAccessible(true);
+                        props.add(property(LOOKUP.unreflectSetter(field), field.getGenericType()));
+                        names.add(name);
+                    }
+                } catch (IllegalAccessException | RuntimeException exc) {
+                    throw new IllegalArgumentException("JSON: Cannot access property " + name + " of " + type, exc);
+                }
+            }
+
+            for (Method method : type.getMethods()) {
+                String name = method.getName();
+                if (name.length() > 3 && name.startsWith("set") && method.getParameterTypes().length == 1
+                    && !Modifier.isStatic(method.getModifiers()) && !method.isBridge() && !used.contains(method))
+                {
+                    String suffix = name.substring(3);
+                    String prop = suffix.length() > 1 && Character.isUpperCase(suffix.charAt(1))
+                        ? suffix : Character.toLowerCase(suffix.charAt(0)) + suffix.substring(1);
+                    if (seen.add(prop)) {
+                        try {
+                            method.setAccessible(true);
+                            props.add(property(LOOKUP.unreflect(method), method.getGenericParameterTypes()[0]));
+                            names.add(prop);
+                        } catch (IllegalAccessException | RuntimeException exc) {
+                            throw new IllegalArgumentException("JSON: Cannot access " + method, exc);
+                        }
+                    }
+                }
+            }
+
+            return new BeanDeserializer(new JsonKeySet(names), props.toArray(new Property[props.size()]), factory);
+        }
+
+        /**
+         * Creates a deserializer that passes all properties to a constructor.
+         *
+         * @param type The deserialized class
+         * @param fields Non-static fields of the class and its superclasses
+         * @return A new deserializer
+         */
+        private static BeanDeserializer withCreator (Class<?> type, List<Field> fields) {
+            Class<?>[] types = new Class<?>[fields.size()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = fields.get(i).getType();
+            }
+
+            Constructor<?> ctor;
+            try {
+                ctor = type.getDeclaredConstructor(types);
+            } catch (NoSuchMethodException exc) {
+                throw new IllegalArgumentException("JSON: No constructor without parameters or taking all fields in "
+                    + type);
+            }
+
+            List<String> names = new ArrayList<String>();
+            JsonDeserializer<?>[] args = new JsonDeserializer<?>[types.length];
+            Object[] defaults = new Object[types.length];
+            Type[] params = ctor.getGenericParameterTypes();
+            for (int i = 0; i < types.length; i++) {
+                names.add(fields.get(i).getName());
+                args[i] = forType(params.length == types.length ? params[i] : types[i]);
+                if (types[i].isPrimitive()) {
+                    defaults[i] = Array.get(Array.newInstance(types[i], 1), 0);
+                }
+            }
+
+            MethodHandle creator;
+            try {
+                ctor.setAccessible(true);
+                creator = LOOKUP.unreflectConstructor(ctor).asSpreader(Object[].class, types.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+            } catch (IllegalAccessException | RuntimeException exc) {
+                throw new IllegalArgumentException("JSON: Cannot access the constructor of " + type, exc);
+            }
+            return new BeanDeserializer(new JsonKeySet(names), args, creator, defaults);
+        }
+
+        /**
+         * @param type A class
+         * @param name Name of a setter
+         * @param param Preferred type of the parameter
+         * @return A public setter with the given name taking <tt>param</tt> or else any single parameter, or
+         *         <tt>null</tt>
+         */
+        private static Method setter (Class<?> type, String name, Class<?> param) {
+            Method found = null;
+            for (Method method : type.getMethods()) {
+                if (method.getName().equals(name) && method.getParameterTypes().length == 1
+                    && !Modifier.isStatic(method.getModifiers()) && !method.isBridge())
+                {
+                    if (method.getParameterTypes()[0] == param) {
+                        return method;
+                    }
+                    found = method;
+                }
+            }
+            return found;
+        }
+
+        /**
+         * Creates a property stored by the given handle.
+         *
+         * @param handle Setter or field setter handle, taking the object and the value
+         * @param type Declared type of the value
+         * @return A new property
+         */
+        private static Property property (MethodHandle handle, Type type) {
+            Class<?> param = handle.type().parameterType(1);
+            if (param == int.class) {
+                return new IntProperty(handle.asType(MethodType.methodType(void.class, Object.class, int.class)));
+            } else if (param == long.class) {
+                return new LongProperty(handle.asType(MethodType.methodType(void.class, Object.class, long.class)));
+            } else if (param == double.class) {
+                return new DoubleProperty(handle.asType(MethodType.methodType(void.class, Object.class,
+                    double.class)));
+            } else if (param == float.class) {
+                return new FloatProperty(handle.asType(MethodType.methodType(void.class, Object.class,
+                    float.class)));
+            } else if (param == boolean.class) {
+                return new BooleanProperty(handle.asType(MethodType.methodType(void.class, Object.class,
+                    boolean.class)));
+            }
+            return new ObjectProperty(handle.asType(MethodType.methodType(void.class, Object.class, Object.class)),
+                forType(type));
+        }
+
+        @Override
+        public Object readValue (JsonReader reader, int token) throws IOException {
+            if (!JsonCodecs.beginObject(reader, token)) {
+                return null;
+            }
+
+            if (factory != null) {
+                Object obj = newInstance(factory);
+                while (reader.next() == JsonReader.TOKEN_KEY) {
+                    int index = reader.getKeyIndex(keys);
+                    if (index < 0) {
+                        reader.skipValue();
+                    } else {
+                        properties[index].read(reader, reader.next(), obj);
+                    }
+                }
+                return obj;
+            }
+
+            Object[] args = defaults.clone();
+            while (reader.next() == JsonReader.TOKEN_KEY) {
+                int index = reader.getKeyIndex(keys);
+                if (index < 0) {
+                    reader.skipValue();
+                } else {
+                    args[index] = arguments[index].readValue(reader, reader.next());
+                }
+            }
+            try {
+                return creator.invokeExact(args);
+            } catch (Throwable exc) {
+                throw JsonSerializer.rethrow(exc);
+            }
+        }
+    }
+
+    /**
+     * A property of a class, read from a member of an object.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private abstract static class Property {
+
+        /**
+         * Reads the value of this property and stores it in an object.
+         *
+         * @param reader Reader to read the value from
+         * @param token First token of the value
+         * @param obj Object to store the value in
+         * @throws IOException If an I/O error happens or the value does not match the property
+         */
+        abstract void read (JsonReader reader, int token, Object obj) throws IOException;
+    }
+
+    /**
+     * A property of type <tt>int</tt>.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class IntProperty extends Property {
+
+        /** Handle of type <tt>(Object,int)void</tt> that stores the property */
+        private final MethodHandle setter;
+
+        IntProperty (MethodHandle setter) {
+            this.setter = setter;
+        }
+
+        @Override
+        void read (JsonReader reader, int token, Object obj) throws IOException {
+            int value = JsonCodecs.readInt(reader, token);
+            try {
+                setter.invokeExact(obj, value);
+            } catch (Throwable exc) {
+                throw JsonSerializer.rethrow(exc);
+            }
+        }
+    }
+
+    /**
+     * A property of type <tt>long</tt>.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class LongProperty extends Property {
+
+        /** Handle of type <tt>(Object,long)void</tt> that stores the property */
+        private final MethodHandle setter;
+
+        LongProperty (MethodHandle setter) {
+            this.setter = setter;
+        }
+
+        @Override
+        void read (JsonReader reader, int token, Object obj) throws IOException {
+            long value = JsonCodecs.readLong(reader, token);
+            try {
+                setter.invokeExact(obj, value);
+            } catch (Throwable exc) {
+                throw JsonSerializer.rethrow(exc);
+            }
+        }
+    }
+
+    /**
+     * A property of type <tt>double</tt>.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class DoubleProperty extends Property {
+
+        /** Handle of type <tt>(Object,double)void</tt> that stores the property */
+        private final MethodHandle setter;
+
+        DoubleProperty (MethodHandle setter) {
+            this.setter = setter;
+        }
+
+        @Override
+        void read (JsonReader reader, int token, Object obj) throws IOException {
+            if (token != JsonReader.TOKEN_NUMBER) {
+                throw mismatch(reader, token, "a number");
+            }
+            double value = reader.getDouble();
+            try {
+                setter.invokeExact(obj, value);
+            } catch (Throwable exc) {
+                throw JsonSerializer.rethrow(exc);
+            }
+        }
+    }
+
+    /**
+     * A property of type <tt>float</tt>.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class FloatProperty extends Property {
+
+        /** Handle of type <tt>(Object,float)void</tt> that stores the property */
+        private final MethodHandle setter;
+
+        FloatProperty (MethodHandle setter) {
+            this.setter = setter;
+        }
+
+        @Override
+        void read (JsonReader reader, int token, Object obj) throws IOException {
+            if (token != JsonReader.TOKEN_NUMBER) {
+                throw mismatch(reader, token, "a number");
+            }
+            float value = (float) reader.getDouble();
+            try {
+                setter.invokeExact(obj, value);
+            } catch (Throwable exc) {
+                throw JsonSerializer.rethrow(exc);
+            }
+        }
+    }
+
+    /**
+     * A property of type <tt>boolean</tt>.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class BooleanProperty extends Property {
+
+        /** Handle of type <tt>(Object,boolean)void</tt> that stores the property */
+        private final MethodHandle setter;
+
+        BooleanProperty (MethodHandle setter) {
+            this.setter = setter;
+        }
+
+        @Override
+        void read (JsonReader reader, int token, Object obj) throws IOException {
+            if (token != JsonReader.TOKEN_BOOLEAN) {
+                throw mismatch(reader, token, "a boolean");
+            }
+            boolean value = reader.getBoolean();
+            try {
+                setter.invokeExact(obj, value);
+            } catch (Throwable exc) {
+                throw JsonSerializer.rethrow(exc);
+            }
+        }
+    }
+
+    /**
+     * A property of any other type, read with the deserializer of its declared type.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class ObjectProperty extends Property {
+
+        /** Handle of type <tt>(Object,Object)void</tt> that stores the property */
+        private final MethodHandle setter;
+
+        /** Deserializer of the values */
+        private final JsonDeserializer<?> values;
+
+        ObjectProperty (MethodHandle setter, JsonDeserializer<?> values) {
+            this.setter = setter;
+            this.values = values;
+        }
+
+        @Override
+        void read (JsonReader reader, int token, Object obj) throws IOException {
+            Object value = values.readValue(reader, token);
+            try {
+                setter.invokeExact(obj, value);
+            } catch (Throwable exc) {
+                throw JsonSerializer.rethrow(exc);
+            }
+        }
+    }
+}
@@ -0,0 +1,889 @@
+package es.darkhogg.johnson.mapping;
+
+import java.io.IOException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+import es.darkhogg.johnson.data.JsonArray;
+import es.darkhogg.johnson.data.JsonBoolean;
+import es.darkhogg.johnson.data.JsonNumber;
+import es.darkhogg.johnson.data.JsonObject;
+import es.darkhogg.johnson.data.JsonString;
+import es.darkhogg.johnson.data.JsonValue;
+import es.darkhogg.johnson.io.JsonKey;
+import es.darkhogg.johnson.io.JsonWriter;
+
+/**
+ * A class used to write Java objects directly to a {@link JsonWriter}, without building a {@link JsonValue} first.
+ * <p>
+ * A serializer is built once for every class, the first time an instance of it is written, and then cached for the
+ * lifetime of the class. Strings, numbers, booleans, characters, enums, {@link JsonValue}s, arrays, {@link Iterable}s
+ * and {@link Map}s are written as the corresponding JSON value. Any other object is written as a JSON <i>object</i>
+ * with one member for each of its properties:
+ * <ul>
+ * <li>The non-static, non-transient fields of the class and its superclasses, from the topmost superclass down and in
+ * declaration order, that either are public or have a public accessor named <tt>getX</tt>, <tt>isX</tt> or <tt>x</tt>.
+ * The accessor is used if there is one. This includes the components of records, in declaration order.</li>
+ * <li>The remaining public getters named <tt>getX</tt> or <tt>isX</tt>, sorted by name, except those of transient
+ * fields.</li>
+ * </ul>
+ * Properties are read with functions generated by {@link LambdaMetafactory} when the accessor is public and declared
+ * in a public class, and with {@link MethodHandle}s otherwise, so no reflection is used once the serializer is built.
+ * The names of the properties are escaped only once, using {@link JsonKey}.
+ * <p>
+ * Cyclic object graphs are not detected and cause a {@link StackOverflowError}.
+ * <p>
+ * Instances of this class are immutable and safe for use by multiple threads.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ * @param <T> Type of the objects written by this serializer
+ */
+public abstract class JsonSerializer<T> {
+
+    /** Lookup used to access the properties of the serialized classes */
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /** Serializer of each class */
+    private static final ClassValue<JsonSerializer<?>> SERIALIZERS = new ClassValue<JsonSerializer<?>>() {
+        @Override
+        protected JsonSerializer<?> computeValue (Class<?> type) {
+            return create(type);
+        }
+    };
+
+    /** Only allow subclasses in this class */
+    JsonSerializer () {}
+
+    /**
+     * Returns the serializer used for the instances of the given class.
+     *
+     * @param type Class of the serialized objects
+     * @return The serializer for <tt>type</tt>
+     * @throws IllegalArgumentException If the properties of the class cannot be accessed
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> JsonSerializer<T> of (Class<T> type) {
+        if (type == null) {
+            throw new NullPointerException("type");
+        }
+        return (JsonSerializer<T>) SERIALIZERS.get(type);
+    }
+
+    /**
+     * Writes an object using the serializer of its runtime class.
+     *
+     * @param writer Writer to write the object to
+     * @param obj Object to write, or <tt>null</tt>
+     * @throws IOException If some I/O error happens
+     * @throws IllegalStateException If the writer did not expect a value, or an accessor threw a checked exception
+     * @throws IllegalArgumentException If the properties of the class cannot be accessed
+     */
+    @SuppressWarnings("unchecked")
+    public static void serialize (JsonWriter writer, Object obj) throws IOException {
+        if (obj == null) {
+            writer.valueNull();
+        } else {
+            ((JsonSerializer<Object>) SERIALIZERS.get(obj.getClass())).writeObject(writer, obj);
+        }
+    }
+
+    /**
+     * Writes an object to the given writer.
+     *
+     * @param writer Writer to write the object to
+     * @param obj Object to write, or <tt>null</tt>
+     * @throws IOException If some I/O error happens
+     * @throws IllegalStateException If the writer did not expect a value, or an accessor threw a checked exception
+     */
+    public final void write (JsonWriter writer, T obj) throws IOException {
+        if (writer == null) {
+            throw new NullPointerException("writer");
+        }
+        if (obj == null) {
+            writer.valueNull();
+        } else {
+            writeObject(writer, obj);
+        }
+    }
+
+    /**
+     * Writes a non-<tt>null</tt> object to the given writer.
+     *
+     * @param writer Writer to write the object to
+     * @param obj Object to write
+     * @throws IOException If some I/O error happens
+     */
+    abstract void writeObject (JsonWriter writer, T obj) throws IOException;
+
+    /**
+     * Creates the serializer for a class.
+     *
+     * @param type Class of the serialized objects
+     * @return A new serializer for <tt>type</tt>
+     */
+    static JsonSerializer<?> create (Class<?> type) {
+        if (type == String.class) {
+            return new StringSerializer();
+        } else if (type == Boolean.class) {
+            return new BooleanSerializer();
+        } else if (type == Character.class) {
+            return new CharacterSerializer();
+        } else if (Number.class.isAssignableFrom(type)) {
+            return new NumberSerializer();
+        } else if (Enum.class.isAssignableFrom(type)) {
+            return new EnumSerializer();
+        } else if (JsonValue.class.isAssignableFrom(type)) {
+            return new TreeSerializer();
+        } else if (type.isArray()) {
+            return new ArraySerializer(type.getComponentType());
+        } else if (Iterable.class.isAssignableFrom(type)) {
+            return new IterableSerializer();
+        } else if (Map.class.isAssignableFrom(type)) {
+            return new MapSerializer();
+        } else {
+            return new BeanSerializer(properties(type));
+        }
+    }
+
+    /**
+     * Finds the properties of a class that is serialized as a JSON <i>object</i>.
+     *
+     * @param type The serialized class
+     * @return The properties of <tt>type</tt>, in the order they are written
+     */
+    private static Property[] properties (Class<?> type) {
+        List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+        for (Class<?> cls = type; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+            hierarchy.add(0, cls);
+        }
+
+        List<Property> props = new ArrayList<Property>();
+        Set<String> names = new HashSet<String>();
+        Set<Method> used = new HashSet<Method>();
+
+        for (Class<?> cls : hierarchy) {
+            for (Field field : cls.getDeclaredFields()) {
+                int mods = field.getModifiers();
+                if (field.isSynthetic() || names.contains(field.getName())) {
+                    continue;
+                }
+                if (Modifier.isStatic(mods)) {
+                    continue;
+                }
+                if (Modifier.isTransient(mods)) {
+                    // Also hides the getters of the field
+                    names.add(field.getName());
+                    continue;
+                }
+
+                Method getter = accessor(type, field);
+                if (getter != null) {
+                    used.add(getter);
+                    props.add(property(field.getName(), getter));
+                    names.add(field.getName());
+                } else if (Modifier.isPublic(mods)) {
+                    props.add(property(field.getName(), field));
+                    names.add(field.getName());
+                }
+            }
+        }
+
+        Map<String, Method> getters = new TreeMap<String, Method>();
+        for (Method method : type.getMethods()) {
+            String name = getterName(method);
+            if (name != null && !used.contains(method) && !names.contains(name)) {
+                getters.put(name, method);
+            }
+        }
+        for (Map.Entry<String, Method> entry : getters.entrySet()) {
+            props.add(property(entry.getKey(), entry.getValue()));
+        }
+
+        return props.toArray(new Property[props.size()]);
+    }
+
+    /**
+     * Finds the public accessor of a field.
+     *
+     * @param type The serialized class
+     * @param field A field of the class or its superclasses
+     * @return The <tt>getX</tt>, <tt>isX</tt> or <tt>x</tt> method that reads the field, or <tt>null</tt>
+     */
+    private static Method accessor (Class<?> type, Field field) {
+        String name = field.getName();
+        String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        String[] candidates = field.getType() == boolean.class
+            ? new String[] { "is" + suffix, "get" + suffix, name }
+            : new String[] { "get" + suffix, name };
+
+        for (String candidate : candidates) {
+            try {
+                Method method = type.getMethod(candidate);
+                if (!Modifier.isStatic(method.getModifiers()) && method.getReturnType() == field.getType()) {
+                    return method;
+                }
+            } catch (NoSuchMethodException exc) {
+                // Try the next candidate
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param method A public method
+     * @return The name of the property read by <tt>method</tt> if it is a getter, or <tt>null</tt> if it is not
+     */
+    private static String getterName (Method method) {
+        String name = method.getName();
+        Class<?> ret = method.getReturnType();
+        if (Modifier.isStatic(method.getModifiers()) || method.isBridge() || method.isSynthetic()
+            || method.getParameterTypes().length != 0 || ret == void.class || name.equals("getClass"))
+        {
+            return null;
+        }
+
+        String suffix;
+        if (name.startsWith("get") && name.length() > 3) {
+            suffix = name.substring(3);
+        } else if (name.startsWith("is") && name.length() > 2 && (ret == boolean.class || ret == Boolean.class)) {
+            suffix = name.substring(2);
+        } else {
+            return null;
+        }
+
+        if (suffix.length() > 1 && Character.isUpperCase(suffix.charAt(0)) && Character.isUpperCase(suffix.charAt(1))) {
+            return suffix;
+        }
+        return Character.toLowerCase(suffix.charAt(0)) + suffix.substring(1);
+    }
+
+    /**
+     * Creates a property read by a public accessor.
+     *
+     * @param name Name of the property
+     * @param getter Accessor of the property
+     * @return A new property
+     */
+    private static Property property (String name, Method getter) {
+        MethodHandle handle;
+        try {
+            if (!isPublic(getter.getDeclaringClass())) {
+                getter.setAccessible(true);
+            }
+            handle = LOOKUP.unreflect(getter);
+        } catch (IllegalAccessException | RuntimeException exc) {
+            throw new IllegalArgumentException("JSON: Cannot access " + getter, exc);
+        }
+
+        if (isPublic(getter.getDeclaringClass()) && getter.getExceptionTypes().length == 0) {
+            Property prop = generated(name, handle);
+            if (prop != null) {
+                return prop;
+            }
+        }
+        return property(name, handle);
+    }
+
+    /**
+     * Creates a property read from a field.
+     *
+     * @param name Name of the property
+     * @param field Field of the property
+     * @return A new property
+     */
+    private static Property property (String name, Field field) {
+        try {
+            field.setAccessible(true);
+            return property(name, LOOKUP.unreflectGetter(field));
+        } catch (IllegalAccessException | RuntimeException exc) {
+            throw new IllegalArgumentException("JSON: Cannot access " + field, exc);
+        }
+    }
+
+    /**
+     * @param cls A class
+     * @return Whether <tt>cls</tt> and all classes that enclose it are public
+     */
+    private static boolean isPublic (Class<?> cls) {
+        for (Class<?> c = cls; c != null; c = c.getEnclosingClass()) {
+            if (!Modifier.isPublic(c.getModifiers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a property read by a function generated by {@link LambdaMetafactory}.
+     *
+     * @param name Name of the property
+     * @param handle Handle of a public accessor of a public class
+     * @return A new property, or <tt>null</tt> if the function could not be generated
+     */
+    @SuppressWarnings("unchecked")
+    private static Property generated (String name, MethodHandle handle) {
+        Class<?> ret = handle.type().returnType();
+        try {
+            if (ret == boolean.class) {
+                return new BooleanProperty(name, (Predicate<Object>) lambda(Predicate.class, "test", boolean.class,
+                    handle));
+            } else if (ret == long.class || ret == int.class || ret == short.class || ret == byte.class) {
+                return new LongProperty(name, (ToLongFunction<Object>) lambda(ToLongFunction.class, "applyAsLong",
+                    long.class, handle));
+            } else if (ret == double.class || ret == float.class) {
+                ToDoubleFunction<Object> func =
+                    (ToDoubleFunction<Object>) lambda(ToDoubleFunction.class, "applyAsDouble", double.class, handle);
+                return ret == float.class ? new FloatProperty(name, func) : new DoubleProperty(name, func);
+            } else if (ret == char.class) {
+                return new CharProperty(name, (ToIntFunction<Object>) lambda(ToIntFunction.class, "applyAsInt",
+                    int.class, handle));
+            } else {
+                Function<Object, Object> func =
+                    (Function<Object, Object>) lambda(Function.class, "apply", Object.class, handle);
+                return ret == String.class ? new StringProperty(name, func) : new ObjectProperty(name, func);
+            }
+        } catch (Throwable exc) {
+            return null;
+        }
+    }
+
+    /**
+     * Generates a function that calls an accessor.
+     *
+     * @param iface Functional interface implemented by the function
+     * @param method Name of the method of <tt>iface</tt>
+     * @param ret Return type of the method of <tt>iface</tt>
+     * @param handle Handle of the accessor
+     * @return A new function
+     * @throws Throwable If the function cannot be generated
+     */
+    private static Object lambda (Class<?> iface, String method, Class<?> ret, MethodHandle handle) throws Throwable {
+        return LambdaMetafactory.metafactory(LOOKUP, method, MethodType.methodType(iface),
+            MethodType.methodType(ret, Object.class), handle, handle.type()).getTarget().invoke();
+    }
+
+    /**
+     * Creates a property read by a method handle.
+     *
+     * @param name Name of the property
+     * @param handle Handle that reads the property
+     * @return A new property
+     */
+    private static Property property (String name, MethodHandle handle) {
+        Class<?> ret = handle.type().returnType();
+        if (ret == boolean.class) {
+            final MethodHandle mh = handle.asType(MethodType.methodType(boolean.class, Object.class));
+            return new BooleanProperty(name, new Predicate<Object>() {
+                @Override
+                public boolean test (Object obj) {
+                    try {
+                        return (boolean) mh.invokeExact(obj);
+                    } catch (Throwable exc) {
+                        throw rethrow(exc);
+                    }
+                }
+            });
+        } else if (ret == long.class || ret == int.class || ret == short.class || ret == byte.class) {
+            final MethodHandle mh = handle.asType(MethodType.methodType(long.class, Object.class));
+            return new LongProperty(name, new ToLongFunction<Object>() {
+                @Override
+                public long applyAsLong (Object obj) {
+                    try {
+                        return (long) mh.invokeExact(obj);
+                    } catch (Throwable exc) {
+                        throw rethrow(exc);
+                    }
+                }
+            });
+        } else if (ret == double.class || ret == float.class) {
+            final MethodHandle mh = handle.asType(MethodType.methodType(double.class, Object.class));
+            ToDoubleFunction<Object> func = new ToDoubleFunction<Object>() {
+                @Override
+                public double applyAsDouble (Object obj) {
+                    try {
+                        return (double) mh.invokeExact(obj);
+                    } catch (Throwable exc) {
+                        throw rethrow(exc);
+                    }
+                }
+            };
+            return ret == float.class ? new FloatProperty(name, func) : new DoubleProperty(name, func);
+        } else if (ret == char.class) {
+            final MethodHandle mh = handle.asType(MethodType.methodType(int.class, Object.class));
+            return new CharProperty(name, new ToIntFunction<Object>() {
+                @Override
+                public int applyAsInt (Object obj) {
+                    try {
+                        return (int) mh.invokeExact(obj);
+                    } catch (Throwable exc) {
+                        throw rethrow(exc);
+                    }
+                }
+            });
+        } else {
+            final MethodHandle mh = handle.asType(MethodType.methodType(Object.class, Object.class));
+            Function<Object, Object> func = new Function<Object, Object>() {
+                @Override
+                public Object apply (Object obj) {
+                    try {
+                        return mh.invokeExact(obj);
+                    } catch (Throwable exc) {
+                        throw rethrow(exc);
+                    }
+                }
+            };
+            return ret == String.class ? new StringProperty(name, func) : new ObjectProperty(name, func);
+        }
+    }
+
+    /**
+     * Rethrows unchecked exceptions and errors, wrapping checked exceptions.
+     *
+     * @param exc Exception thrown by an accessor
+     * @return Never returns normally
+     */
+    static RuntimeException rethrow (Throwable exc) {
+        if (exc instanceof RuntimeException) {
+            throw (RuntimeException) exc;
+        } else if (exc instanceof Error) {
+            throw (Error) exc;
+        }
+        throw new IllegalStateException("JSON: Exception thrown by an accessor", exc);
+    }
+
+    /**
+     * Writes a {@link JsonValue} tree.
+     *
+     * @param writer Writer to write the value to
+     * @param value Value to write
+     * @throws IOException If some I/O error happens
+     */
+    static void writeTree (JsonWriter writer, JsonValue<?> value) throws IOException {
+        if (value instanceof JsonArray) {
+            JsonArray array = (JsonArray) value;
+            if (array.isLongArray()) {
+                writer.value(array.toLongArray());
+            } else if (array.isDoubleArray()) {
+                writer.value(array.toDoubleArray());
+            } else {
+                writer.beginArray();
+                for (JsonValue<?> elem : array.getValue()) {
+                    writeTree(writer, elem);
+                }
+                writer.endArray();
+            }
+        } else if (value instanceof JsonObject) {
+            writer.beginObject();
+            for (Map.Entry<String, JsonValue<?>> entry : ((JsonObject) value).getValue().entrySet()) {
+                writer.key(entry.getKey());
+                writeTree(writer, entry.getValue());
+            }
+            writer.endObject();
+        } else if (value instanceof JsonString) {
+            writer.value(((JsonString) value).getValue());
+        } else if (value instanceof JsonNumber) {
+            writer.value(((JsonNumber) value).getValue());
+        } else if (value instanceof JsonBoolean) {
+            writer.value(((JsonBoolean) value).getValue().booleanValue());
+        } else {
+            writer.valueNull();
+        }
+    }
+
+    /**
+     * Serializer for strings.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class StringSerializer extends JsonSerializer<String> {
+        @Override
+        void writeObject (JsonWriter writer, String obj) throws IOException {
+            writer.value(obj);
+        }
+    }
+
+    /**
+     * Serializer for booleans.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class BooleanSerializer extends JsonSerializer<Boolean> {
+        @Override
+        void writeObject (JsonWriter writer, Boolean obj) throws IOException {
+            writer.value(obj.booleanValue());
+        }
+    }
+
+    /**
+     * Serializer for characters, written as strings.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class CharacterSerializer extends JsonSerializer<Character> {
+        @Override
+        void writeObject (JsonWriter writer, Character obj) throws IOException {
+            writer.value(obj.toString());
+        }
+    }
+
+    /**
+     * Serializer for numbers.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class NumberSerializer extends JsonSerializer<Number> {
+        @Override
+        void writeObject (JsonWriter writer, Number obj) throws IOException {
+            writer.value(obj);
+        }
+    }
+
+    /**
+     * Serializer for enums, written as the name of the constant.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class EnumSerializer extends JsonSerializer<Enum<?>> {
+        @Override
+        void writeObject (JsonWriter writer, Enum<?> obj) throws IOException {
+            writer.value(obj.name());
+        }
+    }
+
+    /**
+     * Serializer for {@link JsonValue} trees.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class TreeSerializer extends JsonSerializer<JsonValue<?>> {
+        @Override
+        void writeObject (JsonWriter writer, JsonValue<?> obj) throws IOException {
+            writeTree(writer, obj);
+        }
+    }
+
+    /**
+     * Serializer for iterables, written as arrays.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class IterableSerializer extends JsonSerializer<Iterable<?>> {
+        @Override
+        void writeObject (JsonWriter writer, Iterable<?> obj) throws IOException {
+            writer.beginArray();
+            for (Object elem : obj) {
+                serialize(writer, elem);
+            }
+            writer.endArray();
+        }
+    }
+
+    /**
+     * Serializer for maps, written as objects with the string representation of each key.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class MapSerializer extends JsonSerializer<Map<?, ?>> {
+        @Override
+        void writeObject (JsonWriter writer, Map<?, ?> obj) throws IOException {
+            writer.beginObject();
+            for (Map.Entry<?, ?> entry : obj.entrySet()) {
+                writer.key(String.valueOf(entry.getKey()));
+                serialize(writer, entry.getValue());
+            }
+            writer.endObject();
+        }
+    }
+
+    /**
+     * Serializer for arrays.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class ArraySerializer extends JsonSerializer<Object> {
+
+        /** Component type of the array */
+        private final Class<?> component;
+
+        ArraySerializer (Class<?> component) {
+            this.component = component;
+        }
+
+        @Override
+        void writeObject (JsonWriter writer, Object obj) throws IOException {
+            if (component == long.class) {
+                writer.value((long[]) obj);
+            } else if (component == double.class) {
+                writer.value((double[]) obj);
+            } else {
+                writer.beginArray();
+                if (component == int.class) {
+                    for (int elem : (int[]) obj) {
+                        writer.value(elem);
+                    }
+                } else if (component == short.class) {
+                    for (short elem : (short[]) obj) {
+                        writer.value(elem);
+                    }
+                } else if (component == byte.class) {
+                    for (byte elem : (byte[]) obj) {
+                        writer.value(elem);
+                    }
+                } else if (component == float.class) {
+                    for (float elem : (float[]) obj) {
+                        writer.value(elem);
+                    }
+                } else if (component == boolean.class) {
+                    for (boolean elem : (boolean[]) obj) {
+                        writer.value(elem);
+                    }
+                } else if (component == char.class) {
+                    for (char elem : (char[]) obj) {
+                        writer.value(String.valueOf(elem));
+                    }
+                } else {
+                    for (Object elem : (Object[]) obj) {
+                        serialize(writer, elem);
+                    }
+                }
+                writer.endArray();
+            }
+        }
+    }
+
+    /**
+     * Serializer for any other class, written as an object with a member for each property.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class BeanSerializer extends JsonSerializer<Object> {
+
+        /** Properties of the class */
+        private final Property[] properties;
+
+        BeanSerializer (Property[] properties) {
+            this.properties = properties;
+        }
+
+        @Override
+        void writeObject (JsonWriter writer, Object obj) throws IOException {
+            writer.beginObject();
+            for (Property prop : properties) {
+                writer.key(prop.key);
+                prop.write(writer, obj);
+            }
+            writer.endObject();
+        }
+    }
+
+    /**
+     * A property of a class, written as a member of an object.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private abstract static class Property {
+
+        /** Key of the member */
+        final JsonKey key;
+
+        Property (String name) {
+            this.key = new JsonKey(name);
+        }
+
+        /**
+         * Writes the value of this property.
+         *
+         * @param writer Writer to write the value to
+         * @param obj Object containing the property
+         * @throws IOException If some I/O error happens
+         */
+        abstract void write (JsonWriter writer, Object obj) throws IOException;
+    }
+
+    /**
+     * A property of type <tt>boolean</tt>.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class BooleanProperty extends Property {
+
+        /** Function that reads the property */
+        private final Predicate<Object> getter;
+
+        BooleanProperty (String name, Predicate<Object> getter) {
+            super(name);
+            this.getter = getter;
+        }
+
+        @Override
+        void write (JsonWriter writer, Object obj) throws IOException {
+            writer.value(getter.test(obj));
+        }
+    }
+
+    /**
+     * A property of type <tt>long</tt>, <tt>int</tt>, <tt>short</tt> or <tt>byte</tt>.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class LongProperty extends Property {
+
+        /** Function that reads the property */
+        private final ToLongFunction<Object> getter;
+
+        LongProperty (String name, ToLongFunction<Object> getter) {
+            super(name);
+            this.getter = getter;
+        }
+
+        @Override
+        void write (JsonWriter writer, Object obj) throws IOException {
+            writer.value(getter.applyAsLong(obj));
+        }
+    }
+
+    /**
+     * A property of type <tt>double</tt>.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class DoubleProperty extends Property {
+
+        /** Function that reads the property */
+        private final ToDoubleFunction<Object> getter;
+
+        DoubleProperty (String name, ToDoubleFunction<Object> getter) {
+            super(name);
+            this.getter = getter;
+        }
+
+        @Override
+        void write (JsonWriter writer, Object obj) throws IOException {
+            writer.value(getter.applyAsDouble(obj));
+        }
+    }
+
+    /**
+     * A property of type <tt>float</tt>.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class FloatProperty extends Property {
+
+        /** Function that reads the property, widened to <tt>double</tt> */
+        private final ToDoubleFunction<Object> getter;
+
+        FloatProperty (String name, ToDoubleFunction<Object> getter) {
+            super(name);
+            this.getter = getter;
+        }
+
+        @Override
+        void write (JsonWriter writer, Object obj) throws IOException {
+            writer.value((float) getter.applyAsDouble(obj));
+        }
+    }
+
+    /**
+     * A property of type <tt>char</tt>, written as a string.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class CharProperty extends Property {
+
+        /** Function that reads the property, widened to <tt>int</tt> */
+        private final ToIntFunction<Object> getter;
+
+        CharProperty (String name, ToIntFunction<Object> getter) {
+            super(name);
+            this.getter = getter;
+        }
+
+        @Override
+        void write (JsonWriter writer, Object obj) throws IOException {
+            writer.value(String.valueOf((char) getter.applyAsInt(obj)));
+        }
+    }
+
+    /**
+     * A property of type {@link String}.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class StringProperty extends Property {
+
+        /** Function that reads the property */
+        private final Function<Object, Object> getter;
+
+        StringProperty (String name, Function<Object, Object> getter) {
+            super(name);
+            this.getter = getter;
+        }
+
+        @Override
+        void write (JsonWriter writer, Object obj) throws IOException {
+            Object value = getter.apply(obj);
+            if (value == null) {
+                writer.valueNull();
+            } else {
+                writer.value((String) value);
+            }
+        }
+    }
+
+    /**
+     * A property of any other type, written with the serializer of the runtime class of its value.
+     *
+     * @author Daniel Escoz
+     * @version 1.0
+     */
+    private static final class ObjectProperty extends Property {
+
+        /** Function that reads the property */
+        private final Function<Object, Object> getter;
+
+        ObjectProperty (String name, Function<Object, Object> getter) {
+            super(name);
+            this.getter = getter;
+        }
+
+        @Override
+        void write (JsonWriter writer, Object obj) throws IOException {
+            serialize(writer, getter.apply(obj));
+        }
+    }
+}
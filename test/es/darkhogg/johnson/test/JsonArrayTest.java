@@ -0,0 +1,112 @@
+package es.darkhogg.johnson.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import es.darkhogg.johnson.data.JsonArray;
+import es.darkhogg.johnson.data.JsonNumber;
+import es.darkhogg.johnson.data.JsonString;
+import es.darkhogg.johnson.data.JsonValue;
+
+/**
+ * Tests for the {@link JsonArray} class.
+ * 
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonArrayTest {
+
+    private static void assertSameElements (List<JsonValue<?>> expected, JsonArray actual) {
+        Assert.assertEquals(expected.size(), actual.getLength());
+        Assert.assertEquals(expected, actual.getValue());
+    }
+
+    @Test
+    public void appendTest () {
+        List<JsonValue<?>> expected = new ArrayList<JsonValue<?>>();
+        JsonArray array = JsonArray.EMPTY;
+
+        // Enough elements for a trie of three levels plus a tail
+        for (int i = 0; i < 40000; i++) {
+            JsonArray previous = array;
+            array = array.append(JsonNumber.valueOf(i));
+            expected.add(JsonNumber.valueOf(i));
+
+            Assert.assertEquals(i, previous.getLength());
+            Assert.assertEquals(JsonNumber.valueOf(i), array.get(i));
+        }
+        assertSameElements(expected, array);
+    }
+
+    @Test
+    public void setTest () {
+        Random random = new Random(0x5E7L);
+        List<JsonValue<?>> expected = new ArrayList<JsonValue<?>>();
+        for (int i = 0; i < 5000; i++) {
+            expected.add(new JsonString("e" + i));
+        }
+
+        JsonArray original = new JsonArray.Builder(expected).create();
+        JsonArray array = original;
+        for (int i = 0; i < 2000; i++) {
+            int index = random.nextInt(expected.size());
+            JsonValue<?> elem = JsonNumber.valueOf(i);
+            array = array.set(index, elem);
+            expected.set(index, elem);
+        }
+        assertSameElements(expected, array);
+
+        // The original array is not modified
+        Assert.assertEquals(new JsonString("e10"), original.get(10));
+    }
+
+    @Test
+    public void primitiveTest () {
+        JsonArray longs = JsonArray.valueOf(new long[] { 1, 2, 3 });
+        JsonArray modified = longs.set(1, new JsonString("two")).append(JsonNumber.valueOf(4));
+        Assert.assertEquals(3, longs.getLength());
+        Assert.assertEquals(2, longs.getLong(1));
+        Assert.assertEquals(new JsonString("two"), modified.get(1));
+        Assert.assertEquals(4, modified.getLong(3));
+        Assert.assertFalse(modified.isLongArray());
+    }
+
+    @Test
+    public void equalsTest () {
+        JsonArray longs = JsonArray.valueOf(new long[] { 1, 2, 3 });
+        JsonArray list = new JsonArray.Builder().add(JsonNumber.valueOf(1L)).add(JsonNumber.valueOf(2L))
+            .add(JsonNumber.valueOf(3L)).create();
+        JsonArray vector = JsonArray.EMPTY.append(JsonNumber.valueOf(1L)).append(JsonNumber.valueOf(2L))
+            .append(JsonNumber.valueOf(3L));
+
+        for (JsonArray array : new JsonArray[] { list, vector }) {
+            Assert.assertEquals(longs, array);
+            Assert.assertEquals(array, longs);
+            Assert.assertEquals(longs.hashCode(), array.hashCode());
+            Assert.assertEquals(longs.getValue().hashCode(), array.hashCode());
+        }
+
+        Assert.assertEquals(JsonArray.valueOf(new double[] { 0.5, -0.0 }),
+            JsonArray.EMPTY.append(JsonNumber.valueOf(0.5)).append(JsonNumber.valueOf(-0.0)));
+        Assert.assertFalse(longs.equals(longs.set(2, JsonNumber.valueOf(4L))));
+        Assert.assertFalse(longs.equals(longs.append(JsonNumber.valueOf(4L))));
+        Assert.assertFalse(JsonArray.EMPTY.equals(new JsonString("")));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void outOfBoundsTest () {
+        JsonArray.valueOf(new long[] { 1, 2, 3 }).set(3, JsonNumber.valueOf(0));
+        Assert.fail();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void unmodifiableTest () {
+        JsonArray.EMPTY.append(JsonNumber.valueOf(0)).getValue().add(JsonNumber.valueOf(1));
+        Assert.fail();
+    }
+}
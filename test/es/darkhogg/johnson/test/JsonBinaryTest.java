@@ -0,0 +1,255 @@
+package es.darkhogg.johnson.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import es.darkhogg.johnson.data.JsonArray;
+import es.darkhogg.johnson.data.JsonNumber;
+import es.darkhogg.johnson.data.JsonParser;
+import es.darkhogg.johnson.data.JsonValue;
+import es.darkhogg.johnson.io.JsonKeySet;
+import es.darkhogg.johnson.io.JsonReader;
+import es.darkhogg.johnson.io.JsonWriter;
+import es.darkhogg.johnson.mapping.JsonSerializer;
+
+/**
+ * Tests for the binary encoding of {@link JsonWriter} and {@link JsonReader}.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public class JsonBinaryTest {
+
+    /** A document with values of every kind */
+    private static final String DOCUMENT = "{\"id\":1,\"name\":\"caf\\u00e9 \\ud83d\\ude00 \\udc00\",\"tags\":[\"a\","
+        + "\"a long string that does not fit in the tag\"],\"values\":[0,-64,63,64,-65,9223372036854775807,"
+        + "-9223372036854775808,1.5,-0.1,1e300,123456789012345678901234567890,0.30000000000000004],"
+        + "\"nested\":{\"empty\":{},\"list\":[[],[null,true,false]]},\"id2\":null}";
+
+    /** Encodes a tree as binary */
+    private static byte[] encode (JsonValue<?> value, JsonKeySet dictionary) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = JsonWriter.binary(out, dictionary);
+        JsonSerializer.serialize(writer, value);
+        writer.close();
+        return out.toByteArray();
+    }
+
+    /** Parses a text document */
+    private static JsonValue<?> parse (String json) throws IOException {
+        return new JsonParser().parse(new JsonReader(new StringReader(json)));
+    }
+
+    /** A stream that returns at most three bytes on every read, and cannot skip */
+    private static InputStream trickle (byte[] bytes) {
+        return new FilterInputStream(new ByteArrayInputStream(bytes)) {
+            @Override
+            public int read (byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 3));
+            }
+
+            @Override
+            public long skip (long n) {
+                return 0;
+            }
+        };
+    }
+
+    /** Tests that trees are preserved through the binary encoding, from arrays and from streams. */
+    @Test
+    public void roundTripTest () throws IOException {
+        JsonValue<?> tree = parse(DOCUMENT);
+        byte[] bytes = encode(tree, null);
+
+        Assert.assertEquals(tree, new JsonParser().parse(JsonReader.binary(bytes, null)));
+        Assert.assertEquals(tree, new JsonParser().parse(JsonReader.binary(trickle(bytes))));
+
+        // Containers longer than 127 bytes have longer lengths
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            sb.append(i == 0 ? "" : ",").append("{\"k\":[").append(i).append(",\"").append(i * 31).append("\"]}");
+        }
+        tree = parse(sb.append("]").toString());
+        Assert.assertEquals(tree, new JsonParser().parse(JsonReader.binary(encode(tree, null), null)));
+    }
+
+    /** Tests that numbers are read back with their binary types and as text. */
+    @Test
+    public void numberTest () throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = JsonWriter.binary(out);
+        writer.beginArray().value(-1).value(1L << 40).value(0.1f).value(2.5);
+        writer.value(new BigDecimal("3.14159265358979323846")).endArray();
+        writer.close();
+
+        JsonReader reader = JsonReader.binary(out.toByteArray(), null);
+        Assert.assertEquals(JsonReader.TOKEN_ARRAY_BEGIN, reader.next());
+        reader.next();
+        Assert.assertEquals(-1, reader.getInt());
+        Assert.assertEquals("-1", reader.getString());
+        Assert.assertTrue(reader.isIntegral());
+        reader.next();
+        Assert.assertEquals(Long.valueOf(1L << 40), reader.getNumber());
+        reader.next();
+        Assert.assertEquals(Float.valueOf(0.1f), reader.getNumber());
+        Assert.assertEquals(0.1, reader.getDouble());
+        Assert.assertFalse(reader.isIntegral());
+        reader.next();
+        Assert.assertEquals(2.5, reader.getDouble());
+        Assert.assertEquals("2.5", reader.getString());
+        reader.next();
+        Assert.assertEquals(new BigDecimal("3.14159265358979323846"), reader.getNumber());
+        Assert.assertEquals(JsonReader.NUMBER_OTHER, reader.getNumberType());
+        Assert.assertEquals(JsonReader.TOKEN_ARRAY_END, reader.next());
+        Assert.assertEquals(JsonReader.TOKEN_EOF, reader.next());
+
+        // Integers take a single byte when they fit in the tag
+        Assert.assertTrue(out.size() < 60);
+    }
+
+    /** Tests that <tt>BigDecimal</tt> values are read back as equal <tt>BigDecimal</tt>s, with the same scale. */
+    @Test
+    public void bigDecimalTest () throws IOException {
+        Random random = new Random(0xB16DL);
+        BigDecimal[] decimals = new BigDecimal[20000];
+        decimals[0] = new BigDecimal("72067486459501056");
+        decimals[1] = new BigDecimal("1.50");
+        decimals[2] = BigDecimal.ZERO;
+        for (int i = 3; i < decimals.length; i++) {
+            if (random.nextBoolean()) {
+                decimals[i] = BigDecimal.valueOf(random.nextDouble() * Math.pow(10, random.nextInt(40)));
+            } else {
+                BigInteger unscaled = new BigInteger(1 + random.nextInt(130), random);
+                decimals[i] = new BigDecimal(random.nextBoolean() ? unscaled : unscaled.negate(),
+                    random.nextInt(3) == 0 ? 0 : random.nextInt(41) - 20);
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = JsonWriter.binary(out).beginArray();
+        for (BigDecimal decimal : decimals) {
+            writer.value(decimal);
+        }
+        writer.endArray().close();
+        byte[] bytes = out.toByteArray();
+
+        JsonReader reader = JsonReader.binary(bytes, null);
+        Assert.assertEquals(JsonReader.TOKEN_ARRAY_BEGIN, reader.next());
+        for (BigDecimal decimal : decimals) {
+            Assert.assertEquals(JsonReader.TOKEN_NUMBER, reader.next());
+            Assert.assertEquals(JsonReader.NUMBER_OTHER, reader.getNumberType());
+            Assert.assertEquals(decimal, reader.getNumber());
+            Assert.assertEquals(decimal, new BigDecimal(reader.getString()));
+        }
+        Assert.assertEquals(JsonReader.TOKEN_ARRAY_END, reader.next());
+
+        JsonValue<?> tree = new JsonParser().parse(JsonReader.binary(trickle(bytes)));
+        for (int i = 0; i < decimals.length; i++) {
+            Assert.assertEquals(JsonNumber.valueOf(decimals[i]), ((JsonArray) tree).get(i));
+        }
+    }
+
+    /** Tests that strings of the dictionary are written as their index and found without decoding them. */
+    @Test
+    public void dictionaryTest () throws IOException {
+        String[] names = new String[100];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "key" + i;
+        }
+        JsonKeySet dictionary = new JsonKeySet(names);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = JsonWriter.binary(out, dictionary);
+        writer.beginObject().key("key3").value("key99").key("other").value("key5").endObject();
+        writer.close();
+        byte[] bytes = out.toByteArray();
+
+        JsonReader reader = JsonReader.binary(bytes, dictionary);
+        reader.next();
+        Assert.assertEquals(JsonReader.TOKEN_KEY, reader.next());
+        Assert.assertEquals(3, reader.getKeyIndex(dictionary));
+        Assert.assertEquals("key3", reader.getString());
+        reader.next();
+        Assert.assertEquals(99, reader.getKeyIndex(dictionary));
+        Assert.assertEquals(0, reader.getKeyIndex(new JsonKeySet("key99")));
+        reader.next();
+        Assert.assertEquals(-1, reader.getKeyIndex(dictionary));
+        Assert.assertEquals("other", reader.getString());
+
+        // The same data written without dictionary is longer, and cannot be read without it
+        Assert.assertTrue(bytes.length < encode(parse("{\"key3\":\"key99\",\"other\":\"key5\"}"), null).length);
+        try {
+            new JsonParser().parse(JsonReader.binary(bytes, null));
+            Assert.fail();
+        } catch (IOException exc) {
+            // Expected
+        }
+    }
+
+    /** Tests that values are skipped by their length, even if the stream cannot skip. */
+    @Test
+    public void skipTest () throws IOException {
+        byte[] bytes = encode(parse("[{\"a\":[1,2,{\"b\":3}]},\"skipped\",[],7]"), null);
+        for (JsonReader reader : new JsonReader[] { JsonReader.binary(bytes, null),
+            JsonReader.binary(trickle(bytes)) })
+        {
+            Assert.assertEquals(JsonReader.TOKEN_ARRAY_BEGIN, reader.next());
+            Assert.assertEquals(JsonReader.TOKEN_OBJECT_BEGIN, reader.skipValue());
+            Assert.assertEquals(JsonReader.TOKEN_STRING, reader.skipValue());
+            Assert.assertEquals(JsonReader.TOKEN_ARRAY_BEGIN, reader.skipValue());
+            Assert.assertEquals(JsonReader.TOKEN_NUMBER, reader.next());
+            Assert.assertEquals(7, reader.getInt());
+            Assert.assertEquals(JsonReader.TOKEN_ARRAY_END, reader.skipValue());
+            Assert.assertEquals(JsonReader.TOKEN_EOF, reader.next());
+        }
+    }
+
+    /** Tests that several top-level values are written and read in line-delimited mode. */
+    @Test
+    public void lineDelimitedTest () throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = JsonWriter.binary(out).setLineDelimited(true);
+        for (int i = 0; i < 3; i++) {
+            writer.beginObject().key("i").value(i).endObject();
+        }
+        writer.value("last");
+        writer.close();
+
+        JsonReader reader = JsonReader.binary(out.toByteArray(), null).setLineDelimited(true);
+        JsonParser parser = new JsonParser();
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(parse("{\"i\":" + i + "}"), parser.parseNext(reader));
+        }
+        Assert.assertEquals(parse("\"last\""), parser.parseNext(reader));
+        Assert.assertNull(parser.parseNext(reader));
+    }
+
+    /** Tests that invalid and truncated inputs are rejected. */
+    @Test
+    public void invalidTest () throws IOException {
+        byte[] bytes = encode(parse(DOCUMENT), null);
+        byte[][] inputs = { new byte[0], { 0x0C }, { 0x09, 0x05, 0x01 }, { 0x0A, 0x01, 0x01 },
+            { 0x0A, 0x02, (byte) 0x80, 0x00 }, { 0x21, (byte) 0xFF }, { 0x00, 0x00 }, { 0x09, 0x02, 0x09, 0x05 },
+            { 0x03, (byte) 0xFF }, Arrays.copyOf(bytes, bytes.length - 1) };
+        for (byte[] input : inputs) {
+            try {
+                new JsonParser().parse(JsonReader.binary(input, null));
+                Assert.fail(Arrays.toString(input));
+            } catch (IOException exc) {
+                // Expected
+            }
+        }
+    }
+}
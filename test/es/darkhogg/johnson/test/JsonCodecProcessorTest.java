@@ -0,0 +1,223 @@
+package es.darkhogg.johnson.test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import es.darkhogg.johnson.io.JsonReader;
+import es.darkhogg.johnson.io.JsonWriter;
+import es.darkhogg.johnson.mapping.JsonCodec;
+import es.darkhogg.johnson.mapping.JsonCodecProcessor;
+import es.darkhogg.johnson.mapping.JsonSerializer;
+
+/**
+ * Tests for the codecs generated by {@link JsonCodecProcessor}.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public class JsonCodecProcessorTest {
+
+    /** Writes a value with its generated codec */
+    private static String write (Point point) throws IOException {
+        StringWriter sw = new StringWriter();
+        JsonWriter writer = new JsonWriter(sw);
+        JsonCodecProcessorTest_PointJsonCodec.write(writer, point);
+        writer.flush();
+        return sw.toString();
+    }
+
+    /** Returns a reader for the given document */
+    private static JsonReader reader (String json) {
+        return new JsonReader(new StringReader(json));
+    }
+
+    /** Tests that the generated codec writes the same document as the serializer. */
+    @Test
+    public void writeTest () throws IOException {
+        Point point = new Point();
+        point.x = 3;
+        point.y = -4;
+        point.label = "p\"1";
+        point.kind = Kind.SECOND;
+        point.tags = new String[] { "a", null };
+        point.values = new long[] { 1, 2 };
+        point.weights = new LinkedHashMap<String, List<Double>>();
+        point.weights.put("w", Arrays.asList(1.5, null));
+        point.child = new Point();
+        point.setRatio(0.25);
+
+        StringWriter sw = new StringWriter();
+        JsonWriter writer = new JsonWriter(sw);
+        JsonSerializer.serialize(writer, point);
+        writer.flush();
+
+        Assert.assertEquals(sw.toString(), write(point));
+        Assert.assertEquals("null", write(null));
+    }
+
+    /** Tests that the generated codec reads every property, skipping unknown members. */
+    @Test
+    public void readTest () throws IOException {
+        Point point = JsonCodecProcessorTest_PointJsonCodec.read(reader("{\"x\":3,\"unknown\":[{\"a\":1}],\"y\":-4,"
+            + "\"label\":\"l\",\"visible\":true,\"kind\":\"FIRST\",\"tags\":[\"a\",null],\"values\":[5,6],"
+            + "\"grid\":[[1],[2,3]],\"names\":[\"b\",\"a\",\"b\"],\"weights\":{\"w\":[2.5]},\"letter\":\"q\","
+            + "\"child\":{\"x\":1,\"child\":null},\"ratio\":0.5,\"ignored\":9}"));
+
+        Assert.assertEquals(3, point.x);
+        Assert.assertEquals(-4, point.y);
+        Assert.assertEquals("l", point.label);
+        Assert.assertTrue(point.visible);
+        Assert.assertEquals(Kind.FIRST, point.kind);
+        Assert.assertTrue(Arrays.equals(new String[] { "a", null }, point.tags));
+        Assert.assertTrue(Arrays.equals(new long[] { 5, 6 }, point.values));
+        Assert.assertTrue(Arrays.deepEquals(new int[][] { { 1 }, { 2, 3 } }, point.grid));
+        Assert.assertEquals(2, point.names.size());
+        Assert.assertEquals(Arrays.asList(2.5), point.weights.get("w"));
+        Assert.assertEquals('q', point.letter);
+        Assert.assertEquals(1, point.child.x);
+        Assert.assertNull(point.child.child);
+        Assert.assertEquals(0.5, point.getRatio());
+        Assert.assertEquals(5, point.ignored);
+    }
+
+    /** Tests that classes without a constructor without parameters are built by their constructor. */
+    @Test
+    public void creatorTest () throws IOException {
+        Named named = JsonCodecProcessorTest_NamedJsonCodec.read(reader("{\"count\":2,\"name\":\"n\",\"extra\":1}"));
+        Assert.assertEquals("n", named.getName());
+        Assert.assertEquals(2, named.getCount());
+
+        named = JsonCodecProcessorTest_NamedJsonCodec.read(reader("{}"));
+        Assert.assertNull(named.getName());
+        Assert.assertEquals(0, named.getCount());
+        Assert.assertNull(JsonCodecProcessorTest_NamedJsonCodec.read(reader("null")));
+    }
+
+    /** Tests that values of the wrong type are rejected. */
+    @Test
+    public void mismatchTest () throws IOException {
+        String[] inputs = { "{\"x\":\"3\"}", "{\"visible\":1}", "{\"kind\":\"THIRD\"}", "{\"tags\":{}}", "[]",
+            "{\"x\":null}", "{\"letter\":\"ab\"}", "{} {}", "{\"x\":1.5}", "{\"x\":1e2}", "{\"x\":99999999999}",
+            "{\"values\":[1,2.5]}", "{\"grid\":[[1e10]]}" };
+        for (String input : inputs) {
+            try {
+                JsonCodecProcessorTest_PointJsonCodec.read(reader(input));
+                Assert.fail(input);
+            } catch (IOException exc) {
+                // Expected
+            }
+        }
+    }
+
+    /** Tests that properties delegated to the runtime serializer and deserializer are reported. */
+    @Test
+    public void runtimeWarningTest () throws IOException {
+        String source = "package p;\n@es.darkhogg.johnson.mapping.JsonCodec\n"
+            + "public class Loose {\n    public Object any;\n    public java.util.List<String> names;\n}\n";
+        URI uri = URI.create("string:///p/Loose.java");
+        JavaFileObject file = new SimpleJavaFileObject(uri, JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent (boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        Path dir = Files.createTempDirectory("codec");
+        try {
+            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+            DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+            JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics,
+                Arrays.asList("-proc:only", "-s", dir.toString(), "-cp", System.getProperty("java.class.path")), null,
+                Arrays.asList(file));
+            task.setProcessors(Arrays.asList(new JsonCodecProcessor()));
+            Assert.assertTrue(task.call().booleanValue());
+
+            List<String> warnings = new ArrayList<String>();
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() == Diagnostic.Kind.WARNING) {
+                    warnings.add(diagnostic.getMessage(null));
+                }
+            }
+            Assert.assertEquals(warnings.toString(), 2, warnings.size());
+            for (String warning : warnings) {
+                Assert.assertTrue(warning, warning.contains("property any "));
+            }
+        } finally {
+            Files.walk(dir).sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /** An enumeration */
+    public enum Kind {
+        FIRST, SECOND
+    }
+
+    /** A class with fields, a getter and setter pair, and a property of its own class */
+    @JsonCodec
+    public static class Point {
+        public int x;
+        public int y;
+        public String label;
+        public boolean visible;
+        public Kind kind;
+        public String[] tags;
+        public long[] values;
+        public int[][] grid;
+        public Set<String> names;
+        public Map<String, List<Double>> weights;
+        public char letter;
+        public Point child;
+        public transient int ignored = 5;
+        private double ratio;
+
+        public double getRatio () {
+            return ratio;
+        }
+
+        public void setRatio (double ratio) {
+            this.ratio = ratio;
+        }
+    }
+
+    /** A class with a constructor that takes all fields */
+    @JsonCodec
+    static final class Named {
+        private final String name;
+        private final int count;
+
+        Named (String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+
+        public String getName () {
+            return name;
+        }
+
+        public int getCount () {
+            return count;
+        }
+    }
+}
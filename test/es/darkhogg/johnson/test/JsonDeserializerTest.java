@@ -0,0 +1,257 @@
+package es.darkhogg.johnson.test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import es.darkhogg.johnson.data.JsonArray;
+import es.darkhogg.johnson.data.JsonValue;
+import es.darkhogg.johnson.io.JsonKeySet;
+import es.darkhogg.johnson.io.JsonReader;
+import es.darkhogg.johnson.io.JsonWriter;
+import es.darkhogg.johnson.mapping.JsonDeserializer;
+import es.darkhogg.johnson.mapping.JsonSerializer;
+
+/**
+ * Tests for the {@link JsonDeserializer} and {@link JsonKeySet} classes.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public class JsonDeserializerTest {
+
+    /** Reads a complete document as an instance of the given class */
+    private static <T> T read (Class<T> type, String json) throws IOException {
+        return JsonDeserializer.of(type).read(new JsonReader(new StringReader(json)));
+    }
+
+    /** Tests that keys are found by their characters, and that unknown keys are not. */
+    @Test
+    public void keySetTest () throws IOException {
+        String[] names = new String[100];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "key" + i;
+        }
+        JsonKeySet keys = new JsonKeySet(names);
+        Assert.assertEquals(100, keys.size());
+        for (int i = 0; i < names.length; i++) {
+            Assert.assertEquals(i, keys.indexOf(names[i]));
+            Assert.assertEquals(names[i], keys.get(i));
+        }
+        Assert.assertEquals(-1, keys.indexOf("key100"));
+        Assert.assertEquals(-1, keys.indexOf(""));
+
+        // Keys with the same hash
+        keys = new JsonKeySet("Aa", "BB", "AaAa", "BBBB", "AaBB");
+        Assert.assertEquals(1, keys.indexOf("BB"));
+        Assert.assertEquals(4, keys.indexOf("AaBB"));
+        Assert.assertEquals(-1, keys.indexOf("BBAa"));
+        Assert.assertEquals(-1, new JsonKeySet().indexOf("a"));
+
+        JsonReader reader = new JsonReader(new StringReader("{\"BB\":\"Aa\",\"B\\u0042\":1,\"C\":2}"));
+        keys = new JsonKeySet("Aa", "BB");
+        reader.next();
+        reader.next();
+        Assert.assertEquals(1, reader.getKeyIndex(keys));
+        reader.next();
+        Assert.assertEquals(0, reader.getKeyIndex(keys));
+        reader.next();
+        Assert.assertEquals(1, reader.getKeyIndex(keys));
+        reader.next();
+        reader.next();
+        Assert.assertEquals(-1, reader.getKeyIndex(keys));
+    }
+
+    /** Tests that a key set cannot have repeated keys. */
+    @Test(expected = IllegalArgumentException.class)
+    public void keySetRepeatedTest () {
+        new JsonKeySet("a", "b", "a");
+    }
+
+    /** Tests that simple values are read as the requested classes. */
+    @Test
+    public void simpleTest () throws IOException {
+        Assert.assertEquals("abc", read(String.class, "\"abc\""));
+        Assert.assertNull(read(String.class, "null"));
+        Assert.assertEquals(Integer.valueOf(12), read(Integer.class, "12"));
+        Assert.assertEquals(Integer.valueOf(12), read(int.class, "12"));
+        Assert.assertEquals(Short.valueOf((short) -3), read(Short.class, "-3"));
+        Assert.assertEquals(Double.valueOf(1.5), read(Double.class, "1.5"));
+        Assert.assertEquals(new BigInteger("123456789012345678901234567890"),
+            read(BigInteger.class, "123456789012345678901234567890"));
+        Assert.assertEquals(Boolean.TRUE, read(Boolean.class, "true"));
+        Assert.assertEquals(Character.valueOf('x'), read(Character.class, "\"x\""));
+        Assert.assertEquals(Kind.SECOND, read(Kind.class, "\"SECOND\""));
+        Assert.assertTrue(Arrays.equals(new long[] { 1, 2, 3 }, read(long[].class, "[1,2,3]")));
+        Assert.assertTrue(Arrays.equals(new int[] { 1, 2, 3 }, read(int[].class, "[1,2,3]")));
+        Assert.assertTrue(Arrays.equals(new String[] { "a", null }, read(String[].class, "[\"a\",null]")));
+        Assert.assertEquals(JsonArray.valueOf(new long[] { 1, 2 }), read(JsonValue.class, "[1,2]"));
+
+        long[] longs = new long[40];
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = i * 1000L;
+        }
+        Assert.assertTrue(Arrays.equals(longs, read(long[].class, Arrays.toString(longs))));
+
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("a", Long.valueOf(1));
+        map.put("b", Arrays.asList("x", null, true));
+        Assert.assertEquals(map, read(Object.class, "{\"a\":1,\"b\":[\"x\",null,true]}"));
+    }
+
+    /** Tests that an object is read with its setters and fields, skipping unknown members. */
+    @Test
+    public void beanTest () throws IOException {
+        Point point = read(Point.class, "{\"x\":3,\"unknown\":{\"a\":[1,{}]},\"y\":-4,\"label\":\"p\\\"1\","
+            + "\"visible\":true,\"scale\":0.5,\"kind\":\"FIRST\",\"size\":7,\"tags\":[\"a\",\"b\",\"a\"],"
+            + "\"ratio\":0.25,\"ignored\":9,\"letter\":\"q\"}");
+
+        Assert.assertEquals(3, point.x);
+        Assert.assertEquals(-4, point.y);
+        Assert.assertEquals("p\"1", point.label);
+        Assert.assertTrue(point.visible);
+        Assert.assertEquals(0.5f, point.scale);
+        Assert.assertEquals(Kind.FIRST, point.kind);
+        Assert.assertEquals(7L, point.size);
+        Assert.assertEquals(2, point.tags.size());
+        Assert.assertTrue(point.setterUsed);
+        Assert.assertEquals(0.25, point.ratio);
+        Assert.assertEquals(5, point.ignored);
+        Assert.assertEquals('q', point.letter);
+    }
+
+    /** Tests nested objects, generic collections and maps, and classes that contain themselves. */
+    @Test
+    public void nestedTest () throws IOException {
+        Tree tree = read(Tree.class, "{\"name\":\"root\",\"children\":[{\"name\":\"a\",\"children\":[]},"
+            + "{\"name\":\"b\"}],\"weights\":{\"x\":[1.5],\"y\":[]}}");
+
+        Assert.assertEquals("root", tree.name);
+        Assert.assertEquals(2, tree.children.size());
+        Assert.assertEquals("a", tree.children.get(0).name);
+        Assert.assertTrue(tree.children.get(0).children.isEmpty());
+        Assert.assertNull(tree.children.get(1).children);
+        Assert.assertEquals(Arrays.asList(1.5), tree.weights.get("x"));
+        Assert.assertTrue(tree.weights.get("y").isEmpty());
+    }
+
+    /** Tests that classes without a constructor without parameters are built by their constructor. */
+    @Test
+    public void creatorTest () throws IOException {
+        Named named = read(Named.class, "{\"count\":2,\"name\":\"n\",\"extra\":null}");
+        Assert.assertEquals("n", named.name);
+        Assert.assertEquals(2, named.count);
+
+        named = read(Named.class, "{}");
+        Assert.assertNull(named.name);
+        Assert.assertEquals(0, named.count);
+    }
+
+    /** Tests that an object written by the serializer is read back. */
+    @Test
+    public void roundTripTest () throws IOException {
+        Tree tree = read(Tree.class, "{\"name\":\"r\",\"children\":[{\"name\":\"c\"}],\"weights\":{\"w\":[2.0]}}");
+
+        StringWriter sw = new StringWriter();
+        JsonWriter writer = new JsonWriter(sw);
+        JsonSerializer.serialize(writer, tree);
+        writer.flush();
+
+        Tree copy = read(Tree.class, sw.toString());
+        Assert.assertEquals("r", copy.name);
+        Assert.assertEquals("c", copy.children.get(0).name);
+        Assert.assertEquals(tree.weights, copy.weights);
+    }
+
+    /** Tests that values of the wrong type are rejected. */
+    @Test
+    public void mismatchTest () throws IOException {
+        String[] inputs = { "{\"x\":\"3\"}", "{\"visible\":1}", "{\"kind\":\"THIRD\"}", "{\"tags\":{}}", "[]",
+            "{\"x\":null}", "{\"letter\":\"ab\"}", "{\"x\":1.5}", "{\"x\":1e2}", "{\"x\":99999999999}",
+            "{\"size\":1e30}" };
+        for (String input : inputs) {
+            try {
+                read(Point.class, input);
+                Assert.fail(input);
+            } catch (IOException exc) {
+                // Expected
+            }
+        }
+    }
+
+    /** Tests that a complete document must not be followed by anything else. */
+    @Test(expected = IOException.class)
+    public void trailingTest () throws IOException {
+        read(Point.class, "{} {}");
+    }
+
+    /** An enumeration */
+    public enum Kind {
+        FIRST, SECOND
+    }
+
+    /** A class with fields, setters and a setter without field */
+    public static class Point {
+        int x;
+        int y;
+        String label;
+        boolean visible;
+        float scale;
+        public Kind kind;
+        long size;
+        Set<String> tags;
+        transient int ignored = 5;
+        char letter;
+        double ratio;
+        boolean setterUsed;
+
+        public void setTags (Set<String> tags) {
+            this.tags = tags;
+            setterUsed = true;
+        }
+
+        public void setRatio (double ratio) {
+            this.ratio = ratio;
+        }
+    }
+
+    /** A class that contains itself */
+    static class Tree {
+        String name;
+        List<Tree> children;
+        Map<String, List<Double>> weights;
+
+        public String getName () {
+            return name;
+        }
+
+        public List<Tree> getChildren () {
+            return children;
+        }
+
+        public Map<String, List<Double>> getWeights () {
+            return weights;
+        }
+    }
+
+    /** A class with a constructor that takes all fields */
+    static final class Named {
+        private final String name;
+        private final int count;
+
+        Named (String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package es.darkhogg.johnson.test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import es.darkhogg.johnson.data.JsonExtractor;
+import es.darkhogg.johnson.data.JsonNumber;
+import es.darkhogg.johnson.data.JsonParser;
+import es.darkhogg.johnson.data.JsonPointer;
+import es.darkhogg.johnson.data.JsonString;
+import es.darkhogg.johnson.data.JsonValue;
+import es.darkhogg.johnson.io.JsonReader;
+
+/**
+ * Tests for the {@link JsonExtractor} class.
+ * 
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonExtractorTest {
+
+    private static final String DOCUMENT = "{\"id\": 7, \"skip\": {\"deep\": [1, 2, {\"id\": 0}]}, "
+        + "\"user\": {\"name\": \"n\", \"tags\": [\"a\", \"b\", \"c\"]}, \"items\": [{\"p\": 1}, {\"p\": 2}]}";
+
+    private static JsonReader reader (String json) {
+        return new JsonReader(new StringReader(json));
+    }
+
+    @Test
+    public void extractTest () throws IOException {
+        JsonPointer id = JsonPointer.compile("/id");
+        JsonPointer name = JsonPointer.compile("/user/name");
+        JsonPointer tag = JsonPointer.compile("/user/tags/1");
+        JsonPointer price = JsonPointer.compile("/items/1/p");
+        JsonPointer missing = JsonPointer.compile("/items/5/p");
+        JsonExtractor extractor = new JsonExtractor(id, name, tag, price, missing);
+
+        // The extractor is reused for several documents
+        for (int i = 0; i < 2; i++) {
+            Map<JsonPointer, JsonValue<?>> found = extractor.extract(reader(DOCUMENT));
+            Assert.assertEquals(Arrays.asList(id, name, tag, price), Arrays.asList(found.keySet().toArray()));
+            Assert.assertEquals(JsonNumber.valueOf(7), found.get(id));
+            Assert.assertEquals(new JsonString("n"), found.get(name));
+            Assert.assertEquals(new JsonString("b"), found.get(tag));
+            Assert.assertEquals(JsonNumber.valueOf(2), found.get(price));
+        }
+    }
+
+    @Test
+    public void nestedTest () throws IOException {
+        JsonPointer user = JsonPointer.compile("/user");
+        JsonPointer tag = JsonPointer.compile("/user/tags/2");
+        JsonPointer root = JsonPointer.ROOT;
+
+        Map<JsonPointer, JsonValue<?>> found = new JsonExtractor(tag, user).extract(reader(DOCUMENT));
+        JsonValue<?> expected = new JsonParser().parse(reader(DOCUMENT));
+        Assert.assertEquals(user.evaluate(expected), found.get(user));
+        Assert.assertEquals(new JsonString("c"), found.get(tag));
+
+        found = new JsonExtractor(root).extract(reader(DOCUMENT));
+        Assert.assertEquals(expected, found.get(root));
+    }
+
+    @Test
+    public void duplicateKeyTest () throws IOException {
+        JsonPointer[] pointers = { JsonPointer.compile("/a/b"), JsonPointer.compile("/a/c"),
+            JsonPointer.compile("/x/y/0"), JsonPointer.compile("/x"), JsonPointer.compile("/x/z") };
+        String[] documents = { "{\"a\":{\"b\":1},\"a\":{\"c\":2}}", "{\"a\":{\"b\":1},\"a\":3,\"a\":{\"b\":4}}",
+            "{\"x\":{\"y\":[1],\"z\":2},\"x\":{\"y\":{\"0\":3}}}", "{\"a\":{\"b\":1,\"b\":{}},\"x\":[],\"x\":{}}" };
+        JsonExtractor extractor = new JsonExtractor(pointers);
+        for (String document : documents) {
+            Map<JsonPointer, JsonValue<?>> found = extractor.extract(reader(document));
+            JsonValue<?> tree = new JsonParser().parse(reader(document));
+            for (JsonPointer pointer : pointers) {
+                JsonValue<?> expected = pointer.evaluate(tree);
+                Assert.assertEquals(document + " " + pointer, expected, found.get(pointer));
+                Assert.assertEquals(document + " " + pointer, expected != null, found.containsKey(pointer));
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidTest () throws IOException {
+        new JsonExtractor(JsonPointer.compile("/a")).extract(reader("{\"a\": 1, \"b\": [}"));
+    }
+}
@@ -0,0 +1,71 @@
+package es.darkhogg.johnson.test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Iterator;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import es.darkhogg.johnson.data.JsonArray;
+import es.darkhogg.johnson.data.JsonInterner;
+import es.darkhogg.johnson.data.JsonObject;
+import es.darkhogg.johnson.data.JsonParser;
+import es.darkhogg.johnson.data.JsonValue;
+import es.darkhogg.johnson.io.JsonReader;
+
+/**
+ * Tests for the {@link JsonInterner} class.
+ * 
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonInternerTest {
+
+    private static JsonValue<?> parse (String json) throws IOException {
+        return new JsonParser().parse(new JsonReader(new StringReader(json)));
+    }
+
+    @Test
+    public void subtreeTest () throws IOException {
+        JsonInterner interner = new JsonInterner();
+        JsonValue<?> original = parse("[{\"p\": {\"x\": 1, \"y\": [2, 3]}}, {\"p\": {\"y\": [2, 3], \"x\": 1}}, [2, 3]]");
+        JsonArray array = (JsonArray) interner.intern(original);
+        Assert.assertEquals(original, array);
+
+        JsonObject first = (JsonObject) array.get(0);
+        JsonObject second = (JsonObject) array.get(1);
+        Assert.assertSame(first, second);
+        Assert.assertSame(((JsonObject) first.get("p")).get("y"), array.get(2));
+
+        // A separate document shares the same canonical subtrees
+        JsonObject other = (JsonObject) interner.intern(parse("{\"p\": {\"x\": 1, \"y\": [2, 3]}}"));
+        Assert.assertSame(first, other);
+        Assert.assertSame(array, interner.intern(parse("[{\"p\": {\"x\": 1, \"y\": [2, 3]}}, "
+            + "{\"p\": {\"x\": 1, \"y\": [2, 3]}}, [2, 3]]")));
+    }
+
+    @Test
+    public void keyTest () throws IOException {
+        JsonInterner interner = new JsonInterner();
+        JsonObject first = interner.intern((JsonObject) parse("{\"key\": 1}"));
+        JsonObject second = interner.intern((JsonObject) parse("{\"key\": 2}"));
+
+        Iterator<String> firstKeys = first.getValue().keySet().iterator();
+        Iterator<String> secondKeys = second.getValue().keySet().iterator();
+        Assert.assertSame(firstKeys.next(), secondKeys.next());
+    }
+
+    @Test
+    public void canonicalTest () throws IOException {
+        JsonInterner interner = new JsonInterner();
+        JsonValue<?> value = parse("[1, \"a\", true, null, [], {}]");
+        JsonValue<?> canonical = interner.intern(value);
+        Assert.assertSame(canonical, interner.intern(canonical));
+
+        interner.clear();
+        Assert.assertEquals(0, interner.size());
+        Assert.assertSame(value, interner.intern(value));
+    }
+}
@@ -0,0 +1,107 @@
+package es.darkhogg.johnson.test;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import es.darkhogg.johnson.data.JsonLinesParser;
+import es.darkhogg.johnson.data.JsonNumber;
+import es.darkhogg.johnson.data.JsonObject;
+import es.darkhogg.johnson.data.JsonString;
+import es.darkhogg.johnson.data.JsonValue;
+
+/**
+ * Tests for the {@link JsonLinesParser} class.
+ * 
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonLinesParserTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    /** Builds an input with the given number of records */
+    private static byte[] records (int count) throws UnsupportedEncodingException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append("{\"id\": ").append(i).append(", \"name\": \"r\\u00e9").append(i).append("\"}\n");
+        }
+        return sb.toString().getBytes("UTF-8");
+    }
+
+    private static void assertRecord (int expected, JsonValue<?> record) {
+        JsonObject obj = (JsonObject) record;
+        Assert.assertEquals(JsonNumber.valueOf(expected), obj.get("id"));
+        Assert.assertEquals(new JsonString("r\u00e9" + expected), obj.get("name"));
+    }
+
+    @Test
+    public void orderedTest () throws IOException {
+        byte[] bytes = records(5000);
+        for (int chunkSize : new int[] { 1, 100, 4096, JsonLinesParser.DEFAULT_CHUNK_SIZE }) {
+            List<JsonValue<?>> parsed = new JsonLinesParser(POOL).setChunkSize(chunkSize).parse(bytes);
+            Assert.assertEquals(5000, parsed.size());
+            for (int i = 0; i < parsed.size(); i++) {
+                assertRecord(i, parsed.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void unorderedTest () throws IOException {
+        byte[] bytes = records(5000);
+        List<JsonValue<?>> parsed = new JsonLinesParser(POOL).setChunkSize(1000).parse(bytes, 0, bytes.length, false);
+        Assert.assertEquals(5000, parsed.size());
+
+        List<JsonValue<?>> expected = new ArrayList<JsonValue<?>>(new JsonLinesParser(POOL).parse(bytes));
+        Assert.assertEquals(new HashSet<JsonValue<?>>(expected), new HashSet<JsonValue<?>>(parsed));
+    }
+
+    @Test
+    public void emptyTest () throws IOException {
+        Assert.assertTrue(new JsonLinesParser(POOL).parse(new byte[0]).isEmpty());
+        Assert.assertEquals(2, new JsonLinesParser(POOL).parse("\n1\n\n2".getBytes("UTF-8")).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidTest () throws IOException {
+        byte[] bytes = "1\n2\n{\"a\" 3}\n4\n".getBytes("UTF-8");
+        new JsonLinesParser(POOL).setChunkSize(2).parse(bytes);
+    }
+
+    @Test
+    public void lineBoundsTest () throws IOException {
+        StringBuilder pretty = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            pretty.append("{\n  \"id\": ").append(i).append(",\n  \"name\": \"r\u00e9").append(i).append("\"\n}\n");
+        }
+        byte[][] invalid = { pretty.toString().getBytes("UTF-8"), "1 2 3\n".getBytes("UTF-8"),
+            "1\n[2,\n3]\n4\n".getBytes("UTF-8") };
+        byte[] valid = records(50);
+
+        for (int chunkSize : new int[] { 1, 7, 100, 1000, JsonLinesParser.DEFAULT_CHUNK_SIZE }) {
+            JsonLinesParser parser = new JsonLinesParser(POOL).setChunkSize(chunkSize);
+            List<JsonValue<?>> parsed = parser.parse(valid);
+            Assert.assertEquals(50, parsed.size());
+            for (int i = 0; i < parsed.size(); i++) {
+                assertRecord(i, parsed.get(i));
+            }
+
+            for (byte[] bytes : invalid) {
+                try {
+                    parser.parse(bytes);
+                    Assert.fail(chunkSize + ": " + new String(bytes, "UTF-8"));
+                } catch (IOException exc) {
+                    // Expected
+                }
+            }
+        }
+    }
+}
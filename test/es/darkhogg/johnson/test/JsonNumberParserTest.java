@@ -0,0 +1,108 @@
+package es.darkhogg.johnson.test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import es.darkhogg.johnson.data.JsonArray;
+import es.darkhogg.johnson.data.JsonNumber;
+import es.darkhogg.johnson.data.JsonParser;
+import es.darkhogg.johnson.data.JsonValue;
+import es.darkhogg.johnson.io.JsonNumberParser;
+import es.darkhogg.johnson.io.JsonReader;
+
+/**
+ * Tests for the {@link JsonNumberParser} class.
+ * 
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonNumberParserTest {
+
+    @Test
+    public void numberTypeTest () {
+        Assert.assertEquals(Long.valueOf(123), JsonNumberParser.parse("123"));
+        Assert.assertEquals(Long.valueOf(Long.MIN_VALUE), JsonNumberParser.parse("-9223372036854775808"));
+        Assert.assertEquals(new BigInteger("9223372036854775808"), JsonNumberParser.parse("9223372036854775808"));
+        Assert.assertEquals(new BigInteger("12345678901234567890"), JsonNumberParser.parse("12345678901234567890"));
+
+        Assert.assertEquals(Double.valueOf(100000.0), JsonNumberParser.parse("1e5"));
+        Assert.assertEquals(Double.valueOf(0.1), JsonNumberParser.parse("0.1"));
+        Assert.assertEquals(Double.valueOf(-0.0), JsonNumberParser.parse("-0.0"));
+        Assert.assertEquals(Double.valueOf(1.5e-300), JsonNumberParser.parse("15000e-304"));
+        Assert.assertEquals(Double.valueOf(123456789012345.0), JsonNumberParser.parse("1.23456789012345e14"));
+
+        Assert.assertEquals(new BigDecimal("1.2345678901234567"), JsonNumberParser.parse("1.2345678901234567"));
+        Assert.assertEquals(new BigDecimal("1e400"), JsonNumberParser.parse("1e400"));
+        Assert.assertEquals(new BigDecimal("1e-320"), JsonNumberParser.parse("1e-320"));
+    }
+
+    @Test
+    public void hugeExponentTest () throws IOException {
+        Assert.assertEquals(Double.valueOf(Double.POSITIVE_INFINITY), JsonNumberParser.parse("1e99999999999"));
+        Assert.assertEquals(Double.valueOf(-0.0), JsonNumberParser.parse("-1e-99999999999"));
+        Assert.assertEquals(Double.valueOf(Double.POSITIVE_INFINITY),
+            JsonNumberParser.parse("12345678901234567890.5e3000000000"));
+        Assert.assertEquals(new BigDecimal("1e2147483647"), JsonNumberParser.parse("1e2147483647"));
+
+        JsonValue<?> value =
+            new JsonParser().parse(new JsonReader(new StringReader("[1e-99999999999, 1.5e99999999999]")));
+        Assert.assertEquals(JsonNumber.valueOf(0.0), ((JsonArray) value).get(0));
+        Assert.assertEquals(JsonNumber.valueOf(Double.POSITIVE_INFINITY), ((JsonArray) value).get(1));
+    }
+
+    @Test
+    public void invalidNumberTest () {
+        String[] values = { "", "-", "01", "1.", ".5", "1e", "1e+", "+1", "1.5x", "NaN", "0x10" };
+        for (String value : values) {
+            try {
+                JsonNumberParser.parse(value);
+                Assert.fail(value);
+            } catch (NumberFormatException exc) {
+                // Expected
+            }
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void notNullTest () {
+        JsonNumberParser.parse(null);
+        Assert.fail();
+    }
+
+    @Test
+    public void edgeDoubleTest () {
+        String[] values = { "0", "-0", "4.9e-324", "2.4703282292062327e-324", "2.4703282292062328e-324",
+            "2.2250738585072011e-308", "2.2250738585072014e-308", "1.7976931348623157e308", "1.7976931348623159e308",
+            "1e400", "-1e-400", "9007199254740993", "1e23", "8.41e21", "0.30000000000000004",
+            "1.00000000000000011102230246251565404236316680908203124",
+            "1.00000000000000011102230246251565404236316680908203125",
+            "1.00000000000000011102230246251565404236316680908203126", "123456789012345678901234567890e-10" };
+        for (String value : values) {
+            Assert.assertEquals(value, Double.parseDouble(value), JsonNumberParser.parseDouble(value));
+        }
+    }
+
+    @Test
+    public void randomDoubleTest () {
+        Random random = new Random(0x150AL);
+        for (int i = 0; i < 100000; i++) {
+            double value = Double.longBitsToDouble(random.nextLong());
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                continue;
+            }
+
+            String text = Double.toString(value).replace("E", "e");
+            Assert.assertEquals(text, value, JsonNumberParser.parseDouble(text));
+
+            text = new BigDecimal(value).toString().replace("E+", "e");
+            Assert.assertEquals(text, value, JsonNumberParser.parseDouble(text));
+        }
+    }
+}
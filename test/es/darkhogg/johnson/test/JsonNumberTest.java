@@ -67,9 +67,10 @@ public final class JsonNumberTest {
 
     @Test
     public void sameNumberTest () {
-        Assert.assertEquals(numByte, JsonNumber.valueOf(numByte).getValue());
-        Assert.assertEquals(numShort, JsonNumber.valueOf(numShort).getValue());
-        Assert.assertEquals(numInt, JsonNumber.valueOf(numInt).getValue());
+        // Bytes, shorts and ints are stored as longs
+        Assert.assertEquals(Long.valueOf(numByte.longValue()), JsonNumber.valueOf(numByte).getValue());
+        Assert.assertEquals(Long.valueOf(numShort.longValue()), JsonNumber.valueOf(numShort).getValue());
+        Assert.assertEquals(Long.valueOf(numInt.longValue()), JsonNumber.valueOf(numInt).getValue());
         Assert.assertEquals(numLong, JsonNumber.valueOf(numLong).getValue());
         Assert.assertEquals(numFloat, JsonNumber.valueOf(numFloat).getValue());
         Assert.assertEquals(numDouble, JsonNumber.valueOf(numDouble).getValue());
@@ -93,4 +94,39 @@ public final class JsonNumberTest {
         Assert.assertEquals(numBigInt, JsonNumber.valueOf(numBigInt.toString()).getValue());
         Assert.assertEquals(numBigDecimal, JsonNumber.valueOf(numBigDecimal.toString()).getValue());
     }
+
+    @Test
+    public void cacheTest () {
+        Assert.assertSame(JsonNumber.valueOf(0), JsonNumber.valueOf(0L));
+        Assert.assertSame(JsonNumber.valueOf(-128), JsonNumber.valueOf(Long.valueOf(-128)));
+        Assert.assertSame(JsonNumber.valueOf(1023), JsonNumber.valueOf("1023"));
+        Assert.assertEquals(JsonNumber.valueOf(1L << 40), JsonNumber.valueOf(Long.valueOf(1L << 40)));
+        Assert.assertEquals(Long.valueOf(1L << 40).hashCode(), JsonNumber.valueOf(1L << 40).hashCode());
+        Assert.assertSame(JsonNumber.valueOf(5), JsonNumber.valueOf(Integer.valueOf(5)));
+        Assert.assertEquals(JsonNumber.valueOf(numInt.intValue()), JsonNumber.valueOf(numInt));
+        Assert.assertEquals(JsonNumber.valueOf(numShort.shortValue()), JsonNumber.valueOf(numShort));
+        Assert.assertEquals(JsonNumber.valueOf(numByte.byteValue()), JsonNumber.valueOf(numByte));
+    }
+
+    @Test
+    public void primitiveTest () {
+        JsonNumber jlong = JsonNumber.valueOf(numLong.longValue());
+        Assert.assertTrue(jlong.isIntegral());
+        Assert.assertEquals(numLong.longValue(), jlong.longValue());
+        Assert.assertEquals(numLong.doubleValue(), jlong.doubleValue());
+
+        JsonNumber jdouble = JsonNumber.valueOf(numDouble.doubleValue());
+        Assert.assertFalse(jdouble.isIntegral());
+        Assert.assertEquals(numDouble.doubleValue(), jdouble.doubleValue());
+        Assert.assertEquals(numDouble, jdouble.getValue());
+        Assert.assertEquals(numDouble.hashCode(), jdouble.hashCode());
+        Assert.assertEquals(jdouble, JsonNumber.valueOf(numDouble));
+        Assert.assertFalse(JsonNumber.valueOf(0.0).equals(JsonNumber.valueOf(-0.0)));
+
+        Assert.assertTrue(JsonNumber.valueOf(numBigInt).isIntegral());
+        Assert.assertEquals(numBigInt.longValue(), JsonNumber.valueOf(numBigInt).longValue());
+        Assert.assertFalse(JsonNumber.valueOf(numBigDecimal).isIntegral());
+        Assert.assertFalse(JsonNumber.valueOf(numFloat.floatValue()).isIntegral());
+        Assert.assertTrue(JsonNumber.valueOf(numByte).isIntegral());
+    }
 }
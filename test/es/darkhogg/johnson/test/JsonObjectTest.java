@@ -0,0 +1,226 @@
+package es.darkhogg.johnson.test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import es.darkhogg.johnson.data.JsonNull;
+import es.darkhogg.johnson.data.JsonNumber;
+import es.darkhogg.johnson.data.JsonObject;
+import es.darkhogg.johnson.data.JsonParser;
+import es.darkhogg.johnson.data.JsonValue;
+import es.darkhogg.johnson.io.JsonReader;
+
+/**
+ * Tests for the {@link JsonObject} class.
+ * 
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonObjectTest {
+
+    private static JsonObject parse (String json) throws IOException {
+        return (JsonObject) new JsonParser().parse(new JsonReader(new StringReader(json)));
+    }
+
+    /** Tests that keys with colliding hashes are still found, and do not make parsing quadratic. */
+    @Test(timeout = 10000)
+    public void collidingKeysTest () throws IOException {
+        // "Aa" and "BB" have the same hash, so all the combinations of 16 of them do too
+        int size = 1 << 16;
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < size; i++) {
+            sb.append('"').append(collidingKey(i)).append("\":").append(i).append(',');
+        }
+        JsonObject obj = parse(sb.append("\"AaAaAaAaAaAaAaAaAaAaAaAaAaAaAaAa\":-1}").toString());
+
+        Assert.assertEquals(size, obj.getSize());
+        Assert.assertEquals(JsonNumber.valueOf(-1), obj.get("AaAaAaAaAaAaAaAaAaAaAaAaAaAaAaAa"));
+        Assert.assertEquals(JsonNumber.valueOf(size - 1), obj.get("BBBBBBBBBBBBBBBBBBBBBBBBBBBBBBBB"));
+        Assert.assertEquals(JsonNumber.valueOf(5), obj.get("AaAaAaAaAaAaAaAaAaAaAaAaAaBBAaBB"));
+        Assert.assertNull(obj.get("AaAaAaAaAaAaAaAaAaAaAaAaAaAaAaAA"));
+        Assert.assertEquals("AaAaAaAaAaAaAaAaAaAaAaAaAaAaAaAa", obj.getValue().keySet().iterator().next());
+    }
+
+    /** Tests that updating an object with colliding keys does not take quadratic time. */
+    @Test(timeout = 10000)
+    public void persistentCollidingKeysTest () throws IOException {
+        int size = 1 << 16;
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < size / 2; i++) {
+            sb.append('"').append(collidingKey(i)).append("\":").append(i).append(i < size / 2 - 1 ? "," : "}");
+        }
+        JsonObject obj = parse(sb.toString());
+        for (int i = size / 2; i < size; i++) {
+            obj = obj.with(collidingKey(i), JsonNumber.valueOf(i));
+        }
+        for (int i = 0; i < size; i += 2) {
+            obj = obj.without(collidingKey(i));
+        }
+
+        Assert.assertEquals(size / 2, obj.getSize());
+        Assert.assertNull(obj.get(collidingKey(0)));
+        Assert.assertEquals(JsonNumber.valueOf(1), obj.get(collidingKey(1)));
+        Assert.assertEquals(JsonNumber.valueOf(size - 1), obj.get(collidingKey(size - 1)));
+        Assert.assertSame(obj, obj.without(collidingKey(size - 2)));
+        Assert.assertEquals(collidingKey(1), obj.getValue().keySet().iterator().next());
+    }
+
+    /** Builds the 16-pair key of the given index, all such keys having the same hash */
+    private static String collidingKey (int index) {
+        StringBuilder sb = new StringBuilder();
+        for (int bit = 15; bit >= 0; bit--) {
+            sb.append((index & (1 << bit)) == 0 ? "Aa" : "BB");
+        }
+        return sb.toString();
+    }
+
+    /** Builds an object with the given number of keys in descending order */
+    private static String descendingKeys (int size) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = size - 1; i >= 0; i--) {
+            sb.append("\"k").append(i).append("\":").append(i).append(i > 0 ? "," : "}");
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void orderTest () throws IOException {
+        for (int size : new int[] { 1, 8, 9, 100 }) {
+            JsonObject obj = parse(descendingKeys(size));
+            Assert.assertEquals(size, obj.getSize());
+
+            int expected = size - 1;
+            for (Map.Entry<String, JsonValue<?>> entry : obj.getValue().entrySet()) {
+                Assert.assertEquals("k" + expected, entry.getKey());
+                Assert.assertEquals(JsonNumber.valueOf(expected), entry.getValue());
+                expected--;
+            }
+            Assert.assertEquals(-1, expected);
+        }
+    }
+
+    @Test
+    public void lookupTest () throws IOException {
+        for (int size : new int[] { 1, 8, 9, 100 }) {
+            JsonObject obj = parse(descendingKeys(size));
+            for (int i = 0; i < size; i++) {
+                Assert.assertEquals(JsonNumber.valueOf(i), obj.get("k" + i));
+                Assert.assertTrue(obj.getValue().containsKey("k" + i));
+            }
+            Assert.assertNull(obj.get("k" + size));
+            Assert.assertNull(obj.getValue().get(Integer.valueOf(0)));
+            Assert.assertFalse(obj.getValue().containsKey("missing"));
+        }
+    }
+
+    @Test
+    public void duplicateKeyTest () throws IOException {
+        JsonObject obj = parse("{\"a\": 1, \"b\": 2, \"a\": 3}");
+        Assert.assertEquals(2, obj.getSize());
+        Assert.assertEquals(JsonNumber.valueOf(3), obj.get("a"));
+        Assert.assertEquals("a", obj.getValue().keySet().iterator().next());
+
+        JsonObject large = parse(descendingKeys(20).replace("}", ",\"k3\":null}"));
+        Assert.assertEquals(20, large.getSize());
+        Assert.assertSame(JsonNull.NULL, large.get("k3"));
+    }
+
+    @Test
+    public void builderTest () {
+        JsonObject obj =
+            new JsonObject.Builder().put("z", JsonNull.NULL).put("a", JsonNumber.valueOf(1))
+                .put("z", JsonNumber.valueOf(2)).create();
+        Iterator<String> keys = obj.getValue().keySet().iterator();
+        Assert.assertEquals("z", keys.next());
+        Assert.assertEquals("a", keys.next());
+        Assert.assertFalse(keys.hasNext());
+        Assert.assertEquals(JsonNumber.valueOf(2), obj.get("z"));
+    }
+
+    @Test
+    public void equalsTest () throws IOException {
+        JsonObject parsed = parse("{\"a\": [1, {\"x\": null}], \"b\": \"s\"}");
+        JsonObject reordered = parse("{\"b\": \"s\", \"a\": [1, {\"x\": null}]}");
+        JsonObject persistent = parsed.with("c", JsonNull.NULL).without("c");
+
+        for (JsonObject obj : new JsonObject[] { reordered, persistent }) {
+            Assert.assertEquals(parsed, obj);
+            Assert.assertEquals(obj, parsed);
+            Assert.assertEquals(parsed.hashCode(), obj.hashCode());
+            Assert.assertEquals(parsed.getValue().hashCode(), obj.hashCode());
+        }
+
+        Assert.assertFalse(parsed.equals(parse("{\"a\": [1, {\"x\": 0}], \"b\": \"s\"}")));
+        Assert.assertFalse(parsed.equals(parse("{\"a\": [1, {\"x\": null}], \"c\": \"s\"}")));
+        Assert.assertFalse(parsed.equals(parsed.without("b")));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void unmodifiableTest () throws IOException {
+        parse("{\"a\": 1}").getValue().put("b", JsonNull.NULL);
+        Assert.fail();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void unmodifiableIteratorTest () throws IOException {
+        Iterator<String> keys = parse("{\"a\": 1}").getValue().keySet().iterator();
+        keys.next();
+        keys.remove();
+        Assert.fail();
+    }
+
+    @Test
+    public void withWithoutTest () throws IOException {
+        Random random = new Random(0x0B1ECL);
+        JsonObject obj = parse(descendingKeys(50));
+        Map<String, JsonValue<?>> expected = new LinkedHashMap<String, JsonValue<?>>(obj.getValue());
+
+        // "Aa" and "BB" have the same hash code
+        String[] extra = { "Aa", "BB", "AaAa", "BBBB", "AaBB", "BBAa" };
+        for (int i = 0; i < 20000; i++) {
+            String key = random.nextBoolean() ? extra[random.nextInt(extra.length)] : "k" + random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                obj = obj.without(key);
+                expected.remove(key);
+            } else {
+                obj = obj.with(key, JsonNumber.valueOf(i));
+                expected.put(key, JsonNumber.valueOf(i));
+            }
+        }
+
+        Assert.assertEquals(expected.size(), obj.getSize());
+        Assert.assertEquals(expected, obj.getValue());
+        Assert.assertEquals(new ArrayList<String>(expected.keySet()), new ArrayList<String>(obj.getValue().keySet()));
+        for (String key : extra) {
+            Assert.assertEquals(expected.get(key), obj.get(key));
+        }
+    }
+
+    @Test
+    public void persistentTest () throws IOException {
+        JsonObject original = parse("{\"a\": 1, \"b\": 2}");
+        JsonObject modified = original.with("c", JsonNull.NULL).with("a", JsonNumber.valueOf(3)).without("b");
+
+        Assert.assertEquals(2, original.getSize());
+        Assert.assertEquals(JsonNumber.valueOf(1), original.get("a"));
+        Assert.assertEquals(JsonNumber.valueOf(2), original.get("b"));
+
+        Iterator<String> keys = modified.getValue().keySet().iterator();
+        Assert.assertEquals("a", keys.next());
+        Assert.assertEquals("c", keys.next());
+        Assert.assertFalse(keys.hasNext());
+        Assert.assertEquals(JsonNumber.valueOf(3), modified.get("a"));
+
+        Assert.assertSame(modified, modified.without("missing"));
+        Assert.assertSame(JsonObject.EMPTY, modified.without("a").without("c"));
+    }
+}
@@ -0,0 +1,141 @@
+package es.darkhogg.johnson.test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import es.darkhogg.johnson.data.JsonArray;
+import es.darkhogg.johnson.data.JsonParallelParser;
+import es.darkhogg.johnson.data.JsonParser;
+import es.darkhogg.johnson.data.JsonPointer;
+import es.darkhogg.johnson.data.JsonValue;
+import es.darkhogg.johnson.io.JsonReader;
+
+/**
+ * Tests for the {@link JsonParallelParser} class.
+ * 
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonParallelParserTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    /** Builds an array with the given number of elements, whose strings contain structural characters */
+    private static String elements (int count) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            sb.append(i > 0 ? ",\n " : "").append("{\"id\": ").append(i)
+                .append(", \"s\": \"[{,\\\"}]\\\\\", \"a\": [").append(i % 3).append(", {}, []]}");
+        }
+        return sb.append("]").toString();
+    }
+
+    private static byte[] utf8 (String json) throws UnsupportedEncodingException {
+        return json.getBytes("UTF-8");
+    }
+
+    private static JsonValue<?> parse (String json) throws IOException {
+        return new JsonParser().parse(new JsonReader(new StringReader(json)));
+    }
+
+    @Test
+    public void parseTest () throws IOException {
+        String json = elements(3000);
+        JsonValue<?> expected = parse(json);
+        for (int chunkSize : new int[] { 1, 1000, JsonParallelParser.DEFAULT_CHUNK_SIZE }) {
+            JsonArray array = new JsonParallelParser(POOL).setChunkSize(chunkSize).parseArray(utf8(json));
+            Assert.assertEquals(3000, array.getLength());
+            Assert.assertEquals(expected, array);
+        }
+    }
+
+    @Test
+    public void pointerTest () throws IOException {
+        String json = "{\"skip\": [1, 2], \"data\": {\"items\": " + elements(100) + "}, \"after\": true}";
+        JsonPointer pointer = JsonPointer.compile("/data/items");
+        JsonArray array = new JsonParallelParser(POOL).setChunkSize(64).parseArray(utf8(json), 0, json.length(),
+            pointer);
+        Assert.assertEquals(pointer.evaluate(parse(json)), array);
+
+        try {
+            new JsonParallelParser(POOL).parseArray(utf8(json), 0, json.length(), JsonPointer.compile("/skip/0"));
+            Assert.fail();
+        } catch (IOException exc) {
+            // Expected, not an array
+        }
+    }
+
+    @Test
+    public void duplicateKeyTest () throws IOException {
+        String json = "{\"data\": {\"items\": [1]}, \"x\": 0, \"data\": {\"items\": [2, 3], \"items\": " + elements(50)
+            + ", \"more\": {\"items\": []}}, \"after\": [{\"data\": 1}]}";
+        JsonPointer pointer = JsonPointer.compile("/data/items");
+        JsonArray array = new JsonParallelParser(POOL).setChunkSize(64).parseArray(utf8(json), 0, json.length(),
+            pointer);
+        Assert.assertEquals(50, array.getLength());
+        Assert.assertEquals(pointer.evaluate(parse(json)), array);
+    }
+
+    @Test
+    public void errorIndexTest () throws UnsupportedEncodingException {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 500; i++) {
+            sb.append(i > 0 ? ", " : "").append(i == 30 || i % 100 == 99 ? "tru" : String.valueOf(i));
+        }
+        byte[] bytes = utf8(sb.append("]").toString());
+
+        for (int i = 0; i < 20; i++) {
+            try {
+                new JsonParallelParser(POOL).setChunkSize(1).parseArray(bytes);
+                Assert.fail();
+            } catch (IOException exc) {
+                Assert.assertTrue(exc.getMessage(), exc.getMessage().startsWith("JSON: Invalid array element 30 "));
+            }
+        }
+    }
+
+    @Test
+    public void emptyTest () throws IOException {
+        Assert.assertSame(JsonArray.EMPTY, new JsonParallelParser(POOL).parseArray(utf8(" [ \n] ")));
+        Assert.assertEquals(1, new JsonParallelParser(POOL).parseArray(utf8("[[]]")).getLength());
+    }
+
+    @Test
+    public void invalidTest () throws UnsupportedEncodingException {
+        for (String json : new String[] { "[1, {]", "[1,]", "[1 2]", "[1, 2", "[1] 2", "{}", "[\"a]" }) {
+            try {
+                new JsonParallelParser(POOL).setChunkSize(1).parseArray(utf8(json));
+                Assert.fail(json);
+            } catch (IOException exc) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void spliteratorTest () throws IOException {
+        String json = elements(2000);
+        Spliterator<JsonValue<?>> spliterator = new JsonParallelParser(POOL).spliterator(utf8(json));
+        Assert.assertEquals(2000, spliterator.estimateSize());
+
+        List<JsonValue<?>> list = StreamSupport.stream(spliterator, true).collect(Collectors.toList());
+        Assert.assertEquals(((JsonArray) parse(json)).getValue(), list);
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void spliteratorErrorTest () throws IOException {
+        Spliterator<JsonValue<?>> spliterator = new JsonParallelParser(POOL).spliterator(utf8("[1, tru, 3]"));
+        StreamSupport.stream(spliterator, false).collect(Collectors.toList());
+    }
+}
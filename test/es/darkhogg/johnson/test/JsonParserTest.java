@@ -0,0 +1,167 @@
+package es.darkhogg.johnson.test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import es.darkhogg.johnson.data.JsonArray;
+import es.darkhogg.johnson.data.JsonBoolean;
+import es.darkhogg.johnson.data.JsonNull;
+import es.darkhogg.johnson.data.JsonNumber;
+import es.darkhogg.johnson.data.JsonObject;
+import es.darkhogg.johnson.data.JsonParser;
+import es.darkhogg.johnson.data.JsonString;
+import es.darkhogg.johnson.data.JsonValue;
+import es.darkhogg.johnson.io.JsonReader;
+
+/**
+ * Tests for the {@link JsonParser} class.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public class JsonParserTest {
+
+    private static JsonValue<?> parse (JsonParser parser, String json) throws IOException {
+        return parser.parse(new JsonReader(new StringReader(json)));
+    }
+
+    /** Tests that scalar documents are correctly parsed. */
+    @Test
+    public void scalarTest () throws IOException {
+        JsonParser parser = new JsonParser();
+
+        Assert.assertSame(JsonNull.NULL, parse(parser, "null"));
+        Assert.assertSame(JsonBoolean.TRUE, parse(parser, "true"));
+        Assert.assertSame(JsonBoolean.FALSE, parse(parser, "false"));
+        Assert.assertSame(JsonString.EMPTY, parse(parser, "\"\""));
+        Assert.assertEquals(new JsonString("str"), parse(parser, "\"str\""));
+        Assert.assertEquals(JsonNumber.valueOf(42L), parse(parser, "42"));
+    }
+
+    /** Tests that nested containers are correctly parsed. */
+    @Test
+    public void nestedTest () throws IOException {
+        JsonParser parser = new JsonParser();
+        JsonValue<?> value = parse(parser, "{\"a\": [1, [], {}, [true, {\"b\": null}]], \"c\": {\"d\": \"e\"}, \"f\": []}");
+
+        JsonObject obj = (JsonObject) value;
+        Assert.assertEquals(3, obj.getSize());
+
+        JsonArray arr = (JsonArray) obj.get("a");
+        Assert.assertEquals(4, arr.getLength());
+        Assert.assertEquals(JsonNumber.valueOf(1L), arr.get(0));
+        Assert.assertSame(JsonArray.EMPTY, arr.get(1));
+        Assert.assertSame(JsonObject.EMPTY, arr.get(2));
+
+        JsonArray inner = (JsonArray) arr.get(3);
+        Assert.assertEquals(2, inner.getLength());
+        Assert.assertSame(JsonBoolean.TRUE, inner.get(0));
+        Assert.assertSame(JsonNull.NULL, ((JsonObject) inner.get(1)).get("b"));
+
+        Assert.assertEquals(new JsonString("e"), ((JsonObject) obj.get("c")).get("d"));
+        Assert.assertSame(JsonArray.EMPTY, obj.get("f"));
+    }
+
+    /** Tests that a parser can be reused after both successful and failed parses. */
+    @Test
+    public void reuseTest () throws IOException {
+        JsonParser parser = new JsonParser();
+
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 100000; i++) {
+            sb.append(i == 0 ? "" : ",").append("[").append(i).append("]");
+        }
+        JsonArray big = (JsonArray) parse(parser, sb.append("]").toString());
+        Assert.assertEquals(100000, big.getLength());
+        Assert.assertEquals(JsonNumber.valueOf(99999L), ((JsonArray) big.get(99999)).get(0));
+
+        try {
+            parse(parser, "[1, {\"a\": [2, 3");
+            Assert.fail();
+        } catch (IOException exc) {
+            // Expected
+        }
+
+        JsonArray arr = (JsonArray) parse(parser, "[[1], 2]");
+        Assert.assertEquals(2, arr.getLength());
+        Assert.assertEquals(JsonNumber.valueOf(2L), arr.get(1));
+    }
+
+    /** Tests that trailing values are rejected. */
+    @Test(expected = IOException.class)
+    public void trailingTest () throws IOException {
+        parse(new JsonParser(), "[] []");
+        Assert.fail();
+    }
+
+    /** Tests that values cannot start with the end of an array or object, and that the parser is still usable. */
+    @Test
+    public void unexpectedEndTest () throws IOException {
+        JsonParser parser = new JsonParser();
+        for (int token : new int[] { JsonReader.TOKEN_ARRAY_END, JsonReader.TOKEN_OBJECT_END }) {
+            try {
+                parser.parseValue(new JsonReader(new StringReader("1")), token);
+                Assert.fail();
+            } catch (IOException exc) {
+                Assert.assertTrue(exc.getMessage().startsWith("JSON: Unexpected token"));
+            }
+        }
+        Assert.assertEquals(JsonNumber.valueOf(1L), ((JsonArray) parse(parser, "[1]")).get(0));
+    }
+
+    /** Tests that homogeneous number arrays are backed by primitive arrays. */
+    @Test
+    public void primitiveArrayTest () throws IOException {
+        JsonParser parser = new JsonParser();
+
+        JsonArray longs = (JsonArray) parse(parser, "[1, 2, 3, 4, 5, 6, 7, -9007199254740993]");
+        Assert.assertTrue(longs.isLongArray());
+        Assert.assertEquals(8, longs.getLength());
+        Assert.assertEquals(JsonNumber.valueOf(3L), longs.get(2));
+        Assert.assertEquals(-9007199254740993L, longs.getLong(7));
+        Assert.assertEquals(7.0, longs.getDouble(6));
+
+        JsonArray doubles = (JsonArray) parse(parser, "[0.5, 1.5, 2.5, 3.5, 4.5, 5.5, 6.5, 1e-5]");
+        Assert.assertTrue(doubles.isDoubleArray());
+        Assert.assertEquals(JsonNumber.valueOf(1e-5), doubles.get(7));
+        Assert.assertEquals(8, doubles.toDoubleArray().length);
+
+        JsonArray mixed = (JsonArray) parse(parser, "[1, 2, 3, 4, 5, 6, 7, 8.5]");
+        Assert.assertFalse(mixed.isLongArray());
+        Assert.assertFalse(mixed.isDoubleArray());
+        Assert.assertEquals(8.5, mixed.getDouble(7));
+        Assert.assertEquals(8, mixed.toLongArray()[7]);
+
+        // Long arrays are read without values, and arrays that stop being homogeneous keep all their numbers
+        StringBuilder sb = new StringBuilder("[[");
+        for (int i = 0; i < 100000; i++) {
+            sb.append(i).append(',');
+        }
+        sb.append("0],[");
+        for (int i = 0; i < 100; i++) {
+            sb.append(i).append(',');
+        }
+        sb.append("\"x\",[0.5,1.5,2.5,3.5,4.5,5.5,6.5,7.5]],[1,2]]");
+        JsonArray nested = (JsonArray) parse(parser, sb.toString());
+        JsonArray big = (JsonArray) nested.get(0);
+        Assert.assertTrue(big.isLongArray());
+        Assert.assertEquals(100001, big.getLength());
+        Assert.assertEquals(99999L, big.getLong(99999));
+        JsonArray spilled = (JsonArray) nested.get(1);
+        Assert.assertFalse(spilled.isLongArray());
+        Assert.assertEquals(102, spilled.getLength());
+        Assert.assertEquals(JsonNumber.valueOf(99L), spilled.get(99));
+        Assert.assertEquals(new JsonString("x"), spilled.get(100));
+        Assert.assertTrue(((JsonArray) spilled.get(101)).isDoubleArray());
+        Assert.assertFalse(((JsonArray) nested.get(2)).isLongArray());
+        Assert.assertEquals(JsonNumber.valueOf(2L), ((JsonArray) nested.get(2)).get(1));
+
+                JsonArray wrapped = JsonArray.valueOf(new long[] { 1, 2 });
+        Assert.assertTrue(wrapped.isLongArray());
+        Assert.assertEquals(JsonNumber.valueOf(2L), wrapped.getValue().get(1));
+    }
+}
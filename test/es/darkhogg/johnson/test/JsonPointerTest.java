@@ -0,0 +1,99 @@
+package es.darkhogg.johnson.test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import es.darkhogg.johnson.data.JsonNumber;
+import es.darkhogg.johnson.data.JsonParser;
+import es.darkhogg.johnson.data.JsonPointer;
+import es.darkhogg.johnson.data.JsonPointerIndex;
+import es.darkhogg.johnson.data.JsonString;
+import es.darkhogg.johnson.data.JsonValue;
+import es.darkhogg.johnson.io.JsonReader;
+
+/**
+ * Tests for the {@link JsonPointer} and {@link JsonPointerIndex} classes.
+ * 
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonPointerTest {
+
+    /** The example document of RFC 6901 */
+    private static final String DOCUMENT = "{\"foo\": [\"bar\", \"baz\"], \"\": 0, \"a/b\": 1, \"c%d\": 2, \"e^f\": 3, "
+        + "\"g|h\": 4, \"i\\\\j\": 5, \"k\\\"l\": 6, \" \": 7, \"m~n\": 8, \"01\": 9}";
+
+    private static JsonValue<?> parse (String json) throws IOException {
+        return new JsonParser().parse(new JsonReader(new StringReader(json)));
+    }
+
+    @Test
+    public void rfcTest () throws IOException {
+        JsonValue<?> doc = parse(DOCUMENT);
+        Assert.assertSame(doc, JsonPointer.compile("").evaluate(doc));
+        Assert.assertEquals(new JsonString("bar"), JsonPointer.compile("/foo/0").evaluate(doc));
+        Assert.assertEquals(JsonNumber.valueOf(0), JsonPointer.compile("/").evaluate(doc));
+        Assert.assertEquals(JsonNumber.valueOf(1), JsonPointer.compile("/a~1b").evaluate(doc));
+        Assert.assertEquals(JsonNumber.valueOf(2), JsonPointer.compile("/c%d").evaluate(doc));
+        Assert.assertEquals(JsonNumber.valueOf(3), JsonPointer.compile("/e^f").evaluate(doc));
+        Assert.assertEquals(JsonNumber.valueOf(4), JsonPointer.compile("/g|h").evaluate(doc));
+        Assert.assertEquals(JsonNumber.valueOf(5), JsonPointer.compile("/i\\j").evaluate(doc));
+        Assert.assertEquals(JsonNumber.valueOf(6), JsonPointer.compile("/k\"l").evaluate(doc));
+        Assert.assertEquals(JsonNumber.valueOf(7), JsonPointer.compile("/ ").evaluate(doc));
+        Assert.assertEquals(JsonNumber.valueOf(8), JsonPointer.compile("/m~0n").evaluate(doc));
+        Assert.assertEquals(JsonNumber.valueOf(9), JsonPointer.compile("/01").evaluate(doc));
+    }
+
+    @Test
+    public void missingTest () throws IOException {
+        JsonValue<?> doc = parse(DOCUMENT);
+        for (String ptr : new String[] { "/missing", "/foo/2", "/foo/-", "/foo/01", "/foo/0/x", "/foo/bar",
+            "/foo/99999999999" }) {
+            Assert.assertNull(ptr, JsonPointer.compile(ptr).evaluate(doc));
+        }
+    }
+
+    @Test
+    public void structureTest () {
+        JsonPointer ptr = JsonPointer.compile("/a/b~1c/0");
+        Assert.assertEquals(3, ptr.getDepth());
+        Assert.assertEquals("b/c", ptr.getSegment(1));
+        Assert.assertEquals("/a/b~1c/0", ptr.toString());
+        Assert.assertEquals(JsonPointer.compile("/a/b~1c"), ptr.getParent());
+        Assert.assertSame(JsonPointer.ROOT, ptr.getParent().getParent().getParent());
+        Assert.assertNull(JsonPointer.ROOT.getParent());
+    }
+
+    @Test
+    public void invalidTest () {
+        for (String ptr : new String[] { "a", "/a~", "/a~2" }) {
+            try {
+                JsonPointer.compile(ptr);
+                Assert.fail(ptr);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void indexTest () throws IOException {
+        JsonValue<?> doc = parse(DOCUMENT);
+        JsonPointerIndex index = new JsonPointerIndex(doc);
+        JsonPointer first = JsonPointer.compile("/foo/0");
+        JsonPointer second = JsonPointer.compile("/foo/1");
+
+        Assert.assertEquals(new JsonString("bar"), index.get(first));
+        Assert.assertEquals(new JsonString("baz"), index.get(second));
+        Assert.assertSame(index.get(first), index.get(first));
+        Assert.assertNull(index.get(JsonPointer.compile("/foo/2/x")));
+        Assert.assertSame(doc, index.get(JsonPointer.ROOT));
+
+        // "/foo" is shared, the missing pointer and its parent are remembered
+        Assert.assertEquals(5, index.size());
+    }
+}
@@ -0,0 +1,495 @@
+package es.darkhogg.johnson.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import es.darkhogg.johnson.io.JsonReader;
+import es.darkhogg.johnson.io.JsonTape;
+
+/**
+ * Tests for the {@link JsonReader} class.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public class JsonReaderTest {
+
+    /** A reader that returns a single character on every read, so every token crosses a buffer boundary. */
+    private static final class TrickleReader extends FilterReader {
+        TrickleReader (Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read (char[] cbuf, int off, int len) throws IOException {
+            return super.read(cbuf, off, Math.min(len, 1));
+        }
+    }
+
+    /** A stream that returns a single byte on every read, so every token crosses a buffer boundary. */
+    private static final class TrickleInputStream extends FilterInputStream {
+        TrickleInputStream (InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read (byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1));
+        }
+    }
+
+    private static byte[] utf8 (String json) {
+        try {
+            return json.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException exc) {
+            throw new AssertionError(exc);
+        }
+    }
+
+    private static JsonReader reader (String json) {
+        return new JsonReader(new StringReader(json));
+    }
+
+    private static JsonReader trickleReader (String json) {
+        return new JsonReader(new TrickleReader(new StringReader(json)));
+    }
+
+    /** Returns readers over the given JSON text for every supported kind of input. */
+    private static JsonReader[] allReaders (String json) {
+        byte[] bytes = utf8(json);
+
+        byte[] padded = new byte[bytes.length + 6];
+        System.arraycopy(bytes, 0, padded, 3, bytes.length);
+        padded[0] = padded[padded.length - 1] = '!';
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+
+        return new JsonReader[] {
+            reader(json), trickleReader(json), JsonReader.utf8(bytes), JsonReader.utf8(padded, 3, bytes.length),
+            JsonReader.utf8(direct), JsonReader.utf8(new ByteArrayInputStream(bytes)),
+            JsonReader.utf8(new TrickleInputStream(new ByteArrayInputStream(bytes))) };
+    }
+
+    /** Tests that a reader cannot be constructed with a <tt>null</tt>. */
+    @SuppressWarnings("resource")
+    @Test(expected = NullPointerException.class)
+    public void notNullTest () {
+        new JsonReader(null);
+        Assert.fail();
+    }
+
+    /** Tests that literal values are correctly read. */
+    @Test
+    public void literalTest () throws IOException {
+        JsonReader nullReader = reader("null");
+        Assert.assertEquals(JsonReader.TOKEN_NULL, nullReader.next());
+        Assert.assertEquals(JsonReader.TOKEN_EOF, nullReader.next());
+
+        JsonReader trueReader = reader(" true ");
+        Assert.assertEquals(JsonReader.TOKEN_BOOLEAN, trueReader.next());
+        Assert.assertTrue(trueReader.getBoolean());
+
+        JsonReader falseReader = trickleReader("\tfalse\n");
+        Assert.assertEquals(JsonReader.TOKEN_BOOLEAN, falseReader.next());
+        Assert.assertFalse(falseReader.getBoolean());
+        Assert.assertEquals(JsonReader.TOKEN_EOF, falseReader.next());
+    }
+
+    @Test
+    public void longValueTest () throws IOException {
+        String[] values = { "0", "-0", "123", "-321", "9223372036854775807", "-9223372036854775808" };
+        for (String value : values) {
+            for (JsonReader jr : allReaders(value)) {
+                Assert.assertEquals(JsonReader.TOKEN_NUMBER, jr.next());
+                Assert.assertTrue(jr.isIntegral());
+                Assert.assertEquals(Long.parseLong(value), jr.getLong());
+                Assert.assertEquals(Long.valueOf(value), jr.getNumber());
+            }
+        }
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void longOverflowTest () throws IOException {
+        JsonReader jr = reader("9223372036854775808");
+        jr.next();
+        Assert.assertEquals(new BigInteger("9223372036854775808"), jr.getNumber());
+        jr.getLong();
+        Assert.fail();
+    }
+
+    @Test
+    public void doubleValueTest () throws IOException {
+        String[] values = { "0.0", "-0.0", "1.5", "-2.25e3", "1E+10", "0.1", "123.456e-7", "1e400", "4.9e-324",
+            "2.2250738585072014E-308", "0.30000000000000004", "123456789012345678901234567890" };
+        for (String value : values) {
+            for (JsonReader jr : allReaders(value)) {
+                Assert.assertEquals(JsonReader.TOKEN_NUMBER, jr.next());
+                Assert.assertEquals(Double.parseDouble(value), jr.getDouble());
+            }
+        }
+
+        JsonReader jr = reader("1.10");
+        jr.next();
+        Assert.assertFalse(jr.isIntegral());
+        Assert.assertEquals(Double.valueOf(1.1), jr.getNumber());
+
+        jr = reader("1.2345678901234567890");
+        jr.next();
+        Assert.assertEquals(new BigDecimal("1.2345678901234567890"), jr.getNumber());
+    }
+
+    /** Tests that the type of every number matches the type returned by <tt>getNumber</tt>. */
+    @Test
+    public void numberTypeTest () throws IOException {
+        String[] values = { "0", "-7", "9223372036854775807", "9223372036854775808", "1.5", "-0.0", "1e5", "1.10",
+            "0.30000000000000004", "1e400", "1e-320", "123456789012345678901234567890", "1e99999999999" };
+        int[] types = { JsonReader.NUMBER_LONG, JsonReader.NUMBER_LONG, JsonReader.NUMBER_LONG,
+            JsonReader.NUMBER_OTHER, JsonReader.NUMBER_DOUBLE, JsonReader.NUMBER_DOUBLE, JsonReader.NUMBER_DOUBLE,
+            JsonReader.NUMBER_DOUBLE, JsonReader.NUMBER_OTHER, JsonReader.NUMBER_OTHER, JsonReader.NUMBER_OTHER,
+            JsonReader.NUMBER_OTHER, JsonReader.NUMBER_OTHER };
+        for (int i = 0; i < values.length; i++) {
+            JsonReader jr = reader(values[i]);
+            jr.next();
+            Assert.assertEquals(values[i], types[i], jr.getNumberType());
+
+            Number number = jr.getNumber();
+            if (types[i] == JsonReader.NUMBER_LONG) {
+                Assert.assertEquals(Long.valueOf(jr.getLong()), number);
+            } else if (types[i] == JsonReader.NUMBER_DOUBLE) {
+                Assert.assertEquals(Double.valueOf(jr.getDouble()), number);
+            }
+        }
+    }
+
+    /** Tests that numbers ending at the end of the input are read after a refill of the buffer. */
+    @Test
+    public void numberAtEndTest () throws IOException {
+        String[] values = { " 42", "\n-1.5e3", "  0" };
+        for (String value : values) {
+            for (JsonReader jr : new JsonReader[] { reader(value), trickleReader(value) }) {
+                Assert.assertEquals(JsonReader.TOKEN_NUMBER, jr.next());
+                Assert.assertEquals(Double.parseDouble(value), jr.getDouble());
+                Assert.assertEquals(JsonReader.TOKEN_EOF, jr.next());
+            }
+        }
+    }
+
+    @Test
+    public void stringValueTest () throws IOException {
+        String json = "[\"\", \"plain\", \"esc\\\"aped\\\\\\/\\b\\f\\n\\r\\t\", \"\\u00e9\\u20AC\", \"\u00f1\u20ac\ud83d\ude00\"]";
+        for (JsonReader jr : allReaders(json)) {
+            Assert.assertEquals(JsonReader.TOKEN_ARRAY_BEGIN, jr.next());
+            Assert.assertEquals(JsonReader.TOKEN_STRING, jr.next());
+            Assert.assertEquals("", jr.getString());
+            Assert.assertEquals(JsonReader.TOKEN_STRING, jr.next());
+            Assert.assertEquals("plain", jr.getString());
+            Assert.assertEquals(JsonReader.TOKEN_STRING, jr.next());
+            Assert.assertEquals("esc\"aped\\/\b\f\n\r\t", jr.getString());
+            Assert.assertEquals(JsonReader.TOKEN_STRING, jr.next());
+            Assert.assertEquals("\u00e9\u20ac", jr.getString());
+            Assert.assertEquals(JsonReader.TOKEN_STRING, jr.next());
+            Assert.assertEquals("\u00f1\u20ac\ud83d\ude00", jr.getString());
+            Assert.assertEquals(JsonReader.TOKEN_ARRAY_END, jr.next());
+            Assert.assertEquals(JsonReader.TOKEN_EOF, jr.next());
+        }
+    }
+
+    @Test
+    public void longStringTest () throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        String str = sb.toString();
+
+        for (JsonReader jr : allReaders("[\"" + str + "\",\"" + str + "\\n\"]")) {
+            jr.next();
+            Assert.assertEquals(JsonReader.TOKEN_STRING, jr.next());
+            Assert.assertEquals(str, jr.getString());
+            Assert.assertEquals(JsonReader.TOKEN_STRING, jr.next());
+            Assert.assertEquals(str + "\n", jr.getString());
+        }
+    }
+
+    /** Tests that special characters and whitespace are found at every position within a scanned word. */
+    @Test
+    public void wordBoundaryTest () throws IOException {
+        String[] specials = { "\\\"", "\\n", "\u00e9", "\u20ac", "\ud83d\ude00", "" };
+        String[] decoded = { "\"", "\n", "\u00e9", "\u20ac", "\ud83d\ude00", "" };
+
+        for (int before = 0; before < 20; before++) {
+            StringBuilder prefix = new StringBuilder();
+            StringBuilder space = new StringBuilder();
+            for (int i = 0; i < before; i++) {
+                prefix.append((char) ('a' + i));
+                space.append(" \n\r\t".charAt(i % 4));
+            }
+
+            for (int s = 0; s < specials.length; s++) {
+                String json = space + "[" + space + "\"" + prefix + specials[s] + "xyz\"" + space + "]" + space;
+                String expected = prefix + decoded[s] + "xyz";
+
+                ByteBuffer little = ByteBuffer.wrap(utf8(json)).order(ByteOrder.LITTLE_ENDIAN);
+                List<JsonReader> readers = new ArrayList<JsonReader>(Arrays.asList(allReaders(json)));
+                readers.add(JsonReader.utf8(little));
+
+                for (JsonReader jr : readers) {
+                    Assert.assertEquals(JsonReader.TOKEN_ARRAY_BEGIN, jr.next());
+                    Assert.assertEquals(JsonReader.TOKEN_STRING, jr.next());
+                    Assert.assertEquals(expected, jr.getString());
+                    Assert.assertEquals(JsonReader.TOKEN_ARRAY_END, jr.next());
+                    Assert.assertEquals(JsonReader.TOKEN_EOF, jr.next());
+                }
+
+                Assert.assertEquals(expected, JsonTape.build(utf8(json)).getString(1));
+            }
+
+            String control = "[\"" + prefix + "\u0001xyz\"]";
+            try {
+                JsonTape.build(utf8(control));
+                Assert.fail(control);
+            } catch (IOException exc) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void structureTest () throws IOException {
+        int[] expected =
+            { JsonReader.TOKEN_OBJECT_BEGIN, JsonReader.TOKEN_KEY, JsonReader.TOKEN_ARRAY_BEGIN,
+                JsonReader.TOKEN_NUMBER, JsonReader.TOKEN_OBJECT_BEGIN, JsonReader.TOKEN_OBJECT_END,
+                JsonReader.TOKEN_ARRAY_BEGIN, JsonReader.TOKEN_ARRAY_END, JsonReader.TOKEN_ARRAY_END,
+                JsonReader.TOKEN_KEY, JsonReader.TOKEN_OBJECT_BEGIN, JsonReader.TOKEN_KEY, JsonReader.TOKEN_NULL,
+                JsonReader.TOKEN_OBJECT_END, JsonReader.TOKEN_OBJECT_END, JsonReader.TOKEN_EOF };
+
+        for (JsonReader jr : allReaders("{ \"a\" : [1, {}, []], \"b\": {\"c\": null} }")) {
+            for (int tok : expected) {
+                Assert.assertEquals(tok, jr.next());
+            }
+        }
+    }
+
+    @Test
+    public void malformedTest () {
+        String[] inputs =
+            { "", "[1 2]", "[1,]", "{\"a\" 1}", "{1:2}", "{\"a\":1,}", "[}", "tru", "nul", "01", "1.", "-", "1e",
+                "\"abc", "\"a\u0001\"", "\"\\x\"", "\"\\u12g4\"", "[]]", "1 2", "[" };
+        for (String input : inputs) {
+            for (JsonReader jr : allReaders(input)) {
+                try {
+                    while (jr.next() != JsonReader.TOKEN_EOF) {
+                        // Keep reading
+                    }
+                    Assert.fail(input);
+                } catch (IOException exc) {
+                    // Expected
+                }
+            }
+        }
+    }
+
+    @Test
+    public void invalidUtf8Test () {
+        byte[][] inputs =
+            { { '"', (byte) 0xC3, '"' }, { '"', (byte) 0x80, '"' }, { '"', (byte) 0xC0, (byte) 0xAF, '"' },
+                { '"', (byte) 0xED, (byte) 0xA0, (byte) 0x80, '"' }, { '"', (byte) 0xF5, (byte) 0x80, '"' },
+                { '"', (byte) 0xE2, (byte) 0x82 } };
+        for (byte[] input : inputs) {
+            try {
+                JsonReader.utf8(input).next();
+                Assert.fail();
+            } catch (IOException exc) {
+                // Expected
+            }
+        }
+    }
+
+    /** Tests that mapped files are correctly read, even when tokens cross window boundaries. */
+    @Test
+    public void mappedTest () throws IOException {
+        String json = "{\"key\": [\"\u00f1\u20ac\ud83d\ude00\", 12345.678e-3, true, null, \"esc\\u0041ped\"]}";
+        File file = File.createTempFile("johnson", ".json");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(utf8(json));
+            } finally {
+                out.close();
+            }
+
+            for (int windowSize = 1; windowSize <= 8; windowSize++) {
+                JsonReader jr = JsonReader.mapped(new FileInputStream(file).getChannel(), windowSize);
+                try {
+                    Assert.assertEquals(JsonReader.TOKEN_OBJECT_BEGIN, jr.next());
+                    Assert.assertEquals(JsonReader.TOKEN_KEY, jr.next());
+                    Assert.assertEquals("key", jr.getString());
+                    Assert.assertEquals(JsonReader.TOKEN_ARRAY_BEGIN, jr.next());
+                    Assert.assertEquals(JsonReader.TOKEN_STRING, jr.next());
+                    Assert.assertEquals("\u00f1\u20ac\ud83d\ude00", jr.getString());
+                    Assert.assertEquals(JsonReader.TOKEN_NUMBER, jr.next());
+                    Assert.assertEquals(12.345678, jr.getDouble());
+                    Assert.assertEquals(JsonReader.TOKEN_BOOLEAN, jr.next());
+                    Assert.assertEquals(JsonReader.TOKEN_NULL, jr.next());
+                    Assert.assertEquals(JsonReader.TOKEN_STRING, jr.next());
+                    Assert.assertEquals("escAped", jr.getString());
+                    Assert.assertEquals(JsonReader.TOKEN_ARRAY_END, jr.next());
+                    Assert.assertEquals(JsonReader.TOKEN_OBJECT_END, jr.next());
+                    Assert.assertEquals(JsonReader.TOKEN_EOF, jr.next());
+                } finally {
+                    jr.close();
+                }
+            }
+
+            JsonReader jr = JsonReader.mapped(file);
+            try {
+                Assert.assertEquals(JsonReader.TOKEN_OBJECT_BEGIN, jr.next());
+            } finally {
+                jr.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void wrongAccessorTest () throws IOException {
+        JsonReader jr = reader("\"str\"");
+        jr.next();
+        jr.getBoolean();
+        Assert.fail();
+    }
+
+    @Test
+    public void bulkReadTest () throws IOException {
+        for (JsonReader jr : allReaders("{\"a\": [1, 2, 3, 4, 5], \"b\": [0.5, -1e3], \"c\": [1, \"x\"]}")) {
+            long[] longs = new long[4];
+            Assert.assertEquals(JsonReader.TOKEN_OBJECT_BEGIN, jr.next());
+            Assert.assertEquals(JsonReader.TOKEN_KEY, jr.next());
+            Assert.assertEquals(JsonReader.TOKEN_ARRAY_BEGIN, jr.next());
+            Assert.assertEquals(4, jr.readLongs(longs, 0, 4));
+            Assert.assertEquals(4, longs[3]);
+            Assert.assertEquals(1, jr.readLongs(longs, 2, 2));
+            Assert.assertEquals(5, longs[2]);
+            Assert.assertEquals(JsonReader.TOKEN_ARRAY_END, jr.getToken());
+
+            double[] doubles = new double[4];
+            Assert.assertEquals(JsonReader.TOKEN_KEY, jr.next());
+            Assert.assertEquals(JsonReader.TOKEN_ARRAY_BEGIN, jr.next());
+            Assert.assertEquals(2, jr.readDoubles(doubles, 0, 4));
+            Assert.assertEquals(-1e3, doubles[1]);
+
+            Assert.assertEquals(JsonReader.TOKEN_KEY, jr.next());
+            try {
+                jr.readDoubles(doubles, 0, 4);
+                Assert.fail();
+            } catch (IllegalStateException exc) {
+                // Expected, not inside the array yet
+            }
+            Assert.assertEquals(JsonReader.TOKEN_ARRAY_BEGIN, jr.next());
+            try {
+                jr.readDoubles(doubles, 0, 4);
+                Assert.fail();
+            } catch (IOException exc) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void skipValueTest () throws IOException {
+        String json = "{\"a\": {\"x\": [1, \"\\u00e9\", {}], \"y\": null}, \"b\": [true, [], 2.5], \"c\": \"s\"}";
+        for (JsonReader jr : allReaders(json)) {
+            Assert.assertEquals(JsonReader.TOKEN_OBJECT_BEGIN, jr.next());
+            try {
+                jr.skipValue();
+                Assert.fail();
+            } catch (IllegalStateException exc) {
+                // Expected, a key comes next
+            }
+
+            Assert.assertEquals(JsonReader.TOKEN_KEY, jr.next());
+            Assert.assertEquals(JsonReader.TOKEN_OBJECT_BEGIN, jr.skipValue());
+            Assert.assertEquals(-1, jr.getToken());
+
+            Assert.assertEquals(JsonReader.TOKEN_KEY, jr.next());
+            Assert.assertEquals("b", jr.getString());
+            Assert.assertEquals(JsonReader.TOKEN_ARRAY_BEGIN, jr.next());
+            Assert.assertEquals(JsonReader.TOKEN_BOOLEAN, jr.skipValue());
+            Assert.assertEquals(JsonReader.TOKEN_ARRAY_BEGIN, jr.skipValue());
+            Assert.assertEquals(JsonReader.TOKEN_NUMBER, jr.skipValue());
+            Assert.assertEquals(JsonReader.TOKEN_ARRAY_END, jr.skipValue());
+            Assert.assertEquals(JsonReader.TOKEN_ARRAY_END, jr.getToken());
+
+            Assert.assertEquals(JsonReader.TOKEN_KEY, jr.next());
+            Assert.assertEquals(JsonReader.TOKEN_STRING, jr.next());
+            Assert.assertEquals("s", jr.getString());
+            Assert.assertEquals(JsonReader.TOKEN_OBJECT_END, jr.next());
+            Assert.assertEquals(JsonReader.TOKEN_EOF, jr.next());
+        }
+
+        // Skipped values are still validated
+        for (JsonReader jr : allReaders("[{\"a\": [1, }]")) {
+            try {
+                jr.skipValue();
+                Assert.fail();
+            } catch (IOException exc) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void lineDelimitedTest () throws IOException {
+        for (JsonReader jr : allReaders("{\"a\": 1}\n[2]\n\n\"s\"\r\nnull 3\n")) {
+            jr.setLineDelimited(true);
+            Assert.assertEquals(JsonReader.TOKEN_OBJECT_BEGIN, jr.next());
+            Assert.assertEquals(JsonReader.TOKEN_KEY, jr.next());
+            Assert.assertEquals(JsonReader.TOKEN_NUMBER, jr.next());
+            Assert.assertEquals(JsonReader.TOKEN_OBJECT_END, jr.next());
+            Assert.assertEquals(JsonReader.TOKEN_ARRAY_BEGIN, jr.next());
+            Assert.assertEquals(JsonReader.TOKEN_NUMBER, jr.skipValue());
+            Assert.assertEquals(JsonReader.TOKEN_ARRAY_END, jr.next());
+            Assert.assertEquals(JsonReader.TOKEN_STRING, jr.skipValue());
+            Assert.assertEquals(JsonReader.TOKEN_NULL, jr.next());
+            Assert.assertEquals(JsonReader.TOKEN_NUMBER, jr.next());
+            Assert.assertEquals(JsonReader.TOKEN_EOF, jr.next());
+            Assert.assertEquals(JsonReader.TOKEN_EOF, jr.next());
+        }
+
+        for (JsonReader jr : allReaders("  \n")) {
+            Assert.assertEquals(JsonReader.TOKEN_EOF, jr.setLineDelimited(true).next());
+        }
+        for (JsonReader jr : allReaders("[1]\n[")) {
+            jr.setLineDelimited(true);
+            Assert.assertEquals(JsonReader.TOKEN_ARRAY_BEGIN, jr.skipValue());
+            try {
+                jr.skipValue();
+                Assert.fail();
+            } catch (IOException exc) {
+                // Expected
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package es.darkhogg.johnson.test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import es.darkhogg.johnson.data.JsonArray;
+import es.darkhogg.johnson.data.JsonNumber;
+import es.darkhogg.johnson.data.JsonObject;
+import es.darkhogg.johnson.data.JsonString;
+import es.darkhogg.johnson.io.JsonKey;
+import es.darkhogg.johnson.io.JsonWriter;
+import es.darkhogg.johnson.mapping.JsonSerializer;
+
+/**
+ * Tests for the {@link JsonSerializer} and {@link JsonKey} classes.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public class JsonSerializerTest {
+
+    /** Writes an object with {@link JsonSerializer#serialize} and returns the output */
+    private static String serialize (Object obj) throws IOException {
+        StringWriter sw = new StringWriter();
+        JsonWriter writer = new JsonWriter(sw);
+        JsonSerializer.serialize(writer, obj);
+        writer.flush();
+        return sw.toString();
+    }
+
+    /** Tests that pre-escaped keys are written as the equivalent string key with every escape policy. */
+    @Test
+    public void keyTest () throws IOException {
+        String name = "<\u00e9\"\n>";
+        JsonKey key = new JsonKey(name);
+        Assert.assertEquals(name, key.getName());
+
+        for (int policy : new int[] { JsonWriter.ESCAPE_MINIMAL, JsonWriter.ESCAPE_ASCII, JsonWriter.ESCAPE_HTML }) {
+            StringWriter expected = new StringWriter();
+            new JsonWriter(expected).setEscapePolicy(policy).beginObject().key(name).value(1).key("b").value(2)
+                .endObject().flush();
+
+            StringWriter actual = new StringWriter();
+            new JsonWriter(actual).setEscapePolicy(policy).beginObject().key(key).value(1).key(new JsonKey("b"))
+                .value(2).endObject().flush();
+
+            Assert.assertEquals(expected.toString(), actual.toString());
+        }
+    }
+
+    /** Tests that a key cannot be written where a value is expected. */
+    @Test(expected = IllegalStateException.class)
+    public void keyStateTest () throws IOException {
+        new JsonWriter(new StringWriter()).beginArray().key(new JsonKey("a"));
+    }
+
+    /** Tests that simple values are written as the corresponding JSON values. */
+    @Test
+    public void simpleTest () throws IOException {
+        Assert.assertEquals("null", serialize(null));
+        Assert.assertEquals("\"abc\"", serialize("abc"));
+        Assert.assertEquals("12", serialize(Integer.valueOf(12)));
+        Assert.assertEquals("1.5", serialize(Double.valueOf(1.5)));
+        Assert.assertEquals("true", serialize(Boolean.TRUE));
+        Assert.assertEquals("\"x\"", serialize(Character.valueOf('x')));
+        Assert.assertEquals("\"SECOND\"", serialize(Kind.SECOND));
+        Assert.assertEquals("[1,2,3]", serialize(new int[] { 1, 2, 3 }));
+        Assert.assertEquals("[1.5,-2.0]", serialize(new double[] { 1.5, -2.0 }));
+        Assert.assertEquals("[\"a\",null,7]", serialize(new Object[] { "a", null, 7 }));
+        Assert.assertEquals("[\"a\",\"b\"]", serialize(Arrays.asList("a", "b")));
+
+        Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+        map.put("a", 1);
+        map.put(2, Arrays.asList(true, false));
+        Assert.assertEquals("{\"a\":1,\"2\":[true,false]}", serialize(map));
+
+        JsonObject tree = new JsonObject.Builder().put("x", JsonArray.valueOf(new long[] { 1, 2 }))
+            .put("y", new JsonString("z")).put("w", JsonNumber.valueOf(3)).create();
+        Assert.assertEquals("{\"x\":[1,2],\"y\":\"z\",\"w\":3}", serialize(tree));
+    }
+
+    /** Tests the properties and order of a class with public accessors. */
+    @Test
+    public void beanTest () throws IOException {
+        Point point = new Point();
+        point.x = 3;
+        point.y = -4;
+        point.label = "p\"1";
+        point.visible = true;
+        point.scale = 0.5f;
+        point.kind = Kind.FIRST;
+
+        Assert.assertEquals("{\"x\":3,\"y\":-4,\"label\":\"p\\\"1\",\"visible\":true,\"scale\":0.5,\"kind\":\"FIRST\","
+            + "\"ID\":7,\"area\":-12.0,\"tags\":[\"a\"]}", serialize(point));
+
+        point.label = null;
+        point.kind = null;
+        Assert.assertEquals("{\"x\":3,\"y\":-4,\"label\":null,\"visible\":true,\"scale\":0.5,\"kind\":null,"
+            + "\"ID\":7,\"area\":-12.0,\"tags\":[\"a\"]}", serialize(point));
+    }
+
+    /** Tests superclass fields, record-style accessors and non-public classes. */
+    @Test
+    public void inheritedTest () throws IOException {
+        Assert.assertEquals("{\"name\":\"n\",\"count\":2,\"letter\":\"q\",\"child\":{\"name\":\"c\"}}",
+            serialize(new Derived("n", 2, 'q', new Named("c"))));
+    }
+
+    /** Tests that the serializer of a class is cached and used by both entry points. */
+    @Test
+    public void cacheTest () throws IOException {
+        JsonSerializer<Named> ser = JsonSerializer.of(Named.class);
+        Assert.assertSame(ser, JsonSerializer.of(Named.class));
+
+        StringWriter sw = new StringWriter();
+        JsonWriter writer = new JsonWriter(sw);
+        ser.write(writer, new Named("a"));
+        writer.flush();
+        Assert.assertEquals(serialize(new Named("a")), sw.toString());
+    }
+
+    /** Tests that checked exceptions thrown by accessors are wrapped. */
+    @Test(expected = IllegalStateException.class)
+    public void checkedExceptionTest () throws IOException {
+        serialize(new Failing());
+    }
+
+    /** Tests that unchecked exceptions thrown by accessors are not wrapped. */
+    @Test(expected = UnsupportedOperationException.class)
+    public void uncheckedExceptionTest () throws IOException {
+        serialize(new FailingUnchecked());
+    }
+
+    /** An enumeration */
+    public enum Kind {
+        FIRST, SECOND
+    }
+
+    /** A class with fields, matching getters and an extra getter */
+    public static class Point {
+        int x;
+        int y;
+        String label;
+        boolean visible;
+        float scale;
+        public Kind kind;
+        transient int ignored = 5;
+        static int alsoIgnored = 6;
+
+        public int getX () {
+            return x;
+        }
+
+        public int getY () {
+            return y;
+        }
+
+        public String getLabel () {
+            return label;
+        }
+
+        public boolean isVisible () {
+            return visible;
+        }
+
+        public float getScale () {
+            return scale;
+        }
+
+        public String[] getTags () {
+            return new String[] { "a" };
+        }
+
+        public double getArea () {
+            return x * y;
+        }
+
+        public long getID () {
+            return 7;
+        }
+
+        public int getIgnored () {
+            return ignored;
+        }
+
+        public String describe () {
+            return "not a getter";
+        }
+    }
+
+    /** A class with a record-style accessor */
+    static class Named {
+        private final String name;
+
+        Named (String name) {
+            this.name = name;
+        }
+
+        public String name () {
+            return name;
+        }
+    }
+
+    /** A non-public subclass with a public field and record-style accessors */
+    static final class Derived extends Named {
+        private final int count;
+        private final char letter;
+        public final Named child;
+        private final int hidden = 1;
+
+        Derived (String name, int count, char letter, Named child) {
+            super(name);
+            this.count = count;
+            this.letter = letter;
+            this.child = child;
+        }
+
+        public int count () {
+            return count;
+        }
+
+        public char letter () {
+            return letter;
+        }
+    }
+
+    /** A class whose getter throws a checked exception */
+    public static class Failing {
+        public String getValue () throws Exception {
+            throw new Exception();
+        }
+    }
+
+    /** A class whose getter throws an unchecked exception */
+    public static class FailingUnchecked {
+        public String getValue () {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
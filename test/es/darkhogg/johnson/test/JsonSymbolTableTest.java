@@ -0,0 +1,99 @@
+package es.darkhogg.johnson.test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import es.darkhogg.johnson.io.JsonReader;
+import es.darkhogg.johnson.io.JsonSymbolTable;
+
+/**
+ * Tests for the {@link JsonSymbolTable} class.
+ * 
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public final class JsonSymbolTableTest {
+
+    /** Reads all keys of a document */
+    private static String[] keys (JsonReader jr, int count) throws IOException {
+        String[] keys = new String[count];
+        int i = 0;
+        for (int tok = jr.next(); tok != JsonReader.TOKEN_EOF; tok = jr.next()) {
+            if (tok == JsonReader.TOKEN_KEY) {
+                keys[i++] = jr.getString();
+            }
+        }
+        Assert.assertEquals(count, i);
+        return keys;
+    }
+
+    @Test
+    public void sameInstanceTest () throws IOException {
+        String json = "[{\"id\": 1, \"na\\u006De\": \"a\"}, {\"id\": 2, \"name\": \"b\"}]";
+        for (JsonReader jr : new JsonReader[] { new JsonReader(new StringReader(json)),
+            JsonReader.utf8(json.getBytes("UTF-8")) })
+        {
+            String[] keys = keys(jr, 4);
+            Assert.assertEquals("id", keys[0]);
+            Assert.assertEquals("name", keys[1]);
+            Assert.assertSame(keys[0], keys[2]);
+            Assert.assertSame(keys[1], keys[3]);
+        }
+    }
+
+    @Test
+    public void sharedTableTest () throws IOException {
+        JsonSymbolTable table = new JsonSymbolTable(16);
+        String first = keys(new JsonReader(new StringReader("{\"key\": 1}")).setSymbolTable(table), 1)[0];
+        String second = keys(JsonReader.utf8("{\"key\": 2}".getBytes("UTF-8")).setSymbolTable(table), 1)[0];
+        Assert.assertSame(first, second);
+
+        table.clear();
+        String third = keys(new JsonReader(new StringReader("{\"key\": 3}")).setSymbolTable(table), 1)[0];
+        Assert.assertNotSame(first, third);
+        Assert.assertEquals(first, third);
+    }
+
+    @Test
+    public void disabledTest () throws IOException {
+        String[] keys = keys(new JsonReader(new StringReader("[{\"a\": 1}, {\"a\": 2}]")).setSymbolTable(null), 2);
+        Assert.assertEquals(keys[0], keys[1]);
+        Assert.assertNotSame(keys[0], keys[1]);
+    }
+
+    @Test
+    public void boundedTest () throws IOException {
+        // Many more distinct keys than slots, and a key too long to be kept
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < 1000; i++) {
+            sb.append("\"k").append(i).append("\":").append(i).append(',');
+        }
+        for (int i = 0; i < 100; i++) {
+            sb.append('x');
+        }
+        sb.append("\":0,\"");
+        for (int i = 0; i < 100; i++) {
+            sb.append('x');
+        }
+        sb.append("\":0}");
+
+        String json = sb.toString().replace(",x", ",\"x");
+        String[] keys = keys(new JsonReader(new StringReader(json)).setSymbolTable(new JsonSymbolTable(4)), 1002);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals("k" + i, keys[i]);
+        }
+        Assert.assertEquals(100, keys[1000].length());
+        Assert.assertEquals(keys[1000], keys[1001]);
+        Assert.assertNotSame(keys[1000], keys[1001]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityTest () {
+        new JsonSymbolTable(0);
+        Assert.fail();
+    }
+}
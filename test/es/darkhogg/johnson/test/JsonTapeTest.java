@@ -0,0 +1,194 @@
+package es.darkhogg.johnson.test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.util.Iterator;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import es.darkhogg.johnson.data.JsonArray;
+import es.darkhogg.johnson.data.JsonBoolean;
+import es.darkhogg.johnson.data.JsonNumber;
+import es.darkhogg.johnson.data.JsonObject;
+import es.darkhogg.johnson.data.JsonParser;
+import es.darkhogg.johnson.data.JsonString;
+import es.darkhogg.johnson.data.JsonValue;
+import es.darkhogg.johnson.io.JsonReader;
+import es.darkhogg.johnson.io.JsonTape;
+
+/**
+ * Tests for the {@link JsonTape} class and the lazy values created by {@link JsonParser#parseLazy}.
+ *
+ * @author Daniel Escoz
+ * @version 1.0
+ */
+public class JsonTapeTest {
+
+    private static byte[] utf8 (String json) {
+        try {
+            return json.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException exc) {
+            throw new AssertionError(exc);
+        }
+    }
+
+    /** Asserts that two JSON trees have the same structure and values. */
+    private static void assertSameTree (JsonValue<?> expected, JsonValue<?> actual) {
+        if (expected instanceof JsonArray) {
+            JsonArray exp = (JsonArray) expected;
+            JsonArray act = (JsonArray) actual;
+            Assert.assertEquals(exp.getLength(), act.getLength());
+            for (int i = 0; i < exp.getLength(); i++) {
+                assertSameTree(exp.get(i), act.get(i));
+            }
+        } else if (expected instanceof JsonObject) {
+            JsonObject exp = (JsonObject) expected;
+            JsonObject act = (JsonObject) actual;
+            Assert.assertEquals(exp.getSize(), act.getSize());
+            for (Map.Entry<String, JsonValue<?>> entry : exp.getValue().entrySet()) {
+                assertSameTree(entry.getValue(), act.get(entry.getKey()));
+            }
+        } else {
+            Assert.assertEquals(expected, actual);
+        }
+    }
+
+    /** Tests the structure recorded on a tape. */
+    @Test
+    public void structureTest () throws IOException {
+        JsonTape tape = JsonTape.build(utf8("{\"a\": [1, {\"b\": [[]]}, \"x\"], \"c\": true}"));
+
+        int[] expected =
+            { JsonReader.TOKEN_OBJECT_BEGIN, JsonReader.TOKEN_KEY, JsonReader.TOKEN_ARRAY_BEGIN,
+                JsonReader.TOKEN_NUMBER, JsonReader.TOKEN_OBJECT_BEGIN, JsonReader.TOKEN_KEY,
+                JsonReader.TOKEN_ARRAY_BEGIN, JsonReader.TOKEN_ARRAY_BEGIN, JsonReader.TOKEN_ARRAY_END,
+                JsonReader.TOKEN_ARRAY_END, JsonReader.TOKEN_OBJECT_END, JsonReader.TOKEN_STRING,
+                JsonReader.TOKEN_ARRAY_END, JsonReader.TOKEN_KEY, JsonReader.TOKEN_BOOLEAN,
+                JsonReader.TOKEN_OBJECT_END };
+
+        Assert.assertEquals(expected.length, tape.size());
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals(expected[i], tape.getToken(i));
+        }
+
+        Assert.assertEquals(15, tape.getEnd(0));
+        Assert.assertEquals(2, tape.getCount(0));
+        Assert.assertEquals(12, tape.getEnd(2));
+        Assert.assertEquals(3, tape.getCount(2));
+        Assert.assertEquals(13, tape.skip(2));
+        Assert.assertEquals(11, tape.skip(4));
+        Assert.assertEquals(4, tape.skip(3));
+        Assert.assertEquals(0, tape.getCount(7));
+
+        Assert.assertEquals("a", tape.getString(1));
+        Assert.assertTrue(tape.stringEquals(1, "a"));
+        Assert.assertFalse(tape.stringEquals(1, "ab"));
+        Assert.assertFalse(tape.stringEquals(1, ""));
+        Assert.assertEquals(1L, tape.getLong(3));
+        Assert.assertEquals("x", tape.getString(11));
+        Assert.assertTrue(tape.getBoolean(14));
+    }
+
+    /** Tests that lazy trees have the same contents as eagerly parsed ones. */
+    @Test
+    public void lazyTreeTest () throws IOException {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < 40; i++) {
+            sb.append("\"key").append(i).append("\": [").append(i).append(", ").append(i * 0.5).append("],");
+        }
+        sb.append("\"esc\\\"aped\\u0041\": {\"\\u00f1\": \"\\u20ac\", \"\u00e9\": null, \"\": \"\"}, \"last\": [true, false]}");
+        String json = sb.toString();
+
+        JsonValue<?> eager = new JsonParser().parse(new JsonReader(new StringReader(json)));
+        JsonValue<?> lazy = JsonParser.parseLazy(utf8(json));
+        assertSameTree(eager, lazy);
+
+        JsonObject obj = (JsonObject) lazy;
+        Assert.assertNull(obj.get("missing"));
+        Assert.assertSame(obj.get("key7"), obj.get("key7"));
+        Assert.assertEquals(JsonNumber.valueOf(7L), ((JsonArray) obj.get("key7")).get(0));
+
+        JsonObject esc = (JsonObject) obj.get("esc\"apedA");
+        Assert.assertEquals(new JsonString("\u20ac"), esc.get("\u00f1"));
+        Assert.assertTrue(esc.getValue().containsKey("\u00e9"));
+        Assert.assertSame(JsonString.EMPTY, esc.get(""));
+
+        Iterator<String> keys = esc.getValue().keySet().iterator();
+        Assert.assertEquals("\u00f1", keys.next());
+        Assert.assertEquals("\u00e9", keys.next());
+        Assert.assertEquals("", keys.next());
+        Assert.assertFalse(keys.hasNext());
+
+        Assert.assertSame(JsonBoolean.FALSE, ((JsonArray) obj.get("last")).get(1));
+    }
+
+    /** Tests the types of numbers on a tape, and that dense documents grow the tape as needed. */
+    @Test
+    public void numberTest () throws IOException {
+        JsonTape tape = JsonTape.build(utf8("[1, -2.5, 1e400, 12345678901234567890, 0.1234567890123456789]"));
+        Assert.assertEquals(JsonReader.NUMBER_LONG, tape.getNumberType(1));
+        Assert.assertEquals(JsonReader.NUMBER_DOUBLE, tape.getNumberType(2));
+        Assert.assertEquals(JsonReader.NUMBER_OTHER, tape.getNumberType(3));
+        Assert.assertEquals(JsonReader.NUMBER_OTHER, tape.getNumberType(4));
+        Assert.assertEquals(JsonReader.NUMBER_OTHER, tape.getNumberType(5));
+
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 10000; i++) {
+            sb.append(i % 10).append(i % 3 == 0 ? ".5," : ",");
+        }
+        String json = sb.append("[],{}]").toString();
+        Assert.assertEquals(10006, JsonTape.build(utf8(json)).size());
+        JsonValue<?> eager = new JsonParser().parse(new JsonReader(new StringReader(json)));
+        assertSameTree(eager, JsonParser.parseLazy(utf8(json)));
+    }
+
+    /** Tests that duplicate keys are collapsed in lazy objects just like in eagerly parsed ones. */
+    @Test
+    public void duplicateKeyTest () throws IOException {
+        StringBuilder sb = new StringBuilder("[{\"a\":1,\"b\":2,\"a\":3}, {");
+        for (int i = 0; i < 40; i++) {
+            sb.append("\"key").append(i % 25).append("\": ").append(i).append(", ");
+        }
+        String json = sb.append("\"last\": null}]").toString();
+
+        JsonValue<?> eager = new JsonParser().parse(new JsonReader(new StringReader(json)));
+        JsonValue<?> lazy = JsonParser.parseLazy(utf8(json));
+        assertSameTree(eager, lazy);
+        Assert.assertEquals(eager, lazy);
+        Assert.assertEquals(eager.hashCode(), lazy.hashCode());
+
+        JsonObject small = (JsonObject) ((JsonArray) lazy).get(0);
+        Assert.assertEquals(2, small.getValue().size());
+        Assert.assertEquals(JsonNumber.valueOf(3L), small.get("a"));
+        Iterator<Map.Entry<String, JsonValue<?>>> entries = small.getValue().entrySet().iterator();
+        Assert.assertEquals("a", entries.next().getKey());
+        Assert.assertEquals("b", entries.next().getKey());
+        Assert.assertFalse(entries.hasNext());
+
+        JsonObject large = (JsonObject) ((JsonArray) lazy).get(1);
+        Assert.assertEquals(26, large.getValue().size());
+        Assert.assertEquals(JsonNumber.valueOf(26L), large.get("key1"));
+        Assert.assertEquals(JsonNumber.valueOf(24L), large.get("key24"));
+        JsonObject eagerLarge = (JsonObject) ((JsonArray) eager).get(1);
+        Assert.assertEquals(eagerLarge.getValue().keySet().toString(), large.getValue().keySet().toString());
+    }
+
+    /** Tests that lazy containers cannot be modified. */
+    @Test(expected = UnsupportedOperationException.class)
+    public void unmodifiableTest () throws IOException {
+        JsonArray arr = (JsonArray) JsonParser.parseLazy(utf8("[1, 2]"));
+        arr.getValue().set(0, JsonBoolean.TRUE);
+        Assert.fail();
+    }
+
+    /** Tests that invalid documents are rejected when building the tape. */
+    @Test(expected = IOException.class)
+    public void invalidTest () throws IOException {
+        JsonTape.build(utf8("{\"a\": [1, 2}"));
+        Assert.fail();
+    }
+}
@@ -1,12 +1,19 @@
 package es.darkhogg.johnson.test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
 import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.util.Random;
 
 import junit.framework.Assert;
 
 import org.junit.Test;
 
+import es.darkhogg.johnson.io.JsonReader;
 import es.darkhogg.johnson.io.JsonWriter;
 
 /**
@@ -137,4 +144,259 @@ public class JsonWriterTest {
 
         Assert.assertEquals("[[[],[]],[]]", arrWriter.toString());
     }
+
+    @Test
+    public void nestingObjectTest () throws IOException {
+        StringWriter objWriter = new StringWriter();
+
+        new JsonWriter(objWriter).beginArray().beginObject().key("a").value(1).key("b").beginObject().key("c")
+            .beginObject().endObject().endObject().key("d").beginArray().endArray().endObject().beginObject()
+            .endObject().endArray();
+
+        Assert.assertEquals("[{\"a\":1,\"b\":{\"c\":{}},\"d\":[]},{}]", objWriter.toString());
+    }
+
+    /** Tests that integers are correctly formatted at every digit count and at the extremes of their types. */
+    @Test
+    public void integerDigitsTest () throws IOException {
+        long[] values = { Long.MIN_VALUE, Long.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, -1, 1, 9, 10, -99, 100 };
+
+        StringWriter strWriter = new StringWriter();
+        JsonWriter writer = new JsonWriter(strWriter).beginArray();
+        StringBuilder expected = new StringBuilder("[");
+
+        for (long value : values) {
+            writer.value(value);
+            expected.append(value).append(',');
+        }
+        for (long pow = 1; pow > 0 && pow <= Long.MAX_VALUE / 10; pow *= 10) {
+            writer.value(pow).value(pow - 1).value(-pow).value(Long.valueOf(pow * 10 - 1));
+            expected.append(pow).append(',').append(pow - 1).append(',').append(-pow).append(',')
+                .append(pow * 10 - 1).append(',');
+        }
+        writer.value(Integer.valueOf(-42)).value(Short.valueOf((short) 7)).endArray();
+        expected.append("-42,7]");
+
+        Assert.assertEquals(expected.toString(), strWriter.toString());
+    }
+
+    /** Tests that output is buffered until a top-level value is complete or the writer is flushed. */
+    @Test
+    public void bufferingTest () throws IOException {
+        StringWriter strWriter = new StringWriter();
+        JsonWriter writer = new JsonWriter(strWriter).beginArray().value(1);
+        Assert.assertEquals("", strWriter.toString());
+
+        writer.flush();
+        Assert.assertEquals("[1", strWriter.toString());
+
+        StringBuilder expected = new StringBuilder("[1");
+        for (int i = 0; i < 10000; i++) {
+            writer.value(i).value(true).valueNull();
+            expected.append(',').append(i).append(",true,null");
+        }
+        writer.endArray();
+        expected.append(']');
+
+        Assert.assertEquals(expected.toString(), strWriter.toString());
+    }
+
+    /** Writes the same sample document to the given writer, returning the expected text. */
+    private static String writeSample (JsonWriter writer) throws IOException {
+        StringBuilder expected = new StringBuilder("[");
+        writer.beginArray();
+        for (int i = 0; i < 5000; i++) {
+            writer.beginObject().key("id").value(i * 31L).key("na\u00efve \u20ac\ud83d\ude00").beginArray()
+                .value(i % 2 == 0).valueNull().value("x\ty").endArray().endObject();
+            expected.append(i == 0 ? "" : ",").append("{\"id\":").append(i * 31L)
+                .append(",\"na\u00efve \u20ac\ud83d\ude00\":[").append(i % 2 == 0).append(",null,\"x\\ty\"]}");
+        }
+        writer.endArray();
+        return expected.append(']').toString();
+    }
+
+    /** Tests that UTF-8 writers produce the same output as character writers. */
+    @Test
+    public void utf8Test () throws IOException {
+        StringWriter strWriter = new StringWriter();
+        String expected = writeSample(new JsonWriter(strWriter));
+        Assert.assertEquals(expected, strWriter.toString());
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        JsonWriter streamWriter = JsonWriter.utf8(stream);
+        Assert.assertEquals(expected, writeSample(streamWriter));
+        streamWriter.close();
+        Assert.assertEquals(expected, new String(stream.toByteArray(), "UTF-8"));
+
+        ByteArrayOutputStream channelStream = new ByteArrayOutputStream();
+        JsonWriter channelWriter = JsonWriter.utf8(Channels.newChannel(channelStream));
+        Assert.assertEquals(expected, writeSample(channelWriter));
+        channelWriter.close();
+        Assert.assertEquals(expected, new String(channelStream.toByteArray(), "UTF-8"));
+    }
+
+    /** Tests that UTF-8 writers escape unpaired surrogates, so that strings are read back unchanged. */
+    @Test
+    public void utf8SurrogateTest () throws IOException {
+        String[] strings = { "\ude00", "a\ud800b", "x\ud83d", "\ude00\ud83d", "\ud83d\ude00\udc00\ud83d\ude00" };
+        for (String str : strings) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            JsonWriter writer = JsonWriter.utf8(stream).beginArray().value(str);
+            writer.beginObject().key(str).value(1).endObject().endArray().close();
+            byte[] bytes = stream.toByteArray();
+            for (byte b : bytes) {
+                Assert.assertTrue(b != '?');
+            }
+
+            JsonReader reader = JsonReader.utf8(bytes);
+            Assert.assertEquals(JsonReader.TOKEN_ARRAY_BEGIN, reader.next());
+            Assert.assertEquals(JsonReader.TOKEN_STRING, reader.next());
+            Assert.assertEquals(str, reader.getString());
+            Assert.assertEquals(JsonReader.TOKEN_OBJECT_BEGIN, reader.next());
+            Assert.assertEquals(JsonReader.TOKEN_KEY, reader.next());
+            Assert.assertEquals(str, reader.getString());
+        }
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        JsonWriter.utf8(stream).value("\ude00\u00e9").close();
+        Assert.assertEquals("\"\\ude00\u00e9\"", new String(stream.toByteArray(), "UTF-8"));
+    }
+
+    /** Tests that a UTF-8 writer cannot be constructed with a <tt>null</tt>. */
+    @Test(expected = NullPointerException.class)
+    public void utf8NotNullTest () {
+        JsonWriter.utf8((OutputStream) null);
+        Assert.fail();
+    }
+
+    /** Writes a string with the given escape policy and returns the output. */
+    private static String writeString (String str, int policy) throws IOException {
+        StringWriter strWriter = new StringWriter();
+        new JsonWriter(strWriter).setEscapePolicy(policy).value(str);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        JsonWriter.utf8(stream).setEscapePolicy(policy).value(str);
+        Assert.assertEquals(strWriter.toString(), new String(stream.toByteArray(), "UTF-8"));
+
+        return strWriter.toString();
+    }
+
+    @Test
+    public void stringValueTest () throws IOException {
+        Assert.assertEquals("\"\"", writeString("", JsonWriter.ESCAPE_MINIMAL));
+        Assert.assertEquals("\"plain text\"", writeString("plain text", JsonWriter.ESCAPE_MINIMAL));
+        Assert.assertEquals("\"q\\\"b\\\\/\\b\\f\\n\\r\\t\\u0000\\u001f\"",
+            writeString("q\"b\\/\b\f\n\r\t\u0000\u001f", JsonWriter.ESCAPE_MINIMAL));
+
+        String mixed = "<a href='x'>\u00e9&\u2028\ud83d\ude00</a>";
+        Assert.assertEquals("\"" + mixed + "\"", writeString(mixed, JsonWriter.ESCAPE_MINIMAL));
+        Assert.assertEquals("\"<a href='x'>\\u00e9&\\u2028\\ud83d\\ude00</a>\"",
+            writeString(mixed, JsonWriter.ESCAPE_ASCII));
+        Assert.assertEquals(
+            "\"\\u003ca href\\u003d\\u0027x\\u0027\\u003e\u00e9\\u0026\\u2028\ud83d\ude00\\u003c/a\\u003e\"",
+            writeString(mixed, JsonWriter.ESCAPE_HTML));
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append((char) ('a' + i % 26)).append(i % 1000 == 0 ? "\n\u00f1" : "");
+        }
+        String str = sb.toString();
+        for (int policy = JsonWriter.ESCAPE_MINIMAL; policy <= JsonWriter.ESCAPE_HTML; policy++) {
+            JsonReader reader = new JsonReader(new StringReader(writeString(str, policy)));
+            reader.next();
+            Assert.assertEquals(str, reader.getString());
+        }
+    }
+
+    @SuppressWarnings("resource")
+    @Test(expected = IllegalArgumentException.class)
+    public void escapePolicyTest () {
+        new JsonWriter(new StringWriter()).setEscapePolicy(3);
+        Assert.fail();
+    }
+
+    /** Tests that doubles and floats are written with the shortest digits that read back as the same value. */
+    @Test
+    public void shortestDoubleTest () throws IOException {
+        StringWriter strWriter = new StringWriter();
+        new JsonWriter(strWriter).beginArray().value(1e23).value(5e-324).value(1e-323).value(2e-3).value(1e7)
+            .value(9999999.0).value(-0.0).value(0.1 + 0.2).value(Double.valueOf(100)).value(0.3f).value(1e-45f)
+            .value(Float.valueOf(16777216f)).endArray();
+        Assert.assertEquals(
+            "[1.0E23,4.9E-324,9.9E-324,0.002,1.0E7,9999999.0,-0.0,0.30000000000000004,100.0,0.3,1.4E-45,1.6777216E7]",
+            strWriter.toString());
+
+        Random random = new Random(0);
+        for (int i = 0; i < 10000; i++) {
+            double dbl = Double.longBitsToDouble(random.nextLong());
+            float flt = Float.intBitsToFloat(random.nextInt());
+            if (Double.isNaN(dbl) || Double.isInfinite(dbl) || Float.isNaN(flt) || Float.isInfinite(flt)) {
+                continue;
+            }
+
+            StringWriter dblWriter = new StringWriter();
+            new JsonWriter(dblWriter).value(dbl);
+            Assert.assertEquals(dbl, Double.parseDouble(dblWriter.toString()));
+            Assert.assertTrue(dblWriter.toString().length() <= Double.toString(dbl).length());
+
+            StringWriter fltWriter = new StringWriter();
+            new JsonWriter(fltWriter).value(flt);
+            Assert.assertEquals(flt, Float.parseFloat(fltWriter.toString()));
+            Assert.assertTrue(fltWriter.toString().length() <= Float.toString(flt).length());
+        }
+    }
+
+    /** Tests that <tt>BigDecimal</tt> values are written as their <tt>toString</tt>. */
+    @Test
+    public void bigDecimalValueTest () throws IOException {
+        StringWriter strWriter = new StringWriter();
+        new JsonWriter(strWriter).beginArray().value(new BigDecimal("100")).value(BigDecimal.valueOf(3))
+            .value(new BigDecimal("1.50")).value(new BigDecimal("7.2E+17")).value(new BigDecimal("-1E-10")).endArray();
+        Assert.assertEquals("[100,3,1.50,7.2E+17,-1E-10]", strWriter.toString());
+    }
+
+    /** Tests the policies for writing infinities and NaN. */
+    @Test
+    public void nonFiniteTest () throws IOException {
+        StringWriter strWriter = new StringWriter();
+        JsonWriter writer = new JsonWriter(strWriter).beginArray();
+        try {
+            writer.value(Double.NaN);
+            Assert.fail();
+        } catch (IllegalArgumentException exc) {
+            // Expected
+        }
+
+        writer.setNonFinitePolicy(JsonWriter.NON_FINITE_NULL).value(Double.POSITIVE_INFINITY).value(Float.NaN);
+        writer.setNonFinitePolicy(JsonWriter.NON_FINITE_STRING).value(Double.NEGATIVE_INFINITY).value(Float.NaN);
+        writer.endArray();
+
+        Assert.assertEquals("[null,null,\"-Infinity\",\"NaN\"]", strWriter.toString());
+    }
+
+    @Test
+    public void primitiveArrayTest () throws IOException {
+        StringWriter sw = new StringWriter();
+        new JsonWriter(sw).beginArray().value(new long[] { 1, -2, Long.MIN_VALUE }).value(new double[0])
+            .value(new double[] { 0.5, 1e-7 }).endArray();
+        Assert.assertEquals("[[1,-2,-9223372036854775808],[],[0.5,1.0E-7]]", sw.toString());
+
+        sw = new StringWriter();
+        new JsonWriter(sw).setNonFinitePolicy(JsonWriter.NON_FINITE_NULL).value(new double[] { Double.NaN, 1.0 });
+        Assert.assertEquals("[null,1.0]", sw.toString());
+    }
+
+    @Test
+    public void lineDelimitedTest () throws IOException {
+        StringWriter sw = new StringWriter();
+        JsonWriter writer = new JsonWriter(sw).setLineDelimited(true);
+        writer.beginObject().key("a").value(1).endObject().value("s").beginArray().value(true);
+        writer.endAll().endAll().flush();
+        Assert.assertEquals("{\"a\":1}\n\"s\"\n[true]\n", sw.toString());
+
+        // Switching modes after a single value allows more values
+        sw = new StringWriter();
+        writer = new JsonWriter(sw).value(1).setLineDelimited(true).value(2);
+        writer.flush();
+        Assert.assertEquals("12\n", sw.toString());
+    }
 }